@@ -0,0 +1,698 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.NonNull;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataLine;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * CSV record reader for purely numeric data, that parses values directly from bytes.
+ *
+ * Unlike {@link CSVRecordReader}, lines are never converted to Strings, and cells are never wrapped into Text:
+ * values are parsed from NIO buffer straight into primitive column arrays. Batched reads via {@link #next(int)}
+ * return {@link NDArrayRecordBatch} with one [minibatch, 1] array per column, which is the fast path
+ * for RecordReaderDataSetIterator and RecordReaderMultiDataSetIterator.
+ *
+ * Schema defines number and types of columns. Only Integer, Long, Float and Double columns are supported.
+ * Please note: values are parsed as doubles, so Long values beyond 2^53 will lose precision.
+ *
+ * Files can be split into byte ranges for multi-threaded reading, see {@link Builder#byteRange(long, long)}:
+ * each line belongs to the range its first byte falls into.
+ */
+public class NumericCSVRecordReader extends BaseRecordReader {
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    private final Schema schema;
+    private final ColumnType[] types;
+    private final int skipNumLines;
+    private final byte delimiter;
+    private final byte quote;
+    private final int bufferSize;
+    private final long rangeStart;
+    private final long rangeEnd;
+
+    protected Configuration conf;
+    protected InputSplit inputSplit;
+    protected URI[] locations;
+    protected int splitIndex = -1;
+    protected int lineIndex;
+
+    private transient ReadableByteChannel channel;
+    private transient byte[] buffer;
+    private transient int position;
+    private transient int limit;
+    private transient long bufferOffset;
+    private transient boolean endOfStream;
+
+    // single-row holder, used by next()
+    private transient double[][] row;
+
+    // field positions of current line, used for error reporting and slow-path parsing
+    private transient int fieldStart;
+    private transient int fieldEnd;
+
+    protected NumericCSVRecordReader(Builder builder) {
+        this.schema = builder.schema;
+        this.skipNumLines = builder.skipNumLines;
+        this.delimiter = (byte) builder.delimiter;
+        this.quote = (byte) builder.quote;
+        this.bufferSize = builder.bufferSize;
+        this.rangeStart = builder.rangeStart;
+        this.rangeEnd = builder.rangeEnd;
+
+        this.types = new ColumnType[schema.numColumns()];
+        for (int i = 0; i < types.length; i++) {
+            ColumnType type = schema.getType(i);
+            switch (type) {
+                case Integer:
+                case Long:
+                case Float:
+                case Double:
+                    types[i] = type;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Only numeric columns are supported, got column \""
+                                    + schema.getName(i) + "\" of type " + type);
+            }
+        }
+    }
+
+    public NumericCSVRecordReader(@NonNull Schema schema) {
+        this(new Builder(schema));
+    }
+
+    public NumericCSVRecordReader(@NonNull Schema schema, int skipNumLines, char delimiter) {
+        this(new Builder(schema).skipNumLines(skipNumLines).delimiter(delimiter));
+    }
+
+    /**
+     * This method splits given length into numSplits contiguous byte ranges, suitable for {@link Builder#byteRange(long, long)}
+     *
+     * @param length file length in bytes
+     * @param numSplits number of ranges
+     * @return array of [start, end) pairs
+     */
+    public static long[][] byteRanges(long length, int numSplits) {
+        Preconditions.checkArgument(numSplits > 0, "Number of splits should be positive, got %s", numSplits);
+        long[][] ranges = new long[numSplits][2];
+        for (int i = 0; i < numSplits; i++) {
+            ranges[i][0] = length * i / numSplits;
+            ranges[i][1] = length * (i + 1) / numSplits;
+        }
+        ranges[numSplits - 1][1] = Long.MAX_VALUE;
+        return ranges;
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        close();
+        this.inputSplit = split;
+        this.locations = split.locations();
+        Preconditions.checkArgument(rangeStart == 0 || locations.length == 1,
+                        "Byte ranges can only be used with single file, got %s locations", locations.length);
+
+        this.buffer = new byte[bufferSize];
+        this.row = new double[types.length][1];
+        this.splitIndex = -1;
+        this.channel = null;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        initialize(split);
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(buffer != null, "Record reader has not been initialized");
+        try {
+            return advanceToRecord();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method returns next num records as single NDArrayRecordBatch, with one [num, 1] array per column
+     */
+    @Override
+    public List<List<Writable>> next(int num) {
+        double[][] columns = new double[types.length][num];
+        int rows = 0;
+        while (rows < num && hasNext()) {
+            readRow(columns, rows);
+            if (!listeners.isEmpty())
+                invokeListeners(toWritables(columns, rows));
+            rows++;
+        }
+
+        if (rows == 0)
+            throw new NoSuchElementException("No next element found!");
+
+        List<INDArray> arrays = new ArrayList<>(types.length);
+        for (double[] column : columns)
+            arrays.add(Nd4j.create(rows == num ? column : Arrays.copyOf(column, rows), new int[] {rows, 1}));
+
+        return new NDArrayRecordBatch(arrays);
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+
+        readRow(row, 0);
+        List<Writable> ret = toWritables(row, 0);
+        invokeListeners(ret);
+        return ret;
+    }
+
+    protected List<Writable> toWritables(double[][] columns, int r) {
+        List<Writable> ret = new ArrayList<>(types.length);
+        for (int c = 0; c < types.length; c++) {
+            double v = columns[c][r];
+            switch (types[c]) {
+                case Integer:
+                    ret.add(new IntWritable((int) v));
+                    break;
+                case Long:
+                    ret.add(new LongWritable((long) v));
+                    break;
+                case Float:
+                    ret.add(new FloatWritable((float) v));
+                    break;
+                default:
+                    ret.add(new DoubleWritable(v));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * This method positions buffer at the start of next non-empty line, opening next location if required
+     *
+     * @return false if there are no more records
+     */
+    protected boolean advanceToRecord() throws IOException {
+        while (true) {
+            if (channel == null && !openNext())
+                return false;
+
+            // skip empty lines
+            while (true) {
+                if (position >= limit && !fill())
+                    break;
+
+                byte b = buffer[position];
+                if (b == '\n' || b == '\r') {
+                    position++;
+                    if (b == '\n')
+                        lineIndex++;
+                } else {
+                    break;
+                }
+            }
+
+            if (position < limit && bufferOffset + position < rangeEnd)
+                return true;
+
+            closeChannel();
+        }
+    }
+
+    private boolean openNext() throws IOException {
+        while (splitIndex < locations.length - 1) {
+            splitIndex++;
+            URI location = locations[splitIndex];
+
+            if ("file".equals(location.getScheme())) {
+                FileChannel fc = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+                fc.position(Math.max(0, rangeStart - 1));
+                channel = fc;
+            } else {
+                InputStream is = location.toURL().openStream();
+                long toSkip = Math.max(0, rangeStart - 1);
+                while (toSkip > 0) {
+                    long skipped = is.skip(toSkip);
+                    if (skipped <= 0)
+                        break;
+                    toSkip -= skipped;
+                }
+                channel = Channels.newChannel(is);
+            }
+
+            bufferOffset = Math.max(0, rangeStart - 1);
+            position = 0;
+            limit = 0;
+            endOfStream = false;
+            lineIndex = 0;
+
+            // line that started before our range belongs to previous range
+            if (rangeStart > 0)
+                skipLine();
+            else
+                for (int i = 0; i < skipNumLines; i++)
+                    skipLine();
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private void skipLine() throws IOException {
+        while (true) {
+            if (position >= limit && !fill())
+                return;
+
+            if (buffer[position++] == '\n') {
+                lineIndex++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method moves unconsumed bytes to the start of buffer and reads more data
+     *
+     * @return true if at least one more byte is available
+     */
+    private boolean fill() throws IOException {
+        if (endOfStream)
+            return position < limit;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            bufferOffset += position;
+            limit -= position;
+            position = 0;
+        }
+
+        // single line doesn't fit into buffer
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+        if (read < 0) {
+            endOfStream = true;
+            return position < limit;
+        }
+
+        limit += read;
+        return true;
+    }
+
+    /**
+     * This method makes sure whole current line is in buffer, and returns position of its terminator (or limit)
+     */
+    private int lineEnd() throws IOException {
+        // number of bytes after position already checked for terminator, it survives buffer compaction
+        int scanned = 0;
+        while (true) {
+            for (int p = position + scanned; p < limit; p++) {
+                if (buffer[p] == '\n')
+                    return p;
+            }
+
+            scanned = limit - position;
+            if (endOfStream || !fill() || limit - position == scanned)
+                return limit;
+        }
+    }
+
+    /**
+     * This method parses current line into given columns at given row
+     */
+    protected void readRow(double[][] columns, int r) {
+        try {
+            int end = lineEnd();
+            int lineEnd = end;
+            if (lineEnd > position && buffer[lineEnd - 1] == '\r')
+                lineEnd--;
+
+            int p = position;
+            for (int c = 0; c < columns.length; c++) {
+                if (p > lineEnd)
+                    throw new IllegalStateException("Expected " + columns.length + " columns, got " + c + " at "
+                                    + describeLine());
+
+                // find field boundaries
+                int start = p;
+                boolean quoted = false;
+                while (start < lineEnd && (buffer[start] == ' ' || buffer[start] == '\t') && buffer[start] != delimiter)
+                    start++;
+                if (start < lineEnd && buffer[start] == quote) {
+                    quoted = true;
+                    start++;
+                }
+
+                int stop = start;
+                if (quoted) {
+                    while (stop < lineEnd && buffer[stop] != quote)
+                        stop++;
+                    p = stop + 1;
+                    while (p < lineEnd && buffer[p] != delimiter)
+                        p++;
+                } else {
+                    while (stop < lineEnd && buffer[stop] != delimiter)
+                        stop++;
+                    p = stop;
+                }
+
+                int fe = stop;
+                while (fe > start && (buffer[fe - 1] == ' ' || buffer[fe - 1] == '\t'))
+                    fe--;
+
+                fieldStart = start;
+                fieldEnd = fe;
+                columns[c][r] = parseDouble(start, fe);
+
+                // skip delimiter
+                p++;
+            }
+
+            if (p <= lineEnd)
+                throw new IllegalStateException("Expected " + columns.length + " columns, got more at " + describeLine());
+
+            position = end < limit ? end + 1 : end;
+            lineIndex++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String describeLine() {
+        URI uri = locations[splitIndex];
+        return (uri == null ? "" : uri + " ") + "line " + lineIndex + (rangeStart > 0 ? " of byte range" : "");
+    }
+
+    /**
+     * Fast path for plain decimal numbers, with fallback to Double.parseDouble for everything else
+     */
+    private double parseDouble(int start, int end) {
+        int p = start;
+        if (p == end)
+            throw new NumberFormatException("Empty value at " + describeLine());
+
+        boolean negative = false;
+        if (buffer[p] == '-' || buffer[p] == '+') {
+            negative = buffer[p] == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        boolean any = false;
+
+        while (p < end && buffer[p] >= '0' && buffer[p] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buffer[p] - '0');
+                if (mantissa > 0)
+                    digits++;
+            } else {
+                exponent++;
+                truncated = true;
+            }
+            any = true;
+            p++;
+        }
+
+        if (p < end && buffer[p] == '.') {
+            p++;
+            while (p < end && buffer[p] >= '0' && buffer[p] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buffer[p] - '0');
+                    if (mantissa > 0)
+                        digits++;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                any = true;
+                p++;
+            }
+        }
+
+        if (any && p < end && (buffer[p] == 'e' || buffer[p] == 'E')) {
+            p++;
+            boolean negativeExp = false;
+            if (p < end && (buffer[p] == '-' || buffer[p] == '+')) {
+                negativeExp = buffer[p] == '-';
+                p++;
+            }
+
+            int e = 0;
+            boolean expDigits = false;
+            while (p < end && buffer[p] >= '0' && buffer[p] <= '9') {
+                if (e < 10000)
+                    e = e * 10 + (buffer[p] - '0');
+                expDigits = true;
+                p++;
+            }
+
+            if (!expDigits)
+                return parseSlow(start, end);
+
+            exponent += negativeExp ? -e : e;
+        }
+
+        if (!any || p != end || truncated)
+            return parseSlow(start, end);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // both mantissa and power of ten are exact, so result is correctly rounded
+            value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseSlow(start, end);
+        }
+
+        return negative ? -value : value;
+    }
+
+    private double parseSlow(int start, int end) {
+        String s = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Unable to parse value \"" + s + "\" at " + describeLine());
+        }
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        Preconditions.checkState(buffer != null, "Record reader has not been initialized");
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        splitIndex = -1;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        NumericCSVRecordReader reader = new NumericCSVRecordReader(new Builder(schema).skipNumLines(skipNumLines)
+                        .delimiter((char) delimiter).quote((char) quote));
+        reader.buffer = new byte[bufferSize];
+        reader.row = new double[types.length][1];
+        reader.locations = new URI[] {uri};
+        reader.splitIndex = 0;
+        reader.channel = Channels.newChannel(dataInputStream);
+        for (int i = 0; i < skipNumLines; i++)
+            reader.skipLine();
+
+        return reader.next();
+    }
+
+    @Override
+    public Record nextRecord() {
+        List<Writable> next = next();
+        // -1 as line number has been incremented already
+        RecordMetaData meta = new RecordMetaDataLine(lineIndex - 1, locations[splitIndex], NumericCSVRecordReader.class);
+        return new org.datavec.api.records.impl.Record(next, meta);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        Preconditions.checkState(rangeStart == 0, "Loading from metadata is not supported for byte ranges");
+
+        List<Record> out = new ArrayList<>(recordMetaDatas.size());
+        for (RecordMetaData meta : recordMetaDatas) {
+            if (!(meta instanceof RecordMetaDataLine))
+                throw new IllegalArgumentException("Invalid metadata; expected RecordMetaDataLine instance; got: " + meta);
+
+            RecordMetaDataLine line = (RecordMetaDataLine) meta;
+            NumericCSVRecordReader reader = new NumericCSVRecordReader(new Builder(schema).delimiter((char) delimiter)
+                            .quote((char) quote).bufferSize(bufferSize));
+            reader.buffer = new byte[bufferSize];
+            reader.row = new double[types.length][1];
+            reader.locations = new URI[] {line.getURI()};
+            reader.openNext();
+            try {
+                for (int i = 0; i < line.getLineNumber(); i++)
+                    reader.skipLine();
+
+                out.add(new org.datavec.api.records.impl.Record(reader.next(), meta));
+            } finally {
+                reader.close();
+            }
+        }
+
+        return out;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        position = 0;
+        limit = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    public static class Builder {
+        private final Schema schema;
+        private int skipNumLines = 0;
+        private char delimiter = CSVRecordReader.DEFAULT_DELIMITER;
+        private char quote = CSVRecordReader.DEFAULT_QUOTE;
+        private int bufferSize = 4 * 1024 * 1024;
+        private long rangeStart = 0;
+        private long rangeEnd = Long.MAX_VALUE;
+
+        public Builder(@NonNull Schema schema) {
+            this.schema = schema;
+        }
+
+        /**
+         * Number of lines to skip at the start of each file. Not applied to byte ranges starting past 0.
+         */
+        public Builder skipNumLines(int skipNumLines) {
+            this.skipNumLines = skipNumLines;
+            return this;
+        }
+
+        public Builder delimiter(char delimiter) {
+            Preconditions.checkArgument(delimiter < 128, "Only ASCII delimiters are supported");
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        public Builder quote(char quote) {
+            Preconditions.checkArgument(quote < 128, "Only ASCII quotes are supported");
+            this.quote = quote;
+            return this;
+        }
+
+        /**
+         * Size of read buffer, in bytes. Buffer grows if single line doesn't fit into it.
+         */
+        public Builder bufferSize(int bufferSize) {
+            Preconditions.checkArgument(bufferSize > 0, "Buffer size should be positive");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * This method restricts reader to the lines starting within [start, end) bytes of the single input file.
+         * Ranges covering the file without gaps, i.e. produced by {@link #byteRanges(long, int)}, give every line
+         * to exactly one reader.
+         *
+         * @param start first byte, inclusive
+         * @param end last byte, exclusive
+         */
+        public Builder byteRange(long start, long end) {
+            Preconditions.checkArgument(start >= 0 && end >= start, "Invalid byte range: [%s, %s)", start, end);
+            this.rangeStart = start;
+            this.rangeEnd = end;
+            return this;
+        }
+
+        public NumericCSVRecordReader build() {
+            return new NumericCSVRecordReader(this);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NumericCSVRecordReaderTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private static Schema schema() {
+        return new Schema.Builder().addColumnInteger("id").addColumnDouble("x").addColumnFloat("y")
+                        .addColumnLong("z").build();
+    }
+
+    private File writeFile(int numLines, String lineSeparator) throws Exception {
+        Random r = new Random(12345);
+        StringBuilder sb = new StringBuilder("id,x,y,z").append(lineSeparator);
+        for (int i = 0; i < numLines; i++) {
+            double x = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(10) - 5);
+            sb.append(i).append(',');
+            switch (i % 4) {
+                case 0:
+                    sb.append(x);
+                    break;
+                case 1:
+                    sb.append(String.format("%.6e", x));
+                    break;
+                case 2:
+                    sb.append(" \"").append(x).append("\" ");
+                    break;
+                default:
+                    sb.append(String.format("%.3f", x));
+            }
+            sb.append(',').append((float) x).append(',').append(-i * 1000L).append(lineSeparator);
+            if (i % 17 == 0)
+                sb.append(lineSeparator);
+        }
+
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static List<List<Writable>> readAll(NumericCSVRecordReader rr, File f) throws Exception {
+        rr.initialize(new FileSplit(f));
+        List<List<Writable>> out = new ArrayList<>();
+        while (rr.hasNext())
+            out.add(rr.next());
+        rr.close();
+        return out;
+    }
+
+    @Test
+    public void testMatchesCSVRecordReader() throws Exception {
+        for (String separator : Arrays.asList("\n", "\r\n")) {
+            File f = writeFile(1000, separator);
+
+            CSVRecordReader csv = new CSVRecordReader(1, ',');
+            csv.initialize(new FileSplit(f));
+            List<List<Writable>> expected = new ArrayList<>();
+            while (csv.hasNext()) {
+                List<Writable> next = csv.next();
+                if (next.size() > 1)
+                    expected.add(next);
+            }
+
+            // small buffer, to exercise refills
+            List<List<Writable>> actual = readAll(new NumericCSVRecordReader.Builder(schema()).skipNumLines(1)
+                            .bufferSize(16).build(), f);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                List<Writable> e = expected.get(i);
+                List<Writable> a = actual.get(i);
+                assertEquals(4, a.size());
+                assertTrue(a.get(0) instanceof IntWritable);
+                assertTrue(a.get(1) instanceof DoubleWritable);
+                assertEquals(e.get(0).toInt(), a.get(0).toInt());
+                assertEquals(Double.parseDouble(e.get(1).toString().replace("\"", "").trim()), a.get(1).toDouble(),
+                                0.0);
+                assertEquals(e.get(2).toFloat(), a.get(2).toFloat(), 0.0f);
+                assertEquals(e.get(3).toLong(), a.get(3).toLong());
+            }
+        }
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        File f = writeFile(250, "\n");
+        List<List<Writable>> records = readAll(new NumericCSVRecordReader(schema(), 1, ','), f);
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(schema(), 1, ',');
+        assertTrue(rr.batchesSupported());
+        rr.initialize(new FileSplit(f));
+
+        int count = 0;
+        while (rr.hasNext()) {
+            List<List<Writable>> batch = rr.next(32);
+            assertTrue(batch instanceof NDArrayRecordBatch);
+
+            List<INDArray> arrays = ((NDArrayRecordBatch) batch).getArrays();
+            assertEquals(4, arrays.size());
+            assertEquals(batch.size(), arrays.get(0).size(0));
+            assertEquals(1, arrays.get(0).size(1));
+
+            for (int i = 0; i < batch.size(); i++) {
+                List<Writable> expected = records.get(count + i);
+                for (int c = 0; c < 4; c++)
+                    assertEquals(expected.get(c).toDouble(), arrays.get(c).getDouble(i, 0), 1e-5 * Math.max(1.0, Math.abs(expected.get(c).toDouble())));
+            }
+            count += batch.size();
+        }
+
+        assertEquals(250, count);
+
+        rr.reset();
+        assertEquals(32, rr.next(32).size());
+    }
+
+    @Test
+    public void testByteRanges() throws Exception {
+        File f = writeFile(997, "\n");
+        List<List<Writable>> all = readAll(new NumericCSVRecordReader(schema(), 1, ','), f);
+
+        for (int splits : new int[] {1, 2, 3, 7, 50}) {
+            List<List<Writable>> union = new ArrayList<>();
+            for (long[] range : NumericCSVRecordReader.byteRanges(f.length(), splits)) {
+                union.addAll(readAll(new NumericCSVRecordReader.Builder(schema()).skipNumLines(1).bufferSize(64)
+                                .byteRange(range[0], range[1]).build(), f));
+            }
+
+            assertEquals(all, union);
+        }
+    }
+
+    @Test
+    public void testMetaData() throws Exception {
+        File f = writeFile(100, "\n");
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(schema(), 1, ',');
+        rr.initialize(new FileSplit(f));
+
+        List<Record> records = new ArrayList<>();
+        List<RecordMetaData> meta = new ArrayList<>();
+        while (rr.hasNext()) {
+            Record r = rr.nextRecord();
+            records.add(r);
+            meta.add(r.getMetaData());
+        }
+
+        List<Record> loaded = rr.loadFromMetaData(meta);
+        assertEquals(records.size(), loaded.size());
+        for (int i = 0; i < records.size(); i++)
+            assertEquals(records.get(i).getRecord(), loaded.get(i).getRecord());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonNumericSchema() {
+        new NumericCSVRecordReader(new Schema.Builder().addColumnString("s").build());
+    }
+
+    @Test
+    public void testInvalidLines() throws Exception {
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, "1,2.0,3.0,4\n1,2.0,3.0\n", StandardCharsets.UTF_8);
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(schema());
+        rr.initialize(new FileSplit(f));
+        rr.next();
+        try {
+            rr.next();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 1"));
+        }
+
+        FileUtils.writeStringToFile(f, "1,abc,3.0,4\n", StandardCharsets.UTF_8);
+        rr.initialize(new FileSplit(f));
+        try {
+            rr.next();
+            fail("Expected exception");
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("abc"));
+        }
+    }
+}
@@ -292,6 +292,24 @@ public class ArrowConverter {
             }
 
         }
+        else if(isWholeBatch((ArrowWritableRecordBatch) recordBatch)) {
+            //columns are written as is, without converting them to writables and back
+            val convertedSchema = toArrowSchema(inputSchema);
+            List<FieldVector> columns = ((ArrowWritableRecordBatch) recordBatch).getList();
+            try {
+                VectorSchemaRoot root = new VectorSchemaRoot(convertedSchema,columns,recordBatch.size());
+
+                ArrowFileWriter writer = new ArrowFileWriter(root, providerForVectors(columns,convertedSchema.getFields()),
+                        newChannel(outputStream));
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+
+
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
         else {
             val convertedSchema = toArrowSchema(inputSchema);
             val pair = toArrowColumns(bufferAllocator,inputSchema,recordBatch);
@@ -312,6 +330,23 @@ public class ArrowConverter {
 
     }
 
+    /**
+     * Returns true if the batch spans all values of its vectors,
+     * so the vectors can be written out directly
+     * @param recordBatch the batch to check
+     * @return true if the batch covers whole vectors
+     */
+    private static boolean isWholeBatch(ArrowWritableRecordBatch recordBatch) {
+        if(recordBatch.getOffset() != 0 || recordBatch.getList().isEmpty())
+            return false;
+        for(FieldVector fieldVector : recordBatch.getList()) {
+            if(fieldVector.getValueCount() != recordBatch.size())
+                return false;
+        }
+
+        return true;
+    }
+
 
     /**
      * Convert the input field vectors (the input data) and
@@ -395,7 +430,17 @@ public class ArrowConverter {
      * @return the associated datavec schema and record
      */
     public static Pair<Schema,ArrowWritableRecordBatch> readFromBytes(byte[] input) throws IOException {
-        BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        return readFromBytes(new RootAllocator(Long.MAX_VALUE),input);
+    }
+
+    /**
+     * Read a datavec schema and record set
+     * from the given bytes (usually expected to be an arrow format file)
+     * @param allocator the allocator to use for the loaded vectors
+     * @param input the input to read
+     * @return the associated datavec schema and record
+     */
+    public static Pair<Schema,ArrowWritableRecordBatch> readFromBytes(BufferAllocator allocator,byte[] input) throws IOException {
         Schema retSchema = null;
         ArrowWritableRecordBatch ret = null;
         SeekableReadChannel channel = new SeekableReadChannel(new ByteArrayReadableSeekableByteChannel(input));
@@ -710,7 +755,14 @@ public class ArrowConverter {
     }
 
 
-    private static List<FieldVector> createFieldVectors(BufferAllocator bufferAllocator,Schema schema, int numRows) {
+    /**
+     * Create empty field vectors for the given schema
+     * @param bufferAllocator the buffer allocator to use
+     * @param schema the schema to create the vectors for
+     * @param numRows the number of rows to allocate
+     * @return the created vectors, one per column
+     */
+    public static List<FieldVector> createFieldVectors(BufferAllocator bufferAllocator,Schema schema, int numRows) {
         List<FieldVector> ret = new ArrayList<>(schema.numColumns());
 
         for(int i = 0; i < schema.numColumns(); i++) {
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.util.TransferPair;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.column.RemoveAllColumnsExceptForTransform;
+import org.datavec.api.transform.transform.column.RemoveColumnsTransform;
+import org.datavec.api.transform.transform.column.RenameColumnsTransform;
+import org.datavec.api.transform.transform.column.ReorderColumnsTransform;
+import org.datavec.api.writable.NullWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+
+import java.util.*;
+
+/**
+ * Executes a {@link TransformProcess} over a batch of Arrow columns, one column at a time.<br>
+ * Unlike {@link LocalTransformExecutor}, the batch is never materialized as {@code List<List<Writable>>}:
+ * <ul>
+ *     <li>Removing, reordering and renaming columns only changes the schema - column vectors are reused as is</li>
+ *     <li>Single column transforms ({@link BaseColumnTransform}) rewrite only the column they're applied to</li>
+ *     <li>Filters are evaluated on row views of the batch, and then retained rows are copied column by column</li>
+ * </ul>
+ * Other steps (sequences, reductions, joins, multi-column transforms etc) aren't supported: use
+ * {@link #canExecute(TransformProcess)} to check the process, and {@link LocalTransformExecutor} otherwise.<br>
+ * Note that the output batch may share column vectors with the input batch.
+ */
+public class ArrowTransformExecutor {
+
+    private ArrowTransformExecutor() {}
+
+    /**
+     * Check if the given TransformProcess can be executed column-wise
+     *
+     * @param transformProcess the process to check
+     * @return true if all steps of the process are supported
+     */
+    public static boolean canExecute(@NonNull TransformProcess transformProcess) {
+        // in try/catch mode failing records are dropped one by one, which is row-wise by definition
+        if (LocalTransformExecutor.isTryCatch())
+            return false;
+
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema
+                || transformProcess.getFinalSchema() instanceof SequenceSchema)
+            return false;
+
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() != null) {
+                if (!isSupported(d.getTransform()))
+                    return false;
+            } else if (d.getFilter() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean isSupported(Transform transform) {
+        return transform instanceof BaseColumnTransform || transform instanceof RemoveColumnsTransform
+                || transform instanceof RemoveAllColumnsExceptForTransform
+                || transform instanceof ReorderColumnsTransform || transform instanceof RenameColumnsTransform;
+    }
+
+    /**
+     * Execute the specified TransformProcess over the given batch
+     *
+     * @param allocator        allocator to use for the new column vectors
+     * @param input            batch to process. Columns are interpreted according to the initial schema of the process
+     * @param transformProcess TransformProcess to execute, see {@link #canExecute(TransformProcess)}
+     * @return processed batch, with the final schema of the process
+     */
+    public static ArrowWritableRecordBatch execute(@NonNull BufferAllocator allocator,
+                                                   @NonNull ArrowWritableRecordBatch input,
+                                                   @NonNull TransformProcess transformProcess) {
+        if (!canExecute(transformProcess))
+            throw new IllegalArgumentException("TransformProcess contains steps that can't be executed column-wise, "
+                    + "use LocalTransformExecutor instead");
+
+        Schema schema = transformProcess.getInitialSchema();
+        if (input.getList().size() != schema.numColumns())
+            throw new IllegalArgumentException("Number of columns in the batch (" + input.getList().size()
+                    + ") doesn't match the number of columns in the initial schema (" + schema.numColumns() + ")");
+
+        int rows = input.size();
+        List<FieldVector> columns = input.getList();
+
+        // columns created by this executor, so intermediate ones can be released
+        Set<FieldVector> created = Collections.newSetFromMap(new IdentityHashMap<FieldVector, Boolean>());
+
+        boolean whole = input.getOffset() == 0;
+        for (FieldVector column : columns)
+            whole &= column.getValueCount() == rows;
+
+        if (!whole) {
+            int[] rowIndices = new int[rows];
+            for (int i = 0; i < rows; i++)
+                rowIndices[i] = input.getOffset() + i;
+            columns = select(allocator, columns, rowIndices, rows, created);
+        }
+
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getFilter() != null) {
+                Filter filter = d.getFilter();
+                ArrowWritableRecordBatch view = new ArrowWritableRecordBatch(columns, schema, 0, rows);
+                int[] retained = new int[rows];
+                int numRetained = 0;
+                for (int i = 0; i < rows; i++) {
+                    if (!filter.removeExample(view.get(i)))
+                        retained[numRetained++] = i;
+                }
+
+                if (numRetained < rows) {
+                    columns = select(allocator, columns, retained, numRetained, created);
+                    rows = numRetained;
+                }
+            } else {
+                Transform t = d.getTransform();
+                Schema outputSchema = t.transform(schema);
+                if (t instanceof BaseColumnTransform) {
+                    columns = new ArrayList<>(columns);
+                    int idx = schema.getIndexOfColumn(((BaseColumnTransform) t).getColumnName());
+                    FieldVector mapped = map(allocator, (BaseColumnTransform) t, columns.get(idx), schema.getType(idx),
+                            outputSchema, idx, rows);
+                    created.add(mapped);
+                    columns.set(idx, mapped);
+                } else if (!(t instanceof RenameColumnsTransform)) {
+                    // column names are taken from the schema, so renaming doesn't touch the vectors at all
+                    List<FieldVector> selected = new ArrayList<>(outputSchema.numColumns());
+                    for (String name : outputSchema.getColumnNames())
+                        selected.add(columns.get(schema.getIndexOfColumn(name)));
+                    columns = selected;
+                }
+                schema = outputSchema;
+            }
+        }
+
+        Set<FieldVector> retained = Collections.newSetFromMap(new IdentityHashMap<FieldVector, Boolean>());
+        retained.addAll(columns);
+        for (FieldVector column : created) {
+            if (!retained.contains(column))
+                column.close();
+        }
+
+        return new ArrowWritableRecordBatch(columns, schema, 0, rows);
+    }
+
+    /**
+     * Apply single column transform to all values of the column
+     */
+    protected static FieldVector map(BufferAllocator allocator, BaseColumnTransform transform, FieldVector column,
+                                     ColumnType inputType, Schema outputSchema, int idx, int rows) {
+        Schema columnSchema = new Schema(Collections.singletonList(outputSchema.getMetaData(idx)));
+        FieldVector result = ArrowConverter.createFieldVectors(allocator, columnSchema, rows).get(0);
+        ColumnType outputType = outputSchema.getType(idx);
+        for (int i = 0; i < rows; i++) {
+            Writable w;
+            try {
+                w = column.isNull(i) ? NullWritable.INSTANCE : ArrowConverter.fromEntry(i, column, inputType);
+            } catch (Exception e) {
+                // same as row view of the batch: unreadable values are treated as missing
+                w = NullWritable.INSTANCE;
+            }
+            ArrowConverter.setValue(outputType, result, transform.map(w), i);
+        }
+        result.setValueCount(rows);
+        return result;
+    }
+
+    /**
+     * Copy the rows with the given indices into new columns
+     */
+    protected static List<FieldVector> select(BufferAllocator allocator, List<FieldVector> columns, int[] rowIndices,
+                                              int numRows, Set<FieldVector> created) {
+        List<FieldVector> result = new ArrayList<>(columns.size());
+        for (FieldVector column : columns) {
+            TransferPair pair = column.getTransferPair(allocator);
+            FieldVector target = (FieldVector) pair.getTo();
+            target.setInitialCapacity(Math.max(numRows, 1));
+            target.allocateNew();
+            for (int i = 0; i < numRows; i++)
+                pair.copyValueSafe(rowIndices[i], i);
+            target.setValueCount(numRows);
+
+            created.add(target);
+            result.add(target);
+        }
+        return result;
+    }
+}
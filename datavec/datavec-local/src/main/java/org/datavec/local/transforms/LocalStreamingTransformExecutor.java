@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.SequenceRecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.records.writer.SequenceRecordWriter;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
+import org.datavec.local.transforms.streaming.SpillingGrouper;
+import org.datavec.local.transforms.streaming.StreamingPipeline;
+import org.datavec.local.transforms.streaming.StreamingPlan;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming counterpart of {@link LocalTransformExecutor}.
+ *
+ * Instead of materializing all data in memory, records are pulled from {@link RecordReader}, pushed through
+ * {@link TransformProcess} by bounded multi-threaded pipeline, and written to {@link RecordWriter} (or exposed as
+ * iterator) as soon as they are available. Stateless actions are fused into single pass and executed in parallel,
+ * while reductions, conversions to sequence and sorted ranks are spilled to disk once they exceed configured
+ * number of records in memory.
+ *
+ * Output order matches {@link LocalTransformExecutor} for stateless transform processes. Order of groups produced by
+ * blocking actions is not defined, same as for {@link LocalTransformExecutor}.
+ *
+ * PLEASE NOTE: Unlike {@link LocalTransformExecutor}, input records with wrong number of columns are skipped
+ * with a warning instead of failing whole execution.
+ */
+@Slf4j
+public class LocalStreamingTransformExecutor {
+    private static final Object END = new Object();
+
+    @Getter
+    private final int workers;
+    @Getter
+    private final int batchSize;
+    @Getter
+    private final int queueCapacity;
+    @Getter
+    private final long maxRecordsInMemory;
+    @Getter
+    private final int spillPartitions;
+    @Getter
+    private final File spillDirectory;
+
+    protected LocalStreamingTransformExecutor(Builder builder) {
+        this.workers = builder.workers;
+        this.batchSize = builder.batchSize;
+        this.queueCapacity = builder.queueCapacity;
+        this.maxRecordsInMemory = builder.maxRecordsInMemory;
+        this.spillPartitions = builder.spillPartitions;
+        this.spillDirectory = builder.spillDirectory;
+    }
+
+    /**
+     * Execute the specified TransformProcess over all records of given reader, writing results to given writer.<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @return number of records written
+     */
+    public long execute(@NonNull RecordReader input, @NonNull TransformProcess transformProcess,
+                    @NonNull final RecordWriter output) throws IOException {
+        return execute(records(input, transformProcess), false, false, transformProcess,
+                        e -> output.write(StreamingPlan.record(e)));
+    }
+
+    /**
+     * Execute the specified TransformProcess over all records of given reader, writing resulting sequences to given writer.<br>
+     * Note: this method can only be used if the TransformProcess returns sequence data.
+     *
+     * @return number of sequences written
+     */
+    public long executeToSequence(@NonNull RecordReader input, @NonNull TransformProcess transformProcess,
+                    @NonNull final SequenceRecordWriter output) throws IOException {
+        return execute(records(input, transformProcess), false, true, transformProcess,
+                        e -> output.write(StreamingPlan.sequence(e)));
+    }
+
+    /**
+     * Execute the specified TransformProcess over all sequences of given reader, writing results to given writer.<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     *
+     * @return number of records written
+     */
+    public long executeSequenceToSeparate(@NonNull SequenceRecordReader input,
+                    @NonNull TransformProcess transformProcess, @NonNull final RecordWriter output) throws IOException {
+        return execute(sequences(input, transformProcess), true, false, transformProcess,
+                        e -> output.write(StreamingPlan.record(e)));
+    }
+
+    /**
+     * Execute the specified TransformProcess over all sequences of given reader, writing results to given writer.<br>
+     * Note: this method can only be used if the TransformProcess returns sequence data.
+     *
+     * @return number of sequences written
+     */
+    public long executeSequenceToSequence(@NonNull SequenceRecordReader input,
+                    @NonNull TransformProcess transformProcess, @NonNull final SequenceRecordWriter output)
+                    throws IOException {
+        return execute(sequences(input, transformProcess), true, true, transformProcess,
+                        e -> output.write(StreamingPlan.sequence(e)));
+    }
+
+    /**
+     * Execute the specified TransformProcess over all records of given reader in background thread, and return
+     * results as iterator. At most {@code queueCapacity * batchSize} records are buffered ahead of consumer.<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data.
+     */
+    public Iterator<List<Writable>> executeToIterator(@NonNull final RecordReader input,
+                    @NonNull final TransformProcess transformProcess) {
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity * batchSize));
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute(records(input, transformProcess), false, false, transformProcess, e -> {
+                        try {
+                            queue.put(e);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new RuntimeException(ex);
+                        }
+                    });
+                } catch (Throwable t) {
+                    error.set(t);
+                } finally {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "LocalStreamingTransformExecutor-producer");
+        thread.setDaemon(true);
+        thread.start();
+
+        return new Iterator<List<Writable>>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                if (next == END) {
+                    if (error.get() != null)
+                        throw new RuntimeException("Streaming execution failed", error.get());
+                    return false;
+                }
+
+                return true;
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                Object result = next;
+                next = null;
+                return StreamingPlan.record(result);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Execute a join on the specified data. Both inputs are grouped by join key with spilling to disk,
+     * so none of them has to fit in memory.
+     *
+     * @param join   Join to execute
+     * @param left   Left data for join
+     * @param right  Right data for join
+     * @param output Writer for joined data
+     * @return number of records written
+     */
+    public long executeJoin(@NonNull Join join, @NonNull RecordReader left, @NonNull RecordReader right,
+                    @NonNull RecordWriter output) throws IOException {
+        final int[] leftKeys = join.getLeftSchema().getIndexOfColumns(join.getJoinColumnsLeft());
+        final int[] rightKeys = join.getRightSchema().getIndexOfColumns(join.getJoinColumnsRight());
+
+        // records are tagged with side of the join as last column, so they can be spilled and grouped together
+        SpillingGrouper<List<Writable>> grouper = new SpillingGrouper<>(r -> {
+            int[] keys = r.get(r.size() - 1).toInt() == 0 ? leftKeys : rightKeys;
+            List<Writable> key = new ArrayList<>(keys.length);
+            for (int k : keys)
+                key.add(r.get(k));
+            return key;
+        }, maxRecordsInMemory, spillPartitions, spillDirectory);
+
+        try {
+            addTagged(grouper, left, 0);
+            addTagged(grouper, right, 1);
+
+            ExecuteJoinFromCoGroupFlatMapFunction joinFunction = new ExecuteJoinFromCoGroupFlatMapFunction(join);
+            long count = 0;
+            Iterator<List<List<Writable>>> groups = grouper.groups();
+            while (groups.hasNext()) {
+                List<List<Writable>> leftList = new ArrayList<>();
+                List<List<Writable>> rightList = new ArrayList<>();
+                for (List<Writable> r : groups.next()) {
+                    List<Writable> untagged = r.subList(0, r.size() - 1);
+                    if (r.get(r.size() - 1).toInt() == 0)
+                        leftList.add(untagged);
+                    else
+                        rightList.add(untagged);
+                }
+
+                for (List<Writable> joined : joinFunction.call(Pair.of((List<Writable>) null, Pair.of(leftList, rightList)))) {
+                    output.write(joined);
+                    count++;
+                }
+            }
+
+            return count;
+        } finally {
+            grouper.close();
+        }
+    }
+
+    protected void addTagged(SpillingGrouper<List<Writable>> grouper, RecordReader reader, int side) throws IOException {
+        IntWritable tag = new IntWritable(side);
+        while (reader.hasNext()) {
+            List<Writable> tagged = new ArrayList<>(reader.next());
+            tagged.add(tag);
+            grouper.add(tagged);
+        }
+    }
+
+    protected long execute(Iterator<Object> source, boolean sequenceInput, boolean sequenceOutput,
+                    TransformProcess transformProcess, StreamingPipeline.Sink sink) throws IOException {
+        StreamingPlan plan = new StreamingPlan(transformProcess, sequenceInput, maxRecordsInMemory, spillPartitions,
+                        spillDirectory);
+        try {
+            if (plan.isSequenceOutput() != sequenceOutput)
+                throw new IllegalStateException(sequenceOutput
+                                ? "Cannot return sequence data with this method: TransformProcess returns non-sequence data"
+                                : "Cannot return non-sequence data with this method: TransformProcess returns sequence data");
+
+            return new StreamingPipeline(workers, batchSize, workers * queueCapacity).execute(plan, source, sink);
+        } finally {
+            plan.close();
+        }
+    }
+
+    protected Iterator<Object> records(final RecordReader reader, TransformProcess transformProcess) {
+        final int numColumns = transformProcess.getInitialSchema().numColumns();
+        return new SkippingIterator() {
+            @Override
+            protected Object fetch() {
+                while (reader.hasNext()) {
+                    List<Writable> record = reader.next();
+                    if (record.size() == numColumns)
+                        return record;
+
+                    skip("Input data number of columns (" + record.size()
+                                    + ") does not match the number of columns for the transform process ("
+                                    + numColumns + ")");
+                }
+                return null;
+            }
+        };
+    }
+
+    protected Iterator<Object> sequences(final SequenceRecordReader reader, TransformProcess transformProcess) {
+        final int numColumns = transformProcess.getInitialSchema().numColumns();
+        return new SkippingIterator() {
+            @Override
+            protected Object fetch() {
+                while (reader.hasNext()) {
+                    List<List<Writable>> sequence = reader.sequenceRecord();
+                    if (sequence.isEmpty() || sequence.get(0).size() == numColumns)
+                        return sequence;
+
+                    skip("Input sequence data number of columns (" + sequence.get(0).size()
+                                    + ") does not match the number of columns for the transform process ("
+                                    + numColumns + ")");
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Iterator over input elements, that counts and reports invalid elements instead of failing on them
+     */
+    private static abstract class SkippingIterator implements Iterator<Object> {
+        private final AtomicLong skipped = new AtomicLong(0);
+        private Object next;
+
+        protected abstract Object fetch();
+
+        protected void skip(String reason) {
+            if (skipped.getAndIncrement() == 0)
+                log.warn("Skipping invalid input: {}", reason);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = fetch();
+                if (next == null && skipped.get() > 0)
+                    log.warn("{} invalid input elements were skipped", skipped.get());
+            }
+            return next != null;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Object result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    public static class Builder {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int batchSize = 64;
+        private int queueCapacity = 4;
+        private long maxRecordsInMemory = 1000000;
+        private int spillPartitions = 16;
+        private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+        /**
+         * Number of threads applying stateless actions. Default value: number of available processors
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Number of elements processed by single worker task. Default value: 64
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Max number of batches in flight per worker. Default value: 4
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Max number of records held in memory by single reduction, conversion to sequence, sorted rank or join,
+         * before spilling them to disk. Default value: 1000000
+         */
+        public Builder maxRecordsInMemory(long maxRecordsInMemory) {
+            this.maxRecordsInMemory = maxRecordsInMemory;
+            return this;
+        }
+
+        /**
+         * Number of spill files used by single grouping action. Default value: 16
+         */
+        public Builder spillPartitions(int spillPartitions) {
+            this.spillPartitions = spillPartitions;
+            return this;
+        }
+
+        /**
+         * Directory for spill files. Default value: java.io.tmpdir
+         */
+        public Builder spillDirectory(@NonNull File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public LocalStreamingTransformExecutor build() {
+            if (workers < 1 || batchSize < 1 || queueCapacity < 1 || maxRecordsInMemory < 1 || spillPartitions < 1)
+                throw new IllegalArgumentException("All parameters of LocalStreamingTransformExecutor should be positive");
+
+            return new LocalStreamingTransformExecutor(this);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.writable.Writable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * RecordReader exposing output of {@link LocalStreamingTransformExecutor}, so transformed data can be fed
+ * directly into DataSetIterator without materializing it.
+ *
+ * Execution starts on first call to {@link #hasNext()}, and runs in background, ahead of consumer.
+ */
+public class StreamingTransformRecordReader extends BaseRecordReader {
+    private final RecordReader recordReader;
+    private final TransformProcess transformProcess;
+    private final LocalStreamingTransformExecutor executor;
+
+    private Iterator<List<Writable>> iterator;
+
+    public StreamingTransformRecordReader(@NonNull RecordReader recordReader, @NonNull TransformProcess transformProcess) {
+        this(recordReader, transformProcess, new LocalStreamingTransformExecutor.Builder().build());
+    }
+
+    public StreamingTransformRecordReader(@NonNull RecordReader recordReader, @NonNull TransformProcess transformProcess,
+                    @NonNull LocalStreamingTransformExecutor executor) {
+        this.recordReader = recordReader;
+        this.transformProcess = transformProcess;
+        this.executor = executor;
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        recordReader.initialize(split);
+        iterator = null;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        recordReader.initialize(conf, split);
+        iterator = null;
+    }
+
+    @Override
+    public List<Writable> next() {
+        hasNext();
+        List<Writable> record = iterator.next();
+        invokeListeners(record);
+        return record;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (iterator == null)
+            iterator = executor.executeToIterator(recordReader, transformProcess);
+
+        return iterator.hasNext();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return recordReader.getLabels();
+    }
+
+    @Override
+    public void reset() {
+        recordReader.reset();
+        iterator = null;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return recordReader.resetSupported();
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        throw new UnsupportedOperationException(
+                        "Generating records from DataInputStream not supported for StreamingTransformRecordReader");
+    }
+
+    @Override
+    public Record nextRecord() {
+        return new org.datavec.api.records.impl.Record(next(), null);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata not supported for StreamingTransformRecordReader");
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata not supported for StreamingTransformRecordReader");
+    }
+
+    @Override
+    public void close() throws IOException {
+        recordReader.close();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        recordReader.setConf(conf);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return recordReader.getConf();
+    }
+}
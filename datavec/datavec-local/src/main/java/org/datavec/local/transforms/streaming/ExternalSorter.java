@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.Writable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * External merge sort for records: records are buffered in memory up to given limit, and every full buffer is
+ * sorted and written to disk as separate run. Sorted output is produced by k-way merge of all runs.
+ * If limit was never reached, records are sorted in memory only.
+ *
+ * Sort is stable: records with equal keys are returned in order they were added.
+ */
+@Slf4j
+public class ExternalSorter implements Closeable {
+    private final Comparator<List<Writable>> comparator;
+    private final long maxRecordsInMemory;
+    private final File spillDirectory;
+
+    private List<List<Writable>> buffer = new ArrayList<>();
+    private final List<SpillFile> runs = new ArrayList<>();
+
+    public ExternalSorter(@NonNull Comparator<List<Writable>> comparator, long maxRecordsInMemory,
+                    @NonNull File spillDirectory) {
+        this.comparator = comparator;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void add(List<Writable> record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() >= maxRecordsInMemory)
+            spill();
+    }
+
+    protected void spill() throws IOException {
+        if (runs.isEmpty())
+            log.info("Spilling sorted runs to disk: more than {} records buffered", maxRecordsInMemory);
+
+        Collections.sort(buffer, comparator);
+        SpillFile run = new SpillFile(spillDirectory, "sort_" + runs.size() + "_");
+        for (List<Writable> record : buffer)
+            run.write(record);
+        run.finishWriting();
+
+        runs.add(run);
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * This method returns iterator over all added records, in sorted order. Should be called once all records were added.
+     */
+    public Iterator<List<Writable>> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, comparator);
+            Iterator<List<Writable>> iterator = buffer.iterator();
+            buffer = new ArrayList<>();
+            return iterator;
+        }
+
+        if (!buffer.isEmpty())
+            spill();
+
+        final PriorityQueue<RunHead> heads = new PriorityQueue<>(runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            Iterator<List<Writable>> iterator = runs.get(i).iterator();
+            if (iterator.hasNext())
+                heads.add(new RunHead(i, iterator.next(), iterator));
+        }
+
+        return new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (heads.isEmpty())
+                    throw new NoSuchElementException();
+
+                RunHead head = heads.poll();
+                List<Writable> result = head.record;
+                if (head.iterator.hasNext()) {
+                    head.record = head.iterator.next();
+                    heads.add(head);
+                }
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        buffer = new ArrayList<>();
+        for (SpillFile run : runs)
+            run.close();
+        runs.clear();
+    }
+
+    private class RunHead implements Comparable<RunHead> {
+        private final int run;
+        private final Iterator<List<Writable>> iterator;
+        private List<Writable> record;
+
+        private RunHead(int run, List<Writable> record, Iterator<List<Writable>> iterator) {
+            this.run = run;
+            this.record = record;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            int result = comparator.compare(record, other.record);
+            // earlier runs hold earlier records, so ties are resolved by run index to keep sort stable
+            return result != 0 ? result : Integer.compare(run, other.run);
+        }
+    }
+}
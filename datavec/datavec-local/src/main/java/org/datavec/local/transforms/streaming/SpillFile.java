@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Temporary file holding records that didn't fit into memory.
+ * Records are appended with {@link #write(List)}, and once writing is finished they can be read back
+ * sequentially via {@link #iterator()}. File is removed on {@link #close()}.
+ */
+public class SpillFile implements Closeable, Iterable<List<Writable>> {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @Getter private final File file;
+    @Getter private long numRecords;
+    private DataOutputStream output;
+
+    public SpillFile(@NonNull File directory, @NonNull String prefix) throws IOException {
+        this.file = File.createTempFile(prefix, ".spill", directory);
+        this.file.deleteOnExit();
+    }
+
+    /**
+     * This method appends single record to this file
+     */
+    public void write(List<Writable> record) throws IOException {
+        if (output == null)
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+
+        writeRecord(record, output);
+        numRecords++;
+    }
+
+    /**
+     * This method flushes and closes output, so no more records can be written until next write() call
+     */
+    public void finishWriting() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    /**
+     * This method returns iterator over all records written so far.
+     * PLEASE NOTE: {@link #finishWriting()} must be called before reading
+     */
+    @Override
+    public Iterator<List<Writable>> iterator() {
+        if (output != null)
+            throw new IllegalStateException("SpillFile is still open for writing");
+
+        final DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final long total = numRecords;
+        return new Iterator<List<Writable>>() {
+            private long position = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (position < total)
+                    return true;
+
+                closeQuietly(input);
+                return false;
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                try {
+                    position++;
+                    return readRecord(input);
+                } catch (IOException e) {
+                    closeQuietly(input);
+                    throw new RuntimeException("Failed to read spilled record from " + file, e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(output);
+        output = null;
+        file.delete();
+    }
+
+    public static void writeRecord(List<Writable> record, DataOutput output) throws IOException {
+        WritableFactory factory = WritableFactory.getInstance();
+        output.writeInt(record.size());
+        for (Writable w : record)
+            factory.writeWithType(w, output);
+    }
+
+    public static List<Writable> readRecord(DataInput input) throws IOException {
+        WritableFactory factory = WritableFactory.getInstance();
+        int size = input.readInt();
+        List<Writable> record = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            record.add(factory.readWithType(input));
+
+        return record;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+}
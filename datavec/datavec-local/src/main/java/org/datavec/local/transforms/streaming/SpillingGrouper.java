@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.Writable;
+import org.nd4j.linalg.function.Function;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This class groups records by key, keeping at most given number of records in memory.
+ *
+ * Once that limit is reached, buffered records are hash-partitioned by key into spill files. After all records
+ * were added, groups are produced partition by partition, so only single partition has to fit in memory at once.
+ * If limit was never reached, groups are produced straight from memory.
+ *
+ * @param <K> key type, must have consistent equals()/hashCode()
+ */
+@Slf4j
+public class SpillingGrouper<K> implements Closeable {
+    private final Function<List<Writable>, K> keyFunction;
+    private final long maxRecordsInMemory;
+    private final int numPartitions;
+    private final File spillDirectory;
+
+    private Map<K, List<List<Writable>>> groups = new LinkedHashMap<>();
+    private long bufferedRecords;
+    private SpillFile[] partitions;
+
+    /**
+     * @param keyFunction        function extracting key from record
+     * @param maxRecordsInMemory max number of records buffered in memory before spilling
+     * @param numPartitions      number of spill files to hash-partition records into
+     * @param spillDirectory     directory for spill files
+     */
+    public SpillingGrouper(@NonNull Function<List<Writable>, K> keyFunction, long maxRecordsInMemory,
+                    int numPartitions, @NonNull File spillDirectory) {
+        this.keyFunction = keyFunction;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+        this.numPartitions = numPartitions;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void add(List<Writable> record) throws IOException {
+        K key = keyFunction.apply(record);
+        List<List<Writable>> group = groups.get(key);
+        if (group == null) {
+            group = new ArrayList<>();
+            groups.put(key, group);
+        }
+        group.add(record);
+
+        if (++bufferedRecords >= maxRecordsInMemory)
+            spill();
+    }
+
+    /**
+     * @return true if any records were spilled to disk
+     */
+    public boolean isSpilled() {
+        return partitions != null;
+    }
+
+    protected void spill() throws IOException {
+        if (partitions == null) {
+            log.info("Spilling grouped records to disk: more than {} records buffered", maxRecordsInMemory);
+            partitions = new SpillFile[numPartitions];
+            for (int i = 0; i < numPartitions; i++)
+                partitions[i] = new SpillFile(spillDirectory, "group_" + i + "_");
+        }
+
+        for (Map.Entry<K, List<List<Writable>>> entry : groups.entrySet()) {
+            SpillFile partition = partitions[partitionOf(entry.getKey())];
+            for (List<Writable> record : entry.getValue())
+                partition.write(record);
+        }
+
+        groups = new LinkedHashMap<>();
+        bufferedRecords = 0;
+    }
+
+    protected int partitionOf(K key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    /**
+     * This method returns iterator over all groups. Should be called once all records were added.
+     * Groups within single partition are returned in order of first appearance of key.
+     */
+    public Iterator<List<List<Writable>>> groups() throws IOException {
+        if (partitions == null) {
+            Iterator<List<List<Writable>>> iterator = groups.values().iterator();
+            groups = new LinkedHashMap<>();
+            return iterator;
+        }
+
+        spill();
+        for (SpillFile partition : partitions)
+            partition.finishWriting();
+
+        return new Iterator<List<List<Writable>>>() {
+            private int partition = 0;
+            private Iterator<List<List<Writable>>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && partition < partitions.length) {
+                    SpillFile file = partitions[partition++];
+                    Map<K, List<List<Writable>>> loaded = new LinkedHashMap<>();
+                    for (List<Writable> record : file) {
+                        K key = keyFunction.apply(record);
+                        List<List<Writable>> group = loaded.get(key);
+                        if (group == null) {
+                            group = new ArrayList<>();
+                            loaded.put(key, group);
+                        }
+                        group.add(record);
+                    }
+                    file.close();
+                    current = loaded.values().iterator();
+                }
+
+                return current.hasNext();
+            }
+
+            @Override
+            public List<List<Writable>> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        groups = new LinkedHashMap<>();
+        if (partitions != null)
+            for (SpillFile partition : partitions)
+                partition.close();
+    }
+}
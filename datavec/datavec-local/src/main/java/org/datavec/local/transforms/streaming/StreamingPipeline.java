@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class executes {@link StreamingPlan} over stream of elements.
+ *
+ * Elements are pulled from source in batches by calling thread, and stateless part of each segment is applied to batches
+ * by pool of worker threads. Number of batches in flight is bounded, so a slow consumer blocks the source instead of
+ * accumulating elements in memory. Results are handed over to the blocking step or the sink in input order.
+ */
+@Slf4j
+public class StreamingPipeline {
+
+    /**
+     * Receiver of pipeline output
+     */
+    public interface Sink {
+        void accept(Object element) throws IOException;
+    }
+
+    @Getter
+    private final int workers;
+    @Getter
+    private final int batchSize;
+    @Getter
+    private final int maxBatchesInFlight;
+
+    /**
+     * @param workers            number of worker threads applying stateless steps
+     * @param batchSize          number of elements processed by worker as single task
+     * @param maxBatchesInFlight max number of batches submitted, but not yet consumed
+     */
+    public StreamingPipeline(int workers, int batchSize, int maxBatchesInFlight) {
+        if (workers < 1 || batchSize < 1 || maxBatchesInFlight < 1)
+            throw new IllegalArgumentException("Workers, batch size and number of batches in flight should be positive: got "
+                            + workers + ", " + batchSize + ", " + maxBatchesInFlight);
+
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+    }
+
+    /**
+     * This method runs all segments of the plan over given source, and passes final elements to the sink
+     *
+     * @return number of elements passed to the sink
+     */
+    public long execute(StreamingPlan plan, Iterator<Object> source, Sink sink) throws IOException {
+        ExecutorService executor = workers > 1 ? Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "StreamingPipeline-worker-" + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        }) : null;
+
+        try {
+            Iterator<Object> current = source;
+            long count = 0;
+            List<StreamingPlan.Segment> segments = plan.getSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                final StreamingPlan.Segment segment = segments.get(i);
+                final StreamingPlan.BlockingStep blocking = segment.getBlockingStep();
+                final long[] counter = new long[1];
+                Sink target = blocking != null ? blocking::accept : e -> {
+                    sink.accept(e);
+                    counter[0]++;
+                };
+
+                run(executor, segment, current, target);
+
+                if (blocking != null)
+                    current = blocking.finish();
+                else
+                    count = counter[0];
+            }
+
+            return count;
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+        }
+    }
+
+    protected void run(ExecutorService executor, final StreamingPlan.Segment segment, Iterator<Object> source,
+                    Sink target) throws IOException {
+        if (segment.getSteps().isEmpty()) {
+            while (source.hasNext())
+                target.accept(source.next());
+            return;
+        }
+
+        if (executor == null) {
+            List<Object> output = new ArrayList<>();
+            while (source.hasNext()) {
+                segment.apply(source.next(), output);
+                for (Object o : output)
+                    target.accept(o);
+                output.clear();
+            }
+            return;
+        }
+
+        ArrayDeque<Future<List<Object>>> inFlight = new ArrayDeque<>(maxBatchesInFlight);
+        try {
+            while (source.hasNext()) {
+                final List<Object> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && source.hasNext())
+                    batch.add(source.next());
+
+                if (inFlight.size() >= maxBatchesInFlight)
+                    drain(inFlight.poll(), target);
+
+                inFlight.add(executor.submit(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() {
+                        List<Object> output = new ArrayList<>(batch.size());
+                        for (Object o : batch)
+                            segment.apply(o, output);
+                        return output;
+                    }
+                }));
+            }
+
+            while (!inFlight.isEmpty())
+                drain(inFlight.poll(), target);
+        } finally {
+            for (Future<List<Object>> f : inFlight)
+                f.cancel(true);
+        }
+    }
+
+    protected void drain(Future<List<Object>> future, Sink target) throws IOException {
+        List<Object> output;
+        try {
+            output = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+
+        for (Object o : output)
+            target.accept(o);
+    }
+}
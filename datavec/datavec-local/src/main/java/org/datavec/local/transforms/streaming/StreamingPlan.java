@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.rank.CalculateSortedRank;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.sequence.ConvertToSequence;
+import org.datavec.api.transform.sequence.SequenceSplit;
+import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+import org.datavec.local.transforms.sequence.LocalGroupToSequenceFunction;
+import org.datavec.local.transforms.sequence.LocalMapToPairByMultipleColumnsFunction;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Streaming execution plan for {@link TransformProcess}.
+ *
+ * Actions are split into segments: every segment is a run of stateless actions (transforms, filters, sequence splits,
+ * conversion from sequence and single-step conversion to sequence) fused into single per-element pass, optionally
+ * followed by one blocking action (reduction, grouping into sequences by key, sorted rank). Stateless part of segment
+ * can be applied to elements independently and in parallel, blocking part consumes whole stream before producing output,
+ * spilling to disk if needed.
+ *
+ * Elements are either records ({@code List<Writable>}) or sequences ({@code List<List<Writable>>}).
+ */
+@Slf4j
+public class StreamingPlan {
+
+    /**
+     * Single stateless action, producing zero or more output elements per input element
+     */
+    public interface StatelessStep {
+        void apply(Object element, List<Object> output);
+    }
+
+    /**
+     * Single blocking action: consumes all elements, and produces output only after that
+     */
+    public interface BlockingStep extends Closeable {
+        void accept(Object element) throws IOException;
+
+        Iterator<Object> finish() throws IOException;
+
+        @Override
+        void close();
+    }
+
+    @Getter
+    public static class Segment {
+        private final List<StatelessStep> steps = new ArrayList<>();
+        private BlockingStep blockingStep;
+
+        /**
+         * This method applies all fused stateless steps to the single element
+         *
+         * @param element input element
+         * @param output  list to put output elements into
+         */
+        public void apply(Object element, List<Object> output) {
+            apply(element, 0, output);
+        }
+
+        private void apply(Object element, int step, List<Object> output) {
+            if (step == steps.size()) {
+                output.add(element);
+                return;
+            }
+
+            List<Object> intermediate = new ArrayList<>(1);
+            steps.get(step).apply(element, intermediate);
+            for (Object o : intermediate)
+                apply(o, step + 1, output);
+        }
+    }
+
+    @Getter
+    private final List<Segment> segments = new ArrayList<>();
+    @Getter
+    private final boolean sequenceInput;
+    @Getter
+    private final boolean sequenceOutput;
+
+    /**
+     * @param transformProcess   TransformProcess to build plan for
+     * @param sequenceInput      true if input elements are sequences
+     * @param maxRecordsInMemory max number of records held in memory by each blocking step before spilling to disk
+     * @param spillPartitions    number of spill files used by each grouping step
+     * @param spillDirectory     directory for spill files
+     */
+    public StreamingPlan(@NonNull TransformProcess transformProcess, boolean sequenceInput, long maxRecordsInMemory,
+                    int spillPartitions, @NonNull File spillDirectory) {
+        this.sequenceInput = sequenceInput;
+
+        boolean sequence = sequenceInput;
+        Segment segment = new Segment();
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() != null) {
+                segment.steps.add(sequence ? sequenceTransform(d.getTransform()) : transform(d.getTransform()));
+            } else if (d.getFilter() != null) {
+                segment.steps.add(sequence ? sequenceFilter(d.getFilter()) : filter(d.getFilter()));
+            } else if (d.getConvertToSequence() != null) {
+                if (sequence)
+                    throw new IllegalStateException("Cannot execute ConvertToSequence operation: data is already a sequence");
+
+                ConvertToSequence cts = d.getConvertToSequence();
+                if (cts.isSingleStepSequencesMode()) {
+                    segment.steps.add(singleStepSequence());
+                } else {
+                    segment.blockingStep = new GroupToSequenceStep(cts, maxRecordsInMemory, spillPartitions, spillDirectory);
+                    segments.add(segment);
+                    segment = new Segment();
+                }
+                sequence = true;
+            } else if (d.getConvertFromSequence() != null) {
+                if (!sequence)
+                    throw new IllegalStateException("Cannot execute ConvertFromSequence operation: data is not a sequence");
+
+                segment.steps.add(fromSequence());
+                sequence = false;
+            } else if (d.getSequenceSplit() != null) {
+                if (!sequence)
+                    throw new IllegalStateException("Error during execution of SequenceSplit: data is not a sequence");
+
+                segment.steps.add(sequenceSplit(d.getSequenceSplit()));
+            } else if (d.getReducer() != null) {
+                if (sequence)
+                    throw new IllegalStateException("Error during execution of reduction: data is a sequence. "
+                                    + "Trying to execute a reduce operation on a sequence?");
+
+                segment.blockingStep = new ReduceStep(d.getReducer(), maxRecordsInMemory,
+                                spillPartitions, spillDirectory);
+                segments.add(segment);
+                segment = new Segment();
+            } else if (d.getCalculateSortedRank() != null) {
+                if (sequence)
+                    throw new IllegalStateException("Error during execution of CalculateSortedRank: data is a sequence. "
+                                    + "Trying to execute a CalculateSortedRank operation on a sequence? (not currently supported)");
+
+                segment.blockingStep = new SortedRankStep(d.getCalculateSortedRank(), maxRecordsInMemory, spillDirectory);
+                segments.add(segment);
+                segment = new Segment();
+            } else {
+                throw new RuntimeException("Unknown/not implemented action: " + d);
+            }
+        }
+
+        // last segment is always terminal: output of preceding blocking step is passed to the sink through it
+        segments.add(segment);
+
+        this.sequenceOutput = sequence;
+        if (sequenceOutput != transformProcess.getFinalSchema() instanceof SequenceSchema)
+            throw new IllegalStateException("Plan output type doesn't match final schema of TransformProcess");
+
+        log.debug("Built streaming plan: {} actions fused into {} segments", transformProcess.getActionList().size(),
+                        segments.size());
+    }
+
+    /**
+     * This method releases resources held by blocking steps, i.e. spill files
+     */
+    public void close() {
+        for (Segment s : segments)
+            if (s.blockingStep != null)
+                s.blockingStep.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Writable> record(Object element) {
+        return (List<Writable>) element;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<List<Writable>> sequence(Object element) {
+        return (List<List<Writable>>) element;
+    }
+
+    protected static StatelessStep transform(final Transform transform) {
+        return (element, output) -> {
+            if (LocalTransformExecutor.isTryCatch()) {
+                try {
+                    List<Writable> result = transform.map(record(element));
+                    if (!result.isEmpty())
+                        output.add(result);
+                } catch (Exception e) {
+                    log.warn("Error occurred " + e + " on record " + element);
+                }
+            } else {
+                output.add(transform.map(record(element)));
+            }
+        };
+    }
+
+    protected static StatelessStep sequenceTransform(final Transform transform) {
+        return (element, output) -> {
+            if (LocalTransformExecutor.isTryCatch()) {
+                try {
+                    List<List<Writable>> result = transform.mapSequence(sequence(element));
+                    if (!result.isEmpty())
+                        output.add(result);
+                } catch (Exception e) {
+                    log.warn("Error occurred " + e + " on sequence " + element);
+                }
+            } else {
+                output.add(transform.mapSequence(sequence(element)));
+            }
+        };
+    }
+
+    protected static StatelessStep filter(final Filter filter) {
+        return (element, output) -> {
+            //Filter: return true to remove
+            if (!filter.removeExample(record(element)))
+                output.add(element);
+        };
+    }
+
+    protected static StatelessStep sequenceFilter(final Filter filter) {
+        return (element, output) -> {
+            if (!filter.removeSequence(sequence(element)))
+                output.add(element);
+        };
+    }
+
+    protected static StatelessStep singleStepSequence() {
+        return (element, output) -> output.add(Collections.singletonList(record(element)));
+    }
+
+    protected static StatelessStep fromSequence() {
+        return (element, output) -> output.addAll(sequence(element));
+    }
+
+    protected static StatelessStep sequenceSplit(final SequenceSplit split) {
+        return (element, output) -> output.addAll(split.split(sequence(element)));
+    }
+
+    /**
+     * Reduction by key: records are grouped by key with spilling, and every group is reduced separately
+     */
+    protected static class ReduceStep implements BlockingStep {
+        private final IAssociativeReducer reducer;
+        private final SpillingGrouper<String> grouper;
+
+        protected ReduceStep(IAssociativeReducer reducer, long maxRecordsInMemory, int spillPartitions, File spillDirectory) {
+            final MapToPairForReducerFunction keyFunction = new MapToPairForReducerFunction(reducer);
+            this.reducer = reducer;
+            this.grouper = new SpillingGrouper<>(r -> keyFunction.apply(r).getFirst(), maxRecordsInMemory,
+                            spillPartitions, spillDirectory);
+        }
+
+        @Override
+        public void accept(Object element) throws IOException {
+            grouper.add(record(element));
+        }
+
+        @Override
+        public Iterator<Object> finish() throws IOException {
+            final Iterator<List<List<Writable>>> groups = grouper.groups();
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return groups.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    IAggregableReduceOp<List<Writable>, List<Writable>> op = reducer.aggregableReducer();
+                    for (List<Writable> r : groups.next())
+                        op.accept(r);
+                    return op.get();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            grouper.close();
+        }
+    }
+
+    /**
+     * Conversion to sequences: records are grouped by key columns with spilling, and every group is sorted into sequence
+     */
+    protected static class GroupToSequenceStep implements BlockingStep {
+        private final LocalGroupToSequenceFunction toSequence;
+        private final SpillingGrouper<List<Writable>> grouper;
+
+        protected GroupToSequenceStep(ConvertToSequence cts, long maxRecordsInMemory, int spillPartitions,
+                        File spillDirectory) {
+            final LocalMapToPairByMultipleColumnsFunction keyFunction = new LocalMapToPairByMultipleColumnsFunction(
+                            cts.getInputSchema().getIndexOfColumns(cts.getKeyColumns()));
+            this.toSequence = new LocalGroupToSequenceFunction(cts.getComparator());
+            this.grouper = new SpillingGrouper<>(r -> keyFunction.apply(r).getFirst(), maxRecordsInMemory,
+                            spillPartitions, spillDirectory);
+        }
+
+        @Override
+        public void accept(Object element) throws IOException {
+            grouper.add(record(element));
+        }
+
+        @Override
+        public Iterator<Object> finish() throws IOException {
+            final Iterator<List<List<Writable>>> groups = grouper.groups();
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return groups.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return toSequence.apply(groups.next());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            grouper.close();
+        }
+    }
+
+    /**
+     * Sorted rank: records are sorted externally on given column, and rank is appended to each of them
+     */
+    protected static class SortedRankStep implements BlockingStep {
+        private final ExternalSorter sorter;
+
+        protected SortedRankStep(CalculateSortedRank csr, long maxRecordsInMemory, File spillDirectory) {
+            final Comparator<Writable> comparator = csr.getComparator();
+            final int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(csr.getSortOnColumn());
+            final boolean ascending = csr.isAscending();
+            this.sorter = new ExternalSorter((a, b) -> {
+                int result = comparator.compare(a.get(sortColumnIdx), b.get(sortColumnIdx));
+                return ascending ? result : -result;
+            }, maxRecordsInMemory, spillDirectory);
+        }
+
+        @Override
+        public void accept(Object element) throws IOException {
+            sorter.add(record(element));
+        }
+
+        @Override
+        public Iterator<Object> finish() throws IOException {
+            final Iterator<List<Writable>> sorted = sorter.sorted();
+            return new Iterator<Object>() {
+                private long rank = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return sorted.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    List<Writable> result = new ArrayList<>(sorted.next());
+                    result.add(new LongWritable(rank++));
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            sorter.close();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms;
+
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.records.writer.SequenceRecordWriter;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.partition.PartitionMetaData;
+import org.datavec.api.split.partition.Partitioner;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.comparator.DoubleWritableComparator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LocalStreamingTransformExecutorTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private LocalStreamingTransformExecutor executor(int maxRecordsInMemory) throws IOException {
+        return new LocalStreamingTransformExecutor.Builder()
+                .workers(4)
+                .batchSize(7)
+                .queueCapacity(2)
+                .maxRecordsInMemory(maxRecordsInMemory)
+                .spillPartitions(3)
+                .spillDirectory(testDir.newFolder())
+                .build();
+    }
+
+    private static List<List<Writable>> data(int numRecords) {
+        List<List<Writable>> data = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++)
+            data.add(Arrays.<Writable>asList(new IntWritable(i), new Text("key" + (i % 10)), new DoubleWritable(i / 2.0)));
+        return data;
+    }
+
+    private static Schema schema() {
+        return new Schema.Builder().addColumnInteger("intCol").addColumnString("keyCol").addColumnDouble("doubleCol")
+                .build();
+    }
+
+    @Test
+    public void testStatelessPreservesOrder() throws Exception {
+        List<List<Writable>> in = data(1000);
+
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("doubleCol", MathOp.Multiply, 2.0)
+                .filter(new ConditionFilter(new IntegerColumnCondition("intCol", ConditionOp.LessThan, 100)))
+                .integerMathOp("intCol", MathOp.Add, 1)
+                .build();
+
+        List<List<Writable>> expected = new ArrayList<>();
+        for (List<Writable> r : in) {
+            List<Writable> out = tp.execute(r);
+            if (out != null)
+                expected.add(out);
+        }
+
+        CollectingWriter writer = new CollectingWriter();
+        long count = executor(1000).execute(new CollectionRecordReader(in), tp, writer);
+
+        assertEquals(900, count);
+        assertEquals(expected, writer.records);
+    }
+
+    @Test
+    public void testInvalidRecordsSkipped() throws Exception {
+        List<List<Writable>> in = new ArrayList<>(data(10));
+        in.add(3, Arrays.<Writable>asList(new IntWritable(-1)));
+
+        TransformProcess tp = new TransformProcess.Builder(schema()).removeColumns("keyCol").build();
+
+        List<List<Writable>> out = new ArrayList<>();
+        Iterator<List<Writable>> iterator = executor(1000).executeToIterator(new CollectionRecordReader(in), tp);
+        while (iterator.hasNext())
+            out.add(iterator.next());
+
+        assertEquals(10, out.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, out.get(i).get(0).toInt());
+    }
+
+    @Test
+    public void testReductionWithSpill() throws Exception {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("keyCol").countColumns("intCol").build())
+                .build();
+
+        CollectingWriter writer = new CollectingWriter();
+        long count = executor(17).execute(new CollectionRecordReader(data(500)), tp, writer);
+        assertEquals(10, count);
+
+        Map<String, List<Writable>> byKey = new HashMap<>();
+        for (List<Writable> r : writer.records)
+            byKey.put(r.get(1).toString(), r);
+
+        for (int k = 0; k < 10; k++) {
+            double sum = 0;
+            for (int i = k; i < 500; i += 10)
+                sum += i / 2.0;
+
+            List<Writable> r = byKey.get("key" + k);
+            assertNotNull(r);
+            assertEquals(50, r.get(0).toLong());
+            assertEquals(sum, r.get(2).toDouble(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testSortedRankWithSpill() throws Exception {
+        List<List<Writable>> in = data(300);
+        Collections.shuffle(in, new Random(12345));
+
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .calculateSortedRank("rank", "doubleCol", new DoubleWritableComparator())
+                .build();
+
+        CollectingWriter writer = new CollectingWriter();
+        executor(20).execute(new CollectionRecordReader(in), tp, writer);
+
+        assertEquals(300, writer.records.size());
+        for (int i = 0; i < 300; i++) {
+            List<Writable> r = writer.records.get(i);
+            assertEquals(i, r.get(0).toInt());
+            assertEquals(i, r.get(3).toLong());
+        }
+    }
+
+    @Test
+    public void testConvertToSequenceWithSpill() throws Exception {
+        List<List<Writable>> in = data(200);
+        Collections.shuffle(in, new Random(12345));
+
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .convertToSequence("keyCol", new NumericalColumnComparator("intCol"))
+                .build();
+
+        CollectingSequenceWriter writer = new CollectingSequenceWriter();
+        long count = executor(15).executeToSequence(new CollectionRecordReader(in), tp, writer);
+
+        assertEquals(10, count);
+        for (List<List<Writable>> sequence : writer.sequences) {
+            assertEquals(20, sequence.size());
+            for (int i = 1; i < sequence.size(); i++) {
+                assertEquals(sequence.get(0).get(1), sequence.get(i).get(1));
+                assertEquals(sequence.get(i - 1).get(0).toInt() + 10, sequence.get(i).get(0).toInt());
+            }
+        }
+    }
+
+    @Test
+    public void testJoinWithSpill() throws Exception {
+        Schema customers = new Schema.Builder().addColumnLong("customerID").addColumnString("customerName").build();
+        Schema purchases = new Schema.Builder().addColumnLong("purchaseID").addColumnLong("customerID")
+                .addColumnDouble("amount").build();
+
+        List<List<Writable>> customerList = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            customerList.add(Arrays.<Writable>asList(new LongWritable(i), new Text("Customer" + i)));
+
+        List<List<Writable>> purchaseList = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            purchaseList.add(Arrays.<Writable>asList(new LongWritable(1000 + i), new LongWritable(i % 25),
+                    new DoubleWritable(i)));
+
+        Join join = new Join.Builder(Join.JoinType.Inner).setJoinColumns("customerID")
+                .setSchemas(customers, purchases).build();
+
+        List<List<Writable>> expected = new ArrayList<>(LocalTransformExecutor.executeJoin(join, customerList, purchaseList));
+
+        CollectingWriter writer = new CollectingWriter();
+        long count = executor(11).executeJoin(join, new CollectionRecordReader(customerList),
+                new CollectionRecordReader(purchaseList), writer);
+
+        assertEquals(80, count);
+        assertEquals(toStrings(expected), toStrings(writer.records));
+    }
+
+    @Test
+    public void testRecordReader() throws Exception {
+        TransformProcess tp = new TransformProcess.Builder(schema()).removeColumns("keyCol").build();
+
+        StreamingTransformRecordReader reader = new StreamingTransformRecordReader(
+                new CollectionRecordReader(data(100)), tp, executor(1000));
+
+        for (int e = 0; e < 2; e++) {
+            int cnt = 0;
+            while (reader.hasNext()) {
+                List<Writable> r = reader.next();
+                assertEquals(2, r.size());
+                assertEquals(cnt++, r.get(0).toInt());
+            }
+            assertEquals(100, cnt);
+            reader.reset();
+        }
+    }
+
+    private static Set<String> toStrings(List<List<Writable>> records) {
+        Set<String> set = new HashSet<>();
+        for (List<Writable> r : records)
+            set.add(r.toString());
+        assertEquals(records.size(), set.size());
+        return set;
+    }
+
+    private static class CollectingWriter implements RecordWriter {
+        private final List<List<Writable>> records = new ArrayList<>();
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+
+        @Override
+        public void initialize(InputSplit inputSplit, Partitioner partitioner) {
+        }
+
+        @Override
+        public void initialize(Configuration configuration, InputSplit split, Partitioner partitioner) {
+        }
+
+        @Override
+        public PartitionMetaData write(List<Writable> record) {
+            records.add(record);
+            return PartitionMetaData.builder().numRecordsUpdated(1).build();
+        }
+
+        @Override
+        public PartitionMetaData writeBatch(List<List<Writable>> batch) {
+            records.addAll(batch);
+            return PartitionMetaData.builder().numRecordsUpdated(batch.size()).build();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setConf(Configuration conf) {
+        }
+
+        @Override
+        public Configuration getConf() {
+            return null;
+        }
+    }
+
+    private static class CollectingSequenceWriter implements SequenceRecordWriter {
+        private final List<List<List<Writable>>> sequences = new ArrayList<>();
+
+        @Override
+        public PartitionMetaData write(List<List<Writable>> sequence) {
+            sequences.add(sequence);
+            return PartitionMetaData.builder().numRecordsUpdated(1).build();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setConf(Configuration conf) {
+        }
+
+        @Override
+        public Configuration getConf() {
+            return null;
+        }
+    }
+}
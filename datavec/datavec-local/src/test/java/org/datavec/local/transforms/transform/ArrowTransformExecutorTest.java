@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.transform;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.ArrowTransformExecutor;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Test;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ArrowTransformExecutorTest {
+
+    private static final BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnInteger("col0")
+                .addColumnCategorical("col1", "state0", "state1", "state2")
+                .addColumnDouble("col2")
+                .addColumnString("col3")
+                .build();
+    }
+
+    private static List<List<Writable>> data(int rows) {
+        List<List<Writable>> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            data.add(Arrays.<Writable>asList(new IntWritable(i), new Text("state" + (i % 3)),
+                    new DoubleWritable(i * 0.5), new Text("text" + i)));
+        }
+        return data;
+    }
+
+    @Test
+    public void testExecuteMatchesLocalExecutor() throws Exception {
+        Schema schema = schema();
+        TransformProcess tp = new TransformProcess.Builder(schema)
+                .removeColumns("col3")
+                .doubleMathOp("col2", MathOp.Add, 10.0)
+                .renameColumn("col0", "id")
+                .filter(new ConditionFilter(new DoubleColumnCondition("col2", ConditionOp.LessThan, 12.0)))
+                .reorderColumns("col2", "id", "col1")
+                .integerMathOp("id", MathOp.Multiply, 2)
+                .build();
+        assertTrue(ArrowTransformExecutor.canExecute(tp));
+
+        List<List<Writable>> data = data(20);
+        List<List<Writable>> expected = new ArrayList<>(LocalTransformExecutor.execute(data, tp));
+
+        ArrowWritableRecordBatch input = ArrowConverter.toArrowWritables(
+                ArrowConverter.toArrowColumns(allocator, schema, data), schema);
+        ArrowWritableRecordBatch output = ArrowTransformExecutor.execute(allocator, input, tp);
+
+        assertEquals(tp.getFinalSchema(), output.getSchema());
+        assertEquals(16, output.size());
+        assertEquals(expected, output.toArrayList());
+
+        // input batch must not be modified
+        assertEquals(data, input.toArrayList());
+
+        // and the result must survive serialization, with column names taken from the final schema
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ArrowConverter.writeRecordBatchTo(allocator, output, tp.getFinalSchema(), baos);
+        Pair<Schema, ArrowWritableRecordBatch> read = ArrowConverter.readFromBytes(allocator, baos.toByteArray());
+        assertEquals(tp.getFinalSchema().getColumnNames(), read.getFirst().getColumnNames());
+        ArrowWritableRecordBatch restored = new ArrowWritableRecordBatch(read.getSecond().getList(), tp.getFinalSchema());
+        assertEquals(expected, restored.toArrayList());
+    }
+
+    @Test
+    public void testUnsupportedSteps() {
+        Schema schema = schema();
+        TransformProcess tp = new TransformProcess.Builder(schema)
+                .removeColumns("col3")
+                .categoricalToOneHot("col1")
+                .build();
+        assertFalse(ArrowTransformExecutor.canExecute(tp));
+    }
+}
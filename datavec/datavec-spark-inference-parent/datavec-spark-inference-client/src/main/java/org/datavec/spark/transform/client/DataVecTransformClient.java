@@ -16,11 +16,13 @@
 
 package org.datavec.spark.transform.client;
 
+import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.ObjectMapper;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.datavec.api.transform.TransformProcess;
 import org.datavec.image.transform.ImageTransformProcess;
 import org.datavec.spark.transform.model.*;
@@ -28,6 +30,7 @@ import org.datavec.spark.transform.service.DataVecTransformService;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Created by agibsonccc on 6/12/17.
@@ -186,6 +189,28 @@ public class DataVecTransformClient implements DataVecTransformService {
         return null;
     }
 
+    /**
+     * @param arrowBatch
+     * @return
+     */
+    @Override
+    public byte[] transformArrow(byte[] arrowBatch) throws IOException {
+        try {
+            HttpResponse<InputStream> response = Unirest.post(url + "/transformarrow")
+                    .header("accept", ARROW_CONTENT_TYPE).header("Content-Type", ARROW_CONTENT_TYPE)
+                    .body(arrowBatch).asBinary();
+            if (response.getStatus() != 200)
+                throw new IOException("Error in transformArrow(byte[]): server returned " + response.getStatus()
+                        + " " + response.getStatusText());
+            try (InputStream is = response.getBody()) {
+                return IOUtils.toByteArray(is);
+            }
+        } catch (UnirestException e) {
+            log.error("Error in transformArrow(byte[])",e);
+            throw new IOException(e);
+        }
+    }
+
     /**
      * @param singleCsvRecord
      * @return
@@ -23,19 +23,23 @@ import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.FieldVector;
 import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.util.ndarray.RecordConverter;
 import org.datavec.api.writable.Writable;
 import org.datavec.arrow.ArrowConverter;
 import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.datavec.arrow.recordreader.ArrowWritableRecordTimeSeriesBatch;
+import org.datavec.local.transforms.ArrowTransformExecutor;
 import org.datavec.local.transforms.LocalTransformExecutor;
 import org.datavec.spark.transform.model.Base64NDArrayBody;
 import org.datavec.spark.transform.model.BatchCSVRecord;
 import org.datavec.spark.transform.model.SequenceBatchCSVRecord;
 import org.datavec.spark.transform.model.SingleCSVRecord;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.serde.base64.Nd4jBase64;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -102,22 +106,84 @@ public class CSVSparkTransform {
      */
     public BatchCSVRecord transform(BatchCSVRecord batch) {
         BatchCSVRecord batchCSVRecord = new BatchCSVRecord();
-        List<List<Writable>> converted =  execute(toArrowWritables(toArrowColumnsString(
+        List<FieldVector> input = toArrowColumnsString(
                 bufferAllocator,transformProcess.getInitialSchema(),
-                batch.getRecordsAsString()),
-                transformProcess.getInitialSchema()),transformProcess);
-        int numCols = converted.get(0).size();
-        for (int row = 0; row < converted.size(); row++) {
-            String[] values = new String[numCols];
-            for (int i = 0; i < values.length; i++)
-                values[i] = converted.get(row).get(i).toString();
-            batchCSVRecord.add(new SingleCSVRecord(values));
+                batch.getRecordsAsString());
+        List<List<Writable>> converted = null;
+        try {
+            converted = execute(toArrowWritables(input,
+                    transformProcess.getInitialSchema()),transformProcess);
+            int numCols = converted.get(0).size();
+            for (int row = 0; row < converted.size(); row++) {
+                String[] values = new String[numCols];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = converted.get(row).get(i).toString();
+                batchCSVRecord.add(new SingleCSVRecord(values));
+            }
+        } finally {
+            release(converted);
+            release(input);
         }
 
         return batchCSVRecord;
 
     }
 
+    /**
+     * Runs the transform process over a batch
+     * in arrow file format.
+     * Transform processes supported by {@link ArrowTransformExecutor}
+     * are executed column by column over the arrow vectors,
+     * without converting the batch to writables and back.
+     * Other transform processes fall back to {@link LocalTransformExecutor}.
+     * @param arrowBatch the batch to transform, columns must match
+     *                   the initial schema of the transform process
+     * @return the transformed batch in arrow file format
+     * @throws IOException
+     */
+    public byte[] transformArrow(byte[] arrowBatch) throws IOException {
+        Schema initialSchema = transformProcess.getInitialSchema();
+        Pair<Schema,ArrowWritableRecordBatch> read = readFromBytes(bufferAllocator,arrowBatch);
+        ArrowWritableRecordBatch input = read.getSecond();
+        List<List<Writable>> output = null;
+        try {
+            if(input.getList().size() != initialSchema.numColumns())
+                throw new IllegalArgumentException("Number of columns in the batch (" + input.getList().size()
+                        + ") doesn't match the number of columns in the transform process schema (" + initialSchema.numColumns() + ")");
+
+            //interpret the columns according to the transform process schema, not the one stored in the batch
+            ArrowWritableRecordBatch batch = new ArrowWritableRecordBatch(input.getList(),initialSchema,0,input.size());
+            if(ArrowTransformExecutor.canExecute(transformProcess))
+                output = ArrowTransformExecutor.execute(bufferAllocator,batch,transformProcess);
+            else
+                output = execute(batch,transformProcess);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeRecordBatchTo(bufferAllocator,output,transformProcess.getFinalSchema(),baos);
+            return baos.toByteArray();
+        } finally {
+            release(output);
+            release(input.getList());
+            input.close();
+        }
+    }
+
+    /**
+     * Release the arrow memory held by the given batch
+     * @param batch the batch to release, may be null
+     */
+    private static void release(List<?> batch) {
+        if(batch instanceof ArrowWritableRecordBatch)
+            batch = ((ArrowWritableRecordBatch) batch).getList();
+        if(batch == null)
+            return;
+
+        for(Object column : batch) {
+            if(column instanceof FieldVector)
+                ((FieldVector) column).close();
+        }
+    }
+
     /**
      * Runs the transform process
      * @param record the record to transform
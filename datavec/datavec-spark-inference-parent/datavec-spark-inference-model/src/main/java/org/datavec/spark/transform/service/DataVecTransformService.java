@@ -28,6 +28,7 @@ import java.io.IOException;
 public interface DataVecTransformService {
 
     String SEQUENCE_OR_NOT_HEADER = "Sequence";
+    String ARROW_CONTENT_TYPE = "application/vnd.apache.arrow.file";
 
 
     /**
@@ -77,6 +78,15 @@ public interface DataVecTransformService {
      */
     Base64NDArrayBody transformArray(BatchCSVRecord batchCSVRecord);
 
+    /**
+     * Transform a batch in arrow file format, without per record
+     * json conversion
+     * @param arrowBatch the batch to transform
+     * @return the transformed batch in arrow file format
+     * @throws IOException
+     */
+    byte[] transformArrow(byte[] arrowBatch) throws IOException;
+
     /**
      *
      * @param singleCsvRecord
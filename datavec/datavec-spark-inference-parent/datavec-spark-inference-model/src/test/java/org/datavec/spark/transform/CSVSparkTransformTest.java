@@ -16,13 +16,17 @@
 
 package org.datavec.spark.transform;
 
+import org.datavec.api.transform.MathOp;
 import org.datavec.api.transform.TransformProcess;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.transform.transform.integer.BaseIntegerTransform;
 import org.datavec.api.transform.transform.nlp.TextToCharacterIndexTransform;
 import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
 import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.datavec.spark.transform.model.Base64NDArrayBody;
 import org.datavec.spark.transform.model.BatchCSVRecord;
 import org.datavec.spark.transform.model.SequenceBatchCSVRecord;
@@ -30,8 +34,10 @@ import org.datavec.spark.transform.model.SingleCSVRecord;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.aggregates.Batch;
+import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.serde.base64.Nd4jBase64;
 
+import java.io.ByteArrayOutputStream;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -92,6 +98,32 @@ public class CSVSparkTransformTest {
 
 
 
+    @Test
+    public void testTransformArrow() throws Exception {
+        Schema schema = new Schema.Builder().addColumnInteger("id").addColumnDouble("x").addColumnString("s").build();
+        TransformProcess transformProcess = new TransformProcess.Builder(schema)
+                .removeColumns("s")
+                .doubleMathOp("x", MathOp.Multiply, 2.0)
+                .build();
+        CSVSparkTransform csvSparkTransform = new CSVSparkTransform(transformProcess);
+
+        BatchCSVRecord batchCSVRecord = new BatchCSVRecord();
+        List<List<Writable>> writables = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batchCSVRecord.add(new SingleCSVRecord(String.valueOf(i), String.valueOf(i * 0.5), "text" + i));
+            writables.add(Arrays.<Writable>asList(new IntWritable(i), new DoubleWritable(i * 0.5), new Text("text" + i)));
+        }
+        BatchCSVRecord expected = csvSparkTransform.transform(batchCSVRecord);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ArrowConverter.writeRecordBatchTo(writables, schema, baos);
+        byte[] transformed = csvSparkTransform.transformArrow(baos.toByteArray());
+
+        Pair<Schema, ArrowWritableRecordBatch> read = ArrowConverter.readFromBytes(transformed);
+        assertEquals(transformProcess.getFinalSchema().getColumnNames(), read.getFirst().getColumnNames());
+        assertEquals(expected.getRecordsAsString(), BatchCSVRecord.fromWritables(read.getSecond()).getRecordsAsString());
+    }
+
     @Test
     public void testSingleBatchSequence() throws Exception {
         List<Writable> input = new ArrayList<>();
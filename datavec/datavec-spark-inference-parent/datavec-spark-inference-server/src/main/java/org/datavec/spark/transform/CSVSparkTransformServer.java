@@ -202,6 +202,17 @@ public class CSVSparkTransformServer extends SparkTransformServer {
             }
         })));
 
+        routingDsl.POST("/transformarrow").routeTo(FunctionUtil.function0((() -> {
+            try {
+                byte[] batch = getRawBody();
+                if (batch == null || batch.length == 0)
+                    return badRequest();
+                return ok(transformArrow(batch)).as(ARROW_CONTENT_TYPE);
+            } catch (Exception e) {
+                log.error("Error in /transformarrow", e);
+                return internalServerError(e.getMessage());
+            }
+        })));
 
         server = Server.forRouter(routingDsl.build(), Mode.PROD, port);
     }
@@ -315,6 +326,15 @@ public class CSVSparkTransformServer extends SparkTransformServer {
         }
     }
 
+    /**
+     * @param arrowBatch
+     * @return
+     */
+    @Override
+    public byte[] transformArrow(byte[] arrowBatch) throws IOException {
+        return this.transform.transformArrow(arrowBatch);
+    }
+
     /**
      * @param singleCsvRecord
      * @return
@@ -237,6 +237,11 @@ public class ImageSparkTransformServer extends SparkTransformServer {
         throw new UnsupportedOperationException("Invalid operation for " + this.getClass());
     }
 
+    @Override
+    public byte[] transformArrow(byte[] arrowBatch) {
+        throw new UnsupportedOperationException("Invalid operation for " + this.getClass());
+    }
+
     @Override
     public Base64NDArrayBody transformIncrementalArray(SingleImageRecord record) throws IOException {
         return transform.toArray(record);
@@ -18,12 +18,16 @@ package org.datavec.spark.transform;
 
 import com.beust.jcommander.Parameter;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.FileUtils;
 import org.datavec.spark.transform.model.Base64NDArrayBody;
 import org.datavec.spark.transform.model.BatchCSVRecord;
 import org.datavec.spark.transform.service.DataVecTransformService;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
+import play.mvc.Http;
 import play.server.Server;
 
+import java.io.IOException;
+
 import static play.mvc.Controller.request;
 
 /**
@@ -71,5 +75,17 @@ public abstract class SparkTransformServer implements DataVecTransformService {
             return request().body().asText();
     }
 
+    protected byte[] getRawBody() throws IOException {
+        Http.RawBuffer raw = request().body().asRaw();
+        if (raw == null)
+            return null;
+
+        //large bodies are buffered to disk by play
+        byte[] bytes = raw.asBytes();
+        if (bytes == null && raw.asFile() != null)
+            bytes = FileUtils.readFileToByteArray(raw.asFile());
+        return bytes;
+    }
+
     public abstract Base64NDArrayBody transformSequenceArrayIncremental(BatchCSVRecord singleCsvRecord);
 }
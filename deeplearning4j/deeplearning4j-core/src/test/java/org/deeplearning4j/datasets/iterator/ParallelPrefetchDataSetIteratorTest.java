@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.parallel.ParallelPrefetchDataSetIterator;
+import org.junit.Test;
+import org.nd4j.api.loader.Loader;
+import org.nd4j.api.loader.Source;
+import org.nd4j.api.loader.SourceFactory;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class ParallelPrefetchDataSetIteratorTest extends BaseDL4JTest {
+
+    private static List<DataSetIterator> partitions(int numPartitions, int partitionSize) {
+        List<DataSetIterator> partitions = new ArrayList<>();
+        for (int p = 0; p < numPartitions; p++) {
+            List<DataSet> list = new ArrayList<>();
+            for (int i = 0; i < partitionSize; i++)
+                list.add(new DataSet(Nd4j.create(new float[]{p * partitionSize + i}), Nd4j.create(new float[]{p})));
+            partitions.add(new ExistingDataSetIterator(list));
+        }
+        return partitions;
+    }
+
+    private static List<String> paths(int num) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < num; i++)
+            paths.add(String.valueOf(i));
+        return paths;
+    }
+
+    @Test
+    public void testPartitions() {
+        ParallelPrefetchDataSetIterator iterator = new ParallelPrefetchDataSetIterator.Builder(partitions(4, 25))
+                .workers(3)
+                .prefetchSize(6)
+                .build();
+
+        for (int e = 0; e < 3; e++) {
+            Set<Integer> seen = new HashSet<>();
+            while (iterator.hasNext())
+                assertTrue(seen.add(iterator.next().getFeatures().getInt(0)));
+
+            assertEquals(100, seen.size());
+            iterator.reset();
+        }
+
+        assertEquals(300, iterator.getBatchesConsumed());
+        iterator.shutdown();
+    }
+
+    @Test
+    public void testOrderedPaths() {
+        ParallelPrefetchDataSetIterator iterator = new ParallelPrefetchDataSetIterator.Builder(paths(200),
+                new SleepingLoader(2), new StringSourceFactory())
+                .workers(4)
+                .ordered(true)
+                .build();
+
+        int cnt = 0;
+        while (iterator.hasNext())
+            assertEquals(cnt++, iterator.next().getFeatures().getInt(0));
+
+        assertEquals(200, cnt);
+        iterator.shutdown();
+    }
+
+    @Test
+    public void testShuffledPaths() {
+        ParallelPrefetchDataSetIterator iterator = new ParallelPrefetchDataSetIterator.Builder(paths(100),
+                new SleepingLoader(0), new StringSourceFactory())
+                .workers(2)
+                .ordered(true)
+                .shuffle(new Random(12345))
+                .build();
+
+        List<Integer> first = new ArrayList<>();
+        while (iterator.hasNext())
+            first.add(iterator.next().getFeatures().getInt(0));
+
+        iterator.reset();
+        List<Integer> second = new ArrayList<>();
+        while (iterator.hasNext())
+            second.add(iterator.next().getFeatures().getInt(0));
+
+        assertEquals(100, first.size());
+        assertEquals(new HashSet<>(first), new HashSet<>(second));
+        assertNotEquals(first, second);
+        iterator.shutdown();
+    }
+
+    @Test
+    public void testStarvationStats() {
+        ParallelPrefetchDataSetIterator iterator = new ParallelPrefetchDataSetIterator.Builder(paths(20),
+                new SleepingLoader(20), new StringSourceFactory())
+                .workers(2)
+                .build();
+
+        while (iterator.hasNext())
+            iterator.next();
+
+        assertEquals(20, iterator.getBatchesProduced());
+        assertEquals(20, iterator.getBatchesConsumed());
+        assertTrue(iterator.getStarvationCount() > 0);
+        assertTrue(iterator.getStarvationRatio() > 0.0);
+        assertTrue(iterator.getStarvationTimeMillis() > 0);
+        iterator.shutdown();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testExceptionPropagation() {
+        ParallelPrefetchDataSetIterator iterator = new ParallelPrefetchDataSetIterator.Builder(Arrays.asList("1", "2", "fail"),
+                new SleepingLoader(0), new StringSourceFactory())
+                .workers(2)
+                .ordered(true)
+                .build();
+
+        while (iterator.hasNext())
+            iterator.next();
+    }
+
+    private static class StringSourceFactory implements SourceFactory {
+        @Override
+        public Source getSource(final String path) {
+            return new Source() {
+                @Override
+                public InputStream getInputStream() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public String getPath() {
+                    return path;
+                }
+            };
+        }
+    }
+
+    private static class SleepingLoader implements Loader<DataSet> {
+        private final long sleep;
+
+        private SleepingLoader(long sleep) {
+            this.sleep = sleep;
+        }
+
+        @Override
+        public DataSet load(Source source) throws IOException {
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            int value = Integer.parseInt(source.getPath());
+            return new DataSet(Nd4j.create(new float[]{value}), Nd4j.create(new float[]{1}));
+        }
+    }
+}
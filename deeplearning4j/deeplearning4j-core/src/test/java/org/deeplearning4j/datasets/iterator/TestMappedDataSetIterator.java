@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.file.MappedDataSetContainer;
+import org.deeplearning4j.datasets.iterator.file.MappedDataSetIterator;
+import org.deeplearning4j.datasets.iterator.file.MappedDataSetWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestMappedDataSetIterator extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndGather() throws Exception {
+        File f = folder.newFile("data.mds");
+
+        List<DataSet> written = new ArrayList<>();
+        try (MappedDataSetWriter writer = new MappedDataSetWriter(f)) {
+            for (int i = 0; i < 3; i++) {
+                INDArray features = Nd4j.rand(DataType.FLOAT, 5, 3, 4);
+                INDArray labels = Nd4j.rand(DataType.FLOAT, 5, 2, 4);
+                INDArray labelsMask = Nd4j.ones(DataType.FLOAT, 5, 4);
+                labelsMask.putScalar(i, 3, 0.0);
+                DataSet ds = new DataSet(features, labels, null, labelsMask);
+                writer.write(ds);
+                written.addAll(ds.asList());
+            }
+            assertEquals(15, writer.numExamples());
+        }
+
+        assertTrue(MappedDataSetContainer.isMappedDataSet(f));
+        MappedDataSetContainer container = new MappedDataSetContainer(f);
+        assertEquals(15, container.numExamples());
+        assertTrue(container.hasBlock(MappedDataSetContainer.LABELS_MASK));
+        assertFalse(container.hasBlock(MappedDataSetContainer.FEATURES_MASK));
+        assertArrayEquals(new long[] {3, 4}, container.exampleShape(MappedDataSetContainer.FEATURES));
+
+        // contiguous range and arbitrary order must both match the source examples
+        assertEquals(DataSet.merge(written.subList(4, 9)), container.get(4, 9));
+
+        long[] indices = new long[] {14, 0, 7, 8, 9, 3};
+        List<DataSet> expected = new ArrayList<>();
+        for (long i : indices)
+            expected.add(written.get((int) i));
+        assertEquals(DataSet.merge(expected), container.get(indices));
+    }
+
+    @Test
+    public void testIteratorReshuffle() throws Exception {
+        File[] files = new File[3];
+        Map<Double, DataSet> all = new HashMap<>();
+        int value = 0;
+        for (int c = 0; c < files.length; c++) {
+            files[c] = folder.newFile("shard_" + c + ".mds");
+            try (MappedDataSetWriter writer = new MappedDataSetWriter(files[c])) {
+                for (int b = 0; b < c + 1; b++) {
+                    INDArray features = Nd4j.linspace(value, value + 6, 7, DataType.DOUBLE).reshape(7, 1);
+                    INDArray labels = features.mul(10).addi(1);
+                    DataSet ds = new DataSet(features, labels);
+                    writer.write(ds);
+                    for (DataSet d : ds.asList())
+                        all.put(d.getFeatures().getDouble(0), d);
+                    value += 7;
+                }
+            }
+        }
+
+        // 42 examples in total
+        MappedDataSetIterator iter = new MappedDataSetIterator(files, 8, new Random(12345));
+        assertEquals(42, iter.numExamples());
+        assertEquals(1, iter.inputColumns());
+        assertEquals(1, iter.totalOutcomes());
+
+        List<Double> firstEpoch = null;
+        for (int epoch = 0; epoch < 2; epoch++) {
+            List<Double> seen = new ArrayList<>();
+            int batches = 0;
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                assertEquals(batches < 5 ? 8 : 2, ds.numExamples());
+                for (DataSet d : ds.asList()) {
+                    double key = d.getFeatures().getDouble(0);
+                    assertEquals(all.get(key), d);
+                    seen.add(key);
+                }
+                batches++;
+            }
+            assertEquals(6, batches);
+            assertEquals(all.keySet(), new HashSet<>(seen));
+
+            if (firstEpoch == null)
+                firstEpoch = seen;
+            else
+                assertNotEquals(firstEpoch, seen);
+            iter.reset();
+        }
+
+        // without RNG examples are returned in order they were written
+        iter = new MappedDataSetIterator(files, 10, null);
+        double expected = 0;
+        while (iter.hasNext()) {
+            INDArray features = iter.next().getFeatures();
+            for (int i = 0; i < features.size(0); i++)
+                assertEquals(expected++, features.getDouble(i, 0), 0.0);
+        }
+        assertEquals(42, expected, 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInconsistentShapes() throws Exception {
+        File f = folder.newFile("data.mds");
+        try (MappedDataSetWriter writer = new MappedDataSetWriter(f)) {
+            writer.write(new DataSet(Nd4j.rand(DataType.FLOAT, 5, 3), Nd4j.rand(DataType.FLOAT, 5, 2)));
+            writer.write(new DataSet(Nd4j.rand(DataType.FLOAT, 5, 4), Nd4j.rand(DataType.FLOAT, 5, 2)));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.deeplearning4j.nn.graph;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestInterOpParallelism extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.FLOAT;
+    }
+
+    private static ComputationGraph getBranchyGraph(WorkspaceMode wsm) {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .weightInit(WeightInit.XAVIER)
+                .activation(Activation.TANH)
+                .inferenceWorkspaceMode(wsm)
+                .trainingWorkspaceMode(wsm)
+                .graphBuilder()
+                .addInputs("in1", "in2")
+                .addLayer("a1", new DenseLayer.Builder().nIn(10).nOut(16).build(), "in1")
+                .addLayer("a2", new DenseLayer.Builder().nIn(16).nOut(16).build(), "a1")
+                .addLayer("b1", new DenseLayer.Builder().nIn(10).nOut(16).build(), "in1")
+                .addLayer("b2", new DenseLayer.Builder().nIn(16).nOut(16).build(), "b1")
+                .addLayer("c1", new DenseLayer.Builder().nIn(6).nOut(16).build(), "in2")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "a2", "b2")
+                .addVertex("merge", new MergeVertex(), "add", "c1")
+                .addLayer("out1", new OutputLayer.Builder().nIn(32).nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                .addLayer("out2", new OutputLayer.Builder().nIn(16).nOut(3).activation(Activation.IDENTITY)
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "c1")
+                .setOutputs("out1", "out2")
+                .build();
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        return cg;
+    }
+
+    @Test
+    public void testOutputMatchesSequential() {
+        for (WorkspaceMode wsm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            ComputationGraph sequential = getBranchyGraph(wsm);
+            ComputationGraph parallel = getBranchyGraph(wsm);
+            parallel.setInterOpParallelism(4);
+            assertEquals(4, parallel.getInterOpParallelism());
+
+            for (int i = 0; i < 5; i++) {
+                INDArray in1 = Nd4j.rand(DataType.FLOAT, 8, 10);
+                INDArray in2 = Nd4j.rand(DataType.FLOAT, 8, 6);
+
+                INDArray[] exp = sequential.output(in1, in2);
+                INDArray[] act = parallel.output(in1, in2);
+                assertEquals(exp.length, act.length);
+                for (int j = 0; j < exp.length; j++) {
+                    assertArrayEquals(exp[j].data().asFloat(), act[j].data().asFloat(), 0.0f);
+                }
+
+                Map<String, INDArray> expFF = sequential.feedForward(new INDArray[]{in1, in2}, false);
+                Map<String, INDArray> actFF = parallel.feedForward(new INDArray[]{in1, in2}, false);
+                assertEquals(expFF.keySet(), actFF.keySet());
+                for (String s : expFF.keySet()) {
+                    assertArrayEquals(s, expFF.get(s).dup().data().asFloat(), actFF.get(s).dup().data().asFloat(), 0.0f);
+                }
+            }
+
+            parallel.setInterOpParallelism(1);
+            assertEquals(1, parallel.getInterOpParallelism());
+        }
+    }
+}
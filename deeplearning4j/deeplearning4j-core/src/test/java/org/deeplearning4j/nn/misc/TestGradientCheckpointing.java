@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestGradientCheckpointing extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    private static MultiLayerNetwork getMLN(WorkspaceMode wsm, int... checkpoints) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .weightInit(WeightInit.XAVIER)
+                .activation(Activation.TANH)
+                .trainingWorkspaceMode(wsm)
+                .inferenceWorkspaceMode(wsm)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(12).build())
+                .layer(new DenseLayer.Builder().nIn(12).nOut(12).build())
+                .layer(new BatchNormalization.Builder().nOut(12).build())
+                .layer(new DenseLayer.Builder().nIn(12).nOut(12).build())
+                .layer(new DenseLayer.Builder().nIn(12).nOut(12).build())
+                .layer(new OutputLayer.Builder().nIn(12).nOut(4).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .gradientCheckpoints(checkpoints)
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static ComputationGraph getGraph(WorkspaceMode wsm, String... checkpoints) {
+        //"skip" crosses the "b1" checkpoint, and "out2" uses an activation from the first segment
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .weightInit(WeightInit.XAVIER)
+                .activation(Activation.TANH)
+                .trainingWorkspaceMode(wsm)
+                .inferenceWorkspaceMode(wsm)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("a1", new DenseLayer.Builder().nIn(10).nOut(12).build(), "in")
+                .addLayer("a2", new DenseLayer.Builder().nIn(12).nOut(12).build(), "a1")
+                .addLayer("b1", new DenseLayer.Builder().nIn(12).nOut(12).build(), "a2")
+                .addLayer("b2", new DenseLayer.Builder().nIn(12).nOut(12).build(), "b1")
+                .addLayer("skip", new DenseLayer.Builder().nIn(12).nOut(12).build(), "a1")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "b2", "skip")
+                .addLayer("c1", new DenseLayer.Builder().nIn(12).nOut(12).build(), "add")
+                .addVertex("merge", new MergeVertex(), "c1", "b1")
+                .addLayer("out1", new OutputLayer.Builder().nIn(24).nOut(4).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                .addLayer("out2", new OutputLayer.Builder().nIn(12).nOut(3).activation(Activation.IDENTITY)
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "a2")
+                .setOutputs("out1", "out2")
+                .gradientCheckpoints(checkpoints)
+                .build();
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        return cg;
+    }
+
+    @Test
+    public void testMultiLayerNetworkGradients() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 8, 10);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, 8, 4);
+        for (int i = 0; i < 8; i++) {
+            l.putScalar(i, i % 4, 1.0);
+        }
+
+        for (WorkspaceMode wsm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            for (int[] checkpoints : new int[][]{{1}, {0, 2, 3}, {4}}) {
+                String msg = wsm + " - " + Arrays.toString(checkpoints);
+                MultiLayerNetwork exp = getMLN(wsm);
+                MultiLayerNetwork act = getMLN(wsm, checkpoints);
+                assertArrayEquals(checkpoints, act.getLayerWiseConfigurations().getGradientCheckpoints());
+
+                for (int iter = 0; iter < 3; iter++) {
+                    exp.setInput(f);
+                    exp.setLabels(l);
+                    exp.computeGradientAndScore();
+                    act.setInput(f);
+                    act.setLabels(l);
+                    act.computeGradientAndScore();
+
+                    assertEquals(msg, exp.score(), act.score(), 1e-10);
+                    assertEquals(msg, exp.gradient().gradient(), act.gradient().gradient());
+
+                    exp.fit(new DataSet(f, l));
+                    act.fit(new DataSet(f, l));
+                    assertEquals(msg, exp.params(), act.params());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testComputationGraphGradients() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 8, 10);
+        INDArray l1 = Nd4j.zeros(DataType.DOUBLE, 8, 4);
+        for (int i = 0; i < 8; i++) {
+            l1.putScalar(i, i % 4, 1.0);
+        }
+        INDArray l2 = Nd4j.rand(DataType.DOUBLE, 8, 3);
+        MultiDataSet mds = new MultiDataSet(new INDArray[]{f}, new INDArray[]{l1, l2});
+
+        for (WorkspaceMode wsm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            for (String[] checkpoints : new String[][]{{"a2"}, {"b1"}, {"a1", "b2", "add"}}) {
+                String msg = wsm + " - " + Arrays.toString(checkpoints);
+                ComputationGraph exp = getGraph(wsm);
+                ComputationGraph act = getGraph(wsm, checkpoints);
+
+                for (int iter = 0; iter < 3; iter++) {
+                    exp.setInputs(f);
+                    exp.setLabels(l1, l2);
+                    exp.computeGradientAndScore();
+                    act.setInputs(f);
+                    act.setLabels(l1, l2);
+                    act.computeGradientAndScore();
+
+                    assertEquals(msg, exp.score(), act.score(), 1e-10);
+                    assertEquals(msg, exp.gradient().gradient(), act.gradient().gradient());
+
+                    exp.fit(mds);
+                    act.fit(mds);
+                    assertEquals(msg, exp.params(), act.params());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConfiguration() {
+        MultiLayerNetwork net = getMLN(WorkspaceMode.ENABLED, 3, 1, 3);
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations();
+        assertArrayEquals(new int[]{1, 3}, conf.getGradientCheckpoints());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        assertArrayEquals(new int[]{1, 3}, conf.clone().getGradientCheckpoints());
+
+        ComputationGraphConfiguration cgConf = getGraph(WorkspaceMode.ENABLED, "a2", "c1").getConfiguration();
+        assertEquals(Arrays.asList("a2", "c1"), cgConf.getGradientCheckpoints());
+        assertEquals(cgConf, ComputationGraphConfiguration.fromJson(cgConf.toJson()));
+
+        try {
+            getMLN(WorkspaceMode.ENABLED, 5);
+            fail("Expected exception: output layer as checkpoint");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+
+        try {
+            getGraph(WorkspaceMode.ENABLED, "out1");
+            fail("Expected exception: output layer as checkpoint");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+}
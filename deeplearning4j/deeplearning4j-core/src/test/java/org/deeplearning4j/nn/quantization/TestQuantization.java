@@ -0,0 +1,173 @@
+package org.deeplearning4j.nn.quantization;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestQuantization extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Override
+    public DataType getDataType() {
+        return DataType.FLOAT;
+    }
+
+    private static DataSetIterator getData(long[] featureShape, int nOut) {
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            INDArray features = Nd4j.rand(DataType.FLOAT, featureShape);
+            INDArray labels = Nd4j.zeros(DataType.FLOAT, featureShape[0], nOut);
+            for (int j = 0; j < featureShape[0]; j++)
+                labels.putScalar(j, j % nOut, 1.0);
+            list.add(new DataSet(features, labels));
+        }
+        return new ExistingDataSetIterator(list);
+    }
+
+    @Test
+    public void testQuantizedWeights() {
+        INDArray w = Nd4j.rand(DataType.FLOAT, 20, 10).subi(0.5);
+        w.getColumn(3).muli(100);
+        w.getColumn(7).assign(0);
+
+        QuantizedWeights q = QuantizedWeights.quantize(w, 1);
+        assertEquals(DataType.BYTE, q.getQuantized().dataType());
+        assertEquals(10, q.getScales().length());
+        assertEquals(200 + 40, q.sizeInBytes());
+
+        //Unpacked fp32 copy is not cached by default; when cached, it's counted in size
+        q.getUnpacked();
+        assertEquals(200 + 40, q.sizeInBytes());
+        q.setCacheUnpacked(true);
+        q.getUnpacked();
+        assertEquals(200 + 40 + 800, q.sizeInBytes());
+        q.setCacheUnpacked(false);
+        assertEquals(200 + 40, q.sizeInBytes());
+
+        //Per-channel scales: error is bounded by half of each channel's scale
+        INDArray restored = q.dequantize();
+        for (int i = 0; i < 10; i++) {
+            double err = w.getColumn(i).sub(restored.getColumn(i)).amaxNumber().doubleValue();
+            assertTrue("Column " + i + ": " + err, err <= q.getScales().getDouble(i) / 2 + 1e-6);
+        }
+        assertEquals(0.0, restored.getColumn(7).amaxNumber().doubleValue(), 0.0);
+    }
+
+    @Test
+    public void testMultiLayerNetwork() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .weightInit(WeightInit.XAVIER)
+                .activation(Activation.RELU)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).stride(1, 1).nOut(8).build())
+                .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).build())
+                .layer(new BatchNormalization.Builder().build())
+                .layer(new DenseLayer.Builder().nOut(32).build())
+                .layer(new OutputLayer.Builder().nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(12, 12, 2))
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        DataSetIterator iter = getData(new long[]{16, 2, 12, 12}, 5);
+        ActivationRanges ranges = QuantizationCalibrator.calibrate(net, iter, 0);
+        assertEquals(5, ranges.getNumBatches());
+        assertTrue(ranges.hasRange("0"));
+
+        QuantizedNetwork q = QuantizedNetwork.quantize(net, ranges);
+        assertEquals(Arrays.asList("0", "3", "4"), q.getQuantizedLayers());
+        assertEquals(Arrays.asList("2"), q.getFallbackLayers());
+
+        iter.reset();
+        DataSet ds = iter.next();
+        INDArray exp = net.output(ds.getFeatures());
+        INDArray act = q.outputSingle(ds.getFeatures());
+        assertArrayEquals(exp.shape(), act.shape());
+        assertEquals(0.0, exp.sub(act).amaxNumber().doubleValue(), 0.02);
+
+        File f = new File(testDir.newFolder(), "quantized.bin");
+        q.save(f);
+        QuantizedNetwork restored = QuantizedNetwork.load(f);
+        assertEquals(act, restored.outputSingle(ds.getFeatures()));
+        assertTrue(q.sizeInBytes() < net.numParams() * 4 / 2);
+
+        QuantizationEvaluator.Report r = QuantizationEvaluator.compare(net, restored, iter, 1);
+        assertEquals(80, r.getNumExamples());
+        assertTrue(r.getTopOneAgreement() > 0.9);
+        assertEquals(r.getFp32Accuracy(), r.getInt8Accuracy(), 0.1);
+        assertTrue(r.getInt8SizeBytes() < r.getFp32SizeBytes() / 2);
+    }
+
+    @Test
+    public void testComputationGraphLSTM() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .weightInit(WeightInit.XAVIER)
+                .activation(Activation.TANH)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("lstm", new LSTM.Builder().nIn(4).nOut(12).build(), "in")
+                .addLayer("last", new GlobalPoolingLayer.Builder().build(), "lstm")
+                .addLayer("dense", new DenseLayer.Builder().nIn(12).nOut(12).build(), "last")
+                .addVertex("merge", new MergeVertex(), "last", "dense")
+                .addLayer("out", new OutputLayer.Builder().nIn(24).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                .setOutputs("out")
+                .build();
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        DataSetIterator iter = getData(new long[]{8, 4, 10}, 3);
+        ActivationRanges ranges = QuantizationCalibrator.calibrate(net, iter, 3);
+        assertEquals(3, ranges.getNumBatches());
+
+        QuantizedNetwork q = QuantizedNetwork.quantize(net, ranges);
+        assertEquals(Arrays.asList("lstm", "dense", "out"), q.getQuantizedLayers());
+
+        iter.reset();
+        INDArray features = iter.next().getFeatures();
+        INDArray exp = net.outputSingle(features);
+        INDArray act = q.outputSingle(features);
+        assertEquals(0.0, exp.sub(act).amaxNumber().doubleValue(), 0.02);
+
+        //Dynamic input quantization, without calibration
+        QuantizedNetwork dynamic = QuantizedNetwork.quantize(net, null);
+        assertEquals(0.0, exp.sub(dynamic.outputSingle(features)).amaxNumber().doubleValue(), 0.02);
+
+        File f = new File(testDir.newFolder(), "quantized.bin");
+        q.save(f);
+        assertEquals(act, QuantizedNetwork.load(f).outputSingle(features));
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class MappedModelSerializerTest extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    protected MultiLayerNetwork getNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01))
+                        .activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new DenseLayer.Builder().nIn(5).nOut(20).build())
+                        .layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20)
+                                        .nOut(6).activation(Activation.IDENTITY).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    public void testWriteMLNModel() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+        net.fit(new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 6)));
+
+        File tempFile = tempDir.newFile();
+        MappedModelSerializer.writeModel(net, tempFile, true);
+        assertTrue(MappedModelSerializer.isMappedModel(tempFile));
+
+        MultiLayerNetwork network = MappedModelSerializer.restoreMultiLayerNetwork(tempFile, true, false);
+        assertEquals(net.getLayerWiseConfigurations().toJson(), network.getLayerWiseConfigurations().toJson());
+        assertEquals(net.params(), network.params());
+        assertEquals(net.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
+
+        INDArray input = Nd4j.rand(3, 5);
+        assertEquals(net.output(input), network.output(input));
+
+        // ModelSerializer should detect mapped format on its own
+        MultiLayerNetwork restored = ModelSerializer.restoreMultiLayerNetwork(tempFile);
+        assertEquals(net.params(), restored.params());
+    }
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+
+        File tempFile = tempDir.newFile();
+        MappedModelSerializer.writeModel(net, tempFile, false);
+        long length = tempFile.length();
+
+        // training restored network must not affect the file
+        MultiLayerNetwork network = MappedModelSerializer.restoreMultiLayerNetwork(tempFile);
+        network.fit(new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 6)));
+        assertNotEquals(net.params(), network.params());
+
+        MultiLayerNetwork restored = MappedModelSerializer.restoreMultiLayerNetwork(tempFile, false, true);
+        assertEquals(net.params(), restored.params());
+        assertEquals(length, tempFile.length());
+    }
+
+    @Test
+    public void testBlocksLargerThanChunk() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+        net.fit(new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 6)));
+        INDArray input = Nd4j.rand(3, 5);
+        INDArray expOut = net.output(input);
+
+        // not a multiple of element size, so chunk boundaries have to be aligned to elements
+        long chunkBytes = 26;
+        assertTrue(net.params().length() * 4 > 10 * chunkBytes);
+
+        File tempFile = tempDir.newFile();
+        MappedModelSerializer.writeModel(net, tempFile, true, chunkBytes);
+
+        // copy-on-write mode: blocks are copied chunk by chunk
+        MultiLayerNetwork network = MappedModelSerializer.restoreMultiLayerNetwork(tempFile, true, false, chunkBytes);
+        assertEquals(net.params(), network.params());
+        assertEquals(net.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
+        assertEquals(expOut, network.output(input));
+
+        network.fit(new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 6)));
+        assertNotEquals(net.params(), network.params());
+
+        // read-only mode: whole file is mapped natively, and doesn't have to be writable
+        assertTrue(tempFile.setWritable(false));
+        MultiLayerNetwork readOnly = MappedModelSerializer.restoreMultiLayerNetwork(tempFile, false, true, chunkBytes);
+        assertEquals(net.params(), readOnly.params());
+        assertEquals(expOut, readOnly.output(input));
+    }
+
+    @Test
+    public void testWriteCGModel() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01))
+                        .graphBuilder().addInputs("in")
+                        .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in")
+                        .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3)
+                                        .activation(Activation.SOFTMAX).build(), "dense")
+                        .setOutputs("out").build();
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+
+        File tempFile = tempDir.newFile();
+        MappedModelSerializer.writeModel(cg, tempFile, true);
+
+        ComputationGraph graph = ModelSerializer.restoreComputationGraph(tempFile);
+        assertEquals(cg.getConfiguration().toJson(), graph.getConfiguration().toJson());
+        assertEquals(cg.params(), graph.params());
+        assertEquals(cg.getUpdater().getStateViewArray(), graph.getUpdater().getStateViewArray());
+
+        try {
+            MappedModelSerializer.restoreMultiLayerNetwork(tempFile);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("ComputationGraph"));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RnnSessionStateStoreTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    protected MultiLayerNetwork getNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new LSTM.Builder().nIn(4).nOut(8).build())
+                        .layer(1, new SimpleRnn.Builder().nIn(8).nOut(6).build())
+                        .layer(2, new RnnOutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(6)
+                                        .nOut(3).activation(Activation.IDENTITY).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    public void testMultiLayerNetworkSteps() {
+        MultiLayerNetwork net = getNetwork();
+        RnnSessionStateStore store = new RnnSessionStateStore.Builder().initialCapacity(2).build();
+
+        //Reference: one network copy per session
+        String[] sessions = {"a", "b", "c", "d", "e"};
+        Map<String, MultiLayerNetwork> reference = new HashMap<>();
+        for (String s : sessions)
+            reference.put(s, net.clone());
+
+        Nd4j.getRandom().setSeed(12345);
+        String[][] batches = {{"a", "b"}, {"c", "a", "d"}, {"b"}, {"e", "d", "c", "b", "a"}, {"a", "e"}};
+        for (String[] ids : batches) {
+            INDArray in = Nd4j.rand(ids.length, 4);
+            INDArray out = store.step(net, ids, in);
+            assertArrayEquals(new long[]{ids.length, 3}, out.shape());
+
+            for (int i = 0; i < ids.length; i++) {
+                INDArray exp = reference.get(ids[i]).rnnTimeStep(in.get(NDArrayIndex.interval(i, i + 1), NDArrayIndex.all()));
+                assertEquals(exp, out.get(NDArrayIndex.interval(i, i + 1), NDArrayIndex.all()));
+            }
+        }
+
+        assertEquals(5, store.numSessions());
+        assertEquals(0, store.getNumEvicted());
+        assertEquals((8 + 8 + 6) * 8, store.getStateBytesPerSession());
+
+        //Network itself should be left without state
+        assertTrue(net.rnnGetPreviousState(0).isEmpty());
+        assertTrue(net.rnnGetPreviousState(1).isEmpty());
+
+        Map<String, Map<String, INDArray>> state = store.getSessionState("c");
+        assertEquals(2, state.size());
+        for (int i = 0; i < 2; i++) {
+            Map<String, INDArray> exp = reference.get("c").rnnGetPreviousState(i);
+            assertEquals(exp.keySet(), state.get(String.valueOf(i)).keySet());
+            for (String key : exp.keySet())
+                assertEquals(exp.get(key), state.get(String.valueOf(i)).get(key));
+        }
+    }
+
+    @Test
+    public void testTimeSeriesAndDuplicateSessions() {
+        MultiLayerNetwork net = getNetwork();
+        MultiLayerNetwork reference = net.clone();
+        RnnSessionStateStore store = new RnnSessionStateStore.Builder().build();
+
+        //Same session three times in one minibatch: processed as consecutive steps
+        INDArray in = Nd4j.rand(new int[]{3, 4, 2});
+        INDArray out = store.step(net, new String[]{"a", "a", "a"}, in);
+        assertArrayEquals(new long[]{3, 3, 2}, out.shape());
+
+        for (int i = 0; i < 3; i++) {
+            INDArray exp = reference.rnnTimeStep(in.get(NDArrayIndex.interval(i, i + 1), NDArrayIndex.all(), NDArrayIndex.all()));
+            assertEquals(exp, out.get(NDArrayIndex.interval(i, i + 1), NDArrayIndex.all(), NDArrayIndex.all()));
+        }
+        assertEquals(1, store.numSessions());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+        MultiLayerNetwork fresh = net.clone();
+        RnnSessionStateStore store = new RnnSessionStateStore.Builder().maxSessions(2).build();
+
+        INDArray in = Nd4j.rand(1, 4);
+        INDArray first = store.step(net, new String[]{"a"}, in);
+        store.step(net, new String[]{"b"}, in);
+        store.step(net, new String[]{"a"}, in);
+
+        //"b" is least recently used: inspecting its state doesn't count as use
+        assertNotNull(store.getSessionState("b"));
+        store.step(net, new String[]{"c"}, in);
+        assertEquals(2, store.numSessions());
+        assertEquals(1, store.getNumEvicted());
+        assertTrue(store.hasSession("a"));
+        assertFalse(store.hasSession("b"));
+
+        //Evicted and removed sessions start again from the initial state
+        assertEquals(first, store.step(net, new String[]{"b"}, in));
+        assertTrue(store.removeSession("b"));
+        assertFalse(store.removeSession("b"));
+        assertEquals(fresh.rnnTimeStep(in), store.step(net, new String[]{"b"}, in));
+
+        RnnSessionStateStore ttlStore = new RnnSessionStateStore.Builder().ttl(50, TimeUnit.MILLISECONDS).build();
+        ttlStore.step(net, new String[]{"a", "b"}, Nd4j.rand(2, 4));
+        Thread.sleep(100);
+        ttlStore.evictExpired();
+        assertEquals(0, ttlStore.numSessions());
+        assertEquals(2, ttlStore.getNumEvicted());
+
+        ttlStore = new RnnSessionStateStore.Builder().ttl(300, TimeUnit.MILLISECONDS).build();
+        ttlStore.step(net, new String[]{"a"}, in);
+        Thread.sleep(200);
+        ttlStore.step(net, new String[]{"b"}, in);
+        assertNotNull(ttlStore.getSessionState("a"));
+        Thread.sleep(200);
+        ttlStore.evictExpired();
+        assertFalse(ttlStore.hasSession("a"));
+        assertTrue(ttlStore.hasSession("b"));
+    }
+
+    @Test
+    public void testComputationGraphAndStateDataType() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .activation(Activation.TANH).weightInit(WeightInit.XAVIER).graphBuilder()
+                        .addInputs("in")
+                        .addLayer("lstm", new LSTM.Builder().nIn(4).nOut(8).build(), "in")
+                        .addLayer("out", new RnnOutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(8)
+                                        .nOut(3).activation(Activation.IDENTITY).build(), "lstm")
+                        .setOutputs("out")
+                        .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        ComputationGraph reference = graph.clone();
+
+        RnnSessionStateStore store = new RnnSessionStateStore.Builder().stateDataType(DataType.FLOAT).build();
+        for (int i = 0; i < 3; i++) {
+            INDArray in = Nd4j.rand(1, 4);
+            INDArray out = store.step(graph, new String[]{"a"}, in)[0];
+            INDArray exp = reference.rnnTimeStep(in)[0];
+            assertEquals(DataType.DOUBLE, out.dataType());
+            assertTrue(exp.equalsWithEps(out, 1e-5));
+        }
+        assertEquals(8 * 2 * 4, store.getStateBytesPerSession());
+    }
+}
@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator.file;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a memory-mapped DataSet container, written by {@link MappedDataSetWriter}.<br>
+ * Container stores individual examples, not minibatches: features, labels and masks are kept as separate blocks,
+ * with all examples of one block having the same shape and data type, so example i is located at
+ * {@code offset + i * bytesPerExample}. This allows assembling minibatches of arbitrary size and arbitrary
+ * composition (i.e. reshuffled on every epoch) without re-writing the data - see {@link MappedDataSetIterator}.<br>
+ * <br>
+ * Container layout (header values are big-endian, data blocks use byte order recorded in the header):
+ * <pre>
+ * magic "DL4JMDST", int version, int alignment, byte order flag, long number of examples
+ * for each of features, labels, features mask, labels mask: present flag, then (if present)
+ * data type, int rank, per-example shape, long offset
+ * padding, then each block starting at offset that is multiple of alignment
+ * </pre>
+ * Blocks are mapped in chunks of at most {@link Integer#MAX_VALUE} bytes, so container size isn't limited by the
+ * maximum size of single mapping in Java. Only the example itself has to fit into a single chunk.
+ */
+public class MappedDataSetContainer {
+    public static final int VERSION = 1;
+    public static final int DEFAULT_ALIGNMENT = 4096;
+    public static final String DEFAULT_EXTENSION = "mds";
+
+    public static final int FEATURES = 0;
+    public static final int LABELS = 1;
+    public static final int FEATURES_MASK = 2;
+    public static final int LABELS_MASK = 3;
+    protected static final int NUM_BLOCKS = 4;
+
+    protected static final byte[] MAGIC = "DL4JMDST".getBytes(Charset.forName("UTF-8"));
+
+    protected final File file;
+    protected final long numExamples;
+    protected final Block[] blocks = new Block[NUM_BLOCKS];
+
+    /**
+     * Map existing container file
+     *
+     * @param file the container file, written by {@link MappedDataSetWriter}
+     * @throws IOException
+     */
+    public MappedDataSetContainer(@NonNull File file) throws IOException {
+        if (!isMappedDataSet(file))
+            throw new IllegalArgumentException("File [" + file.getAbsolutePath() + "] isn't memory-mappable DataSet container");
+
+        this.file = file;
+        ByteOrder order;
+        long[] offsets = new long[NUM_BLOCKS];
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            dis.skipBytes(MAGIC.length);
+            int version = dis.readInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported container version: " + version);
+
+            dis.readInt();
+            order = dis.readBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            numExamples = dis.readLong();
+
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                if (!dis.readBoolean())
+                    continue;
+
+                DataType type = DataType.valueOf(dis.readUTF());
+                long[] shape = new long[dis.readInt()];
+                for (int i = 0; i < shape.length; i++)
+                    shape[i] = dis.readLong();
+
+                blocks[e] = new Block(type, shape);
+                offsets[e] = dis.readLong();
+            }
+        }
+
+        if (order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Container was written with " + order + " byte order, but this platform uses "
+                            + ByteOrder.nativeOrder());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                if (blocks[e] != null)
+                    blocks[e].map(channel, offsets[e], numExamples);
+            }
+        }
+    }
+
+    /**
+     * Check if the file is memory-mappable DataSet container
+     *
+     * @param file the file to check
+     * @return true if file starts with container magic bytes
+     */
+    public static boolean isMappedDataSet(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAGIC.length)
+            return false;
+
+        byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            dis.readFully(magic);
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(MAGIC, magic);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of examples stored in this container
+     */
+    public long numExamples() {
+        return numExamples;
+    }
+
+    /**
+     * @param block one of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK}, {@link #LABELS_MASK}
+     * @return true if the block is present in this container
+     */
+    public boolean hasBlock(int block) {
+        return blocks[block] != null;
+    }
+
+    /**
+     * @param block one of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK}, {@link #LABELS_MASK}
+     * @return shape of a single example in the given block (i.e. array shape without minibatch dimension),
+     * or null if block isn't present
+     */
+    public long[] exampleShape(int block) {
+        return blocks[block] == null ? null : blocks[block].shape.clone();
+    }
+
+    /**
+     * @param block one of {@link #FEATURES}, {@link #LABELS}, {@link #FEATURES_MASK}, {@link #LABELS_MASK}
+     * @return data type of the given block, or null if block isn't present
+     */
+    public DataType dataType(int block) {
+        return blocks[block] == null ? null : blocks[block].type;
+    }
+
+    /**
+     * Check if examples from both containers can be combined into the same minibatch
+     */
+    public boolean isCompatible(@NonNull MappedDataSetContainer other) {
+        for (int e = 0; e < NUM_BLOCKS; e++) {
+            if ((blocks[e] == null) != (other.blocks[e] == null))
+                return false;
+
+            if (blocks[e] != null && (blocks[e].type != other.blocks[e].type
+                            || !Arrays.equals(blocks[e].shape, other.blocks[e].shape)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Assemble minibatch from examples with given indices, in the given order
+     *
+     * @param indices indices of examples within this container
+     * @return DataSet with indices.length examples
+     */
+    public DataSet get(@NonNull long... indices) {
+        return gather(Collections.singletonList(this), new int[indices.length], indices);
+    }
+
+    /**
+     * Assemble minibatch from examples in range [from, to)
+     */
+    public DataSet get(long from, long to) {
+        long[] indices = new long[(int) (to - from)];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = from + i;
+
+        return get(indices);
+    }
+
+    /**
+     * Assemble minibatch from examples stored in multiple compatible containers.<br>
+     * Each example is copied exactly once: straight from the mapped region into the buffer of resulting array,
+     * and consecutive examples from the same container are copied with a single bulk copy.
+     *
+     * @param containers   compatible containers, see {@link #isCompatible(MappedDataSetContainer)}
+     * @param containerIdx for each example, index of its container in the list
+     * @param exampleIdx   for each example, index of example within its container
+     * @return DataSet with exampleIdx.length examples
+     */
+    public static DataSet gather(@NonNull List<MappedDataSetContainer> containers, @NonNull int[] containerIdx,
+                    @NonNull long[] exampleIdx) {
+        if (containerIdx.length != exampleIdx.length)
+            throw new IllegalArgumentException("Container and example indices must have the same length: got "
+                            + containerIdx.length + " vs. " + exampleIdx.length);
+        if (exampleIdx.length == 0)
+            throw new IllegalArgumentException("Unable to assemble empty minibatch");
+
+        for (int i = 0; i < exampleIdx.length; i++) {
+            long numExamples = containers.get(containerIdx[i]).numExamples;
+            if (exampleIdx[i] < 0 || exampleIdx[i] >= numExamples)
+                throw new IndexOutOfBoundsException("Example index " + exampleIdx[i] + " is out of bounds for container with "
+                                + numExamples + " examples");
+        }
+
+        INDArray[] arrays = new INDArray[NUM_BLOCKS];
+        for (int e = 0; e < NUM_BLOCKS; e++) {
+            if (containers.get(0).blocks[e] != null)
+                arrays[e] = gather(containers, e, containerIdx, exampleIdx);
+        }
+
+        return new DataSet(arrays[FEATURES], arrays[LABELS], arrays[FEATURES_MASK], arrays[LABELS_MASK]);
+    }
+
+    protected static INDArray gather(List<MappedDataSetContainer> containers, int block, int[] containerIdx,
+                    long[] exampleIdx) {
+        Block first = containers.get(0).blocks[block];
+        int n = exampleIdx.length;
+        if (first.exampleBytes * n > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Minibatch of " + n + " examples is too large: "
+                            + first.exampleBytes * n + " bytes");
+
+        long[] shape = new long[first.shape.length + 1];
+        shape[0] = n;
+        System.arraycopy(first.shape, 0, shape, 1, first.shape.length);
+
+        INDArray result;
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            result = Nd4j.createUninitialized(first.type, shape, 'c');
+        }
+
+        ByteBuffer target = result.data().asNio();
+        target.limit((int) (first.exampleBytes * n));
+
+        int i = 0;
+        while (i < n) {
+            Block b = containers.get(containerIdx[i]).blocks[block];
+            int chunk = (int) (exampleIdx[i] / b.examplesPerChunk);
+            int inChunk = (int) (exampleIdx[i] % b.examplesPerChunk);
+
+            // merge consecutive examples into single copy, as long as they're stored in the same chunk
+            int run = 1;
+            while (i + run < n && containerIdx[i + run] == containerIdx[i] && exampleIdx[i + run] == exampleIdx[i] + run
+                            && inChunk + run < b.examplesPerChunk)
+                run++;
+
+            ByteBuffer source = b.chunks[chunk].duplicate();
+            source.limit((int) ((inChunk + run) * b.exampleBytes));
+            source.position((int) (inChunk * b.exampleBytes));
+            target.position((int) (i * b.exampleBytes));
+            target.put(source);
+
+            i += run;
+        }
+
+        // data was written to the host buffer directly
+        Nd4j.getAffinityManager().tagLocation(result, AffinityManager.Location.HOST);
+        return result;
+    }
+
+    protected static class Block {
+        protected final DataType type;
+        protected final long[] shape;
+        protected final long exampleBytes;
+        protected int examplesPerChunk;
+        protected MappedByteBuffer[] chunks;
+
+        protected Block(DataType type, long[] shape) {
+            this.type = type;
+            this.shape = shape;
+
+            long length = 1;
+            for (long s : shape)
+                length *= s;
+            this.exampleBytes = length * DataTypeUtil.lengthForDtype(type);
+        }
+
+        protected void map(FileChannel channel, long offset, long numExamples) throws IOException {
+            if (exampleBytes <= 0 || exampleBytes > Integer.MAX_VALUE)
+                throw new IllegalStateException("Unable to map examples of " + exampleBytes + " bytes");
+
+            examplesPerChunk = (int) Math.min(Integer.MAX_VALUE / exampleBytes, Math.max(1, numExamples));
+            chunks = new MappedByteBuffer[(int) ((numExamples + examplesPerChunk - 1) / examplesPerChunk)];
+            for (int c = 0; c < chunks.length; c++) {
+                long first = (long) c * examplesPerChunk;
+                long count = Math.min(examplesPerChunk, numExamples - first);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * exampleBytes, count * exampleBytes);
+                chunks[c].order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator.file;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.util.MathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Iterate over examples stored in one or more {@link MappedDataSetContainer} files (for example, shards written
+ * by different Spark partitions).<br>
+ * Minibatches are assembled on the fly from individual examples, so if random number generator is provided,
+ * examples from all containers are reshuffled on every {@link #reset()} - i.e. every epoch sees different minibatches,
+ * without re-writing the data. Without RNG, examples are returned in order they were written, and each minibatch
+ * is assembled with a single copy per block.
+ */
+public class MappedDataSetIterator implements DataSetIterator {
+    protected final List<MappedDataSetContainer> containers;
+    protected final long[] starts;
+    protected final int numExamples;
+    protected final int batchSize;
+    protected final Random rng;
+
+    protected int[] order;
+    protected int position;
+
+    @Getter
+    @Setter
+    protected DataSetPreProcessor preProcessor;
+    @Setter
+    protected List<String> labels;
+
+    /**
+     * Create iterator over a single container, reshuffling examples on every epoch
+     *
+     * @param file      the container file
+     * @param batchSize minibatch size
+     */
+    public MappedDataSetIterator(@NonNull File file, int batchSize) throws IOException {
+        this(new File[] {file}, batchSize, new Random());
+    }
+
+    /**
+     * @param files     container files
+     * @param batchSize minibatch size
+     * @param rng       random number generator used to shuffle examples on every epoch. May be null: in that case,
+     *                  examples are returned in order
+     */
+    public MappedDataSetIterator(@NonNull File[] files, int batchSize, Random rng) throws IOException {
+        this(open(files), batchSize, rng);
+    }
+
+    /**
+     * @param containers compatible containers, see {@link MappedDataSetContainer#isCompatible(MappedDataSetContainer)}
+     * @param batchSize  minibatch size
+     * @param rng        random number generator used to shuffle examples on every epoch. May be null: in that case,
+     *                   examples are returned in order
+     */
+    public MappedDataSetIterator(@NonNull List<MappedDataSetContainer> containers, int batchSize, Random rng) {
+        if (containers.isEmpty())
+            throw new IllegalArgumentException("No containers provided");
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+
+        this.containers = new ArrayList<>(containers);
+        this.batchSize = batchSize;
+        this.rng = rng;
+
+        starts = new long[containers.size()];
+        long total = 0;
+        for (int c = 0; c < containers.size(); c++) {
+            if (!containers.get(0).isCompatible(containers.get(c)))
+                throw new IllegalArgumentException("Container [" + containers.get(c).getFile()
+                                + "] has different arrays, shapes or data types than [" + containers.get(0).getFile() + "]");
+
+            starts[c] = total;
+            total += containers.get(c).numExamples();
+        }
+
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many examples: " + total + ", max supported number is " + Integer.MAX_VALUE);
+        if (total == 0)
+            throw new IllegalArgumentException("Containers have no examples");
+
+        numExamples = (int) total;
+        if (rng != null) {
+            order = new int[numExamples];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            MathUtils.shuffleArray(order, rng);
+        }
+    }
+
+    protected static List<MappedDataSetContainer> open(File[] files) throws IOException {
+        List<MappedDataSetContainer> list = new ArrayList<>(files.length);
+        for (File f : files)
+            list.add(new MappedDataSetContainer(f));
+        return list;
+    }
+
+    /**
+     * @return total number of examples in all containers
+     */
+    public int numExamples() {
+        return numExamples;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < numExamples;
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+
+        int n = Math.min(num, numExamples - position);
+        int[] containerIdx = new int[n];
+        long[] exampleIdx = new long[n];
+        for (int i = 0; i < n; i++) {
+            int idx = order != null ? order[position + i] : position + i;
+            int c = Arrays.binarySearch(starts, idx);
+            if (c < 0)
+                c = -c - 2;
+
+            // skip empty containers, which have the same start as the next one
+            while (c + 1 < starts.length && starts[c + 1] == idx)
+                c++;
+
+            containerIdx[i] = c;
+            exampleIdx[i] = idx - starts[c];
+        }
+        position += n;
+
+        DataSet ds = MappedDataSetContainer.gather(containers, containerIdx, exampleIdx);
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    @Override
+    public int inputColumns() {
+        return (int) length(containers.get(0).exampleShape(MappedDataSetContainer.FEATURES));
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return (int) length(containers.get(0).exampleShape(MappedDataSetContainer.LABELS));
+    }
+
+    protected static long length(long[] shape) {
+        if (shape == null)
+            return -1;
+
+        long length = 1;
+        for (long s : shape)
+            length *= s;
+        return length;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        if (rng != null)
+            MathUtils.shuffleArray(order, rng);
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator.file;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.deeplearning4j.datasets.iterator.file.MappedDataSetContainer.*;
+
+/**
+ * Writer for {@link MappedDataSetContainer} files.<br>
+ * Minibatches are appended one by one, and each block (features, labels, masks) is streamed into its own
+ * temporary file next to the target file. On {@link #close()} the header is written and blocks are concatenated
+ * into the container, so the whole dataset never has to fit into memory.<br>
+ * All DataSets written to the same container must have the same set of arrays, and the same data type and shape
+ * for each array, except for minibatch dimension: i.e. variable length time series have to be padded and masked.
+ */
+public class MappedDataSetWriter implements Closeable {
+    protected final File file;
+    protected final File[] tempFiles = new File[NUM_BLOCKS];
+    protected final RandomAccessFile[] tempStreams = new RandomAccessFile[NUM_BLOCKS];
+    protected final long[] tempPositions = new long[NUM_BLOCKS];
+
+    protected DataType[] types;
+    protected long[][] shapes;
+    protected long numExamples;
+    protected boolean closed;
+
+    /**
+     * @param file the container file to create. Existing file will be overwritten
+     */
+    public MappedDataSetWriter(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Write all DataSets from the iterator into a single container file
+     *
+     * @param iterator the iterator to write
+     * @param file     the container file to create
+     * @return number of examples written
+     * @throws IOException
+     */
+    public static long write(@NonNull DataSetIterator iterator, @NonNull File file) throws IOException {
+        try (MappedDataSetWriter writer = new MappedDataSetWriter(file)) {
+            while (iterator.hasNext())
+                writer.write(iterator.next());
+
+            return writer.numExamples();
+        }
+    }
+
+    /**
+     * Append all examples of the DataSet to the container
+     *
+     * @param dataSet the DataSet to append
+     * @throws IOException
+     */
+    public void write(@NonNull DataSet dataSet) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Writer is already closed");
+
+        INDArray[] arrays = new INDArray[] {dataSet.getFeatures(), dataSet.getLabels(), dataSet.getFeaturesMaskArray(),
+                        dataSet.getLabelsMaskArray()};
+        if (arrays[FEATURES] == null)
+            throw new IllegalArgumentException("Unable to write DataSet without features");
+
+        long minibatch = arrays[FEATURES].size(0);
+        if (types == null) {
+            types = new DataType[NUM_BLOCKS];
+            shapes = new long[NUM_BLOCKS][];
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                if (arrays[e] == null)
+                    continue;
+
+                types[e] = arrays[e].dataType();
+                shapes[e] = Arrays.copyOfRange(arrays[e].shape(), 1, arrays[e].rank());
+                if (bytes(e) == 0)
+                    throw new IllegalArgumentException("Unable to write empty examples: array shape "
+                                    + Arrays.toString(arrays[e].shape()));
+            }
+        }
+
+        for (int e = 0; e < NUM_BLOCKS; e++) {
+            if ((arrays[e] == null) != (types[e] == null))
+                throw new IllegalArgumentException("All DataSets in container must have the same arrays: " + name(e)
+                                + (types[e] == null ? " wasn't present before" : " is missing"));
+            if (arrays[e] == null)
+                continue;
+
+            if (arrays[e].dataType() != types[e] || arrays[e].size(0) != minibatch
+                            || !Arrays.equals(shapes[e], Arrays.copyOfRange(arrays[e].shape(), 1, arrays[e].rank())))
+                throw new IllegalArgumentException("All DataSets in container must have the same per-example shape and data type: "
+                                + name(e) + " expected " + types[e] + " " + Arrays.toString(shapes[e]) + " with minibatch "
+                                + minibatch + ", got " + arrays[e].dataType() + " " + Arrays.toString(arrays[e].shape()));
+        }
+
+        for (int e = 0; e < NUM_BLOCKS; e++) {
+            if (arrays[e] == null)
+                continue;
+
+            INDArray array = arrays[e];
+            if (array.ordering() != 'c' || array.isView() || array.data().offset() != 0
+                            || array.data().length() != array.length())
+                array = array.dup('c');
+
+            long length = bytes(e) * minibatch;
+            if (length > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Minibatch is too large: " + length + " bytes for " + name(e));
+
+            Nd4j.getAffinityManager().ensureLocation(array, AffinityManager.Location.HOST);
+            ByteBuffer data = array.data().asNio();
+            data.position(0);
+            data.limit((int) length);
+
+            if (tempStreams[e] == null) {
+                tempFiles[e] = File.createTempFile(file.getName() + "_" + e + "_", ".tmp", file.getAbsoluteFile().getParentFile());
+                tempFiles[e].deleteOnExit();
+                tempStreams[e] = new RandomAccessFile(tempFiles[e], "rw");
+            }
+            writeFully(tempStreams[e].getChannel(), data, tempPositions[e]);
+            tempPositions[e] += length;
+        }
+        numExamples += minibatch;
+    }
+
+    /**
+     * @return number of examples written so far
+     */
+    public long numExamples() {
+        return numExamples;
+    }
+
+    /**
+     * Write the header, assemble container file from temporary blocks, and delete temporary files
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            long[] offsets = new long[NUM_BLOCKS];
+            byte[] header = header(offsets);
+            long position = header.length;
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                if (tempStreams[e] == null)
+                    continue;
+
+                position = align(position, DEFAULT_ALIGNMENT);
+                offsets[e] = position;
+                position += tempPositions[e];
+            }
+            header = header(offsets);
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                channel.truncate(0);
+                writeFully(channel, ByteBuffer.wrap(header), 0);
+                for (int e = 0; e < NUM_BLOCKS; e++) {
+                    if (tempStreams[e] == null)
+                        continue;
+
+                    // transferTo() writes at channel position, which is allowed to be beyond the end of file
+                    FileChannel source = tempStreams[e].getChannel();
+                    channel.position(offsets[e]);
+                    long transferred = 0;
+                    while (transferred < tempPositions[e])
+                        transferred += source.transferTo(transferred, tempPositions[e] - transferred, channel);
+                }
+                channel.force(false);
+            }
+        } finally {
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                if (tempStreams[e] == null)
+                    continue;
+
+                tempStreams[e].close();
+                tempFiles[e].delete();
+            }
+        }
+    }
+
+    protected byte[] header(long[] offsets) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.write(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(DEFAULT_ALIGNMENT);
+            dos.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+            dos.writeLong(numExamples);
+            for (int e = 0; e < NUM_BLOCKS; e++) {
+                dos.writeBoolean(types != null && types[e] != null);
+                if (types == null || types[e] == null)
+                    continue;
+
+                dos.writeUTF(types[e].name());
+                dos.writeInt(shapes[e].length);
+                for (long s : shapes[e])
+                    dos.writeLong(s);
+                dos.writeLong(offsets[e]);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    protected long bytes(int block) {
+        long length = 1;
+        for (long s : shapes[block])
+            length *= s;
+        return length * DataTypeUtil.lengthForDtype(types[block]);
+    }
+
+    protected static String name(int block) {
+        switch (block) {
+            case FEATURES:
+                return "features";
+            case LABELS:
+                return "labels";
+            case FEATURES_MASK:
+                return "features mask";
+            default:
+                return "labels mask";
+        }
+    }
+
+    protected static long align(long position, int alignment) {
+        long remainder = position % alignment;
+        return remainder == 0 ? position : position + alignment - remainder;
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
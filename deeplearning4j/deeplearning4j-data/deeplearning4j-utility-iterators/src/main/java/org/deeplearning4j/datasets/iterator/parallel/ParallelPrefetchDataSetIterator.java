@@ -0,0 +1,668 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.datasets.iterator.parallel;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.datasets.iterator.callbacks.DataSetCallback;
+import org.deeplearning4j.datasets.iterator.callbacks.DefaultCallback;
+import org.nd4j.api.loader.Loader;
+import org.nd4j.api.loader.SourceFactory;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.MathUtils;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Prefetching iterator wrapper, that uses multiple producer threads to build DataSets.
+ *
+ * Unlike {@link org.deeplearning4j.datasets.iterator.AsyncDataSetIterator}, which is limited to single background
+ * thread, this iterator is able to use N cores for ETL. Two kinds of sources are supported:
+ * <ul>
+ *     <li>Partitions: list of independent DataSetIterators (i.e. one per input split). Each partition is drained
+ *     by single producer at a time. Output order is not defined.</li>
+ *     <li>Paths + {@link Loader}: each path is loaded into DataSet by any of producers. Output order can optionally
+ *     match order of paths.</li>
+ * </ul>
+ *
+ * Number of DataSets prefetched, but not yet consumed, is bounded by prefetchSize across all producers.
+ * If workspaces are enabled, each producer builds DataSets in own cyclic workspace, so arrays memory is recycled
+ * instead of being allocated for each batch. PLEASE NOTE: in this case DataSet returned by this iterator is valid
+ * only until roughly prefetchSize more DataSets are consumed, same as for AsyncDataSetIterator.
+ *
+ * Starvation metrics (how often and for how long consumer had to wait for data) are available via getters.
+ */
+@Slf4j
+public class ParallelPrefetchDataSetIterator implements DataSetIterator {
+    // marker for DataSets that were skipped by loader, so ordering can advance past them
+    private static final DataSet SKIP = new DataSet();
+
+    protected final List<DataSetIterator> partitions;
+    protected final List<String> paths;
+    protected final Loader<DataSet> loader;
+    protected final SourceFactory sourceFactory;
+    protected final Random rng;
+    protected final int[] order;
+
+    protected final int workers;
+    protected final int prefetchSize;
+    protected final boolean ordered;
+    protected final boolean useWorkspace;
+    protected final DataSetCallback callback;
+    protected final Integer deviceId;
+    protected final String workspaceId = "PPDSI_ITER-" + UUID.randomUUID().toString();
+
+    protected volatile DataSetPreProcessor preProcessor;
+
+    // state shared between consumer and producers, guarded by lock
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition available = lock.newCondition();
+    protected final TreeMap<Long, DataSet> orderedBuffer = new TreeMap<>();
+    protected final ArrayDeque<DataSet> unorderedBuffer = new ArrayDeque<>();
+    protected int activeProducers;
+    protected long nextSequence;
+
+    protected Semaphore slots;
+    protected AtomicInteger claimCounter;
+    protected List<ProducerThread> producers = new ArrayList<>();
+    protected volatile RuntimeException throwable;
+
+    // metrics
+    protected final AtomicLong batchesProduced = new AtomicLong(0);
+    protected final AtomicLong batchesConsumed = new AtomicLong(0);
+    protected final AtomicLong starvationCount = new AtomicLong(0);
+    protected final AtomicLong starvationNanos = new AtomicLong(0);
+    protected final AtomicLong producerBlockedNanos = new AtomicLong(0);
+
+    protected DataSet nextElement;
+
+    protected ParallelPrefetchDataSetIterator(Builder builder) {
+        this.partitions = builder.partitions;
+        this.paths = builder.paths;
+        this.loader = builder.loader;
+        this.sourceFactory = builder.sourceFactory;
+        this.rng = builder.rng;
+        this.workers = builder.workers;
+        this.prefetchSize = builder.prefetchSize;
+        this.ordered = builder.ordered;
+        this.useWorkspace = builder.useWorkspace;
+        this.callback = builder.callback;
+        this.deviceId = builder.deviceId;
+        this.preProcessor = builder.preProcessor;
+
+        if (paths != null) {
+            order = new int[paths.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            if (rng != null)
+                MathUtils.shuffleArray(order, rng);
+        } else {
+            order = null;
+        }
+
+        start();
+    }
+
+    protected void start() {
+        lock.lock();
+        try {
+            orderedBuffer.clear();
+            unorderedBuffer.clear();
+            nextSequence = 0;
+            activeProducers = workers;
+        } finally {
+            lock.unlock();
+        }
+
+        slots = new Semaphore(prefetchSize);
+        claimCounter = new AtomicInteger(0);
+        throwable = null;
+        nextElement = null;
+
+        producers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            ProducerThread t = new ProducerThread(i);
+
+            // producers should have the same thread->device affinity, as master thread
+            Nd4j.getAffinityManager().attachThreadToDevice(t, deviceId);
+            producers.add(t);
+        }
+
+        for (ProducerThread t : producers)
+            t.start();
+    }
+
+    protected void stop() {
+        for (ProducerThread t : producers)
+            t.interrupt();
+
+        for (ProducerThread t : producers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        lock.lock();
+        try {
+            orderedBuffer.clear();
+            unorderedBuffer.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        for (ProducerThread t : producers)
+            t.destroyWorkspace();
+    }
+
+    /**
+     * This method will terminate producer threads AND will destroy attached workspaces (if any)
+     *
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        stop();
+        producers = new ArrayList<>();
+    }
+
+    @Override
+    public void reset() {
+        if (!resetSupported())
+            throw new UnsupportedOperationException("Reset isn't supported by underlying source");
+
+        stop();
+
+        if (partitions != null) {
+            for (DataSetIterator p : partitions)
+                p.reset();
+        } else if (rng != null) {
+            MathUtils.shuffleArray(order, rng);
+        }
+
+        start();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        if (partitions != null) {
+            for (DataSetIterator p : partitions)
+                if (!p.resetSupported())
+                    return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextElement != null)
+            return true;
+
+        lock.lock();
+        try {
+            long waitStart = 0;
+            while (true) {
+                if (throwable != null)
+                    throw throwable;
+
+                DataSet ds = ordered ? orderedBuffer.remove(nextSequence) : unorderedBuffer.poll();
+                if (ds != null) {
+                    if (ordered)
+                        nextSequence++;
+
+                    slots.release();
+                    if (ds == SKIP)
+                        continue;
+
+                    if (waitStart != 0)
+                        starvationNanos.addAndGet(System.nanoTime() - waitStart);
+
+                    batchesConsumed.incrementAndGet();
+                    nextElement = ds;
+                    return true;
+                }
+
+                if (activeProducers == 0) {
+                    if (ordered && !orderedBuffer.isEmpty())
+                        throw new ND4JIllegalStateException("Missing DataSet for sequence " + nextSequence);
+                    return false;
+                }
+
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                    starvationCount.incrementAndGet();
+                }
+
+                available.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        DataSet ds = nextElement;
+        nextElement = null;
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int inputColumns() {
+        if (partitions != null)
+            return partitions.get(0).inputColumns();
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public int totalOutcomes() {
+        if (partitions != null)
+            return partitions.get(0).totalOutcomes();
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public int batch() {
+        if (partitions != null)
+            return partitions.get(0).batch();
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public List<String> getLabels() {
+        if (partitions != null)
+            return partitions.get(0).getLabels();
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    /**
+     * PLEASE NOTE: preProcessor is applied by producer threads, so it has to be thread-safe
+     */
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    /**
+     * @return number of DataSets built by producers since creation or last {@link #resetStats()} call
+     */
+    public long getBatchesProduced() {
+        return batchesProduced.get();
+    }
+
+    /**
+     * @return number of DataSets returned to consumer since creation or last {@link #resetStats()} call
+     */
+    public long getBatchesConsumed() {
+        return batchesConsumed.get();
+    }
+
+    /**
+     * @return number of times consumer had to wait, because no DataSet was ready
+     */
+    public long getStarvationCount() {
+        return starvationCount.get();
+    }
+
+    /**
+     * @return total time consumer spent waiting for DataSets, in milliseconds
+     */
+    public long getStarvationTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(starvationNanos.get());
+    }
+
+    /**
+     * @return fraction of DataSets that consumer had to wait for. Values close to 1.0 mean ETL is the bottleneck
+     */
+    public double getStarvationRatio() {
+        long consumed = batchesConsumed.get();
+        return consumed == 0 ? 0.0 : (double) starvationCount.get() / consumed;
+    }
+
+    /**
+     * @return total time producers spent waiting for free prefetch slot, in milliseconds, summed over producers.
+     * Large values mean consumer is the bottleneck, and number of workers can be reduced
+     */
+    public long getProducersBlockedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(producerBlockedNanos.get());
+    }
+
+    public void resetStats() {
+        batchesProduced.set(0);
+        batchesConsumed.set(0);
+        starvationCount.set(0);
+        starvationNanos.set(0);
+        producerBlockedNanos.set(0);
+    }
+
+    protected void publish(long sequence, DataSet ds) {
+        lock.lock();
+        try {
+            if (ordered)
+                orderedBuffer.put(sequence, ds);
+            else
+                unorderedBuffer.add(ds);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected DataSet process(DataSet ds) {
+        if (ds == null)
+            return null;
+
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+
+        if (callback != null)
+            callback.call(ds);
+
+        return ds;
+    }
+
+    protected class ProducerThread extends Thread {
+        private final WorkspaceConfiguration configuration = WorkspaceConfiguration.builder()
+                        .minSize(10 * 1024L * 1024L).overallocationLimit(prefetchSize + 2)
+                        .policyReset(ResetPolicy.ENDOFBUFFER_REACHED).policyLearning(LearningPolicy.FIRST_LOOP)
+                        .policyAllocation(AllocationPolicy.OVERALLOCATE).policySpill(SpillPolicy.REALLOCATE).build();
+
+        private MemoryWorkspace workspace;
+
+        protected ProducerThread(int index) {
+            this.setDaemon(true);
+            this.setName("PPDSI prefetch thread " + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (useWorkspace)
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId);
+
+                if (partitions != null)
+                    runPartitions();
+                else
+                    runPaths();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                throwable = e;
+            } catch (Exception e) {
+                throwable = new RuntimeException(e);
+            } finally {
+                lock.lock();
+                try {
+                    activeProducers--;
+                    available.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        protected void acquireSlot() throws InterruptedException {
+            if (!slots.tryAcquire()) {
+                long time = System.nanoTime();
+                slots.acquire();
+                producerBlockedNanos.addAndGet(System.nanoTime() - time);
+            }
+        }
+
+        protected void runPartitions() throws InterruptedException {
+            int p;
+            while ((p = claimCounter.getAndIncrement()) < partitions.size()) {
+                DataSetIterator partition = partitions.get(p);
+                while (!isInterrupted()) {
+                    acquireSlot();
+
+                    DataSet ds;
+                    if (useWorkspace) {
+                        try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                            ds = partition.hasNext() ? process(partition.next()) : null;
+                        }
+                    } else {
+                        ds = partition.hasNext() ? process(partition.next()) : null;
+                    }
+
+                    if (ds == null) {
+                        slots.release();
+                        if (!partition.hasNext())
+                            break;
+                        continue;
+                    }
+
+                    // we want to ensure underlying iterator finished dataset creation
+                    Nd4j.getExecutioner().commit();
+
+                    batchesProduced.incrementAndGet();
+                    publish(0, ds);
+                }
+            }
+        }
+
+        protected void runPaths() throws Exception {
+            while (!isInterrupted()) {
+                // slot is acquired before claiming path, so item consumer waits for always holds a slot
+                acquireSlot();
+
+                int idx = claimCounter.getAndIncrement();
+                if (idx >= order.length) {
+                    slots.release();
+                    return;
+                }
+
+                String path = paths.get(order[idx]);
+                DataSet ds;
+                if (useWorkspace) {
+                    try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                        ds = process(loader.load(sourceFactory.getSource(path)));
+                    }
+                } else {
+                    ds = process(loader.load(sourceFactory.getSource(path)));
+                }
+
+                Nd4j.getExecutioner().commit();
+
+                if (ds != null)
+                    batchesProduced.incrementAndGet();
+
+                publish(idx, ds == null ? SKIP : ds);
+            }
+        }
+
+        protected void destroyWorkspace() {
+            if (workspace != null) {
+                log.debug("Manually destroying PPDSI workspace");
+                workspace.destroyWorkspace(true);
+                workspace = null;
+            }
+        }
+    }
+
+    public static class Builder {
+        private List<DataSetIterator> partitions;
+        private List<String> paths;
+        private Loader<DataSet> loader;
+        private SourceFactory sourceFactory;
+        private Random rng;
+
+        private int workers = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        private int prefetchSize = -1;
+        private boolean ordered = false;
+        private boolean useWorkspace = true;
+        private DataSetCallback callback = new DefaultCallback();
+        private Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        private DataSetPreProcessor preProcessor;
+
+        /**
+         * Partitioned source: each iterator is drained by single producer thread
+         *
+         * @param partitions independent iterators, i.e. one per input split
+         */
+        public Builder(@NonNull List<? extends DataSetIterator> partitions) {
+            if (partitions.isEmpty())
+                throw new ND4JIllegalStateException("At least one partition is required");
+
+            this.partitions = new ArrayList<>(partitions);
+        }
+
+        /**
+         * Splittable source: each path is loaded by any of producer threads
+         *
+         * @param paths         Paths to iterate over
+         * @param loader        Loader to use when loading DataSets. Must be thread-safe
+         * @param sourceFactory The factory to use to convert the paths into streams
+         */
+        public Builder(@NonNull Collection<String> paths, @NonNull Loader<DataSet> loader,
+                        @NonNull SourceFactory sourceFactory) {
+            this.paths = new ArrayList<>(paths);
+            this.loader = loader;
+            this.sourceFactory = sourceFactory;
+        }
+
+        /**
+         * Number of producer threads. Default value: half of available processors, but at least 2
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Max number of DataSets prefetched ahead of consumer, across all producers. Default value: 2 * workers
+         */
+        public Builder prefetchSize(int prefetchSize) {
+            this.prefetchSize = prefetchSize;
+            return this;
+        }
+
+        /**
+         * If true, DataSets are returned in order of paths. Only available for path-based sources. Default: false
+         */
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Optional Random instance used to shuffle paths on each reset. Only available for path-based sources.
+         */
+        public Builder shuffle(Random rng) {
+            this.rng = rng;
+            return this;
+        }
+
+        /**
+         * If true, DataSets will be built in cyclic workspaces, one per producer. Default: true
+         */
+        public Builder useWorkspace(boolean useWorkspace) {
+            this.useWorkspace = useWorkspace;
+            return this;
+        }
+
+        public Builder callback(DataSetCallback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        public Builder deviceId(Integer deviceId) {
+            this.deviceId = deviceId;
+            return this;
+        }
+
+        /**
+         * Preprocessor applied by producer threads. Must be thread-safe
+         */
+        public Builder preProcessor(DataSetPreProcessor preProcessor) {
+            this.preProcessor = preProcessor;
+            return this;
+        }
+
+        public ParallelPrefetchDataSetIterator build() {
+            if (workers < 1)
+                throw new ND4JIllegalStateException("Number of workers should be positive, got " + workers);
+
+            if (partitions != null) {
+                if (ordered)
+                    throw new ND4JIllegalStateException("Ordered output is only available for path-based sources");
+                if (rng != null)
+                    throw new ND4JIllegalStateException("Shuffling is only available for path-based sources");
+
+                for (DataSetIterator p : partitions)
+                    if (p.resetSupported() && !p.hasNext())
+                        p.reset();
+
+                // there's no point in having more producers than partitions
+                workers = Math.min(workers, partitions.size());
+            }
+
+            if (prefetchSize < 1)
+                prefetchSize = 2 * workers;
+
+            if (prefetchSize < workers)
+                throw new ND4JIllegalStateException("Prefetch size [" + prefetchSize
+                                + "] should be at least equal to number of workers [" + workers + "]");
+
+            return new ParallelPrefetchDataSetIterator(this);
+        }
+    }
+}
@@ -21,6 +21,9 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.clustering.api.NearestNeighborsIndex;
+import org.deeplearning4j.clustering.hnsw.HnswIndex;
+import org.deeplearning4j.clustering.hnsw.HnswMetric;
 import org.deeplearning4j.clustering.sptree.DataPoint;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.clustering.vptree.VPTreeFillSearch;
@@ -46,7 +49,7 @@ import static play.mvc.Results.*;
 
 /**
  * A rest server for using an
- * {@link VPTree} based on loading an ndarray containing
+ * {@link VPTree} or {@link HnswIndex} based on loading an ndarray containing
  * the data points for the path
  * The input values are an {@link CSVRecord}
  * which (based on the input schema) will automatically
@@ -66,6 +69,19 @@ public class NearestNeighborsServer {
     private String similarityFunction = "euclidean";
     @Parameter(names = {"--invert"}, arity = 1)
     private boolean invert = false;
+    @Parameter(names = {"--index"}, arity = 1, description = "Index type: vptree or hnsw")
+    private String indexType = "vptree";
+    @Parameter(names = {"--hnswPath"}, arity = 1, required = false,
+                    description = "Path to HNSW index file. If file exists, index is loaded from it, otherwise index is built and saved there")
+    private String hnswPath = null;
+    @Parameter(names = {"--hnswM"}, arity = 1)
+    private int hnswM = HnswIndex.DEFAULT_M;
+    @Parameter(names = {"--efConstruction"}, arity = 1)
+    private int efConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+    @Parameter(names = {"--efSearch"}, arity = 1)
+    private int efSearch = HnswIndex.DEFAULT_EF_SEARCH;
+    @Parameter(names = {"--workers"}, arity = 1, description = "Number of threads used to build the index")
+    private int workers = Runtime.getRuntime().availableProcessors();
 
     private Server server;
 
@@ -147,7 +163,7 @@ public class NearestNeighborsServer {
             System.gc();
         }
 
-        VPTree tree = new VPTree(points, similarityFunction, invert);
+        NearestNeighborsIndex tree = buildIndex(points);
 
         RoutingDsl routingDsl = new RoutingDsl();
         //return the host information for a given id
@@ -183,8 +199,11 @@ public class NearestNeighborsServer {
                 List<DataPoint> results;
                 List<Double> distances;
 
+                if (record.isForceFillK() && !(tree instanceof VPTree))
+                    return badRequest(Json.toJson(Collections.singletonMap("status", "forceFillK is only supported by vptree index")));
+
                 if (record.isForceFillK()) {
-                    VPTreeFillSearch vpTreeFillSearch = new VPTreeFillSearch(tree, record.getK(), arr);
+                    VPTreeFillSearch vpTreeFillSearch = new VPTreeFillSearch((VPTree) tree, record.getK(), arr);
                     vpTreeFillSearch.search();
                     results = vpTreeFillSearch.getResults();
                     distances = vpTreeFillSearch.getDistances();
@@ -235,6 +254,47 @@ public class NearestNeighborsServer {
 
     }
 
+    protected NearestNeighborsIndex buildIndex(INDArray points) throws Exception {
+        switch (indexType.toLowerCase()) {
+            case "vptree":
+                return new VPTree(points, similarityFunction, invert);
+            case "hnsw":
+                if (invert)
+                    throw new DL4JInvalidInputException("--invert is only supported by vptree index");
+
+                HnswIndex index;
+                File indexFile = hnswPath == null ? null : new File(hnswPath);
+                if (indexFile != null && indexFile.exists()) {
+                    log.info("Loading HNSW index from [{}]", indexFile.getAbsolutePath());
+                    index = HnswIndex.load(indexFile);
+                    if (index.size() != points.rows() || index.getDimensions() != points.columns())
+                        throw new DL4JInvalidInputException(String.format("HNSW index doesn't match points: index has %d points " +
+                                        "of %d dimensions, points matrix has shape [%d x %d]", index.size(), index.getDimensions(),
+                                        points.rows(), points.columns()));
+                    index.setEfSearch(efSearch);
+                } else {
+                    log.info("Building HNSW index with {} workers", workers);
+                    index = new HnswIndex.Builder(points.columns())
+                                    .metric(HnswMetric.fromString(similarityFunction))
+                                    .m(hnswM)
+                                    .efConstruction(efConstruction)
+                                    .efSearch(efSearch)
+                                    .initialCapacity(points.rows())
+                                    .workers(workers)
+                                    .build();
+                    index.addAll(points);
+
+                    if (indexFile != null) {
+                        log.info("Saving HNSW index to [{}]", indexFile.getAbsolutePath());
+                        index.save(indexFile);
+                    }
+                }
+                return index;
+            default:
+                throw new DL4JInvalidInputException("Unknown index type: [" + indexType + "], supported types are vptree and hnsw");
+        }
+    }
+
     /**
      * Stop the server
      */
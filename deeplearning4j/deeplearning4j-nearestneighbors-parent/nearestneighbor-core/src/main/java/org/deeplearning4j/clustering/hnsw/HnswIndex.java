@@ -0,0 +1,949 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.api.NearestNeighborsIndex;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph index for approximate nearest neighbors search.
+ * Based on: Malkov & Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs", https://arxiv.org/abs/1603.09320
+ *
+ * Vectors are stored as plain float arrays, and distances are computed in java, so search doesn't involve
+ * any op invocations. Index supports concurrent inserts and searches, so it can be built with multiple threads,
+ * and updated while serving queries. Deleted points are only marked as deleted: they are still used for graph
+ * navigation, but never returned as search results.
+ *
+ * Point ids are assigned sequentially, starting from 0. So for index built with {@link #addAll(INDArray)}
+ * point id matches row number.
+ */
+@Slf4j
+public class HnswIndex implements NearestNeighborsIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 50;
+
+    protected static final int FORMAT_MAGIC = 0x484E5357; // "HNSW"
+    protected static final int FORMAT_VERSION = 1;
+    protected static final int NUM_LOCKS = 1 << 16;
+
+    @Getter protected final int dimensions;
+    @Getter protected final HnswMetric metric;
+    @Getter protected final int m;
+    @Getter protected final int efConstruction;
+    @Getter protected final long seed;
+    protected final int maxM0;
+    protected final double levelMultiplier;
+    protected final Random random;
+    protected final int workers;
+
+    protected volatile int efSearch;
+
+    // storage, guarded by storageLock: read lock for inserts/searches, write lock for resizing
+    protected float[][] vectors;
+    protected int[][][] links;                  // links[id][level][0] holds number of neighbors
+    protected boolean[] deleted;
+
+    protected final AtomicInteger size = new AtomicInteger(0);
+    protected final AtomicInteger numDeleted = new AtomicInteger(0);
+    protected final AtomicInteger numInserted = new AtomicInteger(0);
+    protected volatile int entryPoint = -1;
+    protected volatile int maxLevel = -1;
+
+    protected final Object[] locks = new Object[NUM_LOCKS];
+    protected final ReentrantLock entryLock = new ReentrantLock();
+    protected final ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
+
+    protected final ThreadLocal<SearchContext> contexts = new ThreadLocal<>();
+
+    public HnswIndex(int dimensions, @NonNull HnswMetric metric) {
+        this(dimensions, metric, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH, 1024, 119,
+                        Runtime.getRuntime().availableProcessors());
+    }
+
+    protected HnswIndex(int dimensions, @NonNull HnswMetric metric, int m, int efConstruction, int efSearch,
+                    int initialCapacity, long seed, int workers) {
+        if (dimensions < 1)
+            throw new IllegalArgumentException("Number of dimensions should be positive value");
+
+        if (m < 2)
+            throw new IllegalArgumentException("M should be >= 2");
+
+        if (efConstruction < 1 || efSearch < 1)
+            throw new IllegalArgumentException("efConstruction and efSearch should be positive values");
+
+        this.dimensions = dimensions;
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.workers = Math.max(1, workers);
+
+        int capacity = Math.max(16, initialCapacity);
+        this.vectors = new float[capacity][];
+        this.links = new int[capacity][][];
+        this.deleted = new boolean[capacity];
+
+        for (int e = 0; e < NUM_LOCKS; e++)
+            locks[e] = new Object();
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * This method sets size of dynamic candidates list used for search. Higher values give better recall,
+     * at the cost of slower search. Values below k are ignored.
+     *
+     * @param efSearch
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1)
+            throw new IllegalArgumentException("efSearch should be positive value");
+
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * This method returns number of points in this index, excluding deleted ones
+     *
+     * @return
+     */
+    public int size() {
+        return numInserted.get() - numDeleted.get();
+    }
+
+    /**
+     * This method adds single vector to the index
+     *
+     * @param vector vector to add
+     * @return id assigned to this vector
+     */
+    public int add(@NonNull INDArray vector) {
+        if (!vector.isVectorOrScalar() || vector.length() != dimensions)
+            throw new ND4JIllegalStateException("Vector should have length of " + dimensions + " but got shape "
+                            + Arrays.toString(vector.shape()) + " instead");
+
+        return add(vector.toFloatVector());
+    }
+
+    /**
+     * This method adds single vector to the index. Array is stored as is (after normalization for COSINE metric),
+     * so it shouldn't be modified afterwards.
+     *
+     * @param vector vector to add
+     * @return id assigned to this vector
+     */
+    public int add(@NonNull float[] vector) {
+        int id = size.getAndIncrement();
+        ensureCapacity(id + 1);
+        insert(id, vector);
+        return id;
+    }
+
+    /**
+     * This method adds all rows of given matrix to the index, using configured number of workers
+     *
+     * @param points matrix with one point per row
+     * @return id assigned to the first row, other rows get consecutive ids
+     */
+    public int addAll(@NonNull final INDArray points) {
+        if (points.rank() != 2 || points.columns() != dimensions)
+            throw new ND4JIllegalStateException("Points should have shape of [N, " + dimensions + "] but got "
+                            + Arrays.toString(points.shape()) + " instead");
+
+        final int rows = points.rows();
+        final int first = size.getAndAdd(rows);
+        ensureCapacity(first + rows);
+
+        final AtomicInteger position = new AtomicInteger(0);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                int row;
+                while ((row = position.getAndIncrement()) < rows)
+                    insert(first + row, points.getRow(row).toFloatVector());
+            }
+        };
+
+        int numThreads = Math.min(workers, rows);
+        if (numThreads <= 1) {
+            task.run();
+            return first;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            Future<?>[] futures = new Future<?>[numThreads];
+            for (int e = 0; e < numThreads; e++)
+                futures[e] = executorService.submit(task);
+
+            for (Future<?> future : futures)
+                future.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdown();
+        }
+
+        return first;
+    }
+
+    /**
+     * This method marks point as deleted, so it won't be returned by search anymore
+     *
+     * @param id id of the point
+     * @return true if point was deleted, false if it doesn't exist or was deleted already
+     */
+    public boolean remove(int id) {
+        storageLock.readLock().lock();
+        try {
+            if (id < 0 || id >= size.get() || links[id] == null)
+                return false;
+
+            synchronized (lock(id)) {
+                if (deleted[id])
+                    return false;
+
+                deleted[id] = true;
+            }
+            numDeleted.incrementAndGet();
+            return true;
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method checks if given point is present in the index
+     *
+     * @param id id of the point
+     * @return
+     */
+    public boolean contains(int id) {
+        storageLock.readLock().lock();
+        try {
+            return id >= 0 && id < size.get() && links[id] != null && !deleted[id];
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns vector stored for given point. For COSINE metric vector is normalized.
+     *
+     * @param id id of the point
+     * @return
+     */
+    public float[] getVector(int id) {
+        storageLock.readLock().lock();
+        try {
+            return vectors[id];
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void search(@NonNull INDArray target, int k, List<DataPoint> results, List<Double> distances) {
+        if (!target.isVectorOrScalar() || target.length() != dimensions)
+            throw new ND4JIllegalStateException("Target for search should have shape of [1, " + dimensions
+                            + "] but got " + Arrays.toString(target.shape()) + " instead");
+
+        results.clear();
+        distances.clear();
+
+        int[] ids = new int[k];
+        float[] dist = new float[k];
+        int found = search(target.toFloatVector(), k, efSearch, ids, dist);
+        for (int e = 0; e < found; e++) {
+            results.add(new DataPoint(ids[e], Nd4j.create(getVector(ids[e]))));
+            distances.add((double) dist[e]);
+        }
+    }
+
+    /**
+     * This method finds k nearest neighbors for given query, without any allocations for results
+     *
+     * @param query query vector
+     * @param k number of neighbors to find
+     * @param ef size of dynamic candidates list, values below k are treated as k
+     * @param ids array of length >= k, that will be filled with ids of found points, ordered by distance
+     * @param distances array of length >= k, that will be filled with distances to found points
+     * @return number of points found
+     */
+    public int search(@NonNull float[] query, int k, int ef, int[] ids, float[] distances) {
+        if (query.length != dimensions)
+            throw new ND4JIllegalStateException("Query should have length of " + dimensions + " but got "
+                            + query.length + " instead");
+
+        if (k < 1)
+            return 0;
+
+        if (metric == HnswMetric.COSINE)
+            query = normalized(query);
+
+        storageLock.readLock().lock();
+        try {
+            // see insert() for ordering of these two writes
+            int top = maxLevel;
+            int ep = entryPoint;
+            if (ep < 0)
+                return 0;
+
+            SearchContext context = context();
+            top = Math.min(top, links[ep].length - 1);
+            float epDistance = distance(query, vectors[ep]);
+            for (int level = top; level > 0; level--) {
+                ep = greedySearch(context, query, ep, epDistance, level);
+                epDistance = distance(query, vectors[ep]);
+            }
+
+            FloatIntHeap result = searchLayer(context, query, ep, Math.max(ef, k), 0, true);
+            while (result.size() > k)
+                result.pop();
+
+            int found = result.size();
+            for (int e = found - 1; e >= 0; e--) {
+                distances[e] = outputDistance(result.peekKey());
+                ids[e] = result.pop();
+            }
+            return found;
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    protected void insert(int id, float[] vector) {
+        if (vector.length != dimensions)
+            throw new ND4JIllegalStateException("Vector should have length of " + dimensions + " but got "
+                            + vector.length + " instead");
+
+        if (metric == HnswMetric.COSINE)
+            vector = normalized(vector);
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++)
+            nodeLinks[l] = new int[(l == 0 ? maxM0 : m) + 1];
+
+        storageLock.readLock().lock();
+        try {
+            vectors[id] = vector;
+            links[id] = nodeLinks;
+
+            // insertion that creates new top level holds entry lock till the end, so entry point is always valid
+            entryLock.lock();
+            int top = maxLevel;
+            int ep = entryPoint;
+            boolean holdsEntryLock = level > top;
+            if (!holdsEntryLock)
+                entryLock.unlock();
+
+            try {
+                if (ep < 0) {
+                    entryPoint = id;
+                    maxLevel = level;
+                    numInserted.incrementAndGet();
+                    return;
+                }
+
+                SearchContext context = context();
+                float epDistance = distance(vector, vectors[ep]);
+                for (int l = top; l > level; l--) {
+                    ep = greedySearch(context, vector, ep, epDistance, l);
+                    epDistance = distance(vector, vectors[ep]);
+                }
+
+                for (int l = Math.min(level, top); l >= 0; l--) {
+                    FloatIntHeap candidates = searchLayer(context, vector, ep, efConstruction, l, false);
+
+                    // heap gives us candidates in descending order, so we fill arrays from the end
+                    int count = candidates.size();
+                    int[] ids = new int[count];
+                    float[] dist = new float[count];
+                    for (int e = count - 1; e >= 0; e--) {
+                        dist[e] = candidates.peekKey();
+                        ids[e] = candidates.pop();
+                    }
+
+                    int selected = selectNeighbors(ids, dist, count, m);
+                    synchronized (lock(id)) {
+                        System.arraycopy(ids, 0, nodeLinks[l], 1, selected);
+                        nodeLinks[l][0] = selected;
+                    }
+
+                    for (int e = 0; e < selected; e++)
+                        connect(ids[e], id, dist[e], l);
+
+                    ep = ids[0];
+                }
+
+                if (holdsEntryLock) {
+                    // entry point must be published before max level, searches read them in reverse order
+                    entryPoint = id;
+                    maxLevel = level;
+                }
+                numInserted.incrementAndGet();
+            } finally {
+                if (holdsEntryLock)
+                    entryLock.unlock();
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method adds link to newly inserted point, shrinking neighbors list if it's full
+     */
+    protected void connect(int node, int newNeighbor, float distance, int level) {
+        synchronized (lock(node)) {
+            int[] list = links[node][level];
+            int capacity = list.length - 1;
+            int count = list[0];
+            if (count < capacity) {
+                list[count + 1] = newNeighbor;
+                list[0] = count + 1;
+                return;
+            }
+
+            float[] base = vectors[node];
+            int[] ids = new int[count + 1];
+            float[] dist = new float[count + 1];
+            FloatIntHeap heap = new FloatIntHeap(count + 1, false);
+            heap.push(distance, newNeighbor);
+            for (int e = 1; e <= count; e++)
+                heap.push(distance(base, vectors[list[e]]), list[e]);
+
+            for (int e = 0; e <= count; e++) {
+                dist[e] = heap.peekKey();
+                ids[e] = heap.pop();
+            }
+
+            int selected = selectNeighbors(ids, dist, count + 1, capacity);
+            System.arraycopy(ids, 0, list, 1, selected);
+            list[0] = selected;
+        }
+    }
+
+    /**
+     * Neighbors selection heuristic: candidate is kept only if it's closer to the base point than to any of already
+     * selected neighbors. That keeps graph connected across clusters.
+     *
+     * @param ids candidate ids, sorted by distance in ascending order. Selected ids are moved to the beginning
+     * @param distances distances from base point to candidates
+     * @return number of selected neighbors
+     */
+    protected int selectNeighbors(int[] ids, float[] distances, int count, int limit) {
+        if (count <= limit)
+            return count;
+
+        int selected = 0;
+        for (int e = 0; e < count && selected < limit; e++) {
+            float[] candidate = vectors[ids[e]];
+            boolean good = true;
+            for (int s = 0; s < selected; s++) {
+                if (distance(candidate, vectors[ids[s]]) < distances[e]) {
+                    good = false;
+                    break;
+                }
+            }
+
+            if (good) {
+                ids[selected] = ids[e];
+                distances[selected] = distances[e];
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    protected int greedySearch(SearchContext context, float[] query, int ep, float epDistance, int level) {
+        int current = ep;
+        float currentDistance = epDistance;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = neighbors(context, current, level);
+            for (int e = 0; e < count; e++) {
+                int candidate = context.neighbors[e];
+                float d = distance(query, vectors[candidate]);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * This method searches single layer of the graph
+     *
+     * @return max-heap with up to ef closest points found. Heap belongs to the context, so it'll be reused by next search
+     */
+    protected FloatIntHeap searchLayer(SearchContext context, float[] query, int ep, int ef, int level,
+                    boolean skipDeleted) {
+        int marker = context.nextMarker(vectors.length);
+        int[] visited = context.visited;
+        FloatIntHeap candidates = context.candidates;
+        FloatIntHeap result = context.result;
+        candidates.clear();
+        result.clear();
+
+        float d = distance(query, vectors[ep]);
+        visited[ep] = marker;
+        candidates.push(d, ep);
+        if (!skipDeleted || !deleted[ep])
+            result.push(d, ep);
+
+        float bound = result.isEmpty() ? Float.MAX_VALUE : result.peekKey();
+        while (!candidates.isEmpty()) {
+            if (candidates.peekKey() > bound && result.size() >= ef)
+                break;
+
+            int current = candidates.pop();
+            int count = neighbors(context, current, level);
+            for (int e = 0; e < count; e++) {
+                int candidate = context.neighbors[e];
+                if (visited[candidate] == marker)
+                    continue;
+
+                visited[candidate] = marker;
+                d = distance(query, vectors[candidate]);
+                if (result.size() < ef || d < bound) {
+                    candidates.push(d, candidate);
+                    if (!skipDeleted || !deleted[candidate])
+                        result.push(d, candidate);
+
+                    if (result.size() > ef)
+                        result.pop();
+
+                    if (!result.isEmpty())
+                        bound = result.peekKey();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * This method copies neighbors list of given node into context buffer
+     *
+     * @return number of neighbors
+     */
+    protected int neighbors(SearchContext context, int node, int level) {
+        synchronized (lock(node)) {
+            int[] list = links[node][level];
+            int count = list[0];
+            System.arraycopy(list, 1, context.neighbors, 0, count);
+            return count;
+        }
+    }
+
+    protected float distance(float[] x, float[] y) {
+        switch (metric) {
+            case EUCLIDEAN:
+                return squaredDistance(x, y);
+            case COSINE:
+                return 1.0f - dot(x, y);
+            case DOT:
+                return -dot(x, y);
+            default:
+                throw new IllegalStateException("Unknown metric: " + metric);
+        }
+    }
+
+    /**
+     * Internally squared euclidean distance is used, since it preserves ordering
+     */
+    protected float outputDistance(float distance) {
+        return metric == HnswMetric.EUCLIDEAN ? (float) Math.sqrt(distance) : distance;
+    }
+
+    // loops below use 4 independent accumulators, so consecutive iterations don't wait for each other
+
+    protected static float dot(float[] x, float[] y) {
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+        int length = x.length;
+        int tail = length & ~3;
+        for (int e = 0; e < tail; e += 4) {
+            s0 += x[e] * y[e];
+            s1 += x[e + 1] * y[e + 1];
+            s2 += x[e + 2] * y[e + 2];
+            s3 += x[e + 3] * y[e + 3];
+        }
+        for (int e = tail; e < length; e++)
+            s0 += x[e] * y[e];
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    protected static float squaredDistance(float[] x, float[] y) {
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+        int length = x.length;
+        int tail = length & ~3;
+        for (int e = 0; e < tail; e += 4) {
+            float d0 = x[e] - y[e];
+            float d1 = x[e + 1] - y[e + 1];
+            float d2 = x[e + 2] - y[e + 2];
+            float d3 = x[e + 3] - y[e + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (int e = tail; e < length; e++) {
+            float d = x[e] - y[e];
+            s0 += d * d;
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    protected static float[] normalized(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        float[] result = new float[vector.length];
+        if (norm > 0.0f)
+            for (int e = 0; e < vector.length; e++)
+                result[e] = vector[e] / norm;
+
+        return result;
+    }
+
+    protected int randomLevel() {
+        double r = random.nextDouble();
+        return (int) (-Math.log(Math.max(r, Double.MIN_NORMAL)) * levelMultiplier);
+    }
+
+    protected Object lock(int id) {
+        return locks[id & (NUM_LOCKS - 1)];
+    }
+
+    protected SearchContext context() {
+        SearchContext context = contexts.get();
+        if (context == null) {
+            context = new SearchContext(vectors.length, maxM0);
+            contexts.set(context);
+        }
+        return context;
+    }
+
+    protected void ensureCapacity(int required) {
+        if (required <= vectors.length)
+            return;
+
+        storageLock.writeLock().lock();
+        try {
+            if (required <= vectors.length)
+                return;
+
+            int capacity = Math.max(required, vectors.length + (vectors.length >> 1));
+            vectors = Arrays.copyOf(vectors, capacity);
+            links = Arrays.copyOf(links, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+        } finally {
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method saves index to the file, using compact binary format
+     *
+     * @param file file to save index to
+     * @throws IOException
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            save(dos);
+        }
+    }
+
+    /**
+     * This method saves index to the stream, using compact binary format.
+     * Index shouldn't be modified while it's being saved.
+     *
+     * @param dos stream to write to
+     * @throws IOException
+     */
+    public void save(@NonNull DataOutputStream dos) throws IOException {
+        storageLock.readLock().lock();
+        try {
+            int count = size.get();
+            dos.writeInt(FORMAT_MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(metric.ordinal());
+            dos.writeInt(dimensions);
+            dos.writeInt(m);
+            dos.writeInt(efConstruction);
+            dos.writeInt(efSearch);
+            dos.writeLong(seed);
+            dos.writeInt(count);
+            dos.writeInt(entryPoint);
+            dos.writeInt(maxLevel);
+
+            byte[] buffer = new byte[dimensions * 4];
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            for (int id = 0; id < count; id++) {
+                int[][] nodeLinks = links[id];
+                if (nodeLinks == null) {
+                    // id was reserved, but point wasn't inserted
+                    dos.writeByte(-1);
+                    continue;
+                }
+
+                dos.writeByte(nodeLinks.length - 1);
+                dos.writeBoolean(deleted[id]);
+
+                bb.clear();
+                bb.asFloatBuffer().put(vectors[id]);
+                dos.write(buffer);
+
+                for (int l = 0; l < nodeLinks.length; l++) {
+                    synchronized (lock(id)) {
+                        int[] list = nodeLinks[l];
+                        dos.writeShort(list[0]);
+                        for (int e = 1; e <= list[0]; e++)
+                            dos.writeInt(list[e]);
+                    }
+                }
+            }
+        } finally {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method loads index previously saved with {@link #save(File)}
+     *
+     * @param file file to load index from
+     * @return
+     * @throws IOException
+     */
+    public static HnswIndex load(@NonNull File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return load(dis);
+        }
+    }
+
+    /**
+     * This method loads index previously saved with {@link #save(DataOutputStream)}
+     *
+     * @param dis stream to read from
+     * @return
+     * @throws IOException
+     */
+    public static HnswIndex load(@NonNull DataInputStream dis) throws IOException {
+        if (dis.readInt() != FORMAT_MAGIC)
+            throw new IOException("Stream doesn't contain HNSW index");
+
+        int version = dis.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported HNSW index format version: " + version);
+
+        HnswMetric metric = HnswMetric.values()[dis.readInt()];
+        int dimensions = dis.readInt();
+        int m = dis.readInt();
+        int efConstruction = dis.readInt();
+        int efSearch = dis.readInt();
+        long seed = dis.readLong();
+        int count = dis.readInt();
+
+        HnswIndex index = new HnswIndex(dimensions, metric, m, efConstruction, efSearch, count, seed,
+                        Runtime.getRuntime().availableProcessors());
+        index.entryPoint = dis.readInt();
+        index.maxLevel = dis.readInt();
+
+        byte[] buffer = new byte[dimensions * 4];
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        int inserted = 0;
+        int numDeleted = 0;
+        for (int id = 0; id < count; id++) {
+            int level = dis.readByte();
+            if (level < 0)
+                continue;
+
+            index.deleted[id] = dis.readBoolean();
+            if (index.deleted[id])
+                numDeleted++;
+
+            dis.readFully(buffer);
+            bb.clear();
+            float[] vector = new float[dimensions];
+            bb.asFloatBuffer().get(vector);
+            index.vectors[id] = vector;
+
+            int[][] nodeLinks = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                nodeLinks[l] = new int[(l == 0 ? index.maxM0 : m) + 1];
+                int n = dis.readShort();
+                nodeLinks[l][0] = n;
+                for (int e = 1; e <= n; e++)
+                    nodeLinks[l][e] = dis.readInt();
+            }
+            index.links[id] = nodeLinks;
+            inserted++;
+        }
+
+        index.size.set(count);
+        index.numInserted.set(inserted);
+        index.numDeleted.set(numDeleted);
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "HnswIndex(metric=" + metric + ", dimensions=" + dimensions + ", size=" + size() + ", M=" + m
+                        + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch + ", maxLevel=" + maxLevel
+                        + ")";
+    }
+
+    /**
+     * Per-thread search state: visited markers and heaps, reused between searches
+     */
+    protected static class SearchContext {
+        protected int[] visited;
+        protected int marker = 0;
+        protected final int[] neighbors;
+        protected final FloatIntHeap candidates = new FloatIntHeap(256, false);
+        protected final FloatIntHeap result = new FloatIntHeap(256, true);
+
+        protected SearchContext(int capacity, int maxNeighbors) {
+            this.visited = new int[capacity];
+            this.neighbors = new int[maxNeighbors];
+        }
+
+        protected int nextMarker(int capacity) {
+            if (visited.length < capacity) {
+                visited = new int[capacity];
+                marker = 0;
+            }
+
+            marker++;
+            if (marker == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                marker = 1;
+            }
+            return marker;
+        }
+    }
+
+    public static class Builder {
+        private final int dimensions;
+        private HnswMetric metric = HnswMetric.EUCLIDEAN;
+        private int m = DEFAULT_M;
+        private int efConstruction = DEFAULT_EF_CONSTRUCTION;
+        private int efSearch = DEFAULT_EF_SEARCH;
+        private int initialCapacity = 1024;
+        private long seed = 119;
+        private int workers = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * @param dimensions length of indexed vectors
+         */
+        public Builder(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        /**
+         * Distance function to be used. Default value: EUCLIDEAN
+         */
+        public Builder metric(@NonNull HnswMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * Max number of links per point on upper layers, 2x of that is used for bottom layer. Default value: 16
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * Size of dynamic candidates list used during index construction. Default value: 200
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * Size of dynamic candidates list used during search. Default value: 50
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * Number of points index is expected to hold. Storage grows automatically, but proper value saves resizing.
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Seed for level generator
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Number of threads used by {@link HnswIndex#addAll(INDArray)}. Default value: number of available processors
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        public HnswIndex build() {
+            return new HnswIndex(dimensions, metric, m, efConstruction, efSearch, initialCapacity, seed, workers);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+/**
+ * Distance functions supported by {@link HnswIndex}
+ *
+ * EUCLIDEAN: euclidean distance
+ * COSINE: cosine distance, i.e. 1 - cosine similarity. Vectors are normalized on insertion
+ * DOT: negated inner product, so larger inner product means closer point
+ */
+public enum HnswMetric {
+    EUCLIDEAN, COSINE, DOT;
+
+    /**
+     * This method maps similarity function names used by {@link org.deeplearning4j.clustering.vptree.VPTree} to metric
+     *
+     * @param name similarity function name, i.e. "euclidean", "cosinedistance" or "dot"
+     * @return
+     */
+    public static HnswMetric fromString(String name) {
+        switch (name.toLowerCase()) {
+            case "euclidean":
+                return EUCLIDEAN;
+            case "cosine":
+            case "cosinedistance":
+            case "cosinesimilarity":
+                return COSINE;
+            case "dot":
+                return DOT;
+            default:
+                throw new IllegalArgumentException("Unsupported similarity function for HNSW index: [" + name + "]");
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.deeplearning4j.clustering.vptree;
 
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.api.NearestNeighborsIndex;
 import org.deeplearning4j.clustering.sptree.DataPoint;
 import org.deeplearning4j.clustering.sptree.HeapObject;
 import org.deeplearning4j.clustering.util.MathUtils;
@@ -43,7 +44,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 @Builder
 @AllArgsConstructor
-public class VPTree implements Serializable {
+public class VPTree implements NearestNeighborsIndex, Serializable {
     private static final long serialVersionUID = 1L;
 
     public static final String EUCLIDEAN = "euclidean";
@@ -470,6 +471,7 @@ public class VPTree implements Serializable {
      * @param results
      * @param distances
      */
+    @Override
     public void search(@NonNull INDArray target, int k, List<DataPoint> results, List<Double> distances) {
         if (items != null)
             if (!target.isVectorOrScalar() || target.columns() != items.columns() || target.rows() > 1)
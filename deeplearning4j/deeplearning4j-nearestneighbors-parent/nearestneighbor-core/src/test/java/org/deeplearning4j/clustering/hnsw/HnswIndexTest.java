@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.clustering.hnsw;
+
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HnswIndexTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @BeforeClass
+    public static void beforeClass(){
+        Nd4j.setDataType(DataType.FLOAT);
+    }
+
+    protected static int[] bruteForce(HnswIndex index, float[][] points, float[] query, int k) {
+        Integer[] order = new Integer[points.length];
+        final float[] distances = new float[points.length];
+        float[] q = index.getMetric() == HnswMetric.COSINE ? HnswIndex.normalized(query) : query;
+        for (int e = 0; e < points.length; e++) {
+            float[] p = index.getMetric() == HnswMetric.COSINE ? HnswIndex.normalized(points[e]) : points[e];
+            distances[e] = index.distance(q, p);
+            order[e] = e;
+        }
+
+        Arrays.sort(order, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Float.compare(distances[o1], distances[o2]);
+            }
+        });
+
+        int[] result = new int[k];
+        for (int e = 0; e < k; e++)
+            result[e] = order[e];
+        return result;
+    }
+
+    protected static double recall(HnswIndex index, float[][] points, float[][] queries, int k) {
+        int hits = 0;
+        int[] ids = new int[k];
+        float[] distances = new float[k];
+        for (float[] query : queries) {
+            int found = index.search(query, k, 64, ids, distances);
+            assertEquals(k, found);
+            for (int e = 1; e < found; e++)
+                assertTrue(distances[e - 1] <= distances[e]);
+
+            Set<Integer> expected = new HashSet<>();
+            for (int id : bruteForce(index, points, query, k))
+                expected.add(id);
+
+            for (int e = 0; e < found; e++)
+                if (expected.contains(ids[e]))
+                    hits++;
+        }
+        return hits / (double) (queries.length * k);
+    }
+
+    @Test
+    public void testRecall() {
+        Nd4j.getRandom().setSeed(12345);
+        int numPoints = 2000;
+        int dimensions = 32;
+        INDArray points = Nd4j.rand(numPoints, dimensions);
+        float[][] pointsArr = points.toFloatMatrix();
+        float[][] queries = Nd4j.rand(50, dimensions).toFloatMatrix();
+
+        for (HnswMetric metric : HnswMetric.values()) {
+            HnswIndex index = new HnswIndex.Builder(dimensions).metric(metric).m(12).efConstruction(100).workers(4)
+                            .build();
+            assertEquals(0, index.addAll(points));
+            assertEquals(numPoints, index.size());
+
+            // inner product isn't a metric, so graph navigation is less accurate for it
+            double recall = recall(index, pointsArr, queries, 10);
+            assertTrue(metric + " recall: " + recall, recall > (metric == HnswMetric.DOT ? 0.8 : 0.9));
+        }
+    }
+
+    @Test
+    public void testSearchSelf() {
+        INDArray points = Nd4j.rand(500, 16);
+        HnswIndex index = new HnswIndex(16, HnswMetric.EUCLIDEAN);
+        index.addAll(points);
+
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        index.search(points.getRow(42), 5, results, distances);
+
+        assertEquals(5, results.size());
+        assertEquals(42, results.get(0).getIndex());
+        assertEquals(0.0, distances.get(0), 1e-5);
+    }
+
+    @Test
+    public void testIncrementalInsertAndDelete() {
+        INDArray points = Nd4j.rand(300, 8);
+        HnswIndex index = new HnswIndex.Builder(8).initialCapacity(16).build();
+        for (int e = 0; e < points.rows(); e++)
+            assertEquals(e, index.add(points.getRow(e)));
+
+        int[] ids = new int[1];
+        float[] distances = new float[1];
+        float[] query = points.getRow(7).toFloatVector();
+        index.search(query, 1, 16, ids, distances);
+        assertEquals(7, ids[0]);
+
+        assertTrue(index.remove(7));
+        assertFalse(index.remove(7));
+        assertFalse(index.contains(7));
+        assertEquals(299, index.size());
+
+        index.search(query, 1, 16, ids, distances);
+        assertNotEquals(7, ids[0]);
+
+        // re-adding same vector gives new id
+        int id = index.add(query);
+        assertEquals(300, id);
+        index.search(query, 1, 16, ids, distances);
+        assertEquals(300, ids[0]);
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        INDArray points = Nd4j.rand(500, 24);
+        HnswIndex index = new HnswIndex.Builder(24).metric(HnswMetric.COSINE).efSearch(40).seed(42).build();
+        index.addAll(points);
+        index.remove(3);
+
+        File file = new File(testDir.newFolder(), "index.bin");
+        index.save(file);
+        HnswIndex restored = HnswIndex.load(file);
+
+        assertEquals(index.size(), restored.size());
+        assertEquals(index.getMetric(), restored.getMetric());
+        assertEquals(40, restored.getEfSearch());
+        assertEquals(42, restored.getSeed());
+        assertFalse(restored.contains(3));
+
+        float[][] queries = Nd4j.rand(20, 24).toFloatMatrix();
+        int[] ids1 = new int[10];
+        int[] ids2 = new int[10];
+        float[] d1 = new float[10];
+        float[] d2 = new float[10];
+        for (float[] query : queries) {
+            index.search(query, 10, 40, ids1, d1);
+            restored.search(query, 10, 40, ids2, d2);
+            assertArrayEquals(ids1, ids2);
+            assertArrayEquals(d1, d2, 1e-6f);
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.deeplearning4j.models.sequencevectors.SequenceVectors;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceElementFactory;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.sequencevectors.serialization.VocabWordFactory;
+import org.deeplearning4j.models.word2vec.MappedWord2Vec;
 import org.deeplearning4j.models.word2vec.StaticWord2Vec;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
@@ -53,6 +54,7 @@ import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
 import org.deeplearning4j.util.DL4JFileUtils;
 import org.nd4j.base.Preconditions;
 import org.nd4j.compression.impl.NoOp;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
@@ -2686,12 +2688,73 @@ public class WordVectorSerializer {
 
     }
 
+    /**
+     * This method saves word vectors in memory-mappable format, that can be loaded later with
+     * {@link #loadMappedModel(File)} without deserialization of vocabulary or copying of vectors.
+     *
+     * @param vectors WordVectors to save
+     * @param file File to write to
+     * @param dataType data type of stored vectors: FLOAT or HALF
+     * @throws IOException
+     */
+    public static void writeMappedModel(@NonNull WordVectors vectors, @NonNull File file, @NonNull DataType dataType)
+                    throws IOException {
+        VocabCache<? extends SequenceElement> vocab = vectors.vocab();
+        List<String> words = new ArrayList<>(vocab.numWords());
+        for (int i = 0; i < vocab.numWords(); i++)
+            words.add(vocab.wordAtIndex(i));
+
+        MappedWord2Vec.write(words, vectors, file, dataType);
+    }
+
+    /**
+     * This method saves word vectors in memory-mappable format, using FLOAT data type
+     *
+     * @param vectors WordVectors to save
+     * @param file File to write to
+     * @throws IOException
+     */
+    public static void writeMappedModel(@NonNull WordVectors vectors, @NonNull File file) throws IOException {
+        writeMappedModel(vectors, file, DataType.FLOAT);
+    }
+
+    /**
+     * This method memory-maps word vectors previously saved with {@link #writeMappedModel(WordVectors, File, DataType)}.
+     * Vectors are mapped copy-on-write, so returned vectors can be safely modified. That requires write permissions for
+     * the file: if file isn't writable, vectors are copied to memory instead, and warning is logged.
+     * Use {@link #loadMappedModel(File, boolean)} for zero-copy loading of read-only files.
+     *
+     * @param file File to map
+     * @return
+     */
+    public static MappedWord2Vec loadMappedModel(@NonNull File file) {
+        return loadMappedModel(file, false);
+    }
+
+    /**
+     * This method memory-maps word vectors previously saved with {@link #writeMappedModel(WordVectors, File, DataType)}
+     *
+     * @param file File to map
+     * @param readOnly if true, vectors are mapped read-only, and returned arrays must never be modified
+     * @return
+     */
+    public static MappedWord2Vec loadMappedModel(@NonNull File file, boolean readOnly) {
+        try {
+            return new MappedWord2Vec(file, readOnly);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // TODO: this method needs better name :)
     public static WordVectors loadStaticModel(@NonNull File file) {
         if (!file.exists() || file.isDirectory())
             throw new RuntimeException(
                     new FileNotFoundException("File [" + file.getAbsolutePath() + "] was not found"));
 
+        if (MappedWord2Vec.isMappedModel(file))
+            return loadMappedModel(file);
+
         int originalFreq = Nd4j.getMemoryManager().getOccasionalGcFrequency();
         boolean originalPeriodic = Nd4j.getMemoryManager().isPeriodicGcActive();
 
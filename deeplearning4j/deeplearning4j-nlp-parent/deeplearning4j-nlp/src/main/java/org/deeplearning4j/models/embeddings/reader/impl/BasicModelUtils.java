@@ -242,16 +242,7 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
         if (lookupTable instanceof InMemoryLookupTable) {
             InMemoryLookupTable l = (InMemoryLookupTable) lookupTable;
 
-            INDArray syn0 = l.getSyn0();
-
-            if (!normalized) {
-                synchronized (this) {
-                    if (!normalized) {
-                        syn0.diviColumnVector(syn0.norm2(1));
-                        normalized = true;
-                    }
-                }
-            }
+            INDArray syn0 = normalizedSyn0(l);
 
             INDArray similarity = Transforms.unitVec(words).mmul(syn0.transpose());
 
@@ -289,6 +280,110 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
 
     }
 
+    /**
+     * This method normalizes syn0 in place, once per model
+     *
+     * @param lookupTable
+     * @return normalized syn0
+     */
+    protected INDArray normalizedSyn0(InMemoryLookupTable lookupTable) {
+        INDArray syn0 = lookupTable.getSyn0();
+
+        if (!normalized) {
+            synchronized (this) {
+                if (!normalized) {
+                    syn0.diviColumnVector(syn0.norm2(1));
+                    normalized = true;
+                }
+            }
+        }
+
+        return syn0;
+    }
+
+    /**
+     * This method returns words nearest to each of given labels, excluding label itself.
+     * All queries are processed at once, see {@link #wordsNearestBatch(INDArray, int)}
+     *
+     * @param labels labels to find nearest words for
+     * @param top number of words per label
+     * @return one collection per label, empty collection for labels missing in vocab
+     */
+    public List<Collection<String>> wordsNearestBatch(@NonNull List<String> labels, int top) {
+        List<String> known = new ArrayList<>();
+        for (String label : labels)
+            if (vocabCache.containsWord(label))
+                known.add(label);
+
+        List<Collection<String>> nearest = new ArrayList<>();
+        if (!known.isEmpty()) {
+            INDArray queries = Nd4j.create(known.size(), lookupTable.layerSize());
+            for (int i = 0; i < known.size(); i++)
+                queries.putRow(i, lookupTable.vector(known.get(i)));
+
+            // one extra result per query, since label itself is going to be the best match
+            nearest = wordsNearestBatch(queries, top + 1);
+        }
+
+        List<Collection<String>> result = new ArrayList<>(labels.size());
+        int k = 0;
+        for (String label : labels) {
+            if (!vocabCache.containsWord(label)) {
+                result.add(new ArrayList<String>());
+                continue;
+            }
+
+            List<String> words = new ArrayList<>(nearest.get(k++));
+            words.remove(label);
+            while (words.size() > top)
+                words.remove(words.size() - 1);
+
+            result.add(words);
+        }
+
+        return result;
+    }
+
+    /**
+     * This method returns words nearest to each row of queries matrix, by cosine similarity.
+     *
+     * For InMemoryLookupTable queries are processed with blocked matrix multiplication over normalized syn0,
+     * and top-k is tracked with primitive heaps, so there's no full sort of similarities per query.
+     *
+     * @param queries matrix of query vectors, one query per row
+     * @param top number of words per query
+     * @return one collection per query
+     */
+    public List<Collection<String>> wordsNearestBatch(@NonNull INDArray queries, int top) {
+        if (queries.isVector())
+            queries = queries.reshape(1, queries.length());
+
+        List<Collection<String>> result = new ArrayList<>(queries.rows());
+        if (lookupTable instanceof InMemoryLookupTable) {
+            INDArray syn0 = normalizedSyn0((InMemoryLookupTable) lookupTable);
+            INDArray unitQueries = queries.divColumnVector(queries.norm2(1));
+
+            // UNK & STOP are excluded from results, so we reserve room for them
+            BlockedTopKSearch.TopK[] topK = BlockedTopKSearch.search(unitQueries, syn0, top + 2);
+            for (BlockedTopKSearch.TopK candidates : topK) {
+                List<String> words = new ArrayList<>(top);
+                for (int i = 0; i < candidates.size() && words.size() < top; i++) {
+                    String word = vocabCache.wordAtIndex(candidates.getIndex(i));
+                    if (word != null && !word.equals("UNK") && !word.equals("STOP"))
+                        words.add(word);
+                }
+                result.add(words);
+            }
+
+            return result;
+        }
+
+        for (int i = 0; i < queries.rows(); i++)
+            result.add(wordsNearest(queries.getRow(i), top));
+
+        return result;
+    }
+
     /**
      * Get top N elements
      *
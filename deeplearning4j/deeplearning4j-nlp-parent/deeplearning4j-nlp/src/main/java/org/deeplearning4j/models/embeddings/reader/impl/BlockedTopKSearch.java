@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+/**
+ * This class implements batched top-k search over rows of a matrix.
+ *
+ * Similarities are computed with blocked GEMM: a chunk of queries is multiplied by a block of matrix rows at once,
+ * and each query keeps its partial top-k in a primitive min-heap, so full similarity vector is never sorted.
+ * If both queries and matrix rows are unit vectors, resulting scores are cosine similarities.
+ */
+public class BlockedTopKSearch {
+    // max number of elements in a single similarity block
+    private static final int BLOCK_ELEMENTS = 4 * 1024 * 1024;
+    private static final int QUERY_BATCH = 256;
+
+    private BlockedTopKSearch() {
+        //
+    }
+
+    /**
+     * This method returns top-k rows of matrix for each row of queries, using dot product as score
+     *
+     * @param queries queries matrix, [numQueries, vectorLength]
+     * @param matrix matrix to search in, [numRows, vectorLength]
+     * @param k number of results per query
+     * @return one TopK per query
+     */
+    public static TopK[] search(@NonNull INDArray queries, @NonNull INDArray matrix, int k) {
+        return search(queries, matrix, k, 0);
+    }
+
+    /**
+     * This method returns top-k rows of matrix for each row of queries, using dot product as score
+     *
+     * @param queries queries matrix, [numQueries, vectorLength]
+     * @param matrix matrix to search in, [numRows, vectorLength]
+     * @param k number of results per query
+     * @param blockRows number of matrix rows per GEMM block, 0 for automatic choice
+     * @return one TopK per query
+     */
+    public static TopK[] search(@NonNull INDArray queries, @NonNull INDArray matrix, int k, int blockRows) {
+        if (queries.rank() != 2 || matrix.rank() != 2)
+            throw new IllegalArgumentException("Queries and matrix should have rank 2");
+
+        if (queries.columns() != matrix.columns())
+            throw new IllegalArgumentException("Queries vector length [" + queries.columns()
+                            + "] doesn't match matrix vector length [" + matrix.columns() + "]");
+
+        int numQueries = queries.rows();
+        int numRows = matrix.rows();
+
+        TopK[] result = new TopK[numQueries];
+        for (int q = 0; q < numQueries; q++)
+            result[q] = new TopK(k);
+
+        if (k <= 0)
+            return result;
+
+        for (int qs = 0; qs < numQueries; qs += QUERY_BATCH) {
+            int qe = Math.min(qs + QUERY_BATCH, numQueries);
+            int mq = qe - qs;
+            INDArray chunk = numQueries == mq ? queries
+                            : queries.get(NDArrayIndex.interval(qs, qe), NDArrayIndex.all());
+
+            int step = blockRows > 0 ? blockRows : Math.max(1024, BLOCK_ELEMENTS / mq);
+            for (int bs = 0; bs < numRows; bs += step) {
+                int be = Math.min(bs + step, numRows);
+                int rows = be - bs;
+                INDArray block = rows == numRows ? matrix : matrix.get(NDArrayIndex.interval(bs, be), NDArrayIndex.all());
+
+                INDArray similarity = Nd4j.createUninitialized(new int[] {mq, rows}, 'c');
+                chunk.mmul(block.transpose(), similarity);
+
+                DataBuffer buffer = similarity.data();
+                long offset = similarity.offset();
+                for (int q = 0; q < mq; q++) {
+                    TopK topK = result[qs + q];
+                    long base = offset + (long) q * rows;
+                    for (int r = 0; r < rows; r++)
+                        topK.offer(bs + r, buffer.getDouble(base + r));
+                }
+            }
+        }
+
+        for (TopK topK : result)
+            topK.sort();
+
+        return result;
+    }
+
+    /**
+     * This class is primitive bounded min-heap, that keeps k best (index, score) pairs
+     */
+    public static class TopK {
+        private final int capacity;
+        private final int[] indices;
+        private final double[] scores;
+        private int size;
+
+        public TopK(int capacity) {
+            this.capacity = Math.max(capacity, 0);
+            this.indices = new int[this.capacity];
+            this.scores = new double[this.capacity];
+        }
+
+        /**
+         * This method offers new candidate. NaN scores are ignored.
+         */
+        public void offer(int index, double score) {
+            if (capacity == 0 || Double.isNaN(score))
+                return;
+
+            if (size < capacity) {
+                indices[size] = index;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                indices[0] = index;
+                scores[0] = score;
+                siftDown(0, size);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i])
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int size) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size)
+                    break;
+                int smallest = left;
+                if (left + 1 < size && scores[left + 1] < scores[left])
+                    smallest = left + 1;
+                if (scores[i] <= scores[smallest])
+                    break;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int ti = indices[a];
+            indices[a] = indices[b];
+            indices[b] = ti;
+
+            double ts = scores[a];
+            scores[a] = scores[b];
+            scores[b] = ts;
+        }
+
+        /**
+         * Heap sort in place, so results are ordered from best to worst
+         */
+        protected void sort() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns index of i-th best result
+         */
+        public int getIndex(int i) {
+            return indices[i];
+        }
+
+        /**
+         * Returns score of i-th best result
+         */
+        public double getScore(int i) {
+            return scores[i];
+        }
+    }
+}
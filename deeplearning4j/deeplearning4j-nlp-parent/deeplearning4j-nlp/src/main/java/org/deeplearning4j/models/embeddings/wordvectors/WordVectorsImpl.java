@@ -274,6 +274,25 @@ public class WordVectorsImpl<T extends SequenceElement> implements WordVectors {
         return modelUtils.wordsNearest(word, n);
     }
 
+    /**
+     * Get the top n words most similar to each of given words.
+     * With BasicModelUtils (and its subclasses) all words are processed as single batch.
+     *
+     * @param words the words to compare
+     * @param n the n to get
+     * @return the top n words, one collection per given word
+     */
+    public List<Collection<String>> wordsNearestBatch(@NonNull List<String> words, int n) {
+        if (modelUtils instanceof BasicModelUtils)
+            return ((BasicModelUtils<T>) modelUtils).wordsNearestBatch(words, n);
+
+        List<Collection<String>> result = new ArrayList<>(words.size());
+        for (String word : words)
+            result.add(modelUtils.wordsNearest(word, n));
+
+        return result;
+    }
+
 
     /**
      * Returns similarity of two elements, provided by ModelUtils
@@ -29,26 +29,26 @@ import org.deeplearning4j.text.sentenceiterator.PrefetchingSentenceIterator;
 import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
 import org.deeplearning4j.text.sentenceiterator.SynchronizedSentenceIterator;
 import org.deeplearning4j.util.DL4JFileUtils;
-import org.deeplearning4j.util.ThreadUtils;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class implements building cooccurrence map for abstract training corpus.
- * However it's performance rather low, due to exsessive IO that happens in ShadowCopyThread
  *
- * PLEASE NOTE: Current implementation involves massive IO, and it should be rewritter as soon as ND4j gets sparse arrays support
+ * Each worker thread accumulates weights in its own {@link PrimitiveCountMap}, so no locking is involved on hot path.
+ * As soon as thread-local table is about to outgrow its share of memory threshold, it's flushed to disk as sorted run.
+ * After corpus is processed, all runs are merged with {@link CoOccurrenceRunMerger} into target file.
  *
  * @author raver119@gmail.com
  */
@@ -59,23 +59,19 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
     protected VocabCache<T> vocabCache;
     protected SequenceIterator<T> sequenceIterator;
 
-    // please note, we need enough room for ShadowCopy thread, that's why -1 there
-    protected int workers = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+    protected int workers = Math.max(Runtime.getRuntime().availableProcessors(), 1);
 
     // target file, where text with cooccurrencies should be saved
     protected File targetFile;
 
-    protected ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-
     protected long memory_threshold = 0;
 
-    private ShadowCopyThread shadowThread;
+    // sorted runs flushed by calculator threads
+    private final List<File> runs = Collections.synchronizedList(new ArrayList<File>());
+
+    // thread-local tables, used for memory accounting only
+    private final List<PrimitiveCountMap> tables = Collections.synchronizedList(new ArrayList<PrimitiveCountMap>());
 
-    //    private Counter<Integer> sentenceOccurrences = Util.parallelCounter();
-    //private CounterMap<T, T> coOccurrenceCounts = Util.parallelCounterMap();
-    private volatile CountMap<T> coOccurrenceCounts = new CountMap<>();
-    //private Counter<Integer> occurrenceAllocations = Util.parallelCounter();
-    //private List<Pair<T, T>> coOccurrences;
     private AtomicLong processedSequences = new AtomicLong(0);
 
 
@@ -87,26 +83,34 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
     /**
      * This method returns cooccurrence distance weights for two SequenceElements
      *
+     * PLEASE NOTE: only pairs that weren't flushed to disk yet are taken into account, and after fit() all of them are.
+     * Use iterator() to access the final weights.
+     *
      * @param element1
      * @param element2
      * @return distance weight
      */
+    @Deprecated
     public double getCoOccurrenceCount(@NonNull T element1, @NonNull T element2) {
-        return coOccurrenceCounts.getCount(element1, element2);
+        double result = 0.0;
+        synchronized (tables) {
+            for (PrimitiveCountMap table : tables)
+                result += table.getCount(element1.getIndex(), element2.getIndex());
+        }
+        return result;
     }
 
     /**
-     * This method returns estimated memory footrpint, based on current CountMap content
+     * This method returns estimated memory footrpint, based on current thread-local tables
      * @return
      */
     protected long getMemoryFootprint() {
-        // TODO: implement this method. It should return approx. memory used by appropriate CountMap
-        try {
-            lock.readLock().lock();
-            return ((long) coOccurrenceCounts.size()) * 24L * 5L;
-        } finally {
-            lock.readLock().unlock();
+        long footprint = 0;
+        synchronized (tables) {
+            for (PrimitiveCountMap table : tables)
+                footprint += table.getMemoryFootprint();
         }
+        return footprint;
     }
 
     /**
@@ -118,9 +122,6 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
     }
 
     public void fit() {
-        shadowThread = new ShadowCopyThread();
-        shadowThread.start();
-
         // we should reset iterator before counting cooccurrences
         sequenceIterator.reset();
 
@@ -137,9 +138,24 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
+
+            if (threads.get(x).getException() != null)
+                throw new RuntimeException(threads.get(x).getException());
+        }
+
+        try {
+            logger.debug("Merging {} sorted runs", runs.size());
+            CoOccurrenceWriter<T> writer = new ASCIICoOccurrenceWriter<>(targetFile);
+            long numberOfLinesSaved = new CoOccurrenceRunMerger().merge(runs, vocabCache, writer);
+            writer.finish();
+
+            logger.info("Number of word pairs saved: [" + numberOfLinesSaved + "]");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            runs.clear();
         }
 
-        shadowThread.finish();
         logger.info("CoOccurrences map was built.");
     }
 
@@ -307,7 +323,9 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
 
         private final SequenceIterator<T> iterator;
         private final AtomicLong sequenceCounter;
+        private final PrimitiveCountMap table = new PrimitiveCountMap();
         private int threadId;
+        private volatile Exception exception;
 
         public CoOccurrencesCalculatorThread(int threadId, @NonNull SequenceIterator<T> iterator,
                         @NonNull AtomicLong sequenceCounter) {
@@ -318,335 +336,80 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             this.setName("CoOccurrencesCalculatorThread " + threadId);
         }
 
+        public Exception getException() {
+            return exception;
+        }
+
         @Override
         public void run() {
-            while (iterator.hasMoreSequences()) {
-                Sequence<T> sequence = iterator.nextSequence();
-
-                List<String> tokens = new ArrayList<>(sequence.asLabels());
-                //            logger.info("Tokens size: " + tokens.size());
-                for (int x = 0; x < sequence.getElements().size(); x++) {
-                    int wordIdx = vocabCache.indexOf(tokens.get(x));
-                    if (wordIdx < 0) {
-                        continue;
+            tables.add(table);
+            try {
+                // each thread gets equal share of memory threshold
+                long budget = Math.max(getMemoryThreshold() / workers, 1L);
+
+                while (iterator.hasMoreSequences()) {
+                    Sequence<T> sequence = iterator.nextSequence();
+
+                    // resolve vocab indices once per sequence, missing words are marked with -1
+                    List<T> elements = sequence.getElements();
+                    int[] indices = new int[elements.size()];
+                    boolean[] unknown = new boolean[elements.size()];
+                    for (int x = 0; x < indices.length; x++) {
+                        String label = elements.get(x).getLabel();
+                        indices[x] = vocabCache.indexOf(label);
+                        unknown[x] = Glove.DEFAULT_UNK.equals(label);
                     }
-                    String w1 = vocabCache.wordFor(tokens.get(x)).getLabel();
 
-                    // THIS iS SAFE TO REMOVE, NO CHANCE WE'll HAVE UNK WORD INSIDE SEQUENCE
-                    /*if(w1.equals(Glove.UNK))
-                        continue;
-                    */
-
-                    int windowStop = Math.min(x + windowSize + 1, tokens.size());
-                    for (int j = x; j < windowStop; j++) {
-                        int otherWord = vocabCache.indexOf(tokens.get(j));
-                        if (otherWord < 0) {
+                    for (int x = 0; x < indices.length; x++) {
+                        int wordIdx = indices[x];
+                        if (wordIdx < 0) {
                             continue;
                         }
-                        String w2 = vocabCache.wordFor(tokens.get(j)).getLabel();
 
-                        if (w2.equals(Glove.DEFAULT_UNK) || otherWord == wordIdx) {
-                            continue;
-                        }
+                        int windowStop = Math.min(x + windowSize + 1, indices.length);
+                        for (int j = x; j < windowStop; j++) {
+                            int otherWord = indices[j];
+                            if (otherWord < 0 || unknown[j] || otherWord == wordIdx) {
+                                continue;
+                            }
 
+                            double nWeight = 1.0 / (j - x + Nd4j.EPS_THRESHOLD);
 
-                        T tokenX = vocabCache.wordFor(tokens.get(x));
-                        T tokenJ = vocabCache.wordFor(tokens.get(j));
-                        double nWeight = 1.0 / (j - x + Nd4j.EPS_THRESHOLD);
+                            if (table.isResizePending() && table.getNextMemoryFootprint() > budget)
+                                flush();
 
-                        while (getMemoryFootprint() >= getMemoryThreshold()) {
-                            shadowThread.invoke();
-                            /*lock.readLock().lock();
-                            int size = coOccurrenceCounts.size();
-                            lock.readLock().unlock();
-                            */
-                            if (threadId == 0) {
-                                logger.debug("Memory consuimption > threshold: {footrpint: [" + getMemoryFootprint()
-                                                + "], threshold: [" + getMemoryThreshold() + "] }");
-                            }
-                            ThreadUtils.uncheckedSleep(10000);
-                        }
-                        /*
-                        if (getMemoryFootprint() == 0) {
-                            logger.info("Zero size!");
-                        }
-                        */
-
-                        try {
-                            lock.readLock().lock();
-                            if (wordIdx < otherWord) {
-                                coOccurrenceCounts.incrementCount(tokenX, tokenJ, nWeight);
-                                if (symmetric) {
-                                    coOccurrenceCounts.incrementCount(tokenJ, tokenX, nWeight);
-                                }
-                            } else {
-                                coOccurrenceCounts.incrementCount(tokenJ, tokenX, nWeight);
-
-                                if (symmetric) {
-                                    coOccurrenceCounts.incrementCount(tokenX, tokenJ, nWeight);
-                                }
+                            int index1 = Math.min(wordIdx, otherWord);
+                            int index2 = Math.max(wordIdx, otherWord);
+                            table.incrementCount(index1, index2, nWeight);
+                            if (symmetric) {
+                                table.incrementCount(index2, index1, nWeight);
                             }
-                        } finally {
-                            lock.readLock().unlock();
                         }
                     }
-                }
 
-                sequenceCounter.incrementAndGet();
-            }
-        }
-    }
-
-    /**
-     * This class is designed to provide shadow copy functionality for CoOccurence maps, since with proper corpus size you can't fit such a map into memory
-     *
-     */
-    private class ShadowCopyThread extends Thread implements Runnable {
-
-        private AtomicBoolean isFinished = new AtomicBoolean(false);
-        private AtomicBoolean isTerminate = new AtomicBoolean(false);
-        private AtomicBoolean isInvoked = new AtomicBoolean(false);
-        private AtomicBoolean shouldInvoke = new AtomicBoolean(false);
-
-        // file that contains resuts from previous runs
-        private File[] tempFiles;
-        private RoundCount counter;
-
-        public ShadowCopyThread() {
-            try {
-
-                counter = new RoundCount(1);
-                tempFiles = new File[2];
-
-                tempFiles[0] = DL4JFileUtils.createTempFile("aco", "tmp");
-                tempFiles[1] = DL4JFileUtils.createTempFile("aco", "tmp");
-
-                tempFiles[0].deleteOnExit();
-                tempFiles[1].deleteOnExit();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-
-            this.setName("ACO ShadowCopy thread");
-        }
-
-        @Override
-        public void run() {
-            /*
-                  Basic idea is pretty simple: run quetly, untill memory gets filled up to some high volume.
-                  As soon as this happens - execute shadow copy.
-            */
-            while (!isFinished.get() && !isTerminate.get()) {
-                // check used memory. if memory use below threshold - sleep for a while. if above threshold - invoke copier
-
-                if (getMemoryFootprint() > getMemoryThreshold() || (shouldInvoke.get() && !isInvoked.get())) {
-                    // we'll just invoke copier, nothing else
-                    shouldInvoke.compareAndSet(true, false);
-                    invokeBlocking();
-                } else {
-                    /*
-                           commented and left here for future debugging purposes, if needed
-                    
-                            //lock.readLock().lock();
-                            //int size = coOccurrenceCounts.size();
-                            //lock.readLock().unlock();
-                            //logger.info("Current memory situation: {size: [" +size+ "], footprint: [" + getMemoryFootprint()+"], threshold: ["+ getMemoryThreshold() +"]}");
-                     */
-                    ThreadUtils.uncheckedSleep(1000);
+                    sequenceCounter.incrementAndGet();
                 }
-            }
-        }
 
-        /**
-         * This methods advises shadow copy process to start
-         */
-        public void invoke() {
-            shouldInvoke.compareAndSet(false, true);
-        }
-
-        /**
-         * This methods dumps cooccurrence map into save file.
-         * Please note: this method is synchronized and will block, until complete
-         */
-        public synchronized void invokeBlocking() {
-            if (getMemoryFootprint() < getMemoryThreshold() && !isFinished.get()) {
-                return;
-            }
-
-            int numberOfLinesSaved = 0;
-
-            isInvoked.set(true);
-
-            logger.debug("Memory purge started.");
-
-            /*
-                Basic plan:
-                    1. Open temp file
-                    2. Read that file line by line
-                    3. For each read line do synchronization in memory > new file direction
-             */
-
-            counter.tick();
-
-            CountMap<T> localMap;
-            try {
-                // in any given moment there's going to be only 1 WriteLock, due to invokeBlocking() being synchronized call
-                lock.writeLock().lock();
-
-
-
-                // obtain local copy of CountMap
-                localMap = coOccurrenceCounts;
-
-                // set new CountMap, and release write lock
-                coOccurrenceCounts = new CountMap<>();
-            } finally {
-                lock.writeLock().unlock();
-            }
-
-            try {
-
-                File file = null;
-                if (!isFinished.get()) {
-                    file = tempFiles[counter.previous()];
-                } else
-                    file = targetFile;
-
-
-                //    PrintWriter pw = new PrintWriter(file);
-
-                int linesRead = 0;
-
-                logger.debug("Saving to: [" + counter.get() + "], Reading from: [" + counter.previous() + "]");
-                CoOccurenceReader<T> reader =
-                                new BinaryCoOccurrenceReader<>(tempFiles[counter.previous()], vocabCache, localMap);
-                CoOccurrenceWriter<T> writer = (isFinished.get()) ? new ASCIICoOccurrenceWriter<T>(targetFile)
-                                : new BinaryCoOccurrenceWriter<T>(tempFiles[counter.get()]);
-                while (reader.hasMoreObjects()) {
-                    CoOccurrenceWeight<T> line = reader.nextObject();
-
-                    if (line != null) {
-                        writer.writeObject(line);
-                        numberOfLinesSaved++;
-                        linesRead++;
-                    }
-                }
-                reader.finish();
-
-                logger.debug("Lines read: [" + linesRead + "]");
-
-                //now, we can dump the rest of elements, which were not presented in existing dump
-                Iterator<Pair<T, T>> iterator = localMap.getPairIterator();
-                while (iterator.hasNext()) {
-                    Pair<T, T> pair = iterator.next();
-                    double mWeight = localMap.getCount(pair);
-                    CoOccurrenceWeight<T> object = new CoOccurrenceWeight<>();
-                    object.setElement1(pair.getFirst());
-                    object.setElement2(pair.getSecond());
-                    object.setWeight(mWeight);
-
-                    writer.writeObject(object);
-
-                    numberOfLinesSaved++;
-                    //      if (numberOfLinesSaved % 100000 == 0) logger.info("Lines saved: [" + numberOfLinesSaved +"]");
-                }
-
-                writer.finish();
-
-                /*
-                SentenceIterator sIterator =  new PrefetchingSentenceIterator.Builder(new BasicLineIterator(tempFiles[counter.get()]))
-                        .setFetchSize(500000)
-                        .build();
-                
-                
-                int linesRead = 0;
-                while (sIterator.hasNext()) {
-                    //List<Writable> list = new ArrayList<>(reader.next());
-                    String sentence = sIterator.nextSentence();
-                    if (sentence == null || sentence.isEmpty()) continue;
-                    String[] strings = sentence.split(" ");
-                
-                
-                    // first two elements are integers - vocab indexes
-                    //T element1 = vocabCache.wordFor(vocabCache.wordAtIndex(list.get(0).toInt()));
-                    //T element2 = vocabCache.wordFor(vocabCache.wordAtIndex(list.get(1).toInt()));
-                    T element1 = vocabCache.elementAtIndex(Integer.valueOf(strings[0]));
-                    T element2 = vocabCache.elementAtIndex(Integer.valueOf(strings[1]));
-                
-                    // getting third element, previously stored weight
-                    double sWeight = Double.valueOf(strings[2]);  // list.get(2).toDouble();
-                
-                    // now, since we have both elements ready, we can check this pair against inmemory map
-                        double mWeight = localMap.getCount(element1, element2);
-                        if (mWeight <= 0) {
-                            // this means we have no such pair in memory, so we'll do nothing to sWeight
-                        } else {
-                            // since we have new weight value in memory, we should update sWeight value before moving it off memory
-                            sWeight += mWeight;
-                
-                            // original pair can be safely removed from CountMap
-                            localMap.removePair(element1,element2);
-                        }
-                
-                        StringBuilder builder = new StringBuilder().append(element1.getIndex()).append(" ").append(element2.getIndex()).append(" ").append(sWeight);
-                        pw.println(builder.toString());
-                        numberOfLinesSaved++;
-                        linesRead++;
-                
-                   // if (numberOfLinesSaved % 100000 == 0) logger.info("Lines saved: [" + numberOfLinesSaved +"]");
-                  //  if (linesRead % 100000 == 0) logger.info("Lines read: [" + linesRead +"]");
-                }
-                */
-                /*
-                logger.info("Lines read: [" + linesRead + "]");
-                
-                //now, we can dump the rest of elements, which were not presented in existing dump
-                Iterator<Pair<T, T>> iterator = localMap.getPairIterator();
-                while (iterator.hasNext()) {
-                    Pair<T, T> pair = iterator.next();
-                    double mWeight = localMap.getCount(pair);
-                
-                    StringBuilder builder = new StringBuilder().append(pair.getFirst().getIndex()).append(" ").append(pair.getFirst().getIndex()).append(" ").append(mWeight);
-                    pw.println(builder.toString());
-                    numberOfLinesSaved++;
-                
-                              //      if (numberOfLinesSaved % 100000 == 0) logger.info("Lines saved: [" + numberOfLinesSaved +"]");
-                }
-                
-                pw.flush();
-                pw.close();
-                
-                */
-
-                // just a hint for gc
-                localMap = null;
-                //sIterator.finish();
+                if (!table.isEmpty())
+                    flush();
             } catch (Exception e) {
-                throw new RuntimeException(e);
+                logger.error("CoOccurrences calculation failed", e);
+                exception = e;
+            } finally {
+                tables.remove(table);
             }
-
-            logger.info("Number of word pairs saved so far: [" + numberOfLinesSaved + "]");
-            isInvoked.set(false);
         }
 
-        /**
-         * This method provides soft finish ability for shadow copy process.
-         * Please note: it's blocking call, since it requires for final merge.
-         */
-        public void finish() {
-            if (this.isFinished.get()) {
-                return;
-            }
+        protected void flush() throws IOException {
+            File run = DL4JFileUtils.createTempFile("aco", "run");
+            run.deleteOnExit();
 
-            this.isFinished.set(true);
-            invokeBlocking();
-        }
+            long saved = table.flushSorted(run);
+            runs.add(run);
 
-        /**
-         * This method provides hard fiinish ability for shadow copy process
-         */
-        public void terminate() {
-            this.isTerminate.set(true);
+            if (threadId == 0) {
+                logger.debug("Memory purge: [" + saved + "] pairs flushed to sorted run");
+            }
         }
     }
 }
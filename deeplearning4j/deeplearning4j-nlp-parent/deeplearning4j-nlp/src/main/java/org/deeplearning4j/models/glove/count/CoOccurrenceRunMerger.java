@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.glove.count;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.util.DL4JFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class merges sorted runs written by {@link PrimitiveCountMap#flushSorted(File)}: weights of pairs present in
+ * multiple runs are summed, and each pair is written exactly once, in (index1, index2) order.
+ *
+ * If number of runs exceeds max fan-in, runs are merged in multiple passes, so number of open files stays bounded.
+ */
+public class CoOccurrenceRunMerger {
+    protected static final Logger logger = LoggerFactory.getLogger(CoOccurrenceRunMerger.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final int maxFanIn;
+
+    public CoOccurrenceRunMerger() {
+        this(64);
+    }
+
+    public CoOccurrenceRunMerger(int maxFanIn) {
+        if (maxFanIn < 2)
+            throw new IllegalArgumentException("Max fan-in should be at least 2, got " + maxFanIn);
+
+        this.maxFanIn = maxFanIn;
+    }
+
+    /**
+     * This method merges given runs into writer. Run files are deleted once merged.
+     *
+     * @return number of pairs written
+     */
+    public <T extends SequenceElement> long merge(@NonNull List<File> runs, @NonNull final VocabCache<T> vocabCache,
+                    @NonNull final CoOccurrenceWriter<T> writer) throws IOException {
+        List<File> current = new ArrayList<>(runs);
+        while (current.size() > maxFanIn) {
+            logger.debug("Intermediate merge pass over {} runs", current.size());
+            List<File> next = new ArrayList<>();
+            for (int i = 0; i < current.size(); i += maxFanIn) {
+                List<File> group = current.subList(i, Math.min(i + maxFanIn, current.size()));
+                if (group.size() == 1) {
+                    next.add(group.get(0));
+                    continue;
+                }
+
+                File merged = DL4JFileUtils.createTempFile("aco", "run");
+                merged.deleteOnExit();
+                try (final DataOutputStream dos = new DataOutputStream(
+                                new BufferedOutputStream(new FileOutputStream(merged), BUFFER_SIZE))) {
+                    mergePass(group, new PairConsumer() {
+                        @Override
+                        public void accept(int index1, int index2, double weight) throws IOException {
+                            dos.writeInt(index1);
+                            dos.writeInt(index2);
+                            dos.writeDouble(weight);
+                        }
+                    });
+                }
+                next.add(merged);
+            }
+            current = next;
+        }
+
+        final long[] count = new long[1];
+        mergePass(current, new PairConsumer() {
+            @Override
+            public void accept(int index1, int index2, double weight) {
+                CoOccurrenceWeight<T> object = new CoOccurrenceWeight<>();
+                object.setElement1(vocabCache.elementAtIndex(index1));
+                object.setElement2(vocabCache.elementAtIndex(index2));
+                object.setWeight(weight);
+                writer.writeObject(object);
+                count[0]++;
+            }
+        });
+
+        return count[0];
+    }
+
+    protected void mergePass(List<File> runs, PairConsumer consumer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance())
+                    queue.add(reader);
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader head = queue.poll();
+                long key = head.key;
+                double weight = head.weight;
+                if (head.advance())
+                    queue.add(head);
+
+                // sum up the same pair coming from other runs
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    RunReader other = queue.poll();
+                    weight += other.weight;
+                    if (other.advance())
+                        queue.add(other);
+                }
+
+                consumer.accept(PrimitiveCountMap.first(key), PrimitiveCountMap.second(key), weight);
+            }
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+
+            for (File run : runs)
+                run.delete();
+        }
+    }
+
+    protected interface PairConsumer {
+        void accept(int index1, int index2, double weight) throws IOException;
+    }
+
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+        private final DataInputStream stream;
+        private final long total;
+        private long position;
+        private long key;
+        private double weight;
+
+        private RunReader(File file) throws IOException {
+            this.total = file.length() / 16;
+            this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        private boolean advance() throws IOException {
+            if (position >= total)
+                return false;
+
+            key = PrimitiveCountMap.pack(stream.readInt(), stream.readInt());
+            weight = stream.readDouble();
+            position++;
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            return Long.compare(key, o.key);
+        }
+
+        @Override
+        public void close() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+    }
+}
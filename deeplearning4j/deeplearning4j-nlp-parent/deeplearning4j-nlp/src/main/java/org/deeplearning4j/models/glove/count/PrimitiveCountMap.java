@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.glove.count;
+
+import lombok.NonNull;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Primitive replacement for {@link CountMap}: open-addressing hash table, mapping pair of vocab indices to weight.
+ *
+ * Pair is packed into single long key, and weights are stored in primitive double array, so there's no per-pair
+ * object allocation, and memory use is 16 bytes per slot. Table isn't thread-safe: it's meant to be owned by single
+ * worker thread, and flushed to disk as sorted run once it reaches memory budget.
+ */
+public class PrimitiveCountMap {
+    private static final long EMPTY = -1L;
+    private static final float LOAD_FACTOR = 0.7f;
+    private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private long[] keys;
+    private double[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public PrimitiveCountMap() {
+        this(1 << 16);
+    }
+
+    /**
+     * @param initialCapacity initial number of slots, will be rounded up to power of 2
+     */
+    public PrimitiveCountMap(int initialCapacity) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new double[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        size = 0;
+    }
+
+    public static long pack(int index1, int index2) {
+        return ((long) index1 << 32) | (index2 & 0xFFFFFFFFL);
+    }
+
+    public static int first(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int second(long key) {
+        return (int) key;
+    }
+
+    private static int slot(long key) {
+        // murmur3 finalizer, to spread sequential indices
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * This method adds weight to the given pair
+     *
+     * @param index1 vocab index of first element, non-negative
+     * @param index2 vocab index of second element, non-negative
+     * @param weight weight to add
+     */
+    public void incrementCount(int index1, int index2, double weight) {
+        long key = pack(index1, index2);
+        int i = slot(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                values[i] += weight;
+                return;
+            } else if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = weight;
+                if (++size > resizeThreshold)
+                    resize();
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public double getCount(int index1, int index2) {
+        long key = pack(index1, index2);
+        int i = slot(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key)
+                return values[i];
+            else if (k == EMPTY)
+                return 0.0;
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(oldKeys.length * 2);
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key == EMPTY)
+                continue;
+
+            int i = slot(key) & mask;
+            while (keys[i] != EMPTY)
+                i = (i + 1) & mask;
+
+            keys[i] = key;
+            values[i] = oldValues[j];
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return approximate memory used by this table, in bytes
+     */
+    public long getMemoryFootprint() {
+        return keys.length * 16L;
+    }
+
+    /**
+     * @return memory this table will use after next resize, in bytes
+     */
+    public long getNextMemoryFootprint() {
+        return keys.length * 32L;
+    }
+
+    /**
+     * @return true if next increment of new pair will trigger resize
+     */
+    public boolean isResizePending() {
+        return size >= resizeThreshold;
+    }
+
+    /**
+     * This method writes all pairs to the given file, sorted by (index1, index2), in the same format as
+     * {@link BinaryCoOccurrenceWriter} uses, and clears this table keeping its capacity.
+     *
+     * @return number of pairs written
+     */
+    public long flushSorted(@NonNull File file) throws IOException {
+        // compact non-empty slots to the head of arrays, and sort them in place
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                keys[n] = keys[i];
+                values[n] = values[i];
+                n++;
+            }
+        }
+        sort(keys, values, 0, n - 1);
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            for (int i = 0; i < n; i++) {
+                dos.writeInt(first(keys[i]));
+                dos.writeInt(second(keys[i]));
+                dos.writeDouble(values[i]);
+            }
+        }
+
+        clear();
+        return n;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0.0);
+        size = 0;
+    }
+
+    /**
+     * Quicksort on keys, moving values along. Keys are unique, so no special handling of duplicates is needed.
+     */
+    private static void sort(long[] keys, double[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            // median of three as pivot
+            if (keys[mid] < keys[lo])
+                swap(keys, values, mid, lo);
+            if (keys[hi] < keys[lo])
+                swap(keys, values, hi, lo);
+            if (keys[hi] < keys[mid])
+                swap(keys, values, hi, mid);
+            long pivot = keys[mid];
+
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j)
+                    swap(keys, values, i++, j--);
+            }
+
+            // recurse into smaller part, loop over larger one
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            long k = keys[i];
+            double v = values[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > k) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            values[j + 1] = v;
+        }
+    }
+
+    private static void swap(long[] keys, double[] values, int a, int b) {
+        long k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+
+        double v = values[a];
+        values[a] = values[b];
+        values[b] = v;
+    }
+}
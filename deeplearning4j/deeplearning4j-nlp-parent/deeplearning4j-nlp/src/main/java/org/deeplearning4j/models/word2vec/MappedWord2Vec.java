@@ -0,0 +1,584 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.models.word2vec;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.reader.ModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.util.MappedBufferUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is special limited Word2Vec implementation, that works on top of memory-mapped file.
+ * Vocabulary isn't deserialized: words are looked up directly in the hash table stored in the file, and vectors are
+ * returned as views of mapped region, without any copies. So loading takes constant time regardless of vocabulary
+ * size, and all JVMs on the same host that use the same file share single page-cached copy of it.
+ *
+ * File layout (header values are big-endian, all other blocks use byte order recorded in the header):
+ * <pre>
+ * magic "DL4JW2VM", int version, byte order flag, data type name, int number of words, int vector length,
+ * int number of hash buckets, long hash table offset, long strings offset, long vectors offset
+ * hash table: int word index per bucket, -1 for empty bucket. Open addressing with linear probing
+ * strings: int offset per word (plus one extra offset marking the end), followed by UTF-8 bytes of all words
+ * vectors: page-aligned row-major FLOAT or HALF matrix, one row per word
+ * </pre>
+ *
+ * Use {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#writeMappedModel(WordVectors, File, DataType)}
+ * to create such file, and {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#loadMappedModel(File)}
+ * to load it.
+ *
+ * PLEASE NOTE: This implementation DOES NOT provide some of original Word2Vec methods, such as wordsNearest or wordsNearestSum.
+ */
+@Slf4j
+public class MappedWord2Vec implements WordVectors {
+    private static final long serialVersionUID = 1L;
+
+    public static final byte[] MAGIC = "DL4JW2VM".getBytes(Charset.forName("UTF-8"));
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 4096;
+
+    // vectors are mapped in chunks, since single mapping can't exceed 2GB
+    protected static final long MAX_CHUNK_BYTES = 1L << 30;
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Getter private final File file;
+    @Getter private final boolean readOnly;
+    private String unk = null;
+
+    private transient DataType dataType;
+    private transient int numWords;
+    private transient int vectorLength;
+    private transient int numBuckets;
+    private transient ByteBuffer index;
+    private transient long hashOffset;
+    private transient long stringsOffset;
+    private transient int rowsPerChunk;
+    private transient INDArray[] chunks;
+
+    /**
+     * @param file file to map
+     * @param readOnly if true, vectors are mapped read-only, and any attempt to modify returned arrays will crash JVM.
+     *                 if false, vectors are mapped copy-on-write, which requires write permissions for the file.
+     *                 If file isn't writable, vectors are copied to memory instead.
+     *                 The file itself is never modified.
+     * @throws IOException
+     */
+    public MappedWord2Vec(@NonNull File file, boolean readOnly) throws IOException {
+        this.file = file;
+        this.readOnly = readOnly;
+        map();
+    }
+
+    protected void map() throws IOException {
+        // copy-on-write mapping can only be created for channel opened for both reading and writing
+        boolean copy = !readOnly && !file.canWrite();
+        if (copy)
+            log.warn("File [{}] isn't writable, so word vectors will be copied to memory instead of copy-on-write mapping. "
+                            + "Use readOnly mode for zero-copy loading of read-only files", file.getAbsolutePath());
+
+        FileChannel.MapMode mode = readOnly || copy ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.PRIVATE;
+        long vectorsOffset;
+        ByteOrder order;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IllegalArgumentException("File [" + file.getAbsolutePath() + "] isn't memory-mappable word vectors file");
+
+            int version = dis.readInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported file version: " + version);
+
+            order = dis.readBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            dataType = DataType.valueOf(dis.readUTF());
+            numWords = dis.readInt();
+            vectorLength = dis.readInt();
+            numBuckets = dis.readInt();
+            hashOffset = dis.readLong();
+            stringsOffset = dis.readLong();
+            vectorsOffset = dis.readLong();
+        }
+
+        if (order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Word vectors were saved with " + order + " byte order, but this platform uses "
+                            + ByteOrder.nativeOrder());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.PRIVATE ? "rw" : "r");
+                        FileChannel channel = raf.getChannel()) {
+            // hash table and strings are small, comparing to vectors, so they are mapped as single region
+            long indexStart = hashOffset;
+            long indexBytes = vectorsOffset - indexStart;
+            if (indexBytes > Integer.MAX_VALUE)
+                throw new IllegalStateException("Vocabulary is too large: " + indexBytes + " bytes");
+
+            // offsets below are relative to the start of vocabulary region
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexStart, indexBytes).order(order);
+            hashOffset -= indexStart;
+            stringsOffset -= indexStart;
+
+            long rowBytes = (long) vectorLength * (dataType == DataType.HALF ? 2 : 4);
+            rowsPerChunk = (int) Math.max(1, Math.min(numWords, MAX_CHUNK_BYTES / rowBytes));
+            int numChunks = numWords == 0 ? 0 : (numWords + rowsPerChunk - 1) / rowsPerChunk;
+            chunks = new INDArray[numChunks];
+            for (int c = 0; c < numChunks; c++) {
+                int rows = Math.min(rowsPerChunk, numWords - c * rowsPerChunk);
+                MappedByteBuffer mapped = channel.map(mode, vectorsOffset + c * rowsPerChunk * rowBytes, rows * rowBytes);
+                mapped.order(order);
+                chunks[c] = Nd4j.create(MappedBufferUtils.wrap(mapped, dataType, (long) rows * vectorLength),
+                                new long[] {rows, vectorLength});
+                if (copy)
+                    chunks[c] = chunks[c].dup();
+            }
+        }
+    }
+
+    /**
+     * This method checks if given file is memory-mappable word vectors file, by its magic bytes
+     *
+     * @param file file to check
+     * @return true if file starts with {@link #MAGIC}
+     */
+    public static boolean isMappedModel(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAGIC.length)
+            return false;
+
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            return Arrays.equals(MAGIC, magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map();
+    }
+
+    @Override
+    public String getUNK() {
+        return unk;
+    }
+
+    @Override
+    public void setUNK(String newUNK) {
+        this.unk = newUNK;
+    }
+
+    /**
+     * Returns true if the model has this word in the vocab
+     *
+     * @param word the word to test for
+     * @return true if the model has the word in the vocab
+     */
+    @Override
+    public boolean hasWord(String word) {
+        return indexOf(word) >= 0;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        if (word == null || numWords == 0)
+            return -1;
+
+        byte[] bytes = word.getBytes(UTF8);
+        int mask = numBuckets - 1;
+        int bucket = hash(bytes) & mask;
+        while (true) {
+            int idx = index.getInt((int) (hashOffset + 4L * bucket));
+            if (idx < 0)
+                return -1;
+
+            if (matches(idx, bytes))
+                return idx;
+
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * This method returns word stored at given index
+     *
+     * @param idx index of the word
+     * @return
+     */
+    public String wordAtIndex(int idx) {
+        if (idx < 0 || idx >= numWords)
+            return null;
+
+        int start = index.getInt((int) (stringsOffset + 4L * idx));
+        int end = index.getInt((int) (stringsOffset + 4L * (idx + 1)));
+        byte[] bytes = new byte[end - start];
+        int base = (int) (stringsOffset + 4L * (numWords + 1)) + start;
+        for (int e = 0; e < bytes.length; e++)
+            bytes[e] = index.get(base + e);
+
+        return new String(bytes, UTF8);
+    }
+
+    protected boolean matches(int idx, byte[] bytes) {
+        int start = index.getInt((int) (stringsOffset + 4L * idx));
+        int end = index.getInt((int) (stringsOffset + 4L * (idx + 1)));
+        if (end - start != bytes.length)
+            return false;
+
+        int base = (int) (stringsOffset + 4L * (numWords + 1)) + start;
+        for (int e = 0; e < bytes.length; e++)
+            if (index.get(base + e) != bytes[e])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of UTF-8 bytes, used by both writer and reader, so it must never change
+     */
+    public static int hash(byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes) {
+            h ^= b & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * This method returns vector for given index, as view of mapped region
+     *
+     * @param idx index of the word
+     * @return
+     */
+    public INDArray getVector(int idx) {
+        if (idx < 0 || idx >= numWords)
+            throw new IndexOutOfBoundsException("Index " + idx + " is out of range [0, " + numWords + ")");
+
+        return chunks[idx / rowsPerChunk].getRow(idx % rowsPerChunk);
+    }
+
+    /**
+     * Get the word vector for a given word. Returned array is a view of mapped region,
+     * so if model was loaded in read-only mode it must not be modified.
+     *
+     * @param word the word to get the matrix for
+     * @return the ndarray for this word
+     */
+    @Override
+    public INDArray getWordVectorMatrix(String word) {
+        int idx = indexOf(word);
+        if (idx < 0 && getUNK() != null)
+            idx = indexOf(getUNK());
+
+        if (idx < 0)
+            return null;
+
+        return getVector(idx);
+    }
+
+    @Override
+    public double[] getWordVector(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : vector.toDoubleVector();
+    }
+
+    /**
+     * Returns the word vector divided by the norm2 of the array
+     *
+     * @param word the word to get the matrix for
+     * @return the looked up matrix
+     */
+    @Override
+    public INDArray getWordVectorMatrixNormalized(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : Transforms.unitVec(vector.dup());
+    }
+
+    /**
+     * This method returns 2D array, where each row represents corresponding word/label
+     *
+     * @param labels
+     * @return
+     */
+    @Override
+    public INDArray getWordVectors(Collection<String> labels) {
+        List<INDArray> words = new ArrayList<>();
+        for (String label : labels) {
+            INDArray vector = getWordVectorMatrix(label);
+            if (vector != null)
+                words.add(vector);
+        }
+
+        return Nd4j.vstack(words);
+    }
+
+    /**
+     * This method returns mean vector, built from words/labels passed in
+     *
+     * @param labels
+     * @return
+     */
+    @Override
+    public INDArray getWordVectorsMean(Collection<String> labels) {
+        INDArray matrix = getWordVectors(labels);
+        return matrix.mean(0);
+    }
+
+    /**
+     * Returns the similarity of 2 words
+     *
+     * @param label1 the first word
+     * @param label2 the second word
+     * @return a normalized similarity (cosine similarity)
+     */
+    @Override
+    public double similarity(String label1, String label2) {
+        if (label1 == null || label2 == null)
+            return Double.NaN;
+
+        INDArray vec1 = getWordVectorMatrix(label1);
+        INDArray vec2 = getWordVectorMatrix(label2);
+        if (vec1 == null || vec2 == null)
+            return Double.NaN;
+
+        if (label1.equals(label2))
+            return 1.0;
+
+        return Transforms.cosineSim(vec1, vec2);
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearestSum(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearestSum(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearestSum(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Map<String, Double> accuracy(List<String> questions) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public List<String> similarWordsInVocabTo(String word, double accuracy) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearest(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearest(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * Vocab for the vectors
+     * PLEASE NOTE: This method is not available in this implementation, since vocabulary is never deserialized.
+     * Use {@link #hasWord(String)}, {@link #indexOf(String)} and {@link #wordAtIndex(int)} instead.
+     *
+     * @return
+     */
+    @Override
+    public VocabCache vocab() {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use hasWord(), indexOf() or wordAtIndex() instead");
+    }
+
+    @Override
+    public WeightLookupTable lookupTable() {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public void setModelUtils(ModelUtils utils) {
+        // no-op
+    }
+
+    @Override
+    public void loadWeightsInto(INDArray array) {
+        int row = 0;
+        for (INDArray chunk : chunks) {
+            int rows = (int) chunk.rows();
+            array.get(NDArrayIndex.interval(row, row + rows), NDArrayIndex.all()).assign(chunk);
+            row += rows;
+        }
+    }
+
+    @Override
+    public long vocabSize() {
+        return numWords;
+    }
+
+    @Override
+    public int vectorSize() {
+        return vectorLength;
+    }
+
+    @Override
+    public boolean jsonSerializable() {
+        return false;
+    }
+
+    /**
+     * This method writes word vectors in memory-mappable format
+     *
+     * @param words words, ordered by index
+     * @param vectors source of vectors for the words
+     * @param file file to write to
+     * @param dataType FLOAT or HALF
+     * @throws IOException
+     */
+    public static void write(@NonNull List<String> words, @NonNull WordVectors vectors, @NonNull File file,
+                    @NonNull DataType dataType) throws IOException {
+        if (dataType != DataType.FLOAT && dataType != DataType.HALF)
+            throw new IllegalArgumentException("Only FLOAT and HALF data types are supported, got " + dataType);
+
+        int numWords = words.size();
+        int vectorLength = vectors.vectorSize();
+
+        // hash table is kept at most half full, so probe sequences stay short
+        int numBuckets = Integer.highestOneBit(Math.max(2, numWords) * 2 - 1) << 1;
+        int[] buckets = new int[numBuckets];
+        Arrays.fill(buckets, -1);
+
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        int[] offsets = new int[numWords + 1];
+        for (int idx = 0; idx < numWords; idx++) {
+            byte[] bytes = words.get(idx).getBytes(UTF8);
+            offsets[idx] = blob.size();
+            blob.write(bytes, 0, bytes.length);
+
+            int bucket = hash(bytes) & (numBuckets - 1);
+            while (buckets[bucket] >= 0)
+                bucket = (bucket + 1) & (numBuckets - 1);
+            buckets[bucket] = idx;
+        }
+        offsets[numWords] = blob.size();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+        header.writeUTF(dataType.name());
+        header.writeInt(numWords);
+        header.writeInt(vectorLength);
+        header.writeInt(numBuckets);
+        int fixedSize = header.size() + 3 * 8;
+        long hashOffset = fixedSize;
+        long stringsOffset = hashOffset + 4L * numBuckets;
+        long vectorsOffset = stringsOffset + 4L * (numWords + 1) + blob.size();
+        vectorsOffset = (vectorsOffset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        header.writeLong(hashOffset);
+        header.writeLong(stringsOffset);
+        header.writeLong(vectorsOffset);
+        header.flush();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            channel.position(0);
+            writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+            for (int bucket : buckets)
+                buffer = putInt(channel, buffer, bucket);
+            for (int offset : offsets)
+                buffer = putInt(channel, buffer, offset);
+            flush(channel, buffer);
+            writeFully(channel, ByteBuffer.wrap(blob.toByteArray()));
+
+            channel.position(vectorsOffset);
+            int rowBytes = vectorLength * (dataType == DataType.HALF ? 2 : 4);
+            for (int idx = 0; idx < numWords; idx++) {
+                INDArray vector = vectors.getWordVectorMatrix(words.get(idx));
+                float[] values = vector == null ? new float[vectorLength] : vector.toFloatVector();
+                if (values.length != vectorLength)
+                    throw new IllegalStateException("Vector for word [" + words.get(idx) + "] has length "
+                                    + values.length + ", expected " + vectorLength);
+
+                if (buffer.remaining() < rowBytes)
+                    flush(channel, buffer);
+
+                if (rowBytes > buffer.capacity())
+                    buffer = ByteBuffer.allocateDirect(rowBytes).order(ByteOrder.nativeOrder());
+
+                for (float value : values) {
+                    if (dataType == DataType.HALF)
+                        buffer.putShort((short) HalfIndexer.fromFloat(value));
+                    else
+                        buffer.putFloat(value);
+                }
+            }
+            flush(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < 4)
+            flush(channel, buffer);
+
+        buffer.putInt(value);
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -63,6 +63,8 @@ public class VocabConstructor<T extends SequenceElement> {
 
     protected static final Logger log = LoggerFactory.getLogger(VocabConstructor.class);
 
+    private static final int SHARD_BATCH_SIZE = 128;
+
     private VocabConstructor() {
 
     }
@@ -287,7 +289,7 @@ public class VocabConstructor<T extends SequenceElement> {
         int cnt = 0;
         int numProc = Runtime.getRuntime().availableProcessors();
         int numThreads = Math.max(numProc / 2, 2);
-        PriorityScheduler executorService = new PriorityScheduler(numThreads);
+        PriorityScheduler executorService = null;
         final AtomicLong execCounter = new AtomicLong(0);
         final AtomicLong finCounter = new AtomicLong(0);
 
@@ -301,8 +303,15 @@ public class VocabConstructor<T extends SequenceElement> {
 
             AbstractCache<T> tempHolder = new AbstractCache.Builder<T>().build();
 
+            // sharded counting is used unless InvertedIndex has to be filled along the way
+            boolean sharded = allowParallelBuilder && index == null;
+            if (sharded)
+                buildShardedVocabulary(source, tempHolder, Math.max(numProc - 1, 1), parsedCount);
+            else if (allowParallelBuilder && executorService == null)
+                executorService = new PriorityScheduler(numThreads);
+
             int sequences = 0;
-            while (iterator.hasMoreSequences()) {
+            while (!sharded && iterator.hasMoreSequences()) {
                 Sequence<T> document = iterator.nextSequence();
 
                 seqCount.incrementAndGet();
@@ -430,7 +439,8 @@ public class VocabConstructor<T extends SequenceElement> {
             }
         }
 
-        executorService.shutdown();
+        if (executorService != null)
+            executorService.shutdown();
 
         System.gc();
 
@@ -443,6 +453,145 @@ public class VocabConstructor<T extends SequenceElement> {
         return cache;
     }
 
+    /**
+     * This method counts elements of given source with multiple threads. Each thread owns its own VocabCountTable,
+     * so there's no contention on the hot path. Tables are merged into target holder once source is exhausted.
+     * Scavenger isn't applied here: shard-local counters are partial, and pruning them would drop elements that are
+     * frequent overall, but spread across shards. So memory use isn't bounded while counting, and rare elements are
+     * filtered out by minWordFrequency after merge only.
+     *
+     * @param source source to be processed
+     * @param targetVocab holder for this source
+     * @param numShards number of counting threads
+     * @param parsedCount counter of processed elements
+     */
+    protected void buildShardedVocabulary(@NonNull VocabSource<T> source, @NonNull AbstractCache<T> targetVocab,
+                    int numShards, @NonNull AtomicLong parsedCount) {
+        SequenceIterator<T> iterator = source.getIterator();
+        BlockingQueue<List<Sequence<T>>> queue = new ArrayBlockingQueue<>(numShards * 4);
+
+        List<VocabShard> shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            VocabShard shard = new VocabShard(i, queue);
+            shards.add(shard);
+            shard.start();
+        }
+
+        long lastTime = System.currentTimeMillis();
+        long lastSequences = seqCount.get();
+        long lastElements = parsedCount.get();
+
+        try {
+            List<Sequence<T>> batch = new ArrayList<>(SHARD_BATCH_SIZE);
+            while (iterator.hasMoreSequences()) {
+                Sequence<T> document = iterator.nextSequence();
+
+                seqCount.incrementAndGet();
+                parsedCount.addAndGet(document.size());
+                targetVocab.incrementTotalDocCount();
+
+                batch.add(document);
+                if (batch.size() >= SHARD_BATCH_SIZE) {
+                    dispatch(queue, batch, shards);
+                    batch = new ArrayList<>(SHARD_BATCH_SIZE);
+                }
+
+                if (seqCount.get() % 100000 == 0) {
+                    long currentTime = System.currentTimeMillis();
+                    long currentSequences = seqCount.get();
+                    long currentElements = parsedCount.get();
+
+                    double seconds = (currentTime - lastTime) / (double) 1000;
+                    double seqPerSec = (currentSequences - lastSequences) / seconds;
+                    double elPerSec = (currentElements - lastElements) / seconds;
+
+                    // shards are counted independently, so this is upper bound of vocabulary size
+                    long vocabSize = 0;
+                    for (VocabShard shard : shards)
+                        vocabSize += shard.table.size();
+
+                    log.info("Sequences checked: [{}]; Current vocabulary size: [{}]; Sequences/sec: {}; Words/sec: {};",
+                                    seqCount.get(), vocabSize, String.format("%.2f", seqPerSec),
+                                    String.format("%.2f", elPerSec));
+                    lastTime = currentTime;
+                    lastElements = currentElements;
+                    lastSequences = currentSequences;
+                }
+            }
+
+            if (!batch.isEmpty())
+                dispatch(queue, batch, shards);
+        } finally {
+            // empty batch is the end-of-input marker, one per shard
+            for (int i = 0; i < numShards; i++) {
+                try {
+                    queue.put(Collections.<Sequence<T>>emptyList());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        log.debug("Waiting till all shards stop...");
+        for (VocabShard shard : shards) {
+            try {
+                shard.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        for (VocabShard shard : shards)
+            if (shard.exception != null)
+                throw new RuntimeException(shard.exception);
+
+        VocabCountTable<T> merged = shards.get(0).table;
+        for (int i = 1; i < shards.size(); i++)
+            merged.merge(shards.get(i).table);
+
+        merged.transferTo(targetVocab);
+    }
+
+    private void dispatch(BlockingQueue<List<Sequence<T>>> queue, List<Sequence<T>> batch, List<VocabShard> shards) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                for (VocabShard shard : shards)
+                    if (shard.exception != null)
+                        throw new RuntimeException(shard.exception);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method counts single document into given table. It's the sharded counterpart of processDocument()
+     *
+     * @param table shard-local table
+     * @param document
+     */
+    protected void processDocument(@NonNull VocabCountTable<T> table, @NonNull Sequence<T> document) {
+        table.nextSequence();
+
+        if (fetchLabels && document.getSequenceLabels() != null) {
+            for (T labelWord : document.getSequenceLabels())
+                table.addLabel(labelWord);
+        }
+
+        for (T element : document.getElements()) {
+            String token = element.getLabel();
+            if (token == null || token.isEmpty())
+                continue;
+            if (stopWords != null && stopWords.contains(token))
+                continue;
+
+            table.increment(element);
+        }
+    }
+
     protected void filterVocab(AbstractCache<T> cache, int minWordFrequency) {
         int numWords = cache.numWords();
         LinkedBlockingQueue<String> labelsToRemove = new LinkedBlockingQueue<>();
@@ -567,6 +716,14 @@ public class VocabConstructor<T extends SequenceElement> {
             return this;
         }
 
+        /**
+         * This method enables periodic removal of rare elements while counting, to bound memory use on huge corpora.
+         * PLEASE NOTE: it's ignored by sharded counting, which is used if parallel builder is allowed and no
+         * InvertedIndex is set
+         *
+         * @param reallyEnable
+         * @return
+         */
         public Builder<T> enableScavenger(boolean reallyEnable) {
             this.enableScavenger = reallyEnable;
             return this;
@@ -609,6 +766,45 @@ public class VocabConstructor<T extends SequenceElement> {
     }
 
 
+    protected class VocabShard extends Thread {
+        private final BlockingQueue<List<Sequence<T>>> queue;
+        private final VocabCountTable<T> table = new VocabCountTable<>();
+        private volatile Throwable exception;
+
+        public VocabShard(int shardId, @NonNull BlockingQueue<List<Sequence<T>>> queue) {
+            this.queue = queue;
+
+            this.setName("VocabShard thread " + shardId);
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<Sequence<T>> batch = queue.take();
+                    if (batch.isEmpty())
+                        break;
+
+                    for (Sequence<T> document : batch)
+                        processDocument(table, document);
+                }
+            } catch (Throwable t) {
+                exception = t;
+
+                // we still have to drain queue, so producer won't block forever
+                while (true) {
+                    try {
+                        if (queue.take().isEmpty())
+                            break;
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
     protected class VocabRunnable implements Runnable {
         private final AtomicLong finalCounter;
         private final Sequence<T> document;
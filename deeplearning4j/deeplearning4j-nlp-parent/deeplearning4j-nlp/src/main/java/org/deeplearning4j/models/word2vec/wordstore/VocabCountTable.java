@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.word2vec.wordstore;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+
+import java.util.Arrays;
+
+/**
+ * This class is single-threaded open-addressed counting table, used as vocabulary shard during parallel vocab construction.
+ *
+ * Counters are kept in primitive arrays, and only the first observed element is retained for each label.
+ * Each worker fills its own table without any synchronization, and tables are merged once corpus is processed.
+ */
+public class VocabCountTable<T extends SequenceElement> {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // open-addressed table: slot -> entry id + 1
+    private int[] slots;
+    private int mask;
+
+    // dense entries
+    private String[] keys;
+    private int[] hashes;
+    private long[] frequencies;
+    private long[] sequences;
+    private int[] lastSequence;
+    private boolean[] labels;
+    private Object[] elements;
+    private int size;
+
+    private int sequenceId = 0;
+
+    public VocabCountTable() {
+        this(1024);
+    }
+
+    public VocabCountTable(int expectedSize) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+        slots = new int[capacity];
+        mask = capacity - 1;
+
+        int entries = Math.max(16, expectedSize);
+        keys = new String[entries];
+        hashes = new int[entries];
+        frequencies = new long[entries];
+        sequences = new long[entries];
+        lastSequence = new int[entries];
+        labels = new boolean[entries];
+        elements = new Object[entries];
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private int find(String key, int hash) {
+        int pos = mix(hash) & mask;
+        while (true) {
+            int id = slots[pos];
+            if (id == 0)
+                return -(pos + 1);
+            id--;
+            if (hashes[id] == hash && keys[id].equals(key))
+                return id;
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private int add(String key, int hash, int pos, T element) {
+        if (size == keys.length) {
+            int entries = keys.length << 1;
+            keys = Arrays.copyOf(keys, entries);
+            hashes = Arrays.copyOf(hashes, entries);
+            frequencies = Arrays.copyOf(frequencies, entries);
+            sequences = Arrays.copyOf(sequences, entries);
+            lastSequence = Arrays.copyOf(lastSequence, entries);
+            labels = Arrays.copyOf(labels, entries);
+            elements = Arrays.copyOf(elements, entries);
+        }
+
+        int id = size++;
+        keys[id] = key;
+        hashes[id] = hash;
+        elements[id] = element;
+        lastSequence[id] = -1;
+        slots[pos] = id + 1;
+
+        if (size > slots.length * LOAD_FACTOR)
+            rehash(slots.length << 1);
+
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int pos = mix(hashes[id]) & mask;
+            while (slots[pos] != 0)
+                pos = (pos + 1) & mask;
+            slots[pos] = id + 1;
+        }
+    }
+
+    /**
+     * This method marks start of next sequence. Sequences count for each element is incremented once per sequence.
+     */
+    public void nextSequence() {
+        sequenceId++;
+    }
+
+    /**
+     * This method increments frequency of given element by 1
+     *
+     * @param element
+     */
+    public void increment(@NonNull T element) {
+        String key = element.getLabel();
+        int hash = key.hashCode();
+        int id = find(key, hash);
+        if (id < 0)
+            id = add(key, hash, -id - 1, element);
+
+        frequencies[id]++;
+        if (lastSequence[id] != sequenceId) {
+            lastSequence[id] = sequenceId;
+            sequences[id]++;
+        }
+    }
+
+    /**
+     * This method adds sequence label, if it's not known yet
+     *
+     * @param label
+     */
+    public void addLabel(@NonNull T label) {
+        String key = label.getLabel();
+        int hash = key.hashCode();
+        int id = find(key, hash);
+        if (id < 0) {
+            id = add(key, hash, -id - 1, label);
+            labels[id] = true;
+        }
+    }
+
+    /**
+     * This method returns number of unique elements in this table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method returns frequency of given label, or 0 if label is unknown
+     */
+    public long getFrequency(@NonNull String label) {
+        int id = find(label, label.hashCode());
+        return id < 0 ? 0 : frequencies[id] + (labels[id] ? 1 : 0);
+    }
+
+    /**
+     * This method returns number of sequences given label was observed in, or 0 if label is unknown
+     */
+    public long getSequencesCount(@NonNull String label) {
+        int id = find(label, label.hashCode());
+        return id < 0 ? 0 : sequences[id];
+    }
+
+    /**
+     * This method merges other table into this one. Elements of this table take precedence.
+     *
+     * @param other
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(@NonNull VocabCountTable<T> other) {
+        for (int o = 0; o < other.size; o++) {
+            String key = other.keys[o];
+            int hash = other.hashes[o];
+            int id = find(key, hash);
+            if (id < 0)
+                id = add(key, hash, -id - 1, (T) other.elements[o]);
+
+            frequencies[id] += other.frequencies[o];
+            sequences[id] += other.sequences[o];
+            labels[id] |= other.labels[o];
+        }
+    }
+
+    /**
+     * This method moves all entries into given VocabCache, with accumulated counters applied to retained elements
+     *
+     * @param cache
+     */
+    @SuppressWarnings("unchecked")
+    public void transferTo(@NonNull VocabCache<T> cache) {
+        for (int id = 0; id < size; id++) {
+            T element = (T) elements[id];
+            if (labels[id]) {
+                element.setSpecial(true);
+                element.markAsLabel(true);
+            }
+
+            element.setElementFrequency(frequencies[id] + (labels[id] ? 1 : 0));
+            element.setSequencesCount(sequences[id]);
+            cache.addToken(element);
+        }
+    }
+}
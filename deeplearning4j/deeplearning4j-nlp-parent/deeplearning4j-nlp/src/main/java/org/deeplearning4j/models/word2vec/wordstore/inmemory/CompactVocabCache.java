@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is VocabCache implementation built on top of primitive arrays instead of ConcurrentHashMaps.
+ *
+ * Elements are stored in dense array, and located via open-addressed table keyed by element storageId,
+ * so there are no boxed keys and no map entries per element. Huffman indices are stored as plain array as well.
+ *
+ * PLEASE NOTE: modifications are synchronized, while lookups are lock-free. That's fine for typical usage:
+ * vocabulary is built first, and accessed read-only during training.
+ *
+ * PLEASE NOTE: this cache isn't used by default, and has few limitations compared to AbstractCache:
+ * - element frequencies and Huffman indices are kept in element objects only, there are no separate counters
+ * - it can't be serialized: WordVectorSerializer.writeSequenceVectors() expects AbstractCache, and
+ *   Word2Vec/ParagraphVectors toJson() skip vocabulary of other types
+ * So it's suitable only for models that are trained and used in the same process.
+ */
+@Slf4j
+public class CompactVocabCache<T extends SequenceElement> implements VocabCache<T> {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // open-addressed table with interleaved (storageId, element id + 1) pairs, id of 0 means empty slot.
+    // single array is used so lock-free readers never observe keys & ids from different generations
+    private volatile long[] table;
+
+    // dense elements storage, holes are possible after removals
+    private Object[] elements;
+    private int nextId;
+    private int size;
+
+    // Huffman index -> element
+    private Object[] indices;
+
+    private final AtomicLong documentsCounter = new AtomicLong(0);
+    private final AtomicLong totalWordCount = new AtomicLong(0);
+
+    public CompactVocabCache() {
+        this(1024);
+    }
+
+    public CompactVocabCache(int expectedSize) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+        this.table = new long[capacity * 2];
+        this.elements = new Object[Math.max(16, expectedSize)];
+        this.indices = new Object[16];
+    }
+
+    private static int slot(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * This method returns dense id of element with given storageId, or -1 if there's no such element
+     */
+    private int find(long key) {
+        long[] table = this.table;
+        int mask = (table.length >> 1) - 1;
+        int pos = slot(key) & mask;
+        while (true) {
+            long id = table[(pos << 1) + 1];
+            if (id == 0)
+                return -1;
+            if (table[pos << 1] == key)
+                return (int) id - 1;
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementById(int id) {
+        return id < 0 ? null : (T) elements[id];
+    }
+
+    private void insert(long key, int id) {
+        long[] table = this.table;
+        if (size + 1 > (table.length >> 1) * LOAD_FACTOR)
+            table = rehash(table.length);
+
+        int mask = (table.length >> 1) - 1;
+        int pos = slot(key) & mask;
+        while (table[(pos << 1) + 1] != 0)
+            pos = (pos + 1) & mask;
+
+        table[pos << 1] = key;
+        table[(pos << 1) + 1] = id + 1;
+    }
+
+    private long[] rehash(int capacity) {
+        long[] table = this.table;
+        long[] newTable = new long[capacity * 2];
+        int newMask = capacity - 1;
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i + 1] == 0)
+                continue;
+
+            int pos = slot(table[i]) & newMask;
+            while (newTable[(pos << 1) + 1] != 0)
+                pos = (pos + 1) & newMask;
+
+            newTable[pos << 1] = table[i];
+            newTable[(pos << 1) + 1] = table[i + 1];
+        }
+
+        this.table = newTable;
+        return newTable;
+    }
+
+    private void delete(long key) {
+        long[] table = this.table;
+        int mask = (table.length >> 1) - 1;
+        int pos = slot(key) & mask;
+        while (table[(pos << 1) + 1] != 0 && table[pos << 1] != key)
+            pos = (pos + 1) & mask;
+
+        if (table[(pos << 1) + 1] == 0)
+            return;
+
+        // backward shift deletion, so probe sequences stay intact without tombstones
+        int gap = pos;
+        int next = (gap + 1) & mask;
+        while (table[(next << 1) + 1] != 0) {
+            int home = slot(table[next << 1]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap << 1] = table[next << 1];
+                table[(gap << 1) + 1] = table[(next << 1) + 1];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap << 1] = 0;
+        table[(gap << 1) + 1] = 0;
+    }
+
+    @Override
+    public void loadVocab() {
+        // no-op, same as AbstractCache
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return size > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op, same as AbstractCache
+    }
+
+    @Override
+    public Collection<String> words() {
+        List<String> result = new ArrayList<>(size);
+        for (T element : vocabWords())
+            if (element.getLabel() != null)
+                result.add(element.getLabel());
+
+        return Collections.unmodifiableCollection(result);
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(String word, int increment) {
+        T element = wordFor(word);
+        if (element != null) {
+            element.increaseElementFrequency(increment);
+            totalWordCount.addAndGet(increment);
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        T element = wordFor(word);
+        if (element != null)
+            return (int) element.getElementFrequency();
+        return 0;
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return wordFor(word) != null;
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        T element = elementAtIndex(index);
+        return element == null ? null : element.getLabel();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T elementAtIndex(int index) {
+        Object[] indices = this.indices;
+        if (index < 0 || index >= indices.length)
+            return null;
+
+        return (T) indices[index];
+    }
+
+    /**
+     * Returns Huffman index for specified label
+     *
+     * @param label the label to get index for
+     * @return >=0 if label exists, -1 if Huffman tree wasn't built yet, -2 if specified label wasn't found
+     */
+    @Override
+    public int indexOf(String label) {
+        T token = tokenFor(label);
+        if (token != null)
+            return token.getIndex();
+        else
+            return -2;
+    }
+
+    @Override
+    public Collection<T> vocabWords() {
+        Object[] elements = this.elements;
+        int limit = Math.min(nextId, elements.length);
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < limit; i++) {
+            T element = elementById(i);
+            if (element != null)
+                result.add(element);
+        }
+        return result;
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    public void setTotalWordOccurences(long value) {
+        totalWordCount.set(value);
+    }
+
+    @Override
+    public T wordFor(String label) {
+        if (label == null)
+            return null;
+
+        T element = elementById(find(SequenceElement.getLongHash(label)));
+        return element != null && label.equals(element.getLabel()) ? element : null;
+    }
+
+    @Override
+    public T wordFor(long id) {
+        return elementById(find(id));
+    }
+
+    @Override
+    public synchronized void addWordToIndex(int index, String label) {
+        if (index >= 0) {
+            T token = tokenFor(label);
+            if (token != null) {
+                putIndex(index, token);
+                token.setIndex(index);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addWordToIndex(int index, long elementId) {
+        if (index >= 0)
+            putIndex(index, tokenFor(elementId));
+    }
+
+    private void putIndex(int index, T element) {
+        if (index >= indices.length)
+            indices = Arrays.copyOf(indices, Math.max(index + 1, indices.length << 1));
+
+        indices[index] = element;
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        return size;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        T element = wordFor(word);
+        if (element != null)
+            return (int) element.getSequencesCount();
+        else
+            return -1;
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        T element = wordFor(word);
+        if (element != null)
+            element.incrementSequencesCount();
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        T element = wordFor(word);
+        if (element != null)
+            element.setSequencesCount(count);
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    public void setTotalDocCount(long by) {
+        documentsCounter.set(by);
+    }
+
+    @Override
+    public Collection<T> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * This method adds specified SequenceElement to vocabulary.
+     * If element with the same storageId already exists, counters of new element are added to existing one.
+     *
+     * @param element the word to add
+     * @return true if element was added, false if it was merged into existing one
+     */
+    @Override
+    public synchronized boolean addToken(T element) {
+        long key = element.getStorageId();
+        T oldElement = elementById(find(key));
+        boolean ret = false;
+        if (oldElement == null) {
+            if (nextId >= elements.length)
+                elements = Arrays.copyOf(elements, elements.length << 1);
+
+            int id = nextId++;
+            elements[id] = element;
+            insert(key, id);
+            size++;
+
+            oldElement = element;
+            ret = true;
+        } else {
+            oldElement.incrementSequencesCount(element.getSequencesCount());
+            oldElement.increaseElementFrequency((int) element.getElementFrequency());
+        }
+        totalWordCount.addAndGet((long) oldElement.getElementFrequency());
+        return ret;
+    }
+
+    @Override
+    public T tokenFor(String label) {
+        return wordFor(label);
+    }
+
+    @Override
+    public T tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String label) {
+        return containsWord(label);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<T> vocabCache) {
+        boolean added = false;
+        for (T element : vocabCache.vocabWords()) {
+            if (this.addToken(element))
+                added = true;
+        }
+
+        if (added)
+            this.documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public void updateWordsOccurrences() {
+        long total = 0;
+        for (T element : vocabWords()) {
+            long value = (long) element.getElementFrequency();
+            if (value > 0)
+                total += value;
+        }
+        totalWordCount.set(total);
+        log.info("Updated counter: [" + total + "]");
+    }
+
+    @Override
+    public synchronized void removeElement(String label) {
+        T element = wordFor(label);
+        if (element == null)
+            throw new IllegalStateException("Can't get label: '" + label + "'");
+
+        long key = element.getStorageId();
+        int id = find(key);
+
+        totalWordCount.getAndAdd((long) element.getElementFrequency() * -1);
+        int index = element.getIndex();
+        if (index >= 0 && index < indices.length && indices[index] == element)
+            indices[index] = null;
+
+        delete(key);
+        elements[id] = null;
+        size--;
+    }
+
+    @Override
+    public void removeElement(T element) {
+        removeElement(element.getLabel());
+    }
+
+    public static class Builder<T extends SequenceElement> {
+        protected int expectedSize = 1024;
+
+        public Builder() {
+
+        }
+
+        /**
+         * This method allows to pre-size internal tables, to avoid rehashing during vocabulary construction
+         *
+         * @param expectedSize expected number of elements
+         * @return
+         */
+        public Builder<T> expectedSize(int expectedSize) {
+            this.expectedSize = expectedSize;
+            return this;
+        }
+
+        public CompactVocabCache<T> build() {
+            return new CompactVocabCache<>(expectedSize);
+        }
+    }
+}
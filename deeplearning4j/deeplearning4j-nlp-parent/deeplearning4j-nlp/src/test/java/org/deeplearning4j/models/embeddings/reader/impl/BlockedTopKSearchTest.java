@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BlockedTopKSearchTest {
+
+    @Test
+    public void testSearch1() throws Exception {
+        Nd4j.getRandom().setSeed(119);
+        INDArray matrix = Nd4j.rand(3000, 16).subi(0.5);
+        INDArray queries = Nd4j.rand(7, 16).subi(0.5);
+
+        checkSearch(queries, matrix, BlockedTopKSearch.search(queries, matrix, 10));
+    }
+
+    @Test
+    public void testSearch2() throws Exception {
+        // multiple query chunks and multiple row blocks, including partial ones
+        Nd4j.getRandom().setSeed(119);
+        INDArray matrix = Nd4j.rand(3000, 16).subi(0.5);
+        INDArray queries = Nd4j.rand(300, 16).subi(0.5);
+
+        checkSearch(queries, matrix, BlockedTopKSearch.search(queries, matrix, 10, 700));
+    }
+
+    private void checkSearch(INDArray queries, INDArray matrix, BlockedTopKSearch.TopK[] result) {
+        assertEquals(queries.rows(), result.length);
+
+        INDArray exact = queries.mmul(matrix.transpose());
+        for (int q = 0; q < queries.rows(); q++) {
+            double[] scores = exact.getRow(q).dup().data().asDouble();
+            Integer[] order = new Integer[scores.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            final double[] s = scores;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Double.compare(s[o2], s[o1]);
+                }
+            });
+
+            assertEquals(10, result[q].size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(order[i].intValue(), result[q].getIndex(i));
+                assertEquals(scores[order[i]], result[q].getScore(i), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testTopK1() throws Exception {
+        BlockedTopKSearch.TopK topK = new BlockedTopKSearch.TopK(3);
+        double[] scores = new double[] {0.1, 0.9, Double.NaN, 0.5, 0.7, -0.3};
+        for (int i = 0; i < scores.length; i++)
+            topK.offer(i, scores[i]);
+
+        topK.sort();
+
+        assertEquals(3, topK.size());
+        assertEquals(1, topK.getIndex(0));
+        assertEquals(4, topK.getIndex(1));
+        assertEquals(3, topK.getIndex(2));
+    }
+
+    @Test
+    public void testWordsNearestBatch1() throws Exception {
+        AbstractCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        for (int i = 0; i < 200; i++)
+            cache.addToken(new VocabWord(i + 1, "word_" + i));
+
+        Huffman huffman = new Huffman(cache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(cache);
+
+        InMemoryLookupTable<VocabWord> lookupTable = new InMemoryLookupTable.Builder<VocabWord>().vectorLength(32)
+                        .cache(cache).seed(119).build();
+        lookupTable.resetWeights(true);
+
+        BasicModelUtils<VocabWord> utils = new BasicModelUtils<>();
+        utils.init(lookupTable);
+
+        List<String> labels = Arrays.asList("word_1", "word_50", "unknown_word", "word_199");
+        List<Collection<String>> batch = utils.wordsNearestBatch(labels, 5);
+
+        assertEquals(4, batch.size());
+        assertTrue(batch.get(2).isEmpty());
+
+        for (int i = 0; i < labels.size(); i++) {
+            if (i == 2)
+                continue;
+
+            Collection<String> expected = utils.wordsNearest(labels.get(i), 5);
+            assertEquals(new ArrayList<>(expected), new ArrayList<>(batch.get(i)));
+            assertFalse(batch.get(i).contains(labels.get(i)));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.glove.count;
+
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveCountMapTest {
+
+    @Test
+    public void testIncrementCount1() throws Exception {
+        PrimitiveCountMap map = new PrimitiveCountMap(4);
+
+        assertTrue(map.isEmpty());
+
+        map.incrementCount(1, 2, 0.5);
+        map.incrementCount(1, 2, 0.25);
+        map.incrementCount(2, 1, 1.0);
+
+        assertEquals(2, map.size());
+        assertEquals(0.75, map.getCount(1, 2), 1e-10);
+        assertEquals(1.0, map.getCount(2, 1), 1e-10);
+        assertEquals(0.0, map.getCount(3, 4), 1e-10);
+    }
+
+    @Test
+    public void testResize1() throws Exception {
+        PrimitiveCountMap map = new PrimitiveCountMap(4);
+        long footprint = map.getMemoryFootprint();
+
+        for (int x = 0; x < 1000; x++)
+            for (int y = 0; y < 10; y++)
+                map.incrementCount(x, y, x + y);
+
+        assertEquals(10000, map.size());
+        assertTrue(map.getMemoryFootprint() > footprint);
+
+        for (int x = 0; x < 1000; x++)
+            for (int y = 0; y < 10; y++)
+                assertEquals(x + y, map.getCount(x, y), 1e-10);
+    }
+
+    @Test
+    public void testFlushSorted1() throws Exception {
+        File tempFile = File.createTempFile("tmp", "run");
+        tempFile.deleteOnExit();
+
+        PrimitiveCountMap map = new PrimitiveCountMap();
+        map.incrementCount(7, 1, 1.0);
+        map.incrementCount(0, 5, 2.0);
+        map.incrementCount(7, 0, 3.0);
+        map.incrementCount(0, 3, 4.0);
+
+        assertEquals(4, map.flushSorted(tempFile));
+        assertTrue(map.isEmpty());
+        assertEquals(4 * 16, tempFile.length());
+
+        int[][] expected = new int[][] {{0, 3}, {0, 5}, {7, 0}, {7, 1}};
+        double[] weights = new double[] {4.0, 2.0, 3.0, 1.0};
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(tempFile))) {
+            for (int x = 0; x < expected.length; x++) {
+                assertEquals(expected[x][0], dis.readInt());
+                assertEquals(expected[x][1], dis.readInt());
+                assertEquals(weights[x], dis.readDouble(), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testMergeRuns1() throws Exception {
+        VocabCache<VocabWord> vocabCache = new AbstractCache.Builder<VocabWord>().build();
+        for (int x = 0; x < 10; x++)
+            vocabCache.addToken(new VocabWord(10.0 - x, "word" + x));
+
+        Huffman huffman = new Huffman(vocabCache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(vocabCache);
+
+        // 5 runs with overlapping pairs, merged with fan-in of 2 to exercise intermediate passes
+        List<File> runs = new ArrayList<>();
+        double[][] reference = new double[10][10];
+        for (int r = 0; r < 5; r++) {
+            PrimitiveCountMap map = new PrimitiveCountMap();
+            for (int x = 0; x < 10; x++)
+                for (int y = x + 1; y < 10; y += r + 1) {
+                    map.incrementCount(x, y, 1.0 + r);
+                    reference[x][y] += 1.0 + r;
+                }
+
+            File run = File.createTempFile("tmp", "run");
+            run.deleteOnExit();
+            map.flushSorted(run);
+            runs.add(run);
+        }
+
+        final List<CoOccurrenceWeight<VocabWord>> result = new ArrayList<>();
+        long cnt = new CoOccurrenceRunMerger(2).merge(runs, vocabCache, new CoOccurrenceWriter<VocabWord>() {
+            @Override
+            public void writeObject(CoOccurrenceWeight<VocabWord> object) {
+                result.add(object);
+            }
+
+            @Override
+            public void queueObject(CoOccurrenceWeight<VocabWord> object) {
+                result.add(object);
+            }
+
+            @Override
+            public void finish() {
+                //
+            }
+        });
+
+        assertEquals(45, cnt);
+        assertEquals(45, result.size());
+
+        long previous = -1;
+        for (CoOccurrenceWeight<VocabWord> weight : result) {
+            int index1 = weight.getElement1().getIndex();
+            int index2 = weight.getElement2().getIndex();
+            long key = PrimitiveCountMap.pack(index1, index2);
+            assertTrue(key > previous);
+            previous = key;
+
+            assertEquals(reference[index1][index2], weight.getWeight(), 1e-10);
+        }
+
+        for (File run : runs)
+            assertFalse(run.exists());
+    }
+}
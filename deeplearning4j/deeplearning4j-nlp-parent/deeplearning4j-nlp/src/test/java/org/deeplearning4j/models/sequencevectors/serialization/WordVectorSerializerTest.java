@@ -10,8 +10,10 @@ import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.embeddings.reader.ModelUtils;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
 import org.deeplearning4j.models.embeddings.reader.impl.FlatModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectors;
 import org.deeplearning4j.models.sequencevectors.SequenceVectors;
+import org.deeplearning4j.models.word2vec.MappedWord2Vec;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
@@ -19,6 +21,7 @@ import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
 import org.deeplearning4j.util.DL4JFileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -282,4 +285,48 @@ public class WordVectorSerializerTest {
             }
         }
     }
+
+    @Test
+    public void mappedWordVectors_Correct_WhenRestored() throws Exception {
+        INDArray syn0 = Nd4j.rand(3, 5);
+
+        InMemoryLookupTable<VocabWord> lookupTable =
+                (InMemoryLookupTable<VocabWord>) new InMemoryLookupTable.Builder<VocabWord>()
+                        .useAdaGrad(false).cache(cache).vectorLength(5)
+                        .build();
+        lookupTable.setSyn0(syn0);
+
+        Word2Vec word2Vec = new Word2Vec.Builder()
+                .vocabCache(cache)
+                .lookupTable(lookupTable)
+                .layerSize(5)
+                .build();
+
+        for (DataType dataType : new DataType[] {DataType.FLOAT, DataType.HALF}) {
+            File file = DL4JFileUtils.createTempFile("mapped", ".w2v");
+            file.deleteOnExit();
+            WordVectorSerializer.writeMappedModel(word2Vec, file, dataType);
+
+            MappedWord2Vec restored = WordVectorSerializer.loadMappedModel(file);
+            assertEquals(3, restored.vocabSize());
+            assertEquals(5, restored.vectorSize());
+            assertFalse(restored.hasWord("absent"));
+            assertNull(restored.getWordVectorMatrix("absent"));
+
+            double eps = dataType == DataType.HALF ? 1e-2 : 1e-6;
+            for (int i = 0; i < cache.numWords(); i++) {
+                String word = cache.wordAtIndex(i);
+                assertEquals(i, restored.indexOf(word));
+                assertEquals(word, restored.wordAtIndex(i));
+                assertArrayEquals(syn0.getRow(i).toDoubleVector(), restored.getWordVector(word), eps);
+            }
+
+            assertEquals(word2Vec.similarity("word", "tester"), restored.similarity("word", "tester"), eps);
+
+            // loadStaticModel should recognize mapped format as well
+            WordVectors vectors = WordVectorSerializer.loadStaticModel(file);
+            assertTrue(vectors instanceof MappedWord2Vec);
+            assertArrayEquals(syn0.getRow(1).toDoubleVector(), vectors.getWordVector("test"), eps);
+        }
+    }
 }
@@ -446,4 +446,76 @@ public class VocabConstructorTest {
 
         constructor.buildJointVocabulary(false, true);
     }
+
+    @Test
+    public void testShardedVocabulary_1() throws Exception {
+        VocabCache<VocabWord> sharded = buildSyntheticVocab(true);
+        VocabCache<VocabWord> sequential = buildSyntheticVocab(false);
+
+        assertEquals(sequential.numWords(), sharded.numWords());
+        assertEquals(sequential.totalWordOccurrences(), sharded.totalWordOccurrences());
+        assertEquals(sequential.totalNumberOfDocs(), sharded.totalNumberOfDocs());
+
+        for (VocabWord word : sequential.vocabWords()) {
+            assertEquals(word.getLabel(), sequential.wordFrequency(word.getLabel()),
+                            sharded.wordFrequency(word.getLabel()));
+            assertEquals(word.getLabel(), sequential.docAppearedIn(word.getLabel()),
+                            sharded.docAppearedIn(word.getLabel()));
+            assertTrue(sharded.indexOf(word.getLabel()) >= 0);
+        }
+
+        // minWordFrequency 3 should be applied to merged counters
+        for (VocabWord word : sharded.vocabWords())
+            assertTrue(word.getLabel(), word.getElementFrequency() >= 3);
+    }
+
+    private VocabCache<VocabWord> buildSyntheticVocab(boolean parallel) {
+        final Random random = new Random(119);
+        final List<List<String>> documents = new ArrayList<>();
+        for (int d = 0; d < 5000; d++) {
+            List<String> document = new ArrayList<>();
+            int length = 5 + random.nextInt(20);
+            for (int e = 0; e < length; e++) {
+                // skewed distribution, so there are frequent and rare words
+                int idx = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 1000);
+                document.add("word_" + idx);
+            }
+            documents.add(document);
+        }
+
+        Iterable<Sequence<VocabWord>> iterable = new Iterable<Sequence<VocabWord>>() {
+            @Override
+            public Iterator<Sequence<VocabWord>> iterator() {
+                final Iterator<List<String>> iterator = documents.iterator();
+                return new Iterator<Sequence<VocabWord>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Sequence<VocabWord> next() {
+                        Sequence<VocabWord> sequence = new Sequence<>();
+                        for (String label : iterator.next())
+                            sequence.addElement(new VocabWord(1.0, label));
+                        return sequence;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        SequenceIterator<VocabWord> sequenceIterator = new AbstractSequenceIterator.Builder<>(iterable).build();
+        VocabConstructor<VocabWord> constructor = new VocabConstructor.Builder<VocabWord>()
+                        .addSource(sequenceIterator, 3).allowParallelTokenization(parallel)
+                        .setTargetVocabCache(cache).build();
+
+        constructor.buildJointVocabulary(false, true);
+        return cache;
+    }
 }
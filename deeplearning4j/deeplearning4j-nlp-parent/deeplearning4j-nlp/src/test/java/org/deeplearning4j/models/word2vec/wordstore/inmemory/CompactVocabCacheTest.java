@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactVocabCacheTest {
+
+    @Test
+    public void testNumWords() throws Exception {
+        CompactVocabCache<VocabWord> cache = new CompactVocabCache.Builder<VocabWord>().build();
+
+        assertTrue(cache.addToken(new VocabWord(1.0, "word")));
+        assertTrue(cache.addToken(new VocabWord(1.0, "test")));
+        assertFalse(cache.addToken(new VocabWord(2.0, "test")));
+
+        assertEquals(2, cache.numWords());
+        assertEquals(3, cache.wordFrequency("test"));
+        assertTrue(cache.containsWord("word"));
+        assertFalse(cache.containsWord("tester"));
+        assertNull(cache.wordFor("tester"));
+    }
+
+    @Test
+    public void testHuffman() throws Exception {
+        CompactVocabCache<VocabWord> cache = new CompactVocabCache.Builder<VocabWord>().build();
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+
+        Huffman huffman = new Huffman(cache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(cache);
+
+        assertEquals("tester", cache.wordAtIndex(0));
+        assertEquals("test", cache.wordAtIndex(1));
+        assertEquals("word", cache.wordAtIndex(2));
+        assertEquals(0, cache.indexOf("tester"));
+        assertEquals(-2, cache.indexOf("unknown"));
+
+        VocabWord word = cache.tokenFor("word");
+        assertEquals(word, cache.wordFor(word.getStorageId()));
+    }
+
+    @Test
+    public void testGrowAndRemove() throws Exception {
+        CompactVocabCache<VocabWord> cache = new CompactVocabCache.Builder<VocabWord>().expectedSize(4).build();
+
+        for (int i = 0; i < 10000; i++)
+            cache.addToken(new VocabWord(i + 1, "word_" + i));
+
+        assertEquals(10000, cache.numWords());
+
+        for (int i = 0; i < 10000; i += 2)
+            cache.removeElement("word_" + i);
+
+        assertEquals(5000, cache.numWords());
+        assertEquals(5000, cache.vocabWords().size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i % 2 == 1, cache.containsWord("word_" + i));
+            if (i % 2 == 1)
+                assertEquals(i + 1, cache.wordFrequency("word_" + i));
+        }
+    }
+
+    @Test
+    public void testImportVocabulary() throws Exception {
+        AbstractCache<VocabWord> source = new AbstractCache.Builder<VocabWord>().build();
+        source.addToken(new VocabWord(1.0, "word"));
+        source.addToken(new VocabWord(2.0, "test"));
+        source.incrementTotalDocCount(5);
+
+        CompactVocabCache<VocabWord> cache = new CompactVocabCache.Builder<VocabWord>().build();
+        cache.importVocabulary(source);
+
+        assertEquals(2, cache.numWords());
+        assertEquals(5, cache.totalNumberOfDocs());
+        assertEquals(3, cache.totalWordOccurrences());
+    }
+}
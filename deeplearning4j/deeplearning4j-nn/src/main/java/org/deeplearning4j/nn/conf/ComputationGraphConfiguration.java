@@ -96,6 +96,12 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
 
+    /**
+     * Names of the vertices whose activations are retained for backprop when gradient checkpointing is used.
+     * Null or empty: checkpointing disabled (all activations are retained - the default)
+     */
+    protected List<String> gradientCheckpoints;
+
     protected NeuralNetConfiguration defaultConfiguration;
 
     //Counter for the number of parameter updates so far
@@ -315,6 +321,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.cacheMode = this.cacheMode;
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
+        conf.gradientCheckpoints = (this.gradientCheckpoints == null ? null : new ArrayList<>(this.gradientCheckpoints));
 
         return conf;
     }
@@ -381,6 +388,20 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             }
         }
 
+        //Check gradient checkpoints
+        if(gradientCheckpoints != null){
+            for (String s : gradientCheckpoints) {
+                if (!vertices.containsKey(s)) {
+                    throw new IllegalStateException("Invalid configuration: gradient checkpoint \"" + s
+                                    + "\" is not a valid vertex");
+                }
+                if (networkOutputs != null && networkOutputs.contains(s)) {
+                    throw new IllegalStateException("Invalid configuration: gradient checkpoint \"" + s
+                                    + "\" is a network output. Output vertices cannot be used as gradient checkpoints");
+                }
+            }
+        }
+
         //Check that there aren't any disconnected vertices
         if(!allowDisconnected){
             //A vertex is considered disconnected if it is (a) not an output vertex, and (b) isn't used an as input
@@ -661,6 +682,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected boolean allowNoOutput = false;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected List<String> gradientCheckpoints;
 
         public GraphBuilder(NeuralNetConfiguration.Builder globalConfiguration) {
             this.globalConfiguration = globalConfiguration;
@@ -678,6 +700,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.gradientCheckpoints = clonedConf.getGradientCheckpoints();
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -870,6 +893,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
                 if (inputPreProcessors.containsKey(vertexName)) {
                     inputPreProcessors.remove(vertexName);
                 }
+
+                if (gradientCheckpoints != null) {
+                    gradientCheckpoints.remove(vertexName);
+                }
             }
             return this;
         }
@@ -1005,6 +1032,32 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable gradient checkpointing (activation recomputation) for training.<br>
+         * By default, the activations of every vertex are kept in memory from the forward pass until backprop. With
+         * gradient checkpointing, the topological order of the graph is split into segments, each ending at one of the
+         * specified vertices. Only the activations of the checkpoint vertices - and of any other vertex that is used
+         * outside of its own segment (for example, by a skip connection) - are kept; the activations of the remaining
+         * vertices are recomputed one segment at a time during backprop. This reduces activation memory for deep
+         * graphs such as ResNets, at the cost of one additional forward pass per iteration.<br>
+         * Notes:<br>
+         * - Memory is only reduced when training workspaces are enabled<br>
+         * - Checkpoints are ignored when using truncated BPTT<br>
+         * - Dropout masks are reproduced exactly during recomputation, as the RNG is reseeded at the start of each
+         * segment (from a seed drawn from the global RNG at each iteration)<br>
+         * - Listeners are provided with the retained activations only, via
+         * {@link org.deeplearning4j.optimize.api.TrainingListener#onForwardPass(org.deeplearning4j.nn.api.Model, Map)}<br>
+         * Checkpoints are usually best placed at vertices with small activations that are not bypassed by skip
+         * connections - for example, the output of each residual block in a ResNet.
+         *
+         * @param vertexNames Names of the vertices to keep the activations of. Output vertices cannot be checkpoints.
+         *                    No arguments: disable checkpointing
+         */
+        public GraphBuilder gradientCheckpoints(String... vertexNames) {
+            this.gradientCheckpoints = (vertexNames == null || vertexNames.length == 0 ? null : new ArrayList<>(Arrays.asList(vertexNames)));
+            return this;
+        }
+
         /**
          * For the (perhaps partially constructed) network configuration, return a map of activation sizes for each
          * layer and vertex in the graph.<br>
@@ -1047,6 +1100,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
                         + " and " + tbpttBackLength + " but backprop type is set to " + backpropType + ". TBPTT configuration" +
                         " settings will only take effect if backprop type is set to BackpropType.TruncatedBPTT");
             }
+            if(gradientCheckpoints != null && !gradientCheckpoints.isEmpty() && backpropType == BackpropType.TruncatedBPTT){
+                log.warn("Gradient checkpoints have been configured, but backprop type is set to TruncatedBPTT." +
+                        " Gradient checkpointing is not supported for truncated BPTT and will not be used");
+            }
 
             ComputationGraphConfiguration conf = new ComputationGraphConfiguration();
             conf.backpropType = backpropType;
@@ -1062,6 +1119,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = globalConfiguration.inferenceWorkspaceMode;
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
+            conf.gradientCheckpoints = gradientCheckpoints;
 
             conf.defaultConfiguration = globalConfiguration.build();
 
@@ -76,6 +76,12 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected CacheMode cacheMode;
 
+    /**
+     * Indices of the layers whose activations are retained for backprop when gradient checkpointing is used.
+     * Null or empty: checkpointing disabled (all activations are retained - the default)
+     */
+    protected int[] gradientCheckpoints;
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -369,6 +375,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.trainingWorkspaceMode = this.trainingWorkspaceMode;
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
+            clone.gradientCheckpoints = (this.gradientCheckpoints == null ? null : this.gradientCheckpoints.clone());
 
             return clone;
 
@@ -454,6 +461,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected CacheMode cacheMode = CacheMode.NONE;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected int[] gradientCheckpoints;
 
         /**
          * Specify the processors.
@@ -557,6 +565,32 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable gradient checkpointing (activation recomputation) for training.<br>
+         * By default, the activations of every layer are kept in memory from the forward pass until backprop. With
+         * gradient checkpointing, only the activations of the specified layers (plus the network input) are kept; the
+         * layers between two checkpoints form a segment, whose activations are recomputed from the previous checkpoint
+         * when backprop reaches that segment. This reduces the activation memory required for training deep networks
+         * to approximately that of the checkpoints plus one segment, at the cost of one additional forward pass
+         * (for all layers other than the output layer) per iteration.<br>
+         * Notes:<br>
+         * - Memory is only reduced when training workspaces are enabled (see {@link #trainingWorkspaceMode(WorkspaceMode)})<br>
+         * - Checkpoints are ignored when using truncated BPTT<br>
+         * - Dropout masks are reproduced exactly during recomputation, as the RNG is reseeded at the start of each
+         * segment (from a seed drawn from the global RNG at each iteration)<br>
+         * - Listeners are provided with the retained activations only, via
+         * {@link org.deeplearning4j.optimize.api.TrainingListener#onForwardPass(org.deeplearning4j.nn.api.Model, Map)},
+         * with keys "input" and the layer index<br>
+         * A reasonable choice for a network of N layers is approximately every sqrt(N)th layer.
+         *
+         * @param layerIndices Indices of the layers to keep the activations of. Must be in range 0 to numLayers-2
+         *                     inclusive (i.e., the output layer cannot be a checkpoint). No arguments: disable checkpointing
+         */
+        public Builder gradientCheckpoints(int... layerIndices) {
+            this.gradientCheckpoints = layerIndices;
+            return this;
+        }
+
         public Builder confs(List<NeuralNetConfiguration> confs) {
             this.confs = confs;
             return this;
@@ -681,6 +715,28 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
 
+            if (gradientCheckpoints != null && gradientCheckpoints.length > 0) {
+                //Validate, sort and remove duplicates
+                TreeSet<Integer> set = new TreeSet<>();
+                for (int i : gradientCheckpoints) {
+                    if (i < 0 || i >= confs.size() - 1) {
+                        throw new IllegalStateException("Invalid gradient checkpoint: layer index " + i + " is not valid" +
+                                " for a network with " + confs.size() + " layers. Checkpoint indices must be in range 0" +
+                                " to numLayers-2 inclusive (the output layer cannot be a checkpoint)");
+                    }
+                    set.add(i);
+                }
+                conf.gradientCheckpoints = new int[set.size()];
+                int j = 0;
+                for (Integer i : set) {
+                    conf.gradientCheckpoints[j++] = i;
+                }
+                if (backpropType == BackpropType.TruncatedBPTT) {
+                    log.warn("Gradient checkpoints have been configured, but backprop type is set to TruncatedBPTT." +
+                            " Gradient checkpointing is not supported for truncated BPTT and will not be used");
+                }
+            }
+
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
             //Validate output layer configuration
@@ -34,7 +34,9 @@ import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.util.ComputationGraphUtil;
+import org.deeplearning4j.nn.graph.util.GradientCheckpointPlan;
 import org.deeplearning4j.nn.graph.util.GraphIndices;
+import org.deeplearning4j.nn.graph.util.ParallelGraphExecutor;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.graph.vertex.VertexIndices;
 import org.deeplearning4j.nn.graph.vertex.impl.FrozenVertex;
@@ -117,6 +119,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
+    //Optional executor for inter-op parallel inference. See setInterOpParallelism(int)
+    protected transient ParallelGraphExecutor interOpExecutor;
 
     private transient final AtomicLong occupiedBy = new AtomicLong(-1);
 
@@ -140,6 +144,13 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
 
+    /**
+     * Workspace for the activations of one segment of vertices, when gradient checkpointing is used.
+     * In this case, WS_ALL_LAYERS_ACT holds only the activations that are used across segments, and the inputs to
+     * the output layers
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
     protected static final WorkspaceConfiguration WS_ALL_LAYERS_ACT_CONFIG = WorkspaceConfiguration.builder()
@@ -1347,10 +1358,22 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        List<String> checkpoints = configuration.getGradientCheckpoints();
+        CheckpointContext checkpointCtx = null;
+        if(!tbptt && checkpoints != null && !checkpoints.isEmpty()){
+            checkpointCtx = new CheckpointContext(GradientCheckpointPlan.create(vertices, topologicalOrder, checkpoints),
+                    workspaceMgr, checkpointSegmentWorkspaceMgr());
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
-            Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
-                    fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            Map<String, INDArray> activations;
+            if(checkpointCtx == null) {
+                activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
+                        fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            } else {
+                activations = ffToCheckpointsInWS(checkpointCtx);
+            }
             if (!trainingListeners.isEmpty()) {
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
@@ -1358,7 +1381,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                 }
             }
-            calcBackpropGradients(false,false);
+            calcBackpropGradients(checkpointCtx, false, false);
 
             workspaceMgr.assertCurrentWorkspace(ArrayType.ACTIVATIONS, null);
 
@@ -1897,6 +1920,23 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         //Verify that no workspace is open externally
         WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active before call to ffToLayerActivationsDetached", true);
 
+        if(useInterOpExecutor(train, fwdPassType)){
+            boolean[] compute = new boolean[vertices.length];
+            for (int i = 0; i <= layerIndex; i++) {
+                int vIdx = topologicalOrder[i];
+                compute[vIdx] = excludeIdxs == null || !ArrayUtils.contains(excludeIdxs, vIdx);
+            }
+
+            INDArray[] out = executeInterOp(compute, compute, features, clearLayers);
+            Map<String, INDArray> activations = new HashMap<>();
+            for( int i=0; i<vertices.length; i++ ){
+                if(compute[i]){
+                    activations.put(vertices[i].getVertexName(), out[i]);
+                }
+            }
+            return activations;
+        }
+
         LayerWorkspaceMgr workspaceMgr;
         WorkspaceMode wsm = (train ? configuration.getTrainingWorkspaceMode() : configuration.getInferenceWorkspaceMode());
         if (wsm == WorkspaceMode.NONE) {
@@ -2134,6 +2174,205 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
 
+    /**
+     * State for gradient checkpointing, for a single iteration
+     */
+    private static class CheckpointContext {
+        private final GradientCheckpointPlan plan;
+        /**
+         * Workspace manager used for the retained activations (WS_ALL_LAYERS_ACT) and the inputs to output layers
+         */
+        private final LayerWorkspaceMgr mgr;
+        /**
+         * Workspace manager for the activations of a single segment (WS_CHECKPOINT_SEGMENT)
+         */
+        private final LayerWorkspaceMgr segmentMgr;
+        /**
+         * Retained activations, by vertex index
+         */
+        private final INDArray[] retained;
+        private long seed;
+
+        private CheckpointContext(GradientCheckpointPlan plan, LayerWorkspaceMgr mgr, LayerWorkspaceMgr segmentMgr) {
+            this.plan = plan;
+            this.mgr = mgr;
+            this.segmentMgr = segmentMgr;
+            this.retained = new INDArray[plan.getRetain().length];
+        }
+    }
+
+    private LayerWorkspaceMgr checkpointSegmentWorkspaceMgr(){
+        LayerWorkspaceMgr mgr;
+        if(configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE){
+            mgr = LayerWorkspaceMgr.noWorkspaces();
+        } else {
+            mgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+
+            if(inputs[0].isAttached()){
+                //Don't leverage out of async DataMultiSetIterator workspaces
+                mgr.setNoLeverageOverride(inputs[0].data().getParentWorkspace().getId());
+            }
+
+            if(configuration.getCacheMode() != CacheMode.NONE){
+                //Cached activations are only required until backprop of the segment is complete
+                mgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG);
+            }
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
+    /**
+     * Forward pass at training time with gradient checkpointing - see
+     * {@link ComputationGraphConfiguration.GraphBuilder#gradientCheckpoints(String...)}.<br>
+     * All segments other than the last are executed in turn, each with its activations in the WS_CHECKPOINT_SEGMENT
+     * workspace; only the retained activations (as defined by the {@link GradientCheckpointPlan}) are kept, in
+     * WS_ALL_LAYERS_ACT. The last segment is only executed during backprop, as are the output layers.<br>
+     * Requires WS_ALL_LAYERS_ACT to be open if workspaces are used.
+     *
+     * @return Retained activations (including the inputs), by vertex name
+     */
+    private Map<String,INDArray> ffToCheckpointsInWS(CheckpointContext ctx){
+        setInputs(inputs);
+        setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+
+        if(configuration.getTrainingWorkspaceMode() != WorkspaceMode.NONE){
+            WorkspaceUtils.assertOpenAndActive(WS_ALL_LAYERS_ACT, "ffToCheckpointsInWS method requires workspace WS_ALL_LAYERS_ACT to be open");
+        }
+
+        for(GraphVertex gv : vertices){
+            if(gv.isInputVertex()){
+                ctx.retained[gv.getVertexIndex()] = inputs[gv.getVertexIndex()];
+            }
+        }
+
+        //Dropout etc must be identical when a segment is recomputed: the RNG is reseeded at the start of each segment
+        ctx.seed = Nd4j.getRandom().nextLong();
+
+        int numSegments = ctx.plan.numSegments();
+        for( int s=0; s<numSegments-1; s++ ){
+            try(MemoryWorkspace wsSegment = ctx.segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)){
+                ffCheckpointSegment(ctx, s, false);
+            }
+        }
+
+        Map<String,INDArray> activations = new HashMap<>();
+        for( int i=0; i<vertices.length; i++ ){
+            if(ctx.retained[i] != null){
+                activations.put(vertices[i].getVertexName(), ctx.retained[i]);
+            }
+        }
+        return activations;
+    }
+
+    /**
+     * Execute the forward pass for one gradient checkpointing segment, with activations in the WS_CHECKPOINT_SEGMENT
+     * workspace (which must be open). Activations that are used by other segments are retained in WS_ALL_LAYERS_ACT
+     * (the first time they are computed only). Inputs from other segments are taken from the retained activations.
+     *
+     * @param segment   Segment to execute
+     * @param recompute False for the initial forward pass. True when recomputing the segment for backprop: in this case
+     *                  the inputs of output layers are set also (in WS_ALL_LAYERS_ACT, for use in score calculation)
+     */
+    private void ffCheckpointSegment(CheckpointContext ctx, int segment, boolean recompute){
+        GradientCheckpointPlan plan = ctx.plan;
+        Nd4j.getRandom().setSeed(ctx.seed + segment);
+
+        for( int i=plan.getSegmentStart()[segment]; i<=plan.getSegmentEnd()[segment]; i++ ){
+            GraphVertex current = vertices[topologicalOrder[i]];
+            int vIdx = current.getVertexIndex();
+            boolean isOutput = current.isOutputVertex();
+            if(current.isInputVertex() || (isOutput && !recompute)){
+                continue;
+            }
+
+            LayerWorkspaceMgr inputMgr = (isOutput ? ctx.mgr : ctx.segmentMgr);
+            VertexIndices[] inputsFrom = current.getInputVertices();
+            for( int j=0; j<inputsFrom.length; j++ ){
+                int from = inputsFrom[j].getVertexIndex();
+                if(vertices[from].isInputVertex() || plan.getVertexSegment()[from] != segment){
+                    current.setInput(j, ctx.retained[from], inputMgr);
+                }
+            }
+
+            if(isOutput){
+                //As in the standard case, output layers only need their input to be set, not a forward pass
+                continue;
+            }
+
+            try(MemoryWorkspace wsFFWorking = ctx.segmentMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)){
+                INDArray out = current.doForward(true, ctx.segmentMgr);
+                validateArrayWorkspaces(ctx.segmentMgr, out, ArrayType.ACTIVATIONS, current.getVertexName(), false, "Feed forward (checkpointed)");
+
+                if(plan.getRetain()[vIdx] && ctx.retained[vIdx] == null){
+                    ctx.retained[vIdx] = ctx.mgr.leverageTo(ArrayType.ACTIVATIONS, out);
+                }
+
+                VertexIndices[] inputsTo = current.getOutputVertices();
+                if(inputsTo != null) {
+                    for (VertexIndices v : inputsTo) {
+                        GraphVertex to = vertices[v.getVertexIndex()];
+                        if(plan.getVertexSegment()[to.getVertexIndex()] != segment || (to.isOutputVertex() && !recompute)){
+                            //Vertices in later segments: input is set from the retained activations instead
+                            continue;
+                        }
+                        to.setInput(v.getVertexEdgeNumber(), out, to.isOutputVertex() ? ctx.mgr : ctx.segmentMgr);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Enable or disable inter-op parallel inference.<br>
+     * When enabled, inference forward pass (i.e. {@link #output(INDArray...)} and {@link #feedForward(boolean)} with
+     * train = false) executes graph vertices as soon as their inputs are available, so independent branches
+     * (Inception-style towers, multi-tower models) are executed concurrently. Outputs are identical to sequential mode.<br>
+     * This mostly helps latency at small batch sizes, when a single op can't keep all cores busy.
+     * Only inference is parallelized: the backward pass is not scheduled in parallel, so training (fit, gradient
+     * computation), RNN time step and outputs placed in user-provided workspaces always use sequential execution.<br>
+     * NOTE: activations are always detached from workspaces in this mode, so peak memory use may be higher.
+     *
+     * @param numThreads Total number of threads used for inference, including calling thread. Values of 1 or less
+     *                   disable inter-op parallelism (default)
+     */
+    public synchronized void setInterOpParallelism(int numThreads){
+        if(interOpExecutor != null){
+            if(interOpExecutor.getNumThreads() == numThreads)
+                return;
+
+            interOpExecutor.close();
+            interOpExecutor = null;
+        }
+
+        if(numThreads > 1){
+            interOpExecutor = new ParallelGraphExecutor(numThreads);
+        }
+    }
+
+    /**
+     * @return Number of threads used for inter-op parallel inference, or 1 if it is disabled
+     * @see #setInterOpParallelism(int)
+     */
+    public int getInterOpParallelism(){
+        return interOpExecutor == null ? 1 : interOpExecutor.getNumThreads();
+    }
+
+    protected boolean useInterOpExecutor(boolean train, FwdPassType fwdPassType){
+        return interOpExecutor != null && !train && fwdPassType == FwdPassType.STANDARD;
+    }
+
+    protected INDArray[] executeInterOp(boolean[] compute, boolean[] keep, INDArray[] features, boolean clearInputs){
+        boolean noWS = configuration.getInferenceWorkspaceMode() == WorkspaceMode.NONE;
+        return interOpExecutor.execute(vertices, compute, keep, features, clearInputs,
+                noWS ? null : WS_LAYER_WORKING_MEM_CONFIG, noWS ? null : WS_RNN_LOOP_WORKING_MEM_CONFIG, helperWorkspaces);
+    }
+
     /**
      * Provide the output of the specified layers, detached from any workspace. This is most commonly used at inference/test
      * time, and is more memory efficient than {@link #ffToLayerActivationsDetached(boolean, FwdPassType, boolean, int, int[], INDArray[], INDArray[], INDArray[], boolean)}
@@ -2170,6 +2409,38 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         setInputs(features);
         setLayerMaskArrays(fMask, lMasks);
 
+        if(useInterOpExecutor(train, fwdPassType) && (outputWorkspace == null || outputWorkspace instanceof DummyWorkspace)){
+            WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active before call to outputOfLayersDetached");
+
+            //Only vertices the requested outputs depend on need to be executed
+            boolean[] compute = new boolean[vertices.length];
+            boolean[] keep = new boolean[vertices.length];
+            Deque<Integer> toVisit = new ArrayDeque<>();
+            for(int idx : layerIndexes){
+                keep[idx] = true;
+                toVisit.add(idx);
+            }
+            while(!toVisit.isEmpty()){
+                int idx = toVisit.removeLast();
+                if(compute[idx])
+                    continue;
+                compute[idx] = true;
+                VertexIndices[] inputsFrom = vertices[idx].getInputVertices();
+                if(inputsFrom != null){
+                    for(VertexIndices vi : inputsFrom){
+                        toVisit.add(vi.getVertexIndex());
+                    }
+                }
+            }
+
+            INDArray[] activations = executeInterOp(compute, keep, features, clearLayerInputs);
+            INDArray[] outputs = new INDArray[layerIndexes.length];
+            for( int i=0; i<layerIndexes.length; i++ ){
+                outputs[i] = activations[layerIndexes[i]];
+            }
+            return outputs;
+        }
+
         MemoryWorkspace outputPrevious = null;
         if(outputWorkspace == null || outputWorkspace instanceof DummyWorkspace) {
             //Verify that no workspace is open externally
@@ -2448,6 +2719,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      *                         learning situations.
      */
     protected void calcBackpropGradients(boolean clearLayers, boolean truncatedBPTT, INDArray... externalEpsilons) {
+        calcBackpropGradients(null, clearLayers, truncatedBPTT, externalEpsilons);
+    }
+
+    /**
+     * Do backprop, recomputing the activations of each segment first if gradient checkpointing is used
+     *
+     * @param checkpointCtx Gradient checkpointing state, as created by {@link #ffToCheckpointsInWS(CheckpointContext)}.
+     *                      Null if gradient checkpointing is not used
+     * @see #calcBackpropGradients(boolean, boolean, INDArray...)
+     */
+    private void calcBackpropGradients(CheckpointContext checkpointCtx, boolean clearLayers, boolean truncatedBPTT,
+                                       INDArray... externalEpsilons) {
         if (flattenedGradients == null) {
             initGradientsView();
         }
@@ -2524,6 +2807,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
         boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
+        MemoryWorkspace wsSegment = null;
+        int currentSegment = -1;
         try{
             for(int i=topologicalOrder.length-1; i>= 0; i--){
                 boolean hitFrozen = false;
@@ -2536,6 +2821,20 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     hitFrozen = true;
                 }
 
+                if(checkpointCtx != null && !current.isInputVertex() && (!hitFrozen || current.isOutputVertex())
+                        && checkpointCtx.plan.getVertexSegment()[vIdx] != currentSegment){
+                    //Gradient checkpointing: entering a new segment. Activations for the previous segment are no
+                    // longer required, hence we can close its workspace and recompute the activations of this segment
+                    if(wsSegment != null){
+                        wsSegment.close();
+                    }
+                    Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
+                    currentSegment = checkpointCtx.plan.getVertexSegment()[vIdx];
+                    wsSegment = checkpointCtx.segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                    wsSegment.setPreviousWorkspace(initialWorkspace);
+                    ffCheckpointSegment(checkpointCtx, currentSegment, true);
+                }
+
                 if (current.isInputVertex() || hitFrozen){
                     //Close any activation gradient workspaces that we no longer require
                     //Note that activation gradient workspaces can be closed only once the corresponding activations
@@ -2693,6 +2992,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             for(MemoryWorkspace ws : openActivationsWorkspaces.keySet()){
                 ws.close();
             }
+            if(wsSegment != null){
+                wsSegment.close();
+            }
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
         }
 
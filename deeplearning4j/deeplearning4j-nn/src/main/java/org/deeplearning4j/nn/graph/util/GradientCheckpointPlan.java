@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.nn.graph.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Segmentation of a ComputationGraph for gradient checkpointing (activation recomputation).<br>
+ * The topological order of the graph is split into contiguous segments, each ending at a checkpoint vertex (the last
+ * segment ends at the last vertex in the topological order). A vertex's activations are retained for the whole
+ * iteration only if they are used by a vertex in another segment - checkpoint vertices, network inputs and the sources
+ * of skip connections that cross a checkpoint. All other activations are recomputed one segment at a time during backprop.
+ */
+@Getter
+public class GradientCheckpointPlan {
+
+    /**
+     * First position (in the topological order) of each segment, inclusive
+     */
+    private final int[] segmentStart;
+    /**
+     * Last position (in the topological order) of each segment, inclusive
+     */
+    private final int[] segmentEnd;
+    /**
+     * Segment of each vertex, by vertex index
+     */
+    private final int[] vertexSegment;
+    /**
+     * Whether the activations of each vertex (by vertex index) need to be retained for the whole iteration
+     */
+    private final boolean[] retain;
+
+    private GradientCheckpointPlan(int[] segmentStart, int[] segmentEnd, int[] vertexSegment, boolean[] retain) {
+        this.segmentStart = segmentStart;
+        this.segmentEnd = segmentEnd;
+        this.vertexSegment = vertexSegment;
+        this.retain = retain;
+    }
+
+    /**
+     * @return Number of segments
+     */
+    public int numSegments() {
+        return segmentStart.length;
+    }
+
+    /**
+     * Create the checkpointing plan for a graph
+     *
+     * @param vertices         Vertices of the graph, by vertex index
+     * @param topologicalOrder Topological order of the graph (vertex indices)
+     * @param checkpoints      Names of the checkpoint vertices
+     */
+    public static GradientCheckpointPlan create(@NonNull GraphVertex[] vertices, @NonNull int[] topologicalOrder,
+                                                @NonNull Collection<String> checkpoints) {
+        Set<String> names = new HashSet<>(checkpoints);
+        int n = topologicalOrder.length;
+
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        int[] vertexSegment = new int[vertices.length];
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            int vIdx = topologicalOrder[i];
+            vertexSegment[vIdx] = starts.size();
+            if (names.contains(vertices[vIdx].getVertexName()) && i < n - 1) {
+                starts.add(start);
+                ends.add(i);
+                start = i + 1;
+            }
+        }
+        starts.add(start);
+        ends.add(n - 1);
+
+        boolean[] retain = new boolean[vertices.length];
+        for (GraphVertex gv : vertices) {
+            int vIdx = gv.getVertexIndex();
+            if (gv.isInputVertex()) {
+                retain[vIdx] = true;
+                continue;
+            }
+            VertexIndices[] outputsTo = gv.getOutputVertices();
+            if (outputsTo == null)
+                continue;
+            for (VertexIndices vi : outputsTo) {
+                if (vertexSegment[vi.getVertexIndex()] != vertexSegment[vIdx]) {
+                    retain[vIdx] = true;
+                    break;
+                }
+            }
+        }
+
+        return new GradientCheckpointPlan(toIntArray(starts), toIntArray(ends), vertexSegment, retain);
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = list.get(i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.nn.graph.util;
+
+import lombok.Getter;
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Inter-op parallel executor for ComputationGraph inference.<br>
+ * Vertices are executed as soon as all of their inputs are available, so independent branches (i.e. Inception-style
+ * towers) are executed concurrently on a bounded thread pool. The calling thread participates in execution as well.<br>
+ * Each vertex is still executed by exactly one thread, with the same inputs as in sequential mode, so results are
+ * identical to sequential execution.<br>
+ * Activations are passed between threads, so they are always detached. Working memory uses per-thread workspaces,
+ * and each pool thread has its own helper workspace pointers, since helpers (i.e. cuDNN) reuse those buffers across calls.<br>
+ * Only inference is supported: there is no parallel scheduling of the backward pass.
+ */
+public class ParallelGraphExecutor implements Closeable {
+    private static final int POISON = -1;
+
+    @Getter
+    private final int numThreads;
+    private final ExecutorService executor;
+    // helper workspaces of pool threads: these can't be shared with other threads, but are reused across calls
+    private final ThreadLocal<Map<String, Pointer>> workerHelperWorkspaces = new ThreadLocal<Map<String, Pointer>>() {
+        @Override
+        protected Map<String, Pointer> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * @param numThreads total number of threads executing vertices, including the calling thread
+     */
+    public ParallelGraphExecutor(int numThreads) {
+        if (numThreads < 2)
+            throw new IllegalArgumentException("Number of threads should be at least 2, got " + numThreads);
+
+        this.numThreads = numThreads;
+        this.executor = Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ComputationGraph-interop-" + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * This method does inference forward pass for the given subset of graph vertices
+     *
+     * @param vertices           All graph vertices, indexed by vertex index
+     * @param compute            Vertices to execute. Every input of these vertices should be executed as well
+     * @param keep               Vertices to return activations for
+     * @param features           Network inputs, indexed by vertex index of input vertices
+     * @param clearInputs        If true: vertex inputs will be cleared once vertex is executed
+     * @param workingMemConfig   Configuration for per-thread working memory workspaces, or null if workspaces aren't used
+     * @param rnnLoopConfig      Configuration for per-thread RNN loop workspaces, or null if workspaces aren't used
+     * @param helperWorkspaces   Helper workspace pointers of the network. Used by the calling thread only, pool threads use their own
+     * @return Activations, indexed by vertex index. Only entries requested via keep are set
+     */
+    public INDArray[] execute(GraphVertex[] vertices, boolean[] compute, boolean[] keep, INDArray[] features,
+                    boolean clearInputs, WorkspaceConfiguration workingMemConfig, WorkspaceConfiguration rnnLoopConfig,
+                    Map<String, Pointer> helperWorkspaces) {
+        final Execution execution = new Execution(vertices, compute, keep, features, clearInputs, workingMemConfig,
+                        rnnLoopConfig);
+
+        if (execution.remaining.get() == 0)
+            return execution.activations;
+
+        final int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads - 1; i++) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                    execution.work(workerHelperWorkspaces.get());
+                }
+            }));
+        }
+
+        // calling thread works too
+        execution.work(helperWorkspaces);
+
+        // we don't want any vertex to be still in flight once we return
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                execution.error.compareAndSet(null, e);
+            } catch (ExecutionException e) {
+                execution.error.compareAndSet(null, e.getCause());
+            }
+        }
+
+        Throwable t = execution.error.get();
+        if (t != null) {
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException(t);
+        }
+
+        return execution.activations;
+    }
+
+    private static LayerWorkspaceMgr workspaceManager(WorkspaceConfiguration workingMemConfig,
+                    WorkspaceConfiguration rnnLoopConfig, Map<String, Pointer> helperWorkspaces) {
+        LayerWorkspaceMgr workspaceMgr;
+        if (workingMemConfig == null) {
+            workspaceMgr = LayerWorkspaceMgr.noWorkspaces(helperWorkspaces);
+        } else {
+            // activations and inputs are passed between threads, so they can't live in thread-local workspaces
+            workspaceMgr = LayerWorkspaceMgr.builder()
+                            .noWorkspaceFor(ArrayType.ACTIVATIONS)
+                            .noWorkspaceFor(ArrayType.INPUT)
+                            .with(ArrayType.FF_WORKING_MEM, "WS_LAYER_WORKING_MEM", workingMemConfig)
+                            .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, "WS_RNN_LOOP_WORKING_MEM", rnnLoopConfig)
+                            .build();
+        }
+        workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
+        return workspaceMgr;
+    }
+
+    /**
+     * State of single forward pass, shared by all participating threads
+     */
+    private class Execution {
+        private final GraphVertex[] vertices;
+        private final boolean[] compute;
+        private final boolean[] keep;
+        private final INDArray[] features;
+        private final boolean clearInputs;
+        private final WorkspaceConfiguration workingMemConfig;
+        private final WorkspaceConfiguration rnnLoopConfig;
+
+        private final INDArray[] activations;
+        // number of inputs not computed yet, per vertex
+        private final AtomicInteger[] pending;
+        private final AtomicInteger remaining = new AtomicInteger(0);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final BlockingQueue<Integer> ready = new LinkedBlockingQueue<>();
+
+        private Execution(GraphVertex[] vertices, boolean[] compute, boolean[] keep, INDArray[] features,
+                        boolean clearInputs, WorkspaceConfiguration workingMemConfig,
+                        WorkspaceConfiguration rnnLoopConfig) {
+            this.vertices = vertices;
+            this.compute = compute;
+            this.keep = keep;
+            this.features = features;
+            this.clearInputs = clearInputs;
+            this.workingMemConfig = workingMemConfig;
+            this.rnnLoopConfig = rnnLoopConfig;
+
+            this.activations = new INDArray[vertices.length];
+            this.pending = new AtomicInteger[vertices.length];
+
+            for (int i = 0; i < vertices.length; i++) {
+                if (!compute[i])
+                    continue;
+
+                int numInputs = 0;
+                VertexIndices[] inputs = vertices[i].getInputVertices();
+                if (inputs != null)
+                    for (VertexIndices vi : inputs)
+                        if (compute[vi.getVertexIndex()])
+                            numInputs++;
+
+                pending[i] = new AtomicInteger(numInputs);
+                remaining.incrementAndGet();
+                if (numInputs == 0)
+                    ready.add(i);
+            }
+        }
+
+        private void work(Map<String, Pointer> helperWorkspaces) {
+            LayerWorkspaceMgr workspaceMgr = workspaceManager(workingMemConfig, rnnLoopConfig, helperWorkspaces);
+            try {
+                while (true) {
+                    int v = ready.take();
+                    if (v == POISON)
+                        return;
+
+                    // keep executing on this thread, while there are vertices that became ready here
+                    while (v != POISON && error.get() == null) {
+                        try {
+                            v = executeVertex(v, workspaceMgr);
+                        } catch (Throwable t) {
+                            error.compareAndSet(null, t);
+                            finish();
+                            v = POISON;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error.compareAndSet(null, e);
+                finish();
+            }
+        }
+
+        private int executeVertex(int vIdx, LayerWorkspaceMgr workspaceMgr) {
+            GraphVertex current = vertices[vIdx];
+            INDArray out;
+            if (current.isInputVertex()) {
+                out = features[vIdx];
+            } else {
+                try (MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                    out = current.doForward(false, workspaceMgr);
+                }
+            }
+
+            if (keep[vIdx])
+                activations[vIdx] = out;
+
+            int next = POISON;
+            VertexIndices[] outputsTo = current.getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices v : outputsTo) {
+                    if (compute[v.getVertexIndex()])
+                        vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, workspaceMgr);
+                }
+
+                // separate loop: dependent vertex might be picked up by another thread as soon as its counter hits 0
+                for (VertexIndices v : outputsTo) {
+                    int inputToIndex = v.getVertexIndex();
+                    if (!compute[inputToIndex] || pending[inputToIndex].decrementAndGet() != 0)
+                        continue;
+
+                    if (next == POISON)
+                        next = inputToIndex;
+                    else
+                        ready.add(inputToIndex);
+                }
+            }
+
+            if (clearInputs)
+                current.clear();
+
+            if (remaining.decrementAndGet() == 0)
+                finish();
+
+            return next;
+        }
+
+        private void finish() {
+            for (int i = 0; i < numThreads; i++)
+                ready.add(POISON);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -166,6 +166,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected static final String WS_RNN_LOOP_WORKING_MEM = "WS_RNN_LOOP_WORKING_MEM";
 
+    /**
+     * Workspace for the activations of one segment of layers, when gradient checkpointing is used.
+     * In this case, WS_ALL_LAYERS_ACT holds only the activations of the checkpoint layers
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
 
     protected WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
@@ -1087,7 +1093,27 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         List<INDArray> out = new ArrayList<>();
         out.add(workspaceMgr.leverageTo(ArrayType.INPUT, input));    //Probably unnecessary usually
 
-        for( int i=0; i<=layerIndex; i++ ){
+        ffLayerRangeInWs(0, layerIndex, fwdPassType, storeLastForTBPTT, input, workspaceMgr, out);
+        return out;
+    }
+
+    /**
+     * Feed-forward through layers from (inclusive) to (inclusive) at training time, with activations placed in the
+     * workspaces of the provided workspace manager. Used by {@link #ffToLayerActivationsInWs(int, FwdPassType, boolean, INDArray, INDArray, INDArray)}
+     * and for the recomputation of segments when gradient checkpointing is used.
+     *
+     * @param from              Index of the first layer to feed forward through
+     * @param to                Index of the last layer to feed forward through
+     * @param fwdPassType       Type of forward pass to perform (STANDARD or RNN_ACTIVATE_WITH_STORED_STATE only)
+     * @param storeLastForTBPTT ONLY used if fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE
+     * @param input             Input to layer "from"
+     * @param workspaceMgr      Workspace manager to use
+     * @param out               If non-null: the activations of each layer are added to this list
+     * @return Activations of layer "to"
+     */
+    private INDArray ffLayerRangeInWs(int from, int to, FwdPassType fwdPassType, boolean storeLastForTBPTT,
+                                      INDArray input, LayerWorkspaceMgr workspaceMgr, List<INDArray> out){
+        for( int i=from; i<=to; i++ ){
             try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)){
                 if (getLayerWiseConfigurations().getInputPreProcess(i) != null) {
                     input = getLayerWiseConfigurations().getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), workspaceMgr);
@@ -1118,11 +1144,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training)");
                 validateArrayWorkspaces(workspaceMgr, layers[i].input(), ArrayType.INPUT, i, false, "Feed forward to layer (training)");
 
-                out.add(input);
+                if(out != null) {
+                    out.add(input);
+                }
             }
         }
 
-        return out;
+        return input;
     }
 
     /**
@@ -1762,7 +1790,6 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (flattenedGradients == null) {
             initGradientsView();
         }
-        String multiGradientKey;
         Gradient gradient = new DefaultGradient(flattenedGradients);
 
         LayerWorkspaceMgr mgrEven;
@@ -1789,27 +1816,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
              */
 
-            mgrEven = LayerWorkspaceMgr.builder()
-                    //Activations in context of backprop (preOut methods etc) are not used outside of the layer itself
-                    .with(ArrayType.ACTIVATIONS, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.INPUT, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG) //Usually not required here. Exception: OutputLayer dropout
-                    .with(ArrayType.ACTIVATION_GRAD, WS_LAYER_ACT_1, WS_LAYER_ACT_X_CONFIG)
-                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
-                    .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
-                    .build();
-
-            mgrOdd = LayerWorkspaceMgr.builder()
-                    //Activations in context of backprop (preOut methods etc) are not used outside of the layer itself
-                    .with(ArrayType.ACTIVATIONS, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.INPUT, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG) //Usually not required here. Exception: OutputLayer dropout
-                    .with(ArrayType.ACTIVATION_GRAD, WS_LAYER_ACT_2, WS_LAYER_ACT_X_CONFIG)
-                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
-                    .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
-                    .build();
+            mgrEven = backpropWorkspaceMgr(WS_LAYER_ACT_1);
+            mgrOdd = backpropWorkspaceMgr(WS_LAYER_ACT_2);
 
             if(epsilon == null) {
                 //If epsilon is non-null: external errors use case -> inputs are already detached
@@ -1820,6 +1828,66 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         mgrEven.setHelperWorkspacePointers(helperWorkspaces);
         mgrOdd.setHelperWorkspacePointers(helperWorkspaces);
 
+        //Store gradients is a list; used to ensure iteration order in DefaultGradient linked hash map. i.e., layer 0 first instead of output layer
+        LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
+        Pair<Gradient, INDArray> currPair = backpropLayerRange(layers.length - 1, 0, epsilon, withOutputLayer, tbptt,
+                returnInputActGrad, mgrEven, mgrOdd, gradientList);
+        if(currPair == null){
+            return null;
+        }
+
+        if (layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE) {
+            WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active in calcBackpropGradients when " +
+                    "training workspace is set to none");
+        } else {
+            if(epsilon == null) {
+                //If epsilon != null: external errors use case (inputs are detached instead)
+                WorkspaceUtils.assertOpenActiveAndCurrent(WS_ALL_LAYERS_ACT, "calcBackpropGradients: WS_ALL_LAYERS_ACT is no" +
+                        " longer the currently open/active workspace");
+            }
+        }
+
+        //Add gradients to Gradients (map), in correct order
+        for (Triple<String, INDArray, Character> triple : gradientList) {
+            gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
+        }
+
+        return new Pair<>(gradient, currPair.getSecond());
+    }
+
+    /**
+     * Workspace manager for backprop: activation gradients are placed in the specified workspace; all other arrays
+     * (other than layer inputs) are placed in the layer working memory workspace
+     */
+    private LayerWorkspaceMgr backpropWorkspaceMgr(String activationGradWorkspace){
+        return LayerWorkspaceMgr.builder()
+                //Activations in context of backprop (preOut methods etc) are not used outside of the layer itself
+                .with(ArrayType.ACTIVATIONS, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.INPUT, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG) //Usually not required here. Exception: OutputLayer dropout
+                .with(ArrayType.ACTIVATION_GRAD, activationGradWorkspace, WS_LAYER_ACT_X_CONFIG)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+    }
+
+    /**
+     * Backprop through layers top (inclusive) down to bottom (inclusive). The inputs of these layers must have been
+     * set by a forward pass beforehand. Stops early at the first {@link FrozenLayer}.
+     *
+     * @param top             Index of the first layer to backprop through
+     * @param bottom          Index of the last layer to backprop through
+     * @param epsilon         Errors at the output of layer "top". Not used if withOutputLayer is true and top is the output layer
+     * @param gradientList    List to add the parameter gradients to, in the order they are calculated
+     * @return Gradient and epsilon of the last layer that backprop was performed for, or null if the network has no output layer.
+     * If bottom > 0 the epsilon is detached, as the activation gradient workspaces are closed before returning
+     */
+    private Pair<Gradient, INDArray> backpropLayerRange(int top, int bottom, INDArray epsilon, boolean withOutputLayer, boolean tbptt,
+                                                        boolean returnInputActGrad, LayerWorkspaceMgr mgrEven, LayerWorkspaceMgr mgrOdd,
+                                                        LinkedList<Triple<String, INDArray, Character>> gradientList) {
+        String multiGradientKey;
+
         //calculate and apply the backward gradient for every layer
         /*
          * Skip the output layer for the indexing and just loop backwards updating the coefficients for each layer.
@@ -1831,16 +1899,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
          * This interpretation transpose a few things to get mini batch because ND4J is rows vs columns organization for params
          */
         int numLayers = getnLayers();
-        //Store gradients is a list; used to ensure iteration order in DefaultGradient linked hash map. i.e., layer 0 first instead of output layer
-        LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
-
 
         Pair<Gradient, INDArray> currPair = null;
         MemoryWorkspace wsActGradCloseNext = null;
         MemoryWorkspace wsActGradTemp = null;
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
         try {
-            for (int i = layers.length - 1; i >= 0; i--) {
+            for (int i = top; i >= bottom; i--) {
                 if (layers[i] instanceof FrozenLayer) {
                     break;
                 }
@@ -1869,7 +1934,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradTemp.setPreviousWorkspace(initialWorkspace);
                     wsBPWorking.setPreviousWorkspace(initialWorkspace);
 
-                    INDArray eps = (i == layers.length - 1 ? epsilon : currPair.getRight());  //eps is null for OutputLayer
+                    INDArray eps = (i == top ? epsilon : currPair.getRight());  //eps is null for OutputLayer
 
                     if(!tbptt){
                         //Standard case
@@ -1912,6 +1977,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         } else {
                             currPair.setSecond(null);
                         }
+                    } else if(i == bottom && currPair.getSecond() != null){
+                        //Backprop of the layers below is continued later (gradient checkpointing): the activation
+                        // gradient workspaces are closed at the end of this method, so the epsilon needs to be detached
+                        currPair.setSecond(currPair.getSecond().detach());
                     }
 
                     if(wsActGradCloseNext != null){
@@ -1932,23 +2001,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
         }
 
-        if (layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE) {
-            WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active in calcBackpropGradients when " +
-                    "training workspace is set to none");
-        } else {
-            if(epsilon == null) {
-                //If epsilon != null: external errors use case (inputs are detached instead)
-                WorkspaceUtils.assertOpenActiveAndCurrent(WS_ALL_LAYERS_ACT, "calcBackpropGradients: WS_ALL_LAYERS_ACT is no" +
-                        " longer the currently open/active workspace");
-            }
-        }
-
-        //Add gradients to Gradients (map), in correct order
-        for (Triple<String, INDArray, Character> triple : gradientList) {
-            gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
-        }
-
-        return new Pair<>(gradient, currPair.getSecond());
+        return currPair;
     }
 
     protected void doTruncatedBPTT(INDArray input, INDArray labels, INDArray featuresMaskArray,
@@ -2614,6 +2667,15 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        int[] checkpoints = layerWiseConfigurations.getGradientCheckpoints();
+        if(!tbptt && checkpoints != null && checkpoints.length > 0){
+            try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                computeGradientAndScoreCheckpointed(checkpoints, mgr);
+            }
+            getOutputLayer().clearNoiseWeightParams();
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             //First: do a feed-forward through the network
@@ -2657,6 +2719,154 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         getOutputLayer().clearNoiseWeightParams();
     }
 
+    /**
+     * Calculate gradients and score with gradient checkpointing - see {@link MultiLayerConfiguration.Builder#gradientCheckpoints(int...)}.<br>
+     * The layers are split into segments, each ending at a checkpoint layer (the last segment ends at the output layer).
+     * In the forward pass, each segment is executed with its activations in the WS_CHECKPOINT_SEGMENT workspace, and only
+     * the output of the segment is retained (in WS_ALL_LAYERS_ACT, which must be open). The segments are then processed
+     * in reverse order: the activations of each segment are recomputed from its retained input, followed by backprop
+     * through the layers of that segment, after which WS_CHECKPOINT_SEGMENT is closed again.
+     *
+     * @param checkpoints Sorted indices of the checkpoint layers
+     * @param mgr         Workspace manager, as used for score calculation in {@link #computeGradientAndScore()}
+     */
+    private void computeGradientAndScoreCheckpointed(int[] checkpoints, LayerWorkspaceMgr mgr){
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+
+        //Segment s: layers segStart[s] to segEnd[s] inclusive
+        int nSegments = checkpoints.length + 1;
+        int[] segStart = new int[nSegments];
+        int[] segEnd = new int[nSegments];
+        for( int s=0; s<nSegments; s++ ){
+            segStart[s] = (s == 0 ? 0 : checkpoints[s-1] + 1);
+            segEnd[s] = (s == nSegments - 1 ? layers.length - 1 : checkpoints[s]);
+        }
+
+        //Backprop stops at the first frozen layer: segments below it don't need to be recomputed
+        int frozenIdx = -1;
+        for( int i=layers.length-1; i>=0; i-- ){
+            if(layers[i] instanceof FrozenLayer){
+                frozenIdx = i;
+                break;
+            }
+        }
+
+        LayerWorkspaceMgr segmentMgr;
+        LayerWorkspaceMgr mgrEven;
+        LayerWorkspaceMgr mgrOdd;
+        if(layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE){
+            segmentMgr = LayerWorkspaceMgr.noWorkspaces();
+            mgrEven = segmentMgr;
+            mgrOdd = segmentMgr;
+        } else {
+            segmentMgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+
+            if(input.isAttached()){
+                //Don't leverage out of async DataSetIterator workspaces
+                segmentMgr.setNoLeverageOverride(input.data().getParentWorkspace().getId());
+            }
+
+            if(layerWiseConfigurations.getCacheMode() != CacheMode.NONE){
+                //Cached activations are only required until backprop of the segment is complete
+                segmentMgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG);
+                segmentMgr.setWorkspace(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG);
+            }
+
+            mgrEven = backpropWorkspaceMgr(WS_LAYER_ACT_1);
+            mgrOdd = backpropWorkspaceMgr(WS_LAYER_ACT_2);
+        }
+        segmentMgr.setHelperWorkspacePointers(helperWorkspaces);
+        mgrEven.setHelperWorkspacePointers(helperWorkspaces);
+        mgrOdd.setHelperWorkspacePointers(helperWorkspaces);
+
+        setInput(input);
+        setLayerMaskArrays(mask, null);
+
+        //Dropout etc must be identical when a segment is recomputed: the RNG is reseeded at the start of each segment
+        long seed = Nd4j.getRandom().nextLong();
+
+        //Forward pass: retain only the input to each segment
+        INDArray[] segmentInputs = new INDArray[nSegments];
+        segmentInputs[0] = input;
+        for( int s=0; s<nSegments-1; s++ ){
+            Nd4j.getRandom().setSeed(seed + s);
+            try(MemoryWorkspace wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)){
+                INDArray out = ffLayerRangeInWs(segStart[s], segEnd[s], FwdPassType.STANDARD, false, segmentInputs[s], segmentMgr, null);
+                segmentInputs[s+1] = mgr.leverageTo(ArrayType.ACTIVATIONS, out);
+            }
+        }
+
+        if (!trainingListeners.isEmpty()) {
+            //Only the checkpoint activations are available. Keys: as per the activations list in the non-checkpoint case
+            Map<String, INDArray> activations = new LinkedHashMap<>();
+            activations.put("input", input);
+            for( int s=1; s<nSegments; s++ ){
+                activations.put(String.valueOf(segEnd[s-1]), segmentInputs[s]);
+            }
+            for (TrainingListener tl : trainingListeners) {
+                tl.onForwardPass(this, activations);
+            }
+        }
+
+        //Backward pass: recompute, then backprop through, one segment at a time
+        LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
+        INDArray epsilon = null;
+        for( int s=nSegments-1; s>=0 && segEnd[s] > frozenIdx; s-- ){
+            boolean outputSegment = (s == nSegments - 1);
+            Nd4j.getRandom().setSeed(seed + s);
+            try(MemoryWorkspace wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)){
+                //As in the standard case, the output layer only needs its input to be set, not a full forward pass
+                int ffEnd = (outputSegment ? segEnd[s] - 1 : segEnd[s]);
+                INDArray in = segmentInputs[s];
+                if(ffEnd >= segStart[s]){
+                    in = ffLayerRangeInWs(segStart[s], ffEnd, FwdPassType.STANDARD, false, in, segmentMgr, null);
+                }
+                if(outputSegment){
+                    if (layerWiseConfigurations.getInputPreProcess(layers.length - 1) != null) {
+                        in = layerWiseConfigurations.getInputPreProcess(layers.length - 1)
+                                .preProcess(in, getInputMiniBatchSize(), segmentMgr);
+                    }
+                    getOutputLayer().setInput(in, segmentMgr);
+                }
+
+                Pair<Gradient, INDArray> pair = backpropLayerRange(segEnd[s], segStart[s], epsilon, outputSegment,
+                        false, false, mgrEven, mgrOdd, gradientList);
+                epsilon = pair.getSecond();
+
+                if(outputSegment){
+                    //Calculate score while the input to the output layer is still available
+                    try(MemoryWorkspace wsFF = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        double r = calcRegularizationScore(true);
+                        score = ((IOutputLayer) getOutputLayer()).computeScore(r, true, mgr);
+                    }
+                }
+            }
+        }
+
+        //Add gradients to Gradients (map), in correct order
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> triple : gradientList) {
+            gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
+        }
+        this.gradient = gradient;
+
+        //Listeners
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
     /**
      * Clear the inputs. Clears optimizer state.
      */
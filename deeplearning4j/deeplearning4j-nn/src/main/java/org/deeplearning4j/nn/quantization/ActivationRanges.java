@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Activation ranges collected during calibration: maximum absolute value of the input of each layer, keyed by
+ * layer index (as String) for {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork} and vertex name for
+ * {@link org.deeplearning4j.nn.graph.ComputationGraph}.
+ * Layers without recorded range are quantized dynamically, using range of each input array.
+ */
+@Data
+@NoArgsConstructor
+public class ActivationRanges implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, Double> maxAbs = new LinkedHashMap<>();
+    private long numBatches;
+
+    public void update(@NonNull String layer, @NonNull INDArray input) {
+        double m = input.amaxNumber().doubleValue();
+        Double current = maxAbs.get(layer);
+        if (current == null || m > current)
+            maxAbs.put(layer, m);
+    }
+
+    public boolean hasRange(@NonNull String layer) {
+        return maxAbs.containsKey(layer);
+    }
+
+    /**
+     * @return int8 scale for the input of given layer, or 0.0 if range is unknown
+     */
+    public float getScale(@NonNull String layer) {
+        Double m = maxAbs.get(layer);
+        if (m == null || m <= 0.0)
+            return 0.0f;
+
+        return (float) (m / QuantizedWeights.MAX_VALUE);
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Post-training calibration: runs data through a trained network in inference mode and records the range of the
+ * input activations of every layer. The result is used by {@link QuantizedNetwork} to pick static int8 scales.
+ */
+@Slf4j
+public class QuantizationCalibrator {
+
+    private QuantizationCalibrator() {}
+
+    /**
+     * Collect activation ranges of a MultiLayerNetwork
+     *
+     * @param network    trained network
+     * @param iterator   calibration data, usually a few hundred representative examples
+     * @param maxBatches maximum number of batches to use, or 0 to use all of them
+     */
+    public static ActivationRanges calibrate(@NonNull MultiLayerNetwork network, @NonNull DataSetIterator iterator, int maxBatches) {
+        ActivationRanges ranges = new ActivationRanges();
+        if (iterator.resetSupported())
+            iterator.reset();
+
+        int numLayers = network.getnLayers();
+        while (iterator.hasNext() && (maxBatches <= 0 || ranges.getNumBatches() < maxBatches)) {
+            DataSet ds = iterator.next();
+
+            //Element i is the input of layer i (before its preprocessor, which only changes layout)
+            List<INDArray> activations = network.feedForward(ds.getFeatures(), false);
+            for (int i = 0; i < numLayers; i++)
+                ranges.update(String.valueOf(i), activations.get(i));
+
+            ranges.setNumBatches(ranges.getNumBatches() + 1);
+        }
+
+        log.info("Collected activation ranges for {} layers using {} batches", numLayers, ranges.getNumBatches());
+        return ranges;
+    }
+
+    /**
+     * Collect activation ranges of a single-input ComputationGraph
+     *
+     * @see #calibrate(ComputationGraph, MultiDataSetIterator, int)
+     */
+    public static ActivationRanges calibrate(@NonNull ComputationGraph graph, @NonNull DataSetIterator iterator, int maxBatches) {
+        ActivationRanges ranges = new ActivationRanges();
+        if (iterator.resetSupported())
+            iterator.reset();
+
+        while (iterator.hasNext() && (maxBatches <= 0 || ranges.getNumBatches() < maxBatches)) {
+            DataSet ds = iterator.next();
+            update(graph, ranges, new INDArray[]{ds.getFeatures()});
+        }
+
+        log.info("Collected activation ranges using {} batches", ranges.getNumBatches());
+        return ranges;
+    }
+
+    /**
+     * Collect activation ranges of a ComputationGraph
+     *
+     * @param graph      trained network
+     * @param iterator   calibration data, usually a few hundred representative examples
+     * @param maxBatches maximum number of batches to use, or 0 to use all of them
+     */
+    public static ActivationRanges calibrate(@NonNull ComputationGraph graph, @NonNull MultiDataSetIterator iterator, int maxBatches) {
+        ActivationRanges ranges = new ActivationRanges();
+        if (iterator.resetSupported())
+            iterator.reset();
+
+        while (iterator.hasNext() && (maxBatches <= 0 || ranges.getNumBatches() < maxBatches)) {
+            MultiDataSet mds = iterator.next();
+            update(graph, ranges, mds.getFeatures());
+        }
+
+        log.info("Collected activation ranges using {} batches", ranges.getNumBatches());
+        return ranges;
+    }
+
+    protected static void update(ComputationGraph graph, ActivationRanges ranges, INDArray[] features) {
+        ComputationGraphConfiguration conf = graph.getConfiguration();
+        Map<String, INDArray> activations = graph.feedForward(features, false);
+        for (Map.Entry<String, GraphVertex> e : conf.getVertices().entrySet()) {
+            if (!(e.getValue() instanceof LayerVertex))
+                continue;
+
+            //Layer vertices always have exactly one input
+            String input = conf.getVertexInputs().get(e.getKey()).get(0);
+            ranges.update(e.getKey(), activations.get(input));
+        }
+
+        ranges.setNumBatches(ranges.getNumBatches() + 1);
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Data;
+import lombok.NonNull;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accuracy and latency comparison of a quantized network against the fp32 network it was created from.<br>
+ * Both networks are run on the same batches; per-batch latencies are measured after a few warmup batches, and
+ * accuracy metrics are computed for classification outputs only.
+ */
+public class QuantizationEvaluator {
+
+    private QuantizationEvaluator() {}
+
+    @Data
+    public static class Report implements Serializable {
+        private long numExamples;
+        private double fp32Accuracy = Double.NaN;
+        private double int8Accuracy = Double.NaN;
+        private double topOneAgreement = Double.NaN;
+        private double maxAbsDifference;
+        private double meanAbsDifference;
+        private double fp32LatencyP50Ms;
+        private double fp32LatencyP90Ms;
+        private double int8LatencyP50Ms;
+        private double int8LatencyP90Ms;
+        private long fp32SizeBytes;
+        private long int8SizeBytes;
+
+        @Override
+        public String toString() {
+            return String.format("QuantizationReport(examples=%d, accuracy fp32/int8: %.4f/%.4f, top-1 agreement: %.4f, "
+                            + "max/mean abs diff: %.5f/%.5f, p50 latency fp32/int8: %.3f/%.3f ms, p90 latency fp32/int8: %.3f/%.3f ms, "
+                            + "size fp32/int8: %d/%d bytes)",
+                    numExamples, fp32Accuracy, int8Accuracy, topOneAgreement, maxAbsDifference, meanAbsDifference,
+                    fp32LatencyP50Ms, int8LatencyP50Ms, fp32LatencyP90Ms, int8LatencyP90Ms, fp32SizeBytes, int8SizeBytes);
+        }
+    }
+
+    /**
+     * Source of fp32 reference outputs
+     */
+    protected interface Reference {
+        INDArray output(INDArray features);
+    }
+
+    /**
+     * Compare quantized network against original MultiLayerNetwork
+     *
+     * @param original      fp32 network
+     * @param quantized     quantized network, created from the original network
+     * @param iterator      evaluation data
+     * @param warmupBatches number of batches excluded from latency measurements
+     */
+    public static Report compare(@NonNull final MultiLayerNetwork original, @NonNull QuantizedNetwork quantized,
+                                 @NonNull DataSetIterator iterator, int warmupBatches) {
+        return compare(new Reference() {
+            @Override
+            public INDArray output(INDArray features) {
+                return original.output(features, false);
+            }
+        }, original.numParams(), quantized, iterator, warmupBatches);
+    }
+
+    /**
+     * Compare quantized network against original single input, single output ComputationGraph
+     *
+     * @param original      fp32 network
+     * @param quantized     quantized network, created from the original network
+     * @param iterator      evaluation data
+     * @param warmupBatches number of batches excluded from latency measurements
+     */
+    public static Report compare(@NonNull final ComputationGraph original, @NonNull QuantizedNetwork quantized,
+                                 @NonNull DataSetIterator iterator, int warmupBatches) {
+        return compare(new Reference() {
+            @Override
+            public INDArray output(INDArray features) {
+                return original.outputSingle(false, features);
+            }
+        }, original.numParams(), quantized, iterator, warmupBatches);
+    }
+
+    protected static Report compare(Reference original, long numParams, QuantizedNetwork quantized,
+                                    DataSetIterator iterator, int warmupBatches) {
+        if (iterator.resetSupported())
+            iterator.reset();
+
+        Evaluation fp32Eval = new Evaluation();
+        Evaluation int8Eval = new Evaluation();
+        List<Long> fp32Times = new ArrayList<>();
+        List<Long> int8Times = new ArrayList<>();
+        boolean classification = true;
+        long examples = 0;
+        long agree = 0;
+        double maxDiff = 0.0;
+        double sumDiff = 0.0;
+        long numValues = 0;
+
+        int batch = 0;
+        while (iterator.hasNext()) {
+            DataSet ds = iterator.next();
+            INDArray features = ds.getFeatures();
+
+            long start = System.nanoTime();
+            INDArray fp32 = original.output(features);
+            long mid = System.nanoTime();
+            INDArray int8 = quantized.outputSingle(features);
+            long end = System.nanoTime();
+
+            if (batch++ >= warmupBatches) {
+                fp32Times.add(mid - start);
+                int8Times.add(end - mid);
+            }
+
+            INDArray diff = fp32.sub(int8.castTo(fp32.dataType()));
+            maxDiff = Math.max(maxDiff, diff.amaxNumber().doubleValue());
+            sumDiff += diff.norm1Number().doubleValue();
+            numValues += diff.length();
+            examples += features.size(0);
+
+            classification &= fp32.rank() == 2 && fp32.size(1) > 1;
+            if (classification) {
+                INDArray fp32Class = Nd4j.argMax(fp32, 1);
+                INDArray int8Class = Nd4j.argMax(int8, 1);
+                agree += fp32Class.eq(int8Class).castTo(fp32.dataType()).sumNumber().longValue();
+
+                INDArray labels = ds.getLabels();
+                if (labels != null && Arrays.equals(labels.shape(), fp32.shape())) {
+                    fp32Eval.eval(labels, fp32);
+                    int8Eval.eval(labels, int8);
+                }
+            }
+        }
+
+        Report r = new Report();
+        r.setNumExamples(examples);
+        r.setMaxAbsDifference(maxDiff);
+        r.setMeanAbsDifference(numValues == 0 ? 0.0 : sumDiff / numValues);
+        if (classification && examples > 0) {
+            r.setTopOneAgreement(agree / (double) examples);
+            if (fp32Eval.getNumRowCounter() > 0) {
+                r.setFp32Accuracy(fp32Eval.accuracy());
+                r.setInt8Accuracy(int8Eval.accuracy());
+            }
+        }
+        r.setFp32LatencyP50Ms(percentileMs(fp32Times, 50));
+        r.setFp32LatencyP90Ms(percentileMs(fp32Times, 90));
+        r.setInt8LatencyP50Ms(percentileMs(int8Times, 50));
+        r.setInt8LatencyP90Ms(percentileMs(int8Times, 90));
+        r.setFp32SizeBytes(numParams * 4);
+        r.setInt8SizeBytes(quantized.sizeInBytes());
+        return r;
+    }
+
+    protected static double percentileMs(List<Long> times, double percentile) {
+        if (times.isEmpty())
+            return Double.NaN;
+
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        int idx = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, idx)) / 1e6;
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.params.ConvolutionParamInitializer;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.convolution.Convolution;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * int8 forward pass for {@link ConvolutionLayer}, using the same im2col + GEMM approach as the built-in layer implementation.
+ * Weights are kept in GEMM layout [kW*kH*inDepth, outDepth], so scales are applied per output channel
+ */
+public class QuantizedConvolutionKernel extends QuantizedKernel {
+
+    public QuantizedConvolutionKernel(ConvolutionLayer layerConf, Map<String, QuantizedWeights> weights, Map<String, INDArray> params, float inputScale) {
+        super(layerConf, weights, params, inputScale);
+    }
+
+    /**
+     * Convert [outDepth, inDepth, kH, kW] convolution weights to [kW*kH*inDepth, outDepth] GEMM layout
+     */
+    public static INDArray toGemmLayout(INDArray weights) {
+        long outDepth = weights.size(0);
+        long inDepth = weights.size(1);
+        long kH = weights.size(2);
+        long kW = weights.size(3);
+        return weights.permute(3, 2, 1, 0).reshape('f', kW * kH * inDepth, outDepth);
+    }
+
+    @Override
+    public INDArray activate(INDArray input) {
+        ConvolutionLayer conf = (ConvolutionLayer) layerConf;
+        if (input.rank() != 4)
+            throw new DL4JInvalidInputException("Got rank " + input.rank() + " array as input to ConvolutionLayer with shape "
+                    + Arrays.toString(input.shape()) + ". Expected rank 4 array with shape [minibatchSize, layerInputDepth, inputHeight, inputWidth].");
+
+        // FIXME: int cast
+        int miniBatch = (int) input.size(0);
+        int inDepth = (int) conf.getNIn();
+        int outDepth = (int) conf.getNOut();
+        int[] kernel = conf.getKernelSize();
+        int[] strides = conf.getStride();
+        int[] dilation = conf.getDilation();
+        int kH = kernel[0];
+        int kW = kernel[1];
+
+        if (input.size(1) != inDepth)
+            throw new DL4JInvalidInputException("Cannot do forward pass in Convolution layer: input array channels does not match CNN layer configuration"
+                    + " (data input channels = " + input.size(1) + ", [minibatch,inputDepth,height,width]=" + Arrays.toString(input.shape())
+                    + "; expected input channels = " + inDepth + ")");
+
+        ConvolutionMode convolutionMode = conf.getConvolutionMode();
+        int[] pad;
+        int[] outSize;
+        if (convolutionMode == ConvolutionMode.Same) {
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, null, convolutionMode, dilation);
+            pad = ConvolutionUtils.getSameModeTopLeftPadding(outSize, new int[] {(int) input.size(2), (int) input.size(3)}, kernel,
+                    strides, dilation);
+        } else {
+            pad = conf.getPadding();
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, pad, convolutionMode, dilation);
+        }
+        int outH = outSize[0];
+        int outW = outSize[1];
+
+        float scale = scaleFor(input);
+        INDArray inputQ = quantizeInput(input, scale);
+
+        INDArray col = Nd4j.createUninitialized(DataType.FLOAT, new long[] {miniBatch, outH, outW, inDepth, kH, kW}, 'c');
+        INDArray col2 = col.permute(0, 3, 4, 5, 1, 2);
+        Convolution.im2col(inputQ, kH, kW, strides[0], strides[1], pad[0], pad[1], dilation[0], dilation[1],
+                convolutionMode == ConvolutionMode.Same, col2);
+
+        INDArray im2col2d = Shape.newShapeNoCopy(col, new int[] {miniBatch * outH * outW, inDepth * kH * kW}, false);
+
+        QuantizedWeights w = weights.get(ConvolutionParamInitializer.WEIGHT_KEY);
+        INDArray z = Nd4j.createUninitialized(DataType.FLOAT, new long[] {im2col2d.size(0), outDepth}, 'f');
+        im2col2d.mmuli(w.getUnpacked(), z);
+        z.muliRowVector(w.getScales().reshape(1, outDepth).mul(scale));
+
+        INDArray bias = params.get(ConvolutionParamInitializer.BIAS_KEY);
+        if (bias != null)
+            z.addiRowVector(bias);
+
+        z = Shape.newShapeNoCopy(z, new int[] {outW, outH, miniBatch, outDepth}, true);
+        z = z.permute(2, 3, 1, 0);
+
+        return conf.getActivationFn().getActivation(z, false);
+    }
+}
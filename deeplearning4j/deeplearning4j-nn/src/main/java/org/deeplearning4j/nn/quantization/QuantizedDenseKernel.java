@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Map;
+
+/**
+ * int8 forward pass for {@link org.deeplearning4j.nn.conf.layers.DenseLayer} and {@link org.deeplearning4j.nn.conf.layers.OutputLayer}
+ */
+public class QuantizedDenseKernel extends QuantizedKernel {
+
+    public QuantizedDenseKernel(Layer layerConf, Map<String, QuantizedWeights> weights, Map<String, INDArray> params, float inputScale) {
+        super(layerConf, weights, params, inputScale);
+    }
+
+    @Override
+    public INDArray activate(INDArray input) {
+        float scale = scaleFor(input);
+        INDArray z = gemm(quantizeInput(input, scale), scale, weights.get(DefaultParamInitializer.WEIGHT_KEY));
+
+        INDArray bias = params.get(DefaultParamInitializer.BIAS_KEY);
+        if (bias != null)
+            z.addiRowVector(bias);
+
+        return ((BaseLayer) layerConf).getActivationFn().getActivation(z, false);
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.params.LSTMParamInitializer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Inference-only int8 implementation of a single layer forward pass.<br>
+ * Weights are quantized symmetrically per output channel, layer input is quantized symmetrically per tensor, using
+ * either the calibrated scale or (if the layer wasn't calibrated) the range of the actual input.
+ * Biases and activation functions stay in fp32. Matrix multiplications are fp32 as well, on integer-valued fp32
+ * copies of the int8 weights and inputs (see {@link QuantizedWeights}).
+ */
+public abstract class QuantizedKernel {
+    @Getter protected final Layer layerConf;
+    @Getter protected final Map<String, QuantizedWeights> weights;
+    @Getter protected final Map<String, INDArray> params;
+    @Getter protected final float inputScale;
+
+    protected QuantizedKernel(@NonNull Layer layerConf, @NonNull Map<String, QuantizedWeights> weights,
+                              @NonNull Map<String, INDArray> params, float inputScale) {
+        this.layerConf = layerConf;
+        this.weights = weights;
+        this.params = params;
+        this.inputScale = inputScale;
+    }
+
+    /**
+     * Forward pass in inference mode
+     *
+     * @param input layer input, after input preprocessor (if any) was applied
+     * @return layer activations
+     */
+    public abstract INDArray activate(INDArray input);
+
+    /**
+     * @return true if given layer configuration has an int8 implementation. Subclasses of supported layers are not supported.
+     */
+    public static boolean isSupported(@NonNull Layer layerConf) {
+        Class<?> c = layerConf.getClass();
+        if (c == DenseLayer.class)
+            return !((DenseLayer) layerConf).hasLayerNorm();
+
+        return c == OutputLayer.class || c == ConvolutionLayer.class || c == LSTM.class;
+    }
+
+    /**
+     * Quantize weights of a layer
+     *
+     * @param layerConf  layer configuration, must be supported as per {@link #isSupported(Layer)}
+     * @param paramTable fp32 parameters of the layer
+     * @param inputScale calibrated input scale, or 0.0 for dynamic quantization of the input
+     */
+    public static QuantizedKernel quantize(@NonNull Layer layerConf, @NonNull Map<String, INDArray> paramTable, float inputScale) {
+        Map<String, QuantizedWeights> weights = new LinkedHashMap<>();
+        Map<String, INDArray> params = new LinkedHashMap<>();
+        if (layerConf instanceof ConvolutionLayer) {
+            weights.put(DefaultParamInitializer.WEIGHT_KEY,
+                    QuantizedWeights.quantize(QuantizedConvolutionKernel.toGemmLayout(paramTable.get(DefaultParamInitializer.WEIGHT_KEY)), 1));
+        } else if (layerConf instanceof LSTM) {
+            weights.put(LSTMParamInitializer.INPUT_WEIGHT_KEY, QuantizedWeights.quantize(paramTable.get(LSTMParamInitializer.INPUT_WEIGHT_KEY), 1));
+            weights.put(LSTMParamInitializer.RECURRENT_WEIGHT_KEY, QuantizedWeights.quantize(paramTable.get(LSTMParamInitializer.RECURRENT_WEIGHT_KEY), 1));
+        } else {
+            weights.put(DefaultParamInitializer.WEIGHT_KEY, QuantizedWeights.quantize(paramTable.get(DefaultParamInitializer.WEIGHT_KEY), 1));
+        }
+
+        if (paramTable.containsKey(DefaultParamInitializer.BIAS_KEY))
+            params.put(DefaultParamInitializer.BIAS_KEY, paramTable.get(DefaultParamInitializer.BIAS_KEY).castTo(DataType.FLOAT).dup());
+
+        return create(layerConf, weights, params, inputScale);
+    }
+
+    /**
+     * Create kernel from already quantized weights
+     */
+    public static QuantizedKernel create(@NonNull Layer layerConf, @NonNull Map<String, QuantizedWeights> weights,
+                                         @NonNull Map<String, INDArray> params, float inputScale) {
+        if (!isSupported(layerConf))
+            throw new UnsupportedOperationException("Layer is not supported by int8 inference: " + layerConf.getClass().getSimpleName());
+
+        if (layerConf instanceof ConvolutionLayer)
+            return new QuantizedConvolutionKernel((ConvolutionLayer) layerConf, weights, params, inputScale);
+        else if (layerConf instanceof LSTM)
+            return new QuantizedLSTMKernel((LSTM) layerConf, weights, params, inputScale);
+        else
+            return new QuantizedDenseKernel(layerConf, weights, params, inputScale);
+    }
+
+    /**
+     * @return number of bytes used by quantized weights (including cached fp32 copies) and fp32 parameters of this kernel
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (QuantizedWeights w : weights.values())
+            size += w.sizeInBytes();
+        for (INDArray p : params.values())
+            size += p.length() * Nd4j.sizeOfDataType(p.dataType());
+        return size;
+    }
+
+    /**
+     * @return scale to use for given input: calibrated one if available, input range otherwise
+     */
+    protected float scaleFor(INDArray input) {
+        if (inputScale > 0.0f)
+            return inputScale;
+
+        double m = input.amaxNumber().doubleValue();
+        return m > 0.0 ? (float) (m / QuantizedWeights.MAX_VALUE) : 1.0f;
+    }
+
+    /**
+     * @return integer-valued fp32 copy of the input, i.e. round(input / scale) clipped to int8 range
+     */
+    protected static INDArray quantizeInput(INDArray input, float scale) {
+        INDArray q = input.castTo(DataType.FLOAT);
+        if (q == input)
+            q = input.dup();
+
+        q.divi(scale);
+        Transforms.round(q, false);
+        Transforms.max(q, -QuantizedWeights.MAX_VALUE, false);
+        Transforms.min(q, QuantizedWeights.MAX_VALUE, false);
+        return q;
+    }
+
+    /**
+     * Integer GEMM with per-output-channel dequantization: returns (xq * wq) .* (inScale * wScales)
+     */
+    protected static INDArray gemm(INDArray xq, float inScale, QuantizedWeights w) {
+        INDArray z = xq.mmul(w.getUnpacked());
+        z.muliRowVector(w.getScales().reshape(1, w.getScales().length()).mul(inScale));
+        return z;
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.params.LSTMParamInitializer;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * int8 forward pass for {@link LSTM} (no peephole connections), following gate layout used by LSTMHelpers:
+ * [input, forget, output, input modulation].<br>
+ * Input projection for all time steps is done as a single GEMM; recurrent input is quantized per time step
+ * using its own range. Masking and stored state (rnnTimeStep) are not supported.
+ */
+public class QuantizedLSTMKernel extends QuantizedKernel {
+
+    public QuantizedLSTMKernel(LSTM layerConf, Map<String, QuantizedWeights> weights, Map<String, INDArray> params, float inputScale) {
+        super(layerConf, weights, params, inputScale);
+    }
+
+    @Override
+    public INDArray activate(INDArray input) {
+        LSTM conf = (LSTM) layerConf;
+        IActivation afn = conf.getActivationFn();
+        IActivation gateFn = conf.getGateActivationFn();
+
+        QuantizedWeights inputWeights = weights.get(LSTMParamInitializer.INPUT_WEIGHT_KEY);
+        QuantizedWeights recurrentWeights = weights.get(LSTMParamInitializer.RECURRENT_WEIGHT_KEY);
+        INDArray bias = params.get(LSTMParamInitializer.BIAS_KEY);
+
+        boolean is2dInput = input.rank() < 3;
+        // FIXME: int cast
+        int miniBatch = (int) input.size(0);
+        int nIn = (int) conf.getNIn();
+        int layerSize = (int) conf.getNOut();
+        int timeSeriesLength = (int) (is2dInput ? 1 : input.size(2));
+
+        if (input.size(1) != nIn)
+            throw new DL4JInvalidInputException("Received input with size(1) = " + input.size(1) + " (input array shape = "
+                    + Arrays.toString(input.shape()) + "); input.size(1) must match layer nIn size (nIn = " + nIn + ")");
+
+        //Input projection for all time steps at once: [miniBatch*T, nIn] x [nIn, 4*layerSize], rows ordered by example, then time
+        float scale = scaleFor(input);
+        INDArray in2d = is2dInput ? input : input.permute(0, 2, 1).dup('c').reshape('c', miniBatch * timeSeriesLength, nIn);
+        INDArray projected = gemm(quantizeInput(in2d, scale), scale, inputWeights);
+        if (bias != null)
+            projected.addiRowVector(bias);
+        projected = projected.reshape('c', miniBatch, timeSeriesLength, 4 * layerSize);
+
+        INDArray output = Nd4j.create(DataType.FLOAT, new long[] {miniBatch, layerSize, timeSeriesLength}, 'f');
+        INDArray prevOutput = null;
+        INDArray prevMemCell = Nd4j.zeros(DataType.FLOAT, miniBatch, layerSize);
+
+        for (int t = 0; t < timeSeriesLength; t++) {
+            INDArray ifog = projected.get(NDArrayIndex.all(), NDArrayIndex.point(t), NDArrayIndex.all()).dup('f');
+            ifog = ifog.reshape('f', miniBatch, 4 * layerSize);
+
+            if (prevOutput != null) {
+                double m = prevOutput.amaxNumber().doubleValue();
+                if (m > 0.0) {
+                    float recurrentScale = (float) (m / QuantizedWeights.MAX_VALUE);
+                    ifog.addi(gemm(quantizeInput(prevOutput, recurrentScale), recurrentScale, recurrentWeights));
+                }
+            }
+
+            INDArray inputActivations = ifog.get(NDArrayIndex.all(), NDArrayIndex.interval(0, layerSize));
+            INDArray forgetGate = ifog.get(NDArrayIndex.all(), NDArrayIndex.interval(layerSize, 2 * layerSize));
+            INDArray outputGate = ifog.get(NDArrayIndex.all(), NDArrayIndex.interval(2 * layerSize, 3 * layerSize));
+            INDArray inputModGate = ifog.get(NDArrayIndex.all(), NDArrayIndex.interval(3 * layerSize, 4 * layerSize));
+
+            afn.getActivation(inputActivations, false);
+            gateFn.getActivation(forgetGate, false);
+            gateFn.getActivation(outputGate, false);
+            gateFn.getActivation(inputModGate, false);
+
+            INDArray memCell = forgetGate.mul(prevMemCell).addi(inputModGate.mul(inputActivations));
+            INDArray currOutput = afn.getActivation(memCell.dup('f'), false).muli(outputGate);
+
+            output.tensorAlongDimension(t, 1, 0).assign(currOutput);
+            prevOutput = currOutput;
+            prevMemCell = memCell;
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.util.GraphIndices;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Inference-only network produced by post-training int8 quantization of a trained {@link MultiLayerNetwork} or
+ * {@link ComputationGraph}.<br>
+ * Layers supported by {@link QuantizedKernel} (DenseLayer, OutputLayer, ConvolutionLayer, LSTM) store per-channel
+ * int8 weights and quantize their inputs to int8, all other layers and graph vertices fall back to their regular fp32
+ * implementation. Fallback layers own copies of their parameters, so the source network can be discarded afterwards.<br>
+ * Compute is not int8: ND4J has no int8 GEMM/convolution kernels, so quantized layers dequantize weights to
+ * integer-valued fp32 and multiply in fp32. The benefit is the ~4x smaller model, not faster arithmetic; expanded
+ * weights are not cached unless {@link #setCacheUnpackedWeights(boolean)} is enabled.<br>
+ * <br>
+ * Typical use:
+ * <pre>
+ * ActivationRanges ranges = QuantizationCalibrator.calibrate(net, calibrationIterator, 100);
+ * QuantizedNetwork qnet = QuantizedNetwork.quantize(net, ranges);
+ * qnet.save(file);
+ * </pre>
+ * Like the networks it was created from, instances are not thread-safe if any layer falls back to fp32.
+ * Masking, stored RNN state and training are not supported.
+ */
+@Slf4j
+public class QuantizedNetwork {
+    public static final int VERSION = 1;
+
+    protected static final byte[] MAGIC = "DL4JINT8".getBytes(Charset.forName("UTF-8"));
+    protected static final int TYPE_MULTI_LAYER_NETWORK = 0;
+    protected static final int TYPE_COMPUTATION_GRAPH = 1;
+
+    protected static final byte NODE_QUANTIZED = 0;
+    protected static final byte NODE_FALLBACK = 1;
+
+    /**
+     * Single step of forward pass: either quantized kernel (with optional preprocessor), fp32 layer (with optional
+     * preprocessor), or fp32 graph vertex
+     */
+    protected static class Node {
+        protected String name;
+        protected int[] inputs;
+        protected InputPreProcessor preProcessor;
+        protected QuantizedKernel kernel;
+        protected Layer layer;
+        protected GraphVertex vertex;
+        protected INDArray params;
+    }
+
+    @Getter protected final MultiLayerConfiguration multiLayerConfiguration;
+    @Getter protected final ComputationGraphConfiguration graphConfiguration;
+    protected final int numInputs;
+    protected final List<Node> nodes;
+    protected final int[] outputs;
+    protected final LayerWorkspaceMgr workspaceMgr = LayerWorkspaceMgr.noWorkspaces();
+
+    protected QuantizedNetwork(MultiLayerConfiguration multiLayerConfiguration, ComputationGraphConfiguration graphConfiguration,
+                               int numInputs, List<Node> nodes, int[] outputs) {
+        this.multiLayerConfiguration = multiLayerConfiguration;
+        this.graphConfiguration = graphConfiguration;
+        this.numInputs = numInputs;
+        this.nodes = nodes;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Source of layer parameters while building the network: either the original network, or a saved model
+     */
+    protected interface NodeSource {
+        void populate(Node node, int index, org.deeplearning4j.nn.conf.layers.Layer layerConf) throws IOException;
+    }
+
+    /**
+     * Quantize all supported layers of a MultiLayerNetwork
+     *
+     * @param network trained network
+     * @param ranges  activation ranges from {@link QuantizationCalibrator}, or null to quantize layer inputs dynamically
+     */
+    public static QuantizedNetwork quantize(@NonNull final MultiLayerNetwork network, final ActivationRanges ranges) {
+        try {
+            QuantizedNetwork q = build(network.getLayerWiseConfigurations(), new NodeSource() {
+                @Override
+                public void populate(Node node, int index, org.deeplearning4j.nn.conf.layers.Layer layerConf) {
+                    populateFromModel(node, network.getLayer(index).paramTable(), network.getLayer(index).params(), layerConf, ranges);
+                }
+            });
+            q.logSummary();
+            return q;
+        } catch (IOException e) {
+            //Not possible when building from a network
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Quantize all supported layers of a ComputationGraph
+     *
+     * @param graph  trained network
+     * @param ranges activation ranges from {@link QuantizationCalibrator}, or null to quantize layer inputs dynamically
+     */
+    public static QuantizedNetwork quantize(@NonNull final ComputationGraph graph, final ActivationRanges ranges) {
+        try {
+            QuantizedNetwork q = build(graph.getConfiguration(), new NodeSource() {
+                @Override
+                public void populate(Node node, int index, org.deeplearning4j.nn.conf.layers.Layer layerConf) {
+                    GraphVertex v = graph.getVertices()[index];
+                    Map<String, INDArray> paramTable = v.hasLayer() ? v.getLayer().paramTable() : v.paramTable(false);
+                    populateFromModel(node, paramTable, v.params(), layerConf, ranges);
+                }
+            });
+            q.logSummary();
+            return q;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static void populateFromModel(Node node, Map<String, INDArray> paramTable, INDArray params,
+                                            org.deeplearning4j.nn.conf.layers.Layer layerConf, ActivationRanges ranges) {
+        if (layerConf != null && QuantizedKernel.isSupported(layerConf)) {
+            float scale = ranges == null ? 0.0f : ranges.getScale(node.name);
+            node.kernel = QuantizedKernel.quantize(layerConf, paramTable, scale);
+        } else if (params != null && params.length() > 0) {
+            node.params = params.dup();
+        }
+    }
+
+    protected static QuantizedNetwork build(MultiLayerConfiguration conf, NodeSource source) throws IOException {
+        int numLayers = conf.getConfs().size();
+        List<Node> nodes = new ArrayList<>(numLayers);
+        for (int i = 0; i < numLayers; i++) {
+            NeuralNetConfiguration layerConf = conf.getConf(i);
+
+            Node node = new Node();
+            node.name = String.valueOf(i);
+            //Slot 0 is network input, slot i is output of layer i-1
+            node.inputs = new int[] {i};
+            node.preProcessor = conf.getInputPreProcess(i);
+            source.populate(node, i, layerConf.getLayer());
+
+            if (node.kernel == null)
+                node.layer = layerConf.getLayer().instantiate(layerConf, null, i, node.params, false);
+
+            nodes.add(node);
+        }
+
+        return new QuantizedNetwork(conf, null, 1, nodes, new int[] {numLayers});
+    }
+
+    protected static QuantizedNetwork build(ComputationGraphConfiguration conf, NodeSource source) throws IOException {
+        //Not initialized: used only as a host for fp32 vertices, no parameters are allocated
+        ComputationGraph host = new ComputationGraph(conf);
+        GraphIndices indices = host.calculateIndices();
+        List<String> networkInputs = conf.getNetworkInputs();
+        int numInputs = networkInputs.size();
+
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < numInputs; i++)
+            slots.put(networkInputs.get(i), i);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int idx : indices.getTopologicalSortOrder()) {
+            String name = indices.getIdxToName().get(idx);
+            if (slots.containsKey(name))
+                continue;
+
+            org.deeplearning4j.nn.conf.graph.GraphVertex vertexConf = conf.getVertices().get(name);
+            List<String> vertexInputs = conf.getVertexInputs().get(name);
+
+            Node node = new Node();
+            node.name = name;
+            node.inputs = new int[vertexInputs.size()];
+            VertexIndices[] inputIndices = new VertexIndices[vertexInputs.size()];
+            for (int i = 0; i < node.inputs.length; i++) {
+                node.inputs[i] = slots.get(vertexInputs.get(i));
+                inputIndices[i] = new VertexIndices(indices.getNameToIdx().get(vertexInputs.get(i)), i);
+            }
+
+            org.deeplearning4j.nn.conf.layers.Layer layerConf = null;
+            if (vertexConf instanceof LayerVertex) {
+                layerConf = ((LayerVertex) vertexConf).getLayerConf().getLayer();
+                node.preProcessor = ((LayerVertex) vertexConf).getPreProcessor();
+            }
+            source.populate(node, idx, layerConf);
+
+            if (node.kernel == null) {
+                node.preProcessor = null;   //Applied by the vertex itself
+                node.vertex = vertexConf.instantiate(host, name, idx, node.params, false);
+                node.vertex.setInputVertices(inputIndices);
+            }
+
+            slots.put(name, numInputs + nodes.size());
+            nodes.add(node);
+        }
+
+        List<String> networkOutputs = conf.getNetworkOutputs();
+        int[] outputs = new int[networkOutputs.size()];
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = slots.get(networkOutputs.get(i));
+
+        return new QuantizedNetwork(null, conf, numInputs, nodes, outputs);
+    }
+
+    /**
+     * Forward pass in inference mode
+     *
+     * @param inputs network inputs, one per network input
+     * @return network outputs, one per network output
+     */
+    public INDArray[] output(@NonNull INDArray... inputs) {
+        Preconditions.checkArgument(inputs.length == numInputs, "Expected %s input arrays, got %s", numInputs, inputs.length);
+
+        INDArray[] slots = new INDArray[numInputs + nodes.size()];
+        System.arraycopy(inputs, 0, slots, 0, numInputs);
+        // FIXME: int cast
+        int miniBatch = (int) inputs[0].size(0);
+
+        for (int k = 0; k < nodes.size(); k++) {
+            Node node = nodes.get(k);
+            INDArray out;
+            if (node.vertex != null) {
+                for (int i = 0; i < node.inputs.length; i++)
+                    node.vertex.setInput(i, slots[node.inputs[i]], workspaceMgr);
+                out = node.vertex.doForward(false, workspaceMgr);
+                node.vertex.clear();
+            } else {
+                INDArray in = slots[node.inputs[0]];
+                if (node.preProcessor != null)
+                    in = node.preProcessor.preProcess(in, miniBatch, workspaceMgr);
+
+                if (node.kernel != null) {
+                    out = node.kernel.activate(in);
+                } else {
+                    node.layer.setInputMiniBatchSize(miniBatch);
+                    out = node.layer.activate(in, false, workspaceMgr);
+                    node.layer.clear();
+                }
+            }
+            slots[numInputs + k] = out;
+        }
+
+        INDArray[] result = new INDArray[outputs.length];
+        for (int i = 0; i < outputs.length; i++)
+            result[i] = slots[outputs[i]];
+        return result;
+    }
+
+    /**
+     * Forward pass for networks with single output
+     */
+    public INDArray outputSingle(@NonNull INDArray... inputs) {
+        Preconditions.checkState(outputs.length == 1, "Network has %s outputs, use output(INDArray...) instead", outputs.length);
+        return output(inputs)[0];
+    }
+
+    /**
+     * @return names of layers/vertices executed with int8 kernels (layer indices for MultiLayerNetwork)
+     */
+    public List<String> getQuantizedLayers() {
+        List<String> out = new ArrayList<>();
+        for (Node n : nodes)
+            if (n.kernel != null)
+                out.add(n.name);
+        return out;
+    }
+
+    /**
+     * @return names of layers/vertices with parameters, executed in fp32
+     */
+    public List<String> getFallbackLayers() {
+        List<String> out = new ArrayList<>();
+        for (Node n : nodes)
+            if (n.params != null)
+                out.add(n.name);
+        return out;
+    }
+
+    /**
+     * @return number of bytes used by parameters: int8 weights and fp32 scales/biases of quantized layers (plus cached
+     * fp32 weights, if enabled via {@link #setCacheUnpackedWeights(boolean)}), and fp32 parameters of fallback layers
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (Node n : nodes) {
+            if (n.kernel != null)
+                size += n.kernel.sizeInBytes();
+            else if (n.params != null)
+                size += n.params.length() * Nd4j.sizeOfDataType(n.params.dataType());
+        }
+        return size;
+    }
+
+    /**
+     * Change caching of unpacked int8 weights for all quantized layers (disabled by default): see
+     * {@link QuantizedWeights#setCacheUnpacked(boolean)}
+     */
+    public void setCacheUnpackedWeights(boolean cache) {
+        for (Node n : nodes)
+            if (n.kernel != null)
+                for (QuantizedWeights w : n.kernel.getWeights().values())
+                    w.setCacheUnpacked(cache);
+    }
+
+    protected void logSummary() {
+        List<String> quantized = getQuantizedLayers();
+        List<String> fallback = getFallbackLayers();
+        log.info("Quantized {} layers to int8; {} layers with parameters use fp32: {}", quantized.size(), fallback.size(), fallback);
+    }
+
+    /**
+     * Save network to a file
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            save(os);
+        }
+    }
+
+    /**
+     * Save network to a stream. Stream is not closed
+     */
+    public void save(@NonNull OutputStream stream) throws IOException {
+        DataOutputStream dos = new DataOutputStream(stream);
+        dos.write(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(multiLayerConfiguration != null ? TYPE_MULTI_LAYER_NETWORK : TYPE_COMPUTATION_GRAPH);
+
+        byte[] json = (multiLayerConfiguration != null ? multiLayerConfiguration.toJson() : graphConfiguration.toJson()).getBytes(Charset.forName("UTF-8"));
+        dos.writeInt(json.length);
+        dos.write(json);
+
+        dos.writeInt(nodes.size());
+        for (Node n : nodes) {
+            dos.writeUTF(n.name);
+            if (n.kernel != null) {
+                dos.writeByte(NODE_QUANTIZED);
+                dos.writeFloat(n.kernel.getInputScale());
+                dos.writeInt(n.kernel.getWeights().size());
+                for (Map.Entry<String, QuantizedWeights> e : n.kernel.getWeights().entrySet()) {
+                    dos.writeUTF(e.getKey());
+                    e.getValue().write(dos);
+                }
+                dos.writeInt(n.kernel.getParams().size());
+                for (Map.Entry<String, INDArray> e : n.kernel.getParams().entrySet()) {
+                    dos.writeUTF(e.getKey());
+                    Nd4j.write(e.getValue(), dos);
+                }
+            } else {
+                dos.writeByte(NODE_FALLBACK);
+                dos.writeBoolean(n.params != null);
+                if (n.params != null)
+                    Nd4j.write(n.params, dos);
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * Load network previously saved with {@link #save(File)}
+     */
+    public static QuantizedNetwork load(@NonNull File file) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            return load(is);
+        }
+    }
+
+    /**
+     * Load network previously saved with {@link #save(OutputStream)}. Stream is not closed
+     */
+    public static QuantizedNetwork load(@NonNull InputStream stream) throws IOException {
+        final DataInputStream dis = new DataInputStream(stream);
+        byte[] magic = new byte[MAGIC.length];
+        dis.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Not a quantized network: unknown file header");
+
+        int version = dis.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported quantized network version: " + version);
+
+        int type = dis.readInt();
+        byte[] json = new byte[dis.readInt()];
+        dis.readFully(json);
+        String jsonConf = new String(json, Charset.forName("UTF-8"));
+
+        final int numNodes = dis.readInt();
+        NodeSource source = new NodeSource() {
+            @Override
+            public void populate(Node node, int index, org.deeplearning4j.nn.conf.layers.Layer layerConf) throws IOException {
+                String name = dis.readUTF();
+                if (!name.equals(node.name))
+                    throw new IOException("Corrupted quantized network: expected layer " + node.name + ", got " + name);
+
+                if (dis.readByte() == NODE_QUANTIZED) {
+                    float inputScale = dis.readFloat();
+                    Map<String, QuantizedWeights> weights = new LinkedHashMap<>();
+                    int numWeights = dis.readInt();
+                    for (int i = 0; i < numWeights; i++)
+                        weights.put(dis.readUTF(), QuantizedWeights.read(dis));
+
+                    Map<String, INDArray> params = new LinkedHashMap<>();
+                    int numParams = dis.readInt();
+                    for (int i = 0; i < numParams; i++)
+                        params.put(dis.readUTF(), Nd4j.read(dis));
+
+                    node.kernel = QuantizedKernel.create(layerConf, weights, params, inputScale);
+                } else if (dis.readBoolean()) {
+                    node.params = Nd4j.read(dis);
+                }
+            }
+        };
+
+        QuantizedNetwork q;
+        if (type == TYPE_MULTI_LAYER_NETWORK) {
+            q = build(MultiLayerConfiguration.fromJson(jsonConf), source);
+        } else if (type == TYPE_COMPUTATION_GRAPH) {
+            q = build(ComputationGraphConfiguration.fromJson(jsonConf), source);
+        } else {
+            throw new IOException("Unknown model type: " + type);
+        }
+
+        if (q.nodes.size() != numNodes)
+            throw new IOException("Corrupted quantized network: expected " + numNodes + " layers, got " + q.nodes.size());
+
+        return q;
+    }
+}
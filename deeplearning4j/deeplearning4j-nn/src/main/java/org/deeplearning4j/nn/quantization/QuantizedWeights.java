@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Symmetric per-channel int8 representation of a weight array: {@code w[..., c, ...] ~= q[..., c, ...] * scale[c]},
+ * where q is stored as {@link DataType#BYTE} in range [-127, 127] and scale is one float per output channel.<br>
+ * Note that int8 is a storage format only: ND4J has no int8 GEMM/convolution kernels, so compute is fp32 -
+ * quantized kernels expand q into an integer-valued fp32 copy (see {@link #getUnpacked()}), run fp32 GEMM, and apply
+ * per-channel scales to the accumulated output instead of the weights.
+ * Integer products are exact in fp32 accumulation as long as |sum| stays below 2^24, so results match int8/int32 arithmetic.
+ */
+public class QuantizedWeights {
+    public static final int MAX_VALUE = 127;
+
+    @Getter protected final INDArray quantized;
+    @Getter protected final INDArray scales;
+    @Getter protected final int channelDimension;
+
+    protected boolean cacheUnpacked = false;
+    protected transient INDArray unpacked;
+
+    public QuantizedWeights(@NonNull INDArray quantized, @NonNull INDArray scales, int channelDimension) {
+        Preconditions.checkArgument(quantized.dataType() == DataType.BYTE, "Quantized weights must be BYTE array, got %s", quantized.dataType());
+        Preconditions.checkArgument(scales.length() == quantized.size(channelDimension), "Expected %s scales, got %s", quantized.size(channelDimension), scales.length());
+        this.quantized = quantized;
+        this.scales = scales;
+        this.channelDimension = channelDimension;
+    }
+
+    /**
+     * Quantize weights using one scale per slice along given dimension
+     *
+     * @param weights          fp32 weights
+     * @param channelDimension output channel dimension: 1 for dense/recurrent [nIn, nOut] weights, 0 for convolution [oC, iC, kH, kW] weights
+     */
+    public static QuantizedWeights quantize(@NonNull INDArray weights, int channelDimension) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            int[] reduceDims = new int[weights.rank() - 1];
+            for (int i = 0, j = 0; i < weights.rank(); i++) {
+                if (i != channelDimension)
+                    reduceDims[j++] = i;
+            }
+
+            INDArray w = weights.castTo(DataType.FLOAT);
+            INDArray scales = w.amax(reduceDims).reshape(w.size(channelDimension)).divi(MAX_VALUE);
+            //All-zero channels: any non-zero scale works
+            BooleanIndexing.replaceWhere(scales, 1.0, Conditions.equals(0.0));
+
+            INDArray q = Broadcast.div(w, scales, w.ulike(), channelDimension);
+            Transforms.round(q, false);
+            Transforms.max(q, -MAX_VALUE, false);
+            Transforms.min(q, MAX_VALUE, false);
+
+            return new QuantizedWeights(q.castTo(DataType.BYTE), scales, channelDimension);
+        }
+    }
+
+    /**
+     * @return integer-valued fp32 copy of quantized values, in original layout. Cached unless disabled via {@link #setCacheUnpacked(boolean)}
+     */
+    public INDArray getUnpacked() {
+        INDArray u = unpacked;
+        if (u != null)
+            return u;
+
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            u = quantized.castTo(DataType.FLOAT);
+        }
+
+        if (cacheUnpacked)
+            unpacked = u;
+
+        return u;
+    }
+
+    /**
+     * If true, integer-valued fp32 copy of weights is kept after first use: this avoids re-expanding weights on every
+     * call, at the cost of resident memory growing from 1 to 5 bytes per weight (counted by {@link #sizeInBytes()}).
+     * Disabled by default. Serialized size is not affected.
+     */
+    public void setCacheUnpacked(boolean cacheUnpacked) {
+        this.cacheUnpacked = cacheUnpacked;
+        if (!cacheUnpacked)
+            unpacked = null;
+    }
+
+    /**
+     * @return fp32 approximation of original weights
+     */
+    public INDArray dequantize() {
+        INDArray u = quantized.castTo(DataType.FLOAT);
+        return Broadcast.mul(u, scales, u, channelDimension);
+    }
+
+    /**
+     * @return number of bytes held in memory: int8 values and fp32 scales, plus cached fp32 copy if present
+     */
+    public long sizeInBytes() {
+        long size = quantized.length() + scales.length() * 4;
+        INDArray u = unpacked;
+        if (u != null)
+            size += u.length() * Nd4j.sizeOfDataType(u.dataType());
+        return size;
+    }
+
+    public void write(@NonNull DataOutputStream dos) throws IOException {
+        //Raw int8 values in 'c' order: Nd4j.write doesn't support BYTE buffers
+        dos.writeInt(channelDimension);
+        long[] shape = quantized.shape();
+        dos.writeInt(shape.length);
+        for (long l : shape)
+            dos.writeLong(l);
+
+        ByteBuffer bb = quantized.dup('c').data().asNio();
+        byte[] bytes = new byte[(int) quantized.length()];
+        bb.get(bytes);
+        dos.write(bytes);
+        Nd4j.write(scales, dos);
+    }
+
+    public static QuantizedWeights read(@NonNull DataInputStream dis) throws IOException {
+        int channelDimension = dis.readInt();
+        long[] shape = new long[dis.readInt()];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = dis.readLong();
+
+        byte[] bytes = new byte[(int) ArrayUtil.prodLong(shape)];
+        dis.readFully(bytes);
+        INDArray quantized = Nd4j.createFromArray(bytes).reshape('c', shape);
+        INDArray scales = Nd4j.read(dis);
+        return new QuantizedWeights(quantized, scales, channelDimension);
+    }
+}
@@ -22,6 +22,9 @@ import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.deeplearning4j.optimize.api.ConvexOptimizer;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
+import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
@@ -58,6 +61,7 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
     private boolean reportIteration = true;
     private boolean reportEtl = true;
     private boolean reportTime = true;
+    private boolean reportSharing = true;
 
 
 
@@ -145,6 +149,23 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
             if (reportScore)
                 builder.append("score: ").append(model.score()).append(";");
 
+            // only networks own a solver: for layers getOptimizer() either throws or creates a new one
+            if (reportSharing && (model instanceof MultiLayerNetwork || model instanceof ComputationGraph)) {
+                ConvexOptimizer optimizer = model.getOptimizer();
+                GradientsAccumulator accumulator = optimizer == null ? null : optimizer.getGradientsAccumulator();
+
+                if (accumulator instanceof EncodedGradientsAccumulator) {
+                    EncodedGradientsAccumulator.Timings timings = ((EncodedGradientsAccumulator) accumulator).getLastTimings();
+                    if (timings != null) {
+                        builder.append(" sharing: [encode: ").append(formatNanos(timings.getEncodingTime()))
+                                        .append(", group: ").append(formatNanos(timings.getGroupReductionTime()))
+                                        .append(", sync: ").append(formatNanos(timings.getSynchronizationTime()))
+                                        .append(", apply: ").append(formatNanos(timings.getApplyTime()))
+                                        .append(" (").append(timings.getUpdatesApplied()).append(" messages)];");
+                    }
+                }
+            }
+
             if (reportGC){
                 if(gcBeans == null){
                     try{
@@ -190,6 +211,10 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
         lastTime.set(System.currentTimeMillis());
     }
 
+    private static String formatNanos(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         //Custom deserializer, as transient ThreadLocal fields won't be initialized...
         in.defaultReadObject();
@@ -209,6 +234,7 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
         private boolean reportIteration = true;
         private boolean reportTime = true;
         private boolean reportEtl = true;
+        private boolean reportSharing = true;
 
         public Builder() {
 
@@ -281,6 +307,20 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
             return this;
         }
 
+        /**
+         * This method defines, if gradients sharing timings (local encoding, group reduction, synchronization and
+         * application of updates) should be reported together with other data.
+         * Applicable only to MultiLayerNetwork and ComputationGraph trained with EncodedGradientsAccumulator, i.e. ParallelWrapper
+         * in SHARED_GRADIENTS mode; ignored for other models
+         *
+         * @param reportSharing
+         * @return
+         */
+        public Builder reportSharing(boolean reportSharing) {
+            this.reportSharing = reportSharing;
+            return this;
+        }
+
         /**
          * Desired TrainingListener activation frequency
          *
@@ -304,6 +344,7 @@ public class PerformanceListener extends BaseTrainingListener implements Seriali
             listener.reportBatch = this.reportBatch;
             listener.reportSample = this.reportSample;
             listener.reportEtl = this.reportEtl;
+            listener.reportSharing = this.reportSharing;
 
             return listener;
         }
@@ -53,6 +53,10 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * This GradientsAccumulator is suited for CUDA backend.
  *
+ * By default every worker's encoded update is delivered to every other worker, so each worker decodes N messages per iteration.
+ * With groupSize > 1 workers are split into groups (in order of arrival within given iteration), and encoded updates of each group
+ * are reduced into group-level residual first. Only re-encoded group-level update is delivered to all workers then.
+ *
  * @author raver119@gmail.com
  */
 @Slf4j
@@ -94,6 +98,15 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
 
     protected AtomicBoolean externalUpdatesAvailable = new AtomicBoolean(false);
 
+    // hierarchical reduction: groupSize <= 1 means flat sharing
+    @Getter
+    protected int groupSize = 1;
+    protected List<Group> groups = new ArrayList<>();
+    protected final AtomicInteger groupArrivals = new AtomicInteger(0);
+    protected ThreadLocal<Group> currentGroup = new ThreadLocal<>();
+
+    protected ThreadLocal<Timings> timings = new ThreadLocal<>();
+
     protected WorkspaceConfiguration appliedConfiguration = WorkspaceConfiguration.builder().minSize(5 * 1024 * 1024L)
                     .overallocationLimit(0.3).policyMirroring(MirroringPolicy.FULL).policySpill(SpillPolicy.REALLOCATE)
                     .policyLearning(LearningPolicy.FIRST_LOOP).policyReset(ResetPolicy.BLOCK_LEFT).build();
@@ -103,12 +116,22 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     }
 
     public EncodedGradientsAccumulator(int parties, ThresholdAlgorithm thresholdAlgorithm, ResidualPostProcessor residualPostProcessor, boolean encodingDebugMode) {
-        this(parties, new EncodingHandler(thresholdAlgorithm, residualPostProcessor, 1.0, encodingDebugMode), DEFAULT_INITIAL_MEMORY, 10, 1.0, encodingDebugMode);
+        this(parties, thresholdAlgorithm, residualPostProcessor, encodingDebugMode, 1);
+    }
+
+    public EncodedGradientsAccumulator(int parties, ThresholdAlgorithm thresholdAlgorithm, ResidualPostProcessor residualPostProcessor, boolean encodingDebugMode, int groupSize) {
+        this(parties, new EncodingHandler(thresholdAlgorithm, residualPostProcessor, 1.0, encodingDebugMode), DEFAULT_INITIAL_MEMORY, 10, 1.0, encodingDebugMode, groupSize);
     }
 
     protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
                     int queueSize, Double boundary, boolean encodingDebugMode) {
+        this(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode, 1);
+    }
+
+    protected EncodedGradientsAccumulator(int parties, @NonNull MessageHandler handler, long initialMemory,
+                    int queueSize, Double boundary, boolean encodingDebugMode, int groupSize) {
         this.parties = parties;
+        this.groupSize = groupSize;
         this.handler = handler;
         this.initialMemory = initialMemory;
         this.queueSize = queueSize;
@@ -150,6 +173,10 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
         Nd4j.getAffinityManager().unsafeSetDevice(curDev);
 
+        if (groupSize > 1)
+            for (int i = 0; i < (parties + groupSize - 1) / groupSize; i++)
+                groups.add(new Group());
+
         handler.initialize(this);
     }
 
@@ -211,6 +238,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
 
         currentConsumers.set(numConsumers);
+        groupArrivals.set(0);
         registered.set(true);
     }
 
@@ -287,6 +315,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         if (updatesApplied.get() == null)
             updatesApplied.set(new AtomicLong(0));
         try {
+            long time1 = System.nanoTime();
+
             // nullify given updates first
             Nd4j.getMemoryManager().memset(updates);
             //updates.assign(0.0);
@@ -294,14 +324,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             int cnt = 0;
             while (!messages.get(index.get()).isEmpty()) {
                 INDArray compressed = messages.get(index.get()).poll();
-
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+                decode(compressed, updates);
 
                 cnt++;
             }
@@ -325,8 +348,10 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                     log.info("External updates to be applied: {}", ent);
             }
 
+            long time2 = System.nanoTime();
             if (isFinalStep)
                 synchronize(currentConsumers.get(), isFinalStep);
+            long time3 = System.nanoTime();
 
             // TODO: average updates probably?
 
@@ -336,6 +361,13 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
                 if (isDebug)
                     log.info("Total updates applied so far for thread [{}]: [{}]", Thread.currentThread().getName(), updatesApplied.get());
             }
+
+            if (isFinalStep) {
+                Timings t = getTimings();
+                t.applyTime = (time2 - time1) + (System.nanoTime() - time3);
+                t.synchronizationTime += time3 - time2;
+                t.updatesApplied = cnt;
+            }
         } catch (Exception e) {
             throwable.setIfFirst(e);
             throw new RuntimeException(e);
@@ -359,14 +391,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             int cnt = 0;
             while (!messages.get(index.get()).isEmpty()) {
                 INDArray compressed = messages.get(index.get()).poll();
-
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+                decode(compressed, updates);
 
                 cnt++;
             }
@@ -464,11 +489,42 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             if (isDebug)
                 log.info("thread {} unlocking at Register", Thread.currentThread().getId());
 
+            int consumers = currentConsumers.get();
+            boolean hierarchical = groupSize > 1 && consumers > 1 && !bypassMode.get();
+
+            Timings t = getTimings();
+            long time1 = System.nanoTime();
+
+            // in hierarchical mode our own message goes to the group residual, see receiveUpdate()
+            Group group = null;
+            int groupMembers = 0;
+            if (hierarchical) {
+                int arrival = groupArrivals.getAndIncrement();
+                int groupIndex = arrival / groupSize;
+                group = groups.get(groupIndex);
+                groupMembers = Math.min(groupSize, consumers - groupIndex * groupSize);
+                currentGroup.set(group);
+            }
+
             // propagate changes & modify accumulator
-            handler.broadcastUpdates(accumulator.get(), iterationNumber, epochNumber);
+            try {
+                handler.broadcastUpdates(accumulator.get(), iterationNumber, epochNumber);
+            } finally {
+                currentGroup.remove();
+            }
+            long time2 = System.nanoTime();
+
+            // last member of the group shares group-level updates with everyone
+            if (group != null && group.arrived.incrementAndGet() == groupMembers)
+                flushGroup(group, groupMembers);
+            long time3 = System.nanoTime();
 
             // we're blocking here, untill all done broadcasting updates
-            synchronize(currentConsumers.get());
+            synchronize(consumers);
+
+            t.encodingTime = time2 - time1;
+            t.groupReductionTime = time3 - time2;
+            t.synchronizationTime = System.nanoTime() - time3;
         } catch (Exception e) {
             throwable.setIfFirst(e);
             throw new RuntimeException(e);
@@ -484,6 +540,12 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
      */
     @Override
     public void receiveUpdate(INDArray array) {
+        Group group = currentGroup.get();
+        if (group != null) {
+            reduceIntoGroup(group, array);
+            return;
+        }
+
         try {
             // we're replicating COMPRESSED MESSAGES, decompression will be thread-local
             for (int i = 0; i < parties; i++) {
@@ -539,6 +601,101 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         for (int i = 0; i < parties; i++) {
             messages.get(i).clear();
         }
+
+        // and group residuals
+        for (Group group : groups) {
+            group.residual = null;
+            group.threshold = -1.0f;
+            group.arrived.set(0);
+        }
+        groupArrivals.set(0);
+    }
+
+    /**
+     * This method returns timings of the last iteration, for the calling worker thread
+     *
+     * @return Timings, or null if this thread hasn't shared any updates yet
+     */
+    public Timings getLastTimings() {
+        return timings.get();
+    }
+
+    protected Timings getTimings() {
+        if (timings.get() == null)
+            timings.set(new Timings());
+
+        return timings.get();
+    }
+
+    protected static void decode(INDArray compressed, INDArray target) {
+        int encoding = compressed.data().getInt(3);
+        if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
+            Nd4j.getExecutioner().thresholdDecode(compressed, target);
+        else if (encoding == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(compressed, target);
+        else
+            throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
+    }
+
+    /**
+     * This method decodes message of a group member into group-level residual
+     */
+    protected void reduceIntoGroup(Group group, INDArray message) {
+        group.lock.lock();
+        try {
+            if (group.residual == null) {
+                // we don't want residual to be attached to workspaces
+                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    INDArray acc = accumulator.get();
+                    group.residual = Nd4j.create(acc.dataType(), acc.shape(), acc.ordering());
+                }
+            }
+
+            decode(message, group.residual);
+
+            float threshold = Float.intBitsToFloat(message.data().getInt(2));
+            if (group.threshold < 0 || threshold < group.threshold)
+                group.threshold = threshold;
+        } catch (Exception e) {
+            throwable.setIfFirst(e);
+            throw new RuntimeException(e);
+        } finally {
+            group.lock.unlock();
+        }
+    }
+
+    /**
+     * This method encodes group-level residual and delivers it to all workers.
+     *
+     * Decoded member messages carry +/- threshold per element, so element updated by k members holds k * threshold.
+     * We encode residual with thresholds going down from groupMembers * threshold to threshold, so such element gets delivered
+     * within single message, and number of messages never exceeds number of workers, as in flat mode.
+     * Everything below threshold stays in group residual till next iterations.
+     */
+    protected void flushGroup(Group group, int groupMembers) {
+        group.lock.lock();
+        try {
+            group.arrived.set(0);
+
+            if (group.residual == null || group.threshold <= 0)
+                return;
+
+            // we don't want messages bigger than bitmap-encoded ones
+            int boundary = (int) (group.residual.lengthLong() / 16);
+
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (int k = groupMembers; k > 0; k--) {
+                    INDArray message = Nd4j.getExecutioner().thresholdEncode(group.residual, k * group.threshold, boundary);
+                    if (message != null)
+                        receiveUpdate(message);
+                }
+            }
+        } catch (Exception e) {
+            throwable.setIfFirst(e);
+            throw new RuntimeException(e);
+        } finally {
+            group.lock.unlock();
+        }
     }
 
     @Override
@@ -555,6 +712,7 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         protected MessageHandler handler;
         protected Double boundary = null;
         protected boolean encodingDebugMode;
+        protected int groupSize = 1;
 
         /**
          * This
@@ -635,15 +793,59 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             return this;
         }
 
+        /**
+         * This method enables hierarchical updates sharing: workers are split into groups of given size,
+         * updates are reduced within each group, and only group-level updates are shared across all workers.
+         * This reduces decoding work per worker from O(N) to O(N / groupSize) messages.
+         *
+         * Default value: 1 (flat sharing)
+         * @param groupSize number of workers per group
+         * @return
+         */
+        public Builder groupSize(int groupSize) {
+            if (groupSize < 1)
+                throw new DL4JInvalidConfigException("Group size should be positive value");
+
+            this.groupSize = groupSize;
+            return this;
+        }
+
         public EncodedGradientsAccumulator build() {
             if (handler == null) {
                 Preconditions.checkNotNull(thresholdAlgorithm, "Both threshold algorithm and handler are null - one or the other must be set");
                 handler = new EncodingHandler(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
             }
 
-            EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode);
+            EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator(parties, handler, initialMemory, queueSize, boundary, encodingDebugMode, groupSize);
 
             return accumulator;
         }
     }
+
+    /**
+     * Group-level state for hierarchical updates sharing
+     */
+    protected static class Group {
+        protected final ReentrantLock lock = new ReentrantLock();
+        protected final AtomicInteger arrived = new AtomicInteger(0);
+        protected INDArray residual;
+        protected float threshold = -1.0f;
+    }
+
+    /**
+     * Per-worker timings of the last iteration, in nanoseconds
+     */
+    @Getter
+    public static class Timings {
+        /** encoding of the local update, including reduction of it into group residual */
+        protected long encodingTime;
+        /** encoding and delivery of group-level updates, non-zero only for the last member of each group */
+        protected long groupReductionTime;
+        /** time spent waiting for other workers */
+        protected long synchronizationTime;
+        /** decoding and application of received updates */
+        protected long applyTime;
+        /** number of messages decoded by this worker */
+        protected long updatesApplied;
+    }
 }
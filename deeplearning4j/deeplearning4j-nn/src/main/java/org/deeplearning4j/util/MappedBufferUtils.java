@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.LongPointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.javacpp.indexer.LongIndexer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.nativeblas.NativeOpsHolder;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Utility methods for memory-mapped storage formats
+ */
+public class MappedBufferUtils {
+
+    private MappedBufferUtils() {}
+
+    /**
+     * This method creates DataBuffer backed by mapped region. Pointer keeps reference to the mapping,
+     * so region won't be unmapped while DataBuffer (or any view of it) is in use
+     */
+    public static DataBuffer wrap(final MappedByteBuffer mapped, DataType dataType, long length) {
+        switch (dataType) {
+            case DOUBLE: {
+                DoublePointer pointer = new DoublePointer(mapped.asDoubleBuffer()) {
+                    private final MappedByteBuffer mapping = mapped;
+                };
+                return Nd4j.createBuffer(pointer, dataType, length, DoubleIndexer.create(pointer));
+            }
+            case FLOAT: {
+                FloatPointer pointer = new FloatPointer(mapped.asFloatBuffer()) {
+                    private final MappedByteBuffer mapping = mapped;
+                };
+                return Nd4j.createBuffer(pointer, dataType, length, FloatIndexer.create(pointer));
+            }
+            case HALF: {
+                ShortPointer pointer = new ShortPointer(mapped.asShortBuffer()) {
+                    private final MappedByteBuffer mapping = mapped;
+                };
+                return Nd4j.createBuffer(pointer, dataType, length, HalfIndexer.create(pointer));
+            }
+            case INT: {
+                IntPointer pointer = new IntPointer(mapped.asIntBuffer()) {
+                    private final MappedByteBuffer mapping = mapped;
+                };
+                return Nd4j.createBuffer(pointer, dataType, length, IntIndexer.create(pointer));
+            }
+            case LONG: {
+                LongPointer pointer = new LongPointer(mapped.asLongBuffer()) {
+                    private final MappedByteBuffer mapping = mapped;
+                };
+                return Nd4j.createBuffer(pointer, dataType, length, LongIndexer.create(pointer));
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + dataType);
+        }
+    }
+
+    /**
+     * This method maps whole file into memory via native mmap, so unlike {@link java.nio.channels.FileChannel#map},
+     * mapping isn't limited to 2GB. File is unmapped once returned pointer (and all buffers created from it via
+     * {@link #wrap(Pointer, long, DataType, long)}) are garbage collected.<br>
+     * PLEASE NOTE: mapping is shared and writable, so any changes made to the mapped memory are written to the file.
+     *
+     * @param file File to map. Must be writable
+     * @return Pointer to the start of the mapped file
+     */
+    public static Pointer mapFile(File file) {
+        final long length = file.length();
+        return mapped(file, NativeOpsHolder.getInstance().getDeviceNativeOps().mmapFile(null, file.getAbsolutePath(), length), length);
+    }
+
+    /**
+     * This method maps whole file into memory via native mmap, read-only. Unlike {@link #mapFile(File)}, file doesn't
+     * have to be writable, and mapped memory can't be modified: any write into it crashes the JVM, and the file itself
+     * is never changed.
+     *
+     * @param file File to map
+     * @return Pointer to the start of the mapped file
+     */
+    public static Pointer mapFileReadOnly(File file) {
+        final long length = file.length();
+        return mapped(file, NativeOpsHolder.getInstance().getDeviceNativeOps().mmapFileReadOnly(null, file.getAbsolutePath(), length), length);
+    }
+
+    private static Pointer mapped(File file, LongPointer map, long length) {
+        if (map == null || map.isNull() || map.get(0) == 0)
+            throw new IllegalStateException("Failed to map file [" + file.getAbsolutePath() + "]");
+
+        return new NativeFileMapping(map, length);
+    }
+
+    /**
+     * This method creates DataBuffer backed by region of file mapped via {@link #mapFile(File)}. Returned buffer keeps
+     * reference to the mapping, so file won't be unmapped while DataBuffer (or any view of it) is in use
+     *
+     * @param mapping  Mapping of the file
+     * @param offset   Offset of the region, in bytes
+     * @param dataType Data type of the region
+     * @param length   Number of elements in the region
+     */
+    public static DataBuffer wrap(final Pointer mapping, long offset, DataType dataType, long length) {
+        PagedPointer address = new PagedPointer(mapping.address() + offset);
+        switch (dataType) {
+            case DOUBLE: {
+                DoublePointer pointer = new DoublePointer(address) {
+                    private final Pointer owner = mapping;
+                };
+                pointer.capacity(length).limit(length);
+                return Nd4j.createBuffer(pointer, dataType, length, DoubleIndexer.create(pointer));
+            }
+            case FLOAT: {
+                FloatPointer pointer = new FloatPointer(address) {
+                    private final Pointer owner = mapping;
+                };
+                pointer.capacity(length).limit(length);
+                return Nd4j.createBuffer(pointer, dataType, length, FloatIndexer.create(pointer));
+            }
+            case HALF: {
+                ShortPointer pointer = new ShortPointer(address) {
+                    private final Pointer owner = mapping;
+                };
+                pointer.capacity(length).limit(length);
+                return Nd4j.createBuffer(pointer, dataType, length, HalfIndexer.create(pointer));
+            }
+            case INT: {
+                IntPointer pointer = new IntPointer(address) {
+                    private final Pointer owner = mapping;
+                };
+                pointer.capacity(length).limit(length);
+                return Nd4j.createBuffer(pointer, dataType, length, IntIndexer.create(pointer));
+            }
+            case LONG: {
+                LongPointer pointer = new LongPointer(address) {
+                    private final Pointer owner = mapping;
+                };
+                pointer.capacity(length).limit(length);
+                return Nd4j.createBuffer(pointer, dataType, length, LongIndexer.create(pointer));
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + dataType);
+        }
+    }
+
+    protected static class NativeFileMapping extends Pointer {
+        protected NativeFileMapping(final LongPointer map, final long length) {
+            // capacity stays 0: mapped pages aren't counted as JavaCPP allocation
+            this.address = map.get(0);
+            deallocator(new Deallocator() {
+                @Override
+                public void deallocate() {
+                    NativeOpsHolder.getInstance().getDeviceNativeOps().munmapFile(null, map, length);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Save/restore neural net models using uncompressed, memory-mappable container.<br>
+ * Unlike {@link ModelSerializer}, parameters (and optionally updater state) are stored as raw page-aligned blocks,
+ * so on restore the network's flattened parameters view is backed directly by the mapped file region:
+ * nothing is decompressed or copied, the OS loads pages lazily, and the page cache is shared between all JVMs that
+ * load the same file on the same host.<br>
+ * <br>
+ * Container layout (header values are big-endian, data blocks use byte order recorded in the header):
+ * <pre>
+ * magic "DL4JMMAP", int version, int model type, int alignment, byte order flag
+ * int config length, UTF-8 JSON configuration
+ * int number of blocks, then for each block: name, data type, long number of elements, long offset
+ * padding, then each block starting at offset that is multiple of alignment
+ * </pre>
+ * Single Java mapping is limited to 2GB, so larger blocks are mapped via native mmap in readOnly mode (still zero-copy),
+ * or copied to memory chunk by chunk otherwise.
+ * Normalizers and other extra objects are not stored in this format - use {@link ModelSerializer} for those.
+ */
+@Slf4j
+public class MappedModelSerializer {
+    public static final int VERSION = 1;
+    public static final int DEFAULT_ALIGNMENT = 4096;
+    public static final String PARAMS_BLOCK = "params";
+    public static final String UPDATER_BLOCK = "updaterState";
+
+    protected static final byte[] MAGIC = "DL4JMMAP".getBytes(Charset.forName("UTF-8"));
+    protected static final int TYPE_MULTI_LAYER_NETWORK = 0;
+    protected static final int TYPE_COMPUTATION_GRAPH = 1;
+
+    // maximum size of single FileChannel mapping, and of single write
+    protected static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private MappedModelSerializer() {}
+
+    /**
+     * Write a model to a file, using memory-mappable format
+     *
+     * @param model the model to write
+     * @param file the file to write to
+     * @param saveUpdater whether to save the updater state or not
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater) throws IOException {
+        writeModel(model, file, saveUpdater, MAX_CHUNK_BYTES);
+    }
+
+    // chunk size can be overridden for tests only, since real blocks have to exceed 2GB to be split
+    static void writeModel(Model model, File file, boolean saveUpdater, long maxChunkBytes) throws IOException {
+        int modelType;
+        String json;
+        INDArray updaterState = null;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork network = (MultiLayerNetwork) model;
+            modelType = TYPE_MULTI_LAYER_NETWORK;
+            json = network.getLayerWiseConfigurations().toJson();
+            if (saveUpdater && network.getUpdater() != null)
+                updaterState = network.getUpdater().getStateViewArray();
+        } else if (model instanceof ComputationGraph) {
+            ComputationGraph graph = (ComputationGraph) model;
+            modelType = TYPE_COMPUTATION_GRAPH;
+            json = graph.getConfiguration().toJson();
+            if (saveUpdater && graph.getUpdater() != null)
+                updaterState = graph.getUpdater().getStateViewArray();
+        } else
+            throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph models are supported, got "
+                            + model.getClass().getName());
+
+        INDArray params = contiguous(model.params());
+        updaterState = updaterState == null || updaterState.length() == 0 ? null : contiguous(updaterState);
+
+        String[] names = updaterState == null ? new String[] {PARAMS_BLOCK} : new String[] {PARAMS_BLOCK, UPDATER_BLOCK};
+        INDArray[] arrays = updaterState == null ? new INDArray[] {params} : new INDArray[] {params, updaterState};
+
+        // header size doesn't depend on offsets, so we can build it once to get the size, and once again with offsets
+        byte[] jsonBytes = json.getBytes(Charset.forName("UTF-8"));
+        long[] offsets = new long[arrays.length];
+        byte[] header = header(modelType, jsonBytes, names, arrays, offsets);
+        long position = header.length;
+        for (int e = 0; e < arrays.length; e++) {
+            if (arrays[e] == null)
+                continue;
+
+            position = align(position, DEFAULT_ALIGNMENT);
+            offsets[e] = position;
+            position += bytes(arrays[e]);
+        }
+        header = header(modelType, jsonBytes, names, arrays, offsets);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            writeFully(channel, ByteBuffer.wrap(header), 0);
+            for (int e = 0; e < arrays.length; e++) {
+                if (arrays[e] == null)
+                    continue;
+
+                Nd4j.getAffinityManager().ensureLocation(arrays[e], AffinityManager.Location.HOST);
+                long address = arrays[e].data().addressPointer().address();
+                long total = bytes(arrays[e]);
+                for (long pos = 0; pos < total; pos += maxChunkBytes) {
+                    long len = Math.min(maxChunkBytes, total - pos);
+                    BytePointer chunk = new BytePointer(new PagedPointer(address + pos));
+                    chunk.capacity(len).limit(len);
+                    writeFully(channel, chunk.asByteBuffer(), offsets[e] + pos);
+                }
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Write a model to a file path, using memory-mappable format
+     *
+     * @param model the model to write
+     * @param path the path to write to
+     * @param saveUpdater whether to save the updater state or not
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull Model model, @NonNull String path, boolean saveUpdater) throws IOException {
+        writeModel(model, new File(path), saveUpdater);
+    }
+
+    /**
+     * This method checks if given file was written by {@link MappedModelSerializer}
+     *
+     * @param file file to check
+     * @return true if file starts with memory-mappable container header, false otherwise
+     */
+    public static boolean isMappedModel(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAGIC.length)
+            return false;
+
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            return Arrays.equals(MAGIC, magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a MultiLayerNetwork from memory-mappable file, without updater state
+     *
+     * @param file the file to load from
+     * @return network with parameters backed by mapped file
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file) throws IOException {
+        return restoreMultiLayerNetwork(file, false, false);
+    }
+
+    /**
+     * Load a MultiLayerNetwork from memory-mappable file.<br>
+     * If readOnly is false, parameters are mapped copy-on-write: pages are shared until network modifies them
+     * (i.e. during training), and the file itself is never changed. This requires write permission for the file, so if
+     * file isn't writable parameters are copied to regular memory instead.<br>
+     * If readOnly is true, parameters are mapped read-only, which works for read-only files as well. Such network
+     * must be used for inference only: any attempt to modify parameters will crash the JVM.
+     *
+     * @param file the file to load from
+     * @param loadUpdater whether to restore updater state (if present) or not
+     * @param readOnly if true - map parameters read-only
+     * @return network with parameters backed by mapped file
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater, boolean readOnly)
+                    throws IOException {
+        return restoreMultiLayerNetwork(file, loadUpdater, readOnly, MAX_CHUNK_BYTES);
+    }
+
+    // chunk size can be overridden for tests only, see writeModel(Model, File, boolean, long)
+    static MultiLayerNetwork restoreMultiLayerNetwork(File file, boolean loadUpdater, boolean readOnly,
+                    long maxChunkBytes) throws IOException {
+        Container container = read(file, loadUpdater, readOnly, maxChunkBytes);
+        if (container.modelType != TYPE_MULTI_LAYER_NETWORK)
+            throw new IllegalStateException("Saved model appears to be a ComputationGraph - use "
+                            + "MappedModelSerializer.restoreComputationGraph instead");
+
+        MultiLayerNetwork network = new MultiLayerNetwork(MultiLayerConfiguration.fromJson(container.json));
+        network.init(container.params, false);
+
+        if (container.updaterState != null)
+            network.getUpdater().setStateViewArray(network, container.updaterState, false);
+
+        return network;
+    }
+
+    /**
+     * Load a ComputationGraph from memory-mappable file, without updater state
+     *
+     * @param file the file to load from
+     * @return graph with parameters backed by mapped file
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file) throws IOException {
+        return restoreComputationGraph(file, false, false);
+    }
+
+    /**
+     * Load a ComputationGraph from memory-mappable file.<br>
+     * See {@link #restoreMultiLayerNetwork(File, boolean, boolean)} for details on readOnly argument.
+     *
+     * @param file the file to load from
+     * @param loadUpdater whether to restore updater state (if present) or not
+     * @param readOnly if true - map parameters read-only
+     * @return graph with parameters backed by mapped file
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater, boolean readOnly)
+                    throws IOException {
+        Container container = read(file, loadUpdater, readOnly, MAX_CHUNK_BYTES);
+        if (container.modelType != TYPE_COMPUTATION_GRAPH)
+            throw new IllegalStateException("Saved model appears to be a MultiLayerNetwork - use "
+                            + "MappedModelSerializer.restoreMultiLayerNetwork instead");
+
+        ComputationGraph graph = new ComputationGraph(ComputationGraphConfiguration.fromJson(container.json));
+        graph.init(container.params, false);
+
+        if (container.updaterState != null)
+            graph.getUpdater().setStateViewArray(container.updaterState);
+
+        return graph;
+    }
+
+    protected static Container read(File file, boolean loadUpdater, boolean readOnly, long maxChunkBytes)
+                    throws IOException {
+        if (!isMappedModel(file))
+            throw new IllegalArgumentException("File [" + file.getAbsolutePath() + "] isn't memory-mappable model file");
+
+        Container container = new Container();
+        String[] names;
+        DataType[] types;
+        long[] lengths;
+        long[] offsets;
+        ByteOrder order;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            dis.skipBytes(MAGIC.length);
+            int version = dis.readInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported container version: " + version);
+
+            container.modelType = dis.readInt();
+            dis.readInt();
+            order = dis.readBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+            byte[] json = new byte[dis.readInt()];
+            dis.readFully(json);
+            container.json = new String(json, Charset.forName("UTF-8"));
+
+            int numBlocks = dis.readInt();
+            names = new String[numBlocks];
+            types = new DataType[numBlocks];
+            lengths = new long[numBlocks];
+            offsets = new long[numBlocks];
+            for (int e = 0; e < numBlocks; e++) {
+                names[e] = dis.readUTF();
+                types[e] = DataType.valueOf(dis.readUTF());
+                lengths[e] = dis.readLong();
+                offsets[e] = dis.readLong();
+            }
+        }
+
+        if (order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Model was saved with " + order + " byte order, but this platform uses "
+                            + ByteOrder.nativeOrder() + " - use ModelSerializer to transfer models between such platforms");
+
+        // copy-on-write mapping can only be created for channel opened for both reading and writing
+        boolean copy = !readOnly && !file.canWrite();
+        if (copy)
+            log.warn("File [{}] isn't writable, so parameters will be copied to memory instead of copy-on-write mapping. "
+                            + "Use readOnly mode for inference-only zero-copy loading", file.getAbsolutePath());
+
+        FileChannel.MapMode mode = readOnly || copy ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.PRIVATE;
+        Pointer nativeMapping = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.PRIVATE ? "rw" : "r");
+                        FileChannel channel = raf.getChannel()) {
+            for (int e = 0; e < names.length; e++) {
+                boolean isParams = PARAMS_BLOCK.equals(names[e]);
+                if (!isParams && !(loadUpdater && UPDATER_BLOCK.equals(names[e])))
+                    continue;
+
+                long numBytes = lengths[e] * DataTypeUtil.lengthForDtype(types[e]);
+                INDArray array;
+                if (numBytes <= maxChunkBytes) {
+                    MappedByteBuffer mapped = channel.map(mode, offsets[e], numBytes);
+                    mapped.order(order);
+
+                    array = Nd4j.create(MappedBufferUtils.wrap(mapped, types[e], lengths[e]), new long[] {1, lengths[e]});
+                    if (copy || !isParams)
+                        array = array.dup();
+                } else if (readOnly && isParams) {
+                    // FileChannel can't map more than 2GB at once, so whole file is mapped natively instead
+                    if (nativeMapping == null)
+                        nativeMapping = MappedBufferUtils.mapFileReadOnly(file);
+
+                    array = Nd4j.create(MappedBufferUtils.wrap(nativeMapping, offsets[e], types[e], lengths[e]),
+                                    new long[] {1, lengths[e]});
+                } else {
+                    if (isParams)
+                        log.warn("Block [{}] of {} bytes is too large for single mapping, so it'll be copied to memory. "
+                                        + "Use readOnly mode for zero-copy loading", names[e], numBytes);
+                    array = readChunked(channel, offsets[e], types[e], lengths[e], order, maxChunkBytes);
+                }
+
+                if (isParams)
+                    container.params = array;
+                else
+                    container.updaterState = array;
+            }
+        }
+
+        return container;
+    }
+
+    /**
+     * This method copies block from file to newly allocated array, mapping one chunk at a time
+     */
+    protected static INDArray readChunked(FileChannel channel, long offset, DataType dataType, long length,
+                    ByteOrder order, long maxChunkBytes) throws IOException {
+        int elementSize = DataTypeUtil.lengthForDtype(dataType);
+        long chunkElements = Math.max(1, maxChunkBytes / elementSize);
+
+        INDArray array = Nd4j.create(dataType, 1, length);
+        for (long pos = 0; pos < length; pos += chunkElements) {
+            long len = Math.min(chunkElements, length - pos);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset + pos * elementSize, len * elementSize);
+            mapped.order(order);
+
+            INDArray chunk = Nd4j.create(MappedBufferUtils.wrap(mapped, dataType, len), new long[] {1, len});
+            array.get(NDArrayIndex.all(), NDArrayIndex.interval(pos, pos + len)).assign(chunk);
+        }
+        return array;
+    }
+
+    protected static byte[] header(int modelType, byte[] json, String[] names, INDArray[] arrays, long[] offsets)
+                    throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.write(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(modelType);
+            dos.writeInt(DEFAULT_ALIGNMENT);
+            dos.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+            dos.writeInt(json.length);
+            dos.write(json);
+
+            int numBlocks = 0;
+            for (INDArray array : arrays)
+                if (array != null)
+                    numBlocks++;
+
+            dos.writeInt(numBlocks);
+            for (int e = 0; e < arrays.length; e++) {
+                if (arrays[e] == null)
+                    continue;
+
+                dos.writeUTF(names[e]);
+                dos.writeUTF(arrays[e].dataType().name());
+                dos.writeLong(arrays[e].length());
+                dos.writeLong(offsets[e]);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * This method returns array that occupies its whole buffer, starting at offset 0
+     */
+    protected static INDArray contiguous(INDArray array) {
+        if (array == null)
+            return null;
+
+        if (array.isView() || array.data().offset() != 0 || array.data().length() != array.length())
+            array = array.dup('c');
+
+        return array;
+    }
+
+    protected static long bytes(INDArray array) {
+        return array.length() * DataTypeUtil.lengthForDtype(array.dataType());
+    }
+
+    protected static long align(long position, int alignment) {
+        long remainder = position % alignment;
+        return remainder == 0 ? position : position + alignment - remainder;
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    protected static class Container {
+        protected int modelType;
+        protected String json;
+        protected INDArray params;
+        protected INDArray updaterState;
+    }
+}
@@ -215,6 +215,9 @@ public class ModelSerializer {
      */
     public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater)
             throws IOException {
+        if (MappedModelSerializer.isMappedModel(file))
+            return MappedModelSerializer.restoreMultiLayerNetwork(file, loadUpdater, false);
+
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -541,6 +544,9 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        if (MappedModelSerializer.isMappedModel(file))
+            return MappedModelSerializer.restoreComputationGraph(file, loadUpdater, false);
+
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
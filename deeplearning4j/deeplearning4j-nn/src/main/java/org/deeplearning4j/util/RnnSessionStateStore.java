@@ -0,0 +1,628 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.layers.RecurrentLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session-keyed storage of RNN layer states, for serving many concurrent streams (sessions) with a single network.<br>
+ * {@link MultiLayerNetwork#rnnTimeStep(INDArray)} keeps one state per network instance. Instead of one network copy
+ * per session, or swapping state in and out for every call, {@link #step(MultiLayerNetwork, String[], INDArray)}
+ * gathers the states of all sessions in the minibatch, runs a single batched rnnTimeStep, and scatters the new states
+ * back to the store. Each example (row) of the input belongs to the session with the same index.<br>
+ * <br>
+ * States are kept off-heap in one detached slab array per (layer, state key), with one row per session - so there are
+ * no per-session INDArrays, and the on-heap cost per session is a single map entry. Slabs grow on demand, up to
+ * maxSessions rows. State can optionally be stored in a narrower data type (for example HALF) than the network uses.<br>
+ * <br>
+ * Sessions are created on first use, with the same (zero) initial state as {@link MultiLayerNetwork#rnnClearPreviousState()}.
+ * When maxSessions is reached, the least recently used session is evicted. Sessions not used for longer than the
+ * TTL (if set) are evicted too.<br>
+ * <br>
+ * This class is thread safe, and one store may be shared by multiple copies of the same network (for example,
+ * ParallelInference workers), but each network instance must only be used by one thread at a time. A session can only
+ * be in one step at a time: concurrent steps for the same session are executed one after another, in no particular
+ * order. If the same session appears more than once in one minibatch, its examples are processed in order, as
+ * consecutive time steps.
+ */
+@Slf4j
+public class RnnSessionStateStore {
+    public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    protected final int maxSessions;
+    protected final int initialCapacity;
+    protected final long ttlNanos;
+    protected final DataType stateDataType;
+
+    // ordered by last step: eldest entry is the least recently used session. Insertion-ordered rather than
+    // access-ordered, so that lookups outside of acquire() (getSessionState, release, etc) don't reorder it
+    protected final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>();
+    protected List<StateEntry> entries;
+    protected int capacity;
+    protected int nextSlot;
+    protected int[] freeSlots = new int[16];
+    protected int numFreeSlots;
+    protected long numEvicted;
+
+    protected RnnSessionStateStore(int maxSessions, int initialCapacity, long ttlNanos, DataType stateDataType) {
+        this.maxSessions = maxSessions;
+        this.initialCapacity = Math.min(initialCapacity, maxSessions);
+        this.ttlNanos = ttlNanos;
+        this.stateDataType = stateDataType;
+    }
+
+    /**
+     * Run a single batched rnnTimeStep for the specified sessions
+     *
+     * @param network    Network to use. States of its RNN layers are cleared after the step
+     * @param sessionIds Session for each example in the input
+     * @param input      Input, with shape [numSessions, inputSize] or [numSessions, inputSize, timeSeriesLength]
+     * @return Network output, as per {@link MultiLayerNetwork#rnnTimeStep(INDArray)}. Row i belongs to sessionIds[i]
+     */
+    public INDArray step(@NonNull MultiLayerNetwork network, @NonNull String[] sessionIds, @NonNull INDArray input) {
+        return step((Model) network, sessionIds, new INDArray[]{input})[0];
+    }
+
+    /**
+     * Run a single batched rnnTimeStep for the specified sessions
+     *
+     * @param graph      Network to use. States of its RNN layers are cleared after the step
+     * @param sessionIds Session for each example in the inputs
+     * @param inputs     Network inputs. Example i of each input belongs to sessionIds[i]
+     * @return Network outputs, as per {@link ComputationGraph#rnnTimeStep(INDArray...)}
+     */
+    public INDArray[] step(@NonNull ComputationGraph graph, @NonNull String[] sessionIds, @NonNull INDArray... inputs) {
+        return step((Model) graph, sessionIds, inputs);
+    }
+
+    /**
+     * Run a single batched rnnTimeStep for the specified sessions
+     *
+     * @param model      MultiLayerNetwork or ComputationGraph to use
+     * @param sessionIds Session for each example in the inputs
+     * @param inputs     Network inputs. Example i of each input belongs to sessionIds[i]
+     * @return Network outputs
+     */
+    public INDArray[] step(@NonNull Model model, @NonNull String[] sessionIds, @NonNull INDArray[] inputs) {
+        if (!(model instanceof MultiLayerNetwork) && !(model instanceof ComputationGraph))
+            throw new UnsupportedOperationException("Only MultiLayerNetwork and ComputationGraph are supported: got " + model.getClass().getName());
+        if (model instanceof MultiLayerNetwork && inputs.length != 1)
+            throw new IllegalArgumentException("MultiLayerNetwork can't have multiple inputs: got " + inputs.length);
+        for (INDArray in : inputs) {
+            if (in.size(0) != sessionIds.length)
+                throw new IllegalArgumentException("Number of session ids (" + sessionIds.length
+                        + ") does not match input minibatch size: input shape " + Arrays.toString(in.shape()));
+        }
+
+        //Same session more than once in the minibatch: process occurrences as consecutive steps
+        int[] occurrence = new int[sessionIds.length];
+        Map<String, Integer> counts = new HashMap<>();
+        int rounds = 1;
+        for (int i = 0; i < sessionIds.length; i++) {
+            Integer c = counts.get(sessionIds[i]);
+            occurrence[i] = (c == null ? 0 : c);
+            counts.put(sessionIds[i], occurrence[i] + 1);
+            rounds = Math.max(rounds, occurrence[i] + 1);
+        }
+        if (rounds == 1)
+            return stepUnique(model, sessionIds, inputs);
+
+        INDArray[][] outRows = null;
+        for (int r = 0; r < rounds; r++) {
+            List<Integer> idx = new ArrayList<>();
+            for (int i = 0; i < occurrence.length; i++) {
+                if (occurrence[i] == r)
+                    idx.add(i);
+            }
+            int[] rows = ArrayUtil.toArray(idx);
+            String[] ids = new String[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                ids[i] = sessionIds[rows[i]];
+            INDArray[] in = new INDArray[inputs.length];
+            for (int i = 0; i < inputs.length; i++)
+                in[i] = selectRows(inputs[i], rows);
+
+            INDArray[] out = stepUnique(model, ids, in);
+            if (outRows == null)
+                outRows = new INDArray[out.length][sessionIds.length];
+            for (int o = 0; o < out.length; o++) {
+                for (int i = 0; i < rows.length; i++)
+                    outRows[o][rows[i]] = out[o].get(rowIndex(out[o], i));
+            }
+        }
+
+        INDArray[] out = new INDArray[outRows.length];
+        for (int o = 0; o < out.length; o++)
+            out[o] = Nd4j.concat(0, outRows[o]);
+        return out;
+    }
+
+    protected INDArray[] stepUnique(Model model, String[] sessionIds, INDArray[] inputs) {
+        int[] slots = acquire(sessionIds);
+        try {
+            Map<String, Map<String, INDArray>> states = gather(slots);
+
+            clearState(model);
+            if (states != null)
+                setState(model, states);
+
+            INDArray[] out;
+            if (model instanceof MultiLayerNetwork) {
+                out = new INDArray[]{((MultiLayerNetwork) model).rnnTimeStep(inputs[0])};
+            } else {
+                out = ((ComputationGraph) model).rnnTimeStep(inputs);
+            }
+
+            scatter(slots, getState(model));
+            clearState(model);
+            return out;
+        } finally {
+            release(sessionIds);
+        }
+    }
+
+    /**
+     * Remove the specified session (and its state) from the store. If the session is currently being stepped,
+     * it'll be removed once that step completes
+     *
+     * @param sessionId Session to remove
+     * @return True if the session existed
+     */
+    public synchronized boolean removeSession(@NonNull String sessionId) {
+        Session s = sessions.get(sessionId);
+        if (s == null)
+            return false;
+        if (s.busy) {
+            s.removed = true;
+        } else {
+            sessions.remove(sessionId);
+            freeSlot(s.slot);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the store contains the specified session
+     */
+    public synchronized boolean hasSession(@NonNull String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * Get a copy of the current state of the specified session, in the same format as
+     * {@link ComputationGraph#rnnGetPreviousStates()} (for MultiLayerNetwork, layer keys are layer indices).<br>
+     * Unlike {@link #step(Model, String[], INDArray[])}, this does not update the last access time of the session
+     *
+     * @param sessionId Session to get the state for
+     * @return State of the session, or null if the session does not exist (or no step has been done yet)
+     */
+    public synchronized Map<String, Map<String, INDArray>> getSessionState(@NonNull String sessionId) {
+        Session s = sessions.get(sessionId);
+        if (s == null || entries == null)
+            return null;
+        return gather(new int[]{s.slot});
+    }
+
+    /**
+     * @return Number of sessions in the store
+     */
+    public synchronized int numSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Total number of sessions evicted due to TTL or maxSessions limit
+     */
+    public synchronized long getNumEvicted() {
+        return numEvicted;
+    }
+
+    /**
+     * @return Number of bytes of state stored for each session, or 0 if no step has been done yet
+     */
+    public synchronized long getStateBytesPerSession() {
+        if (entries == null)
+            return 0;
+        long bytes = 0;
+        for (StateEntry e : entries)
+            bytes += e.slab.size(1) * Nd4j.sizeOfDataType(e.slab.dataType());
+        return bytes;
+    }
+
+    /**
+     * Evict all sessions that have not been used for longer than the TTL. This is also done during each step, so
+     * usually there is no need to call this method directly
+     */
+    public synchronized void evictExpired() {
+        if (ttlNanos <= 0)
+            return;
+        long threshold = System.nanoTime() - ttlNanos;
+        Iterator<Map.Entry<String, Session>> iter = sessions.entrySet().iterator();
+        while (iter.hasNext()) {
+            Session s = iter.next().getValue();
+            if (s.lastAccess > threshold)
+                break;
+            if (s.busy)
+                continue;
+            iter.remove();
+            freeSlot(s.slot);
+            numEvicted++;
+        }
+    }
+
+    /**
+     * Remove all sessions, and release state storage. Must not be called while steps are in progress
+     */
+    public synchronized void clear() {
+        sessions.clear();
+        entries = null;
+        capacity = 0;
+        nextSlot = 0;
+        numFreeSlots = 0;
+    }
+
+    protected synchronized int[] acquire(String[] sessionIds) {
+        //Wait until none of the sessions are in use by another step. All sessions are acquired at once, so
+        // steps waiting for each other can't deadlock
+        boolean wait = true;
+        while (wait) {
+            wait = false;
+            for (String id : sessionIds) {
+                Session s = sessions.get(id);
+                if (s != null && s.busy) {
+                    wait = true;
+                    break;
+                }
+            }
+            if (wait) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        evictExpired();
+
+        long now = System.nanoTime();
+        int[] slots = new int[sessionIds.length];
+        for (int i = 0; i < sessionIds.length; i++) {
+            Session s = sessions.remove(sessionIds[i]);
+            if (s == null) {
+                if (sessions.size() >= maxSessions)
+                    evictLeastRecentlyUsed();
+                s = new Session(allocateSlot());
+            }
+            //(Re)insert, to move the session to the most recently used end
+            sessions.put(sessionIds[i], s);
+            s.busy = true;
+            s.lastAccess = now;
+            slots[i] = s.slot;
+        }
+        return slots;
+    }
+
+    protected synchronized void release(String[] sessionIds) {
+        for (String id : sessionIds) {
+            Session s = sessions.get(id);
+            if (s == null)
+                continue;
+            s.busy = false;
+            if (s.removed) {
+                sessions.remove(id);
+                freeSlot(s.slot);
+            }
+        }
+        this.notifyAll();
+    }
+
+    protected void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<String, Session>> iter = sessions.entrySet().iterator();
+        while (iter.hasNext()) {
+            Session s = iter.next().getValue();
+            if (!s.busy) {
+                iter.remove();
+                freeSlot(s.slot);
+                numEvicted++;
+                return;
+            }
+        }
+        throw new IllegalStateException("Unable to create new session: all " + maxSessions + " sessions are in use");
+    }
+
+    protected int allocateSlot() {
+        if (numFreeSlots > 0)
+            return freeSlots[--numFreeSlots];
+        if (nextSlot >= capacity)
+            grow();
+        return nextSlot++;
+    }
+
+    protected void freeSlot(int slot) {
+        //Zero state, so that the slot can be reused for a new session as-is
+        if (entries != null) {
+            for (StateEntry e : entries)
+                e.slab.get(rowIndex(e.slab, slot)).assign(0);
+        }
+        if (numFreeSlots == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    protected void grow() {
+        int newCapacity = Math.min(maxSessions, Math.max(initialCapacity, capacity * 2));
+        if (newCapacity <= capacity)
+            throw new IllegalStateException("Unable to allocate state for more than " + maxSessions + " sessions");
+        if (entries != null) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (StateEntry e : entries) {
+                    INDArray slab = Nd4j.create(e.slab.dataType(), newCapacity, e.slab.size(1));
+                    if (capacity > 0)
+                        slab.get(NDArrayIndex.interval(0, capacity), NDArrayIndex.all()).assign(e.slab);
+                    e.slab = slab;
+                }
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    protected synchronized Map<String, Map<String, INDArray>> gather(int[] slots) {
+        if (entries == null)
+            return null;
+
+        Map<String, Map<String, INDArray>> out = new LinkedHashMap<>();
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            for (StateEntry e : entries) {
+                INDArray rows = Nd4j.pullRows(e.slab, 1, slots);
+                if (rows.dataType() != e.dataType)
+                    rows = rows.castTo(e.dataType);
+                if (e.shape.length > 1)
+                    rows = rows.reshape('c', ArrayUtil.combine(new long[]{slots.length}, e.shape));
+
+                Map<String, INDArray> m = out.get(e.layer);
+                if (m == null) {
+                    m = new HashMap<>();
+                    out.put(e.layer, m);
+                }
+                m.put(e.key, rows);
+            }
+        }
+        return out;
+    }
+
+    protected synchronized void scatter(int[] slots, Map<String, Map<String, INDArray>> states) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (entries == null)
+                entries = createEntries(states);
+
+            int count = 0;
+            for (Map<String, INDArray> m : states.values())
+                count += m.size();
+            if (count != entries.size())
+                throw new IllegalStateException("Network RNN state structure does not match the stored state: "
+                        + "expected " + entries.size() + " state arrays, got " + count);
+
+            for (StateEntry e : entries) {
+                INDArray arr = (states.get(e.layer) == null ? null : states.get(e.layer).get(e.key));
+                if (arr == null || arr.length() != slots.length * e.slab.size(1))
+                    throw new IllegalStateException("Network RNN state for layer \"" + e.layer + "\", key \"" + e.key
+                            + "\" does not match stored state: expected per-example shape " + Arrays.toString(e.shape)
+                            + ", got " + (arr == null ? "null" : Arrays.toString(arr.shape())));
+
+                INDArray rows = arr.reshape('c', slots.length, e.slab.size(1));
+                if (rows.dataType() != e.slab.dataType())
+                    rows = rows.castTo(e.slab.dataType());
+                for (int i = 0; i < slots.length; i++)
+                    e.slab.get(rowIndex(e.slab, slots[i])).assign(rows.get(rowIndex(rows, i)));
+            }
+        }
+    }
+
+    protected List<StateEntry> createEntries(Map<String, Map<String, INDArray>> states) {
+        List<StateEntry> list = new ArrayList<>();
+        for (String layer : new TreeSet<>(states.keySet())) {
+            Map<String, INDArray> m = states.get(layer);
+            for (String key : new TreeSet<>(m.keySet())) {
+                INDArray arr = m.get(key);
+                long[] shape = Arrays.copyOfRange(arr.shape(), 1, arr.rank());
+                DataType slabType = (stateDataType == null ? arr.dataType() : stateDataType);
+                INDArray slab = Nd4j.create(slabType, capacity, ArrayUtil.prodLong(shape));
+                list.add(new StateEntry(layer, key, shape, arr.dataType(), slab));
+            }
+        }
+        if (list.isEmpty())
+            throw new IllegalStateException("Network has no RNN layers with state - unable to store session state");
+        return list;
+    }
+
+    protected static void clearState(Model model) {
+        if (model instanceof MultiLayerNetwork)
+            ((MultiLayerNetwork) model).rnnClearPreviousState();
+        else
+            ((ComputationGraph) model).rnnClearPreviousState();
+    }
+
+    protected static Map<String, Map<String, INDArray>> getState(Model model) {
+        Map<String, Map<String, INDArray>> out;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            out = new HashMap<>();
+            Layer[] layers = net.getLayers();
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] instanceof RecurrentLayer)
+                    out.put(String.valueOf(i), net.rnnGetPreviousState(i));
+            }
+        } else {
+            out = ((ComputationGraph) model).rnnGetPreviousStates();
+        }
+
+        //Layers without any state (none stored by the layer) are skipped
+        Iterator<Map.Entry<String, Map<String, INDArray>>> iter = out.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map<String, INDArray> m = iter.next().getValue();
+            if (m == null || m.isEmpty())
+                iter.remove();
+        }
+        return out;
+    }
+
+    protected static void setState(Model model, Map<String, Map<String, INDArray>> states) {
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            for (Map.Entry<String, Map<String, INDArray>> e : states.entrySet())
+                net.rnnSetPreviousState(Integer.parseInt(e.getKey()), e.getValue());
+        } else {
+            ((ComputationGraph) model).rnnSetPreviousStates(states);
+        }
+    }
+
+    protected static INDArray selectRows(INDArray arr, int[] rows) {
+        INDArray[] list = new INDArray[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            INDArrayIndex[] idx = new INDArrayIndex[arr.rank()];
+            idx[0] = NDArrayIndex.interval(rows[i], rows[i] + 1);
+            for (int j = 1; j < idx.length; j++)
+                idx[j] = NDArrayIndex.all();
+            list[i] = arr.get(idx);
+        }
+        return Nd4j.concat(0, list);
+    }
+
+    protected static INDArrayIndex[] rowIndex(INDArray arr, int row) {
+        INDArrayIndex[] idx = new INDArrayIndex[arr.rank()];
+        idx[0] = NDArrayIndex.interval(row, row + 1);
+        for (int j = 1; j < idx.length; j++)
+            idx[j] = NDArrayIndex.all();
+        return idx;
+    }
+
+    protected static class Session {
+        protected final int slot;
+        protected long lastAccess;
+        protected boolean busy;
+        protected boolean removed;
+
+        protected Session(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    protected static class StateEntry {
+        protected final String layer;
+        protected final String key;
+        protected final long[] shape;
+        protected final DataType dataType;
+        protected INDArray slab;
+
+        protected StateEntry(String layer, String key, long[] shape, DataType dataType, INDArray slab) {
+            this.layer = layer;
+            this.key = key;
+            this.shape = shape;
+            this.dataType = dataType;
+            this.slab = slab;
+        }
+    }
+
+    public static class Builder {
+        private int maxSessions = Integer.MAX_VALUE;
+        private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+        private long ttlNanos = 0L;
+        private DataType stateDataType;
+
+        /**
+         * Maximum number of sessions to keep. When this limit is reached, least recently used session is evicted
+         * to make room for a new one.<br>
+         * Default: no limit
+         *
+         * @param maxSessions Maximum number of sessions
+         */
+        public Builder maxSessions(int maxSessions) {
+            if (maxSessions < 1)
+                throw new IllegalStateException("Max sessions should be positive value");
+
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Number of sessions to allocate state storage for initially. Storage is doubled when more is needed.<br>
+         * Default: 1024
+         *
+         * @param initialCapacity Initial capacity, in sessions
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            if (initialCapacity < 1)
+                throw new IllegalStateException("Initial capacity should be positive value");
+
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Sessions that were not used for longer than this time are evicted.<br>
+         * Default: sessions never expire
+         *
+         * @param ttl      Time to live
+         * @param timeUnit Time unit for ttl
+         */
+        public Builder ttl(long ttl, @NonNull TimeUnit timeUnit) {
+            if (ttl < 1)
+                throw new IllegalStateException("TTL should be positive value");
+
+            this.ttlNanos = timeUnit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Data type to store state in. States are cast back to the network data type for each step.
+         * For example, HALF can be used to halve the memory required for a large number of sessions, at the cost of
+         * precision.<br>
+         * Default: same data type as network state
+         *
+         * @param dataType Data type to store state in
+         */
+        public Builder stateDataType(@NonNull DataType dataType) {
+            if (!dataType.isFPType())
+                throw new IllegalStateException("State data type should be floating point type: got " + dataType);
+
+            this.stateDataType = dataType;
+            return this;
+        }
+
+        public RnnSessionStateStore build() {
+            return new RnnSessionStateStore(maxSessions, initialCapacity, ttlNanos, stateDataType);
+        }
+    }
+}
@@ -18,11 +18,24 @@ package org.deeplearning4j.optimize.solvers.accumulation;
 
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithmReducer;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
+import org.deeplearning4j.optimize.stepfunctions.NegativeGradientStepFunction;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -88,6 +101,211 @@ public class EncodedGradientsAccumulatorTest {
     }
 
 
+    /**
+     * Here we ensure that hierarchical sharing delivers the same updates as flat sharing
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHierarchicalSharing1() throws Exception {
+        int numWorkers = 4;
+
+        List<EncodedGradientsAccumulator.Timings> timings = new ArrayList<>();
+        List<INDArray> flat = runRound(numWorkers, 1, 50, timings);
+        List<INDArray> grouped = runRound(numWorkers, 2, 50, timings);
+
+        for (int i = 0; i < numWorkers; i++) {
+            // all workers should stay in sync
+            assertEquals(flat.get(0), flat.get(i));
+            assertEquals(grouped.get(0), grouped.get(i));
+
+            // and hierarchical reduction shouldn't change what gets applied
+            assertEquals(flat.get(i), grouped.get(i));
+        }
+
+        // -1e-3 for each of 4 workers in shared part, -1e-3 for single worker in private part
+        assertEquals(-4e-3, flat.get(0).getDouble(0), 1e-6);
+        assertEquals(-1e-3, flat.get(0).getDouble(100), 1e-6);
+        assertEquals(-1e-3, flat.get(0).getDouble(299), 1e-6);
+        assertEquals(0.0, flat.get(0).getDouble(300), 1e-6);
+    }
+
+    /**
+     * Here we ensure that overlapping updates are delivered with single message per group
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHierarchicalSharing2() throws Exception {
+        int numWorkers = 8;
+        int groupSize = 4;
+
+        List<EncodedGradientsAccumulator.Timings> flatTimings = new ArrayList<>();
+        List<INDArray> flat = runRound(numWorkers, 1, 0, flatTimings);
+
+        List<EncodedGradientsAccumulator.Timings> groupTimings = new ArrayList<>();
+        List<INDArray> grouped = runRound(numWorkers, groupSize, 0, groupTimings);
+
+        for (int i = 0; i < numWorkers; i++) {
+            assertEquals(flat.get(i), grouped.get(i));
+
+            assertEquals(numWorkers, flatTimings.get(i).getUpdatesApplied());
+            assertEquals(numWorkers / groupSize, groupTimings.get(i).getUpdatesApplied());
+        }
+
+        assertEquals(-8e-3, grouped.get(0).getDouble(0), 1e-6);
+    }
+
+    /**
+     * Here we ensure that group residual is carried over between iterations, and groups are re-assigned every iteration
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHierarchicalSharingMultipleRounds() throws Exception {
+        // powers of two, so all sums below are exact
+        double unit = 1.0 / 1024;
+        double[] thresholds = {unit, 1.5 * unit};
+
+        // flat: each round every worker delivers its own threshold, 2.5 units per round
+        List<INDArray> flat = runRounds(1, thresholds, 2, null);
+        assertEquals(-5 * unit, flat.get(0).getDouble(0), 1e-9);
+
+        // grouped: 2.5 units in group residual, 2 are delivered in first round, and 0.5 stays in group residual.
+        // second round: 0.5 + 2.5 units are delivered as 2 + 1
+        List<INDArray> residuals = new ArrayList<>();
+        List<INDArray> grouped = runRounds(2, thresholds, 2, residuals);
+        assertEquals(0.5 * unit, residuals.get(0).getDouble(0), 1e-9);
+        assertEquals(0.0, residuals.get(1).getDouble(0), 1e-9);
+
+        for (int i = 0; i < thresholds.length; i++) {
+            assertEquals(flat.get(i), grouped.get(i));
+            assertEquals(-5 * unit, grouped.get(i).getDouble(0), 1e-9);
+            assertEquals(0.0, grouped.get(i).getDouble(100), 1e-9);
+        }
+    }
+
+    /**
+     * Runs a number of iterations on persistent worker threads, worker i uses thresholds[i] and gradients equal to it
+     *
+     * @param residuals if not null, group residual after each round is added here
+     */
+    protected List<INDArray> runRounds(int groupSize, final double[] thresholds, int numRounds,
+                    List<INDArray> residuals) throws Exception {
+        final int numWorkers = thresholds.length;
+        final int numParams = 100000;
+
+        EncodingHandler handler = new EncodingHandler(new PerWorkerThresholdAlgorithm(), null, null, false);
+        final EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(numWorkers)
+                        .messageHandler(handler).memoryParameters(20 * 1024 * 1024L, numWorkers).groupSize(groupSize)
+                        .build();
+
+        final CyclicBarrier roundDone = new CyclicBarrier(numWorkers + 1);
+        List<Callable<INDArray>> workers = new ArrayList<>();
+        for (int w = 0; w < numWorkers; w++) {
+            final double threshold = thresholds[w];
+            final int rounds = numRounds;
+            workers.add(new Callable<INDArray>() {
+                @Override
+                public INDArray call() throws Exception {
+                    PerWorkerThresholdAlgorithm.threshold.set(threshold);
+                    INDArray params = Nd4j.create(numParams);
+                    INDArray updates = Nd4j.create(numParams);
+
+                    for (int r = 0; r < rounds; r++) {
+                        accumulator.touch();
+                        accumulator.storeUpdate(getGradients(numParams, 100, threshold), r, 0);
+                        accumulator.applyUpdate(new NegativeGradientStepFunction(), params, updates, true);
+                        roundDone.await();
+                    }
+                    return params;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<Future<INDArray>> futures = new ArrayList<>();
+            for (Callable<INDArray> worker : workers) {
+                // registration of the first round has to happen before workers are started
+                if (futures.isEmpty())
+                    accumulator.registerConsumers(numWorkers);
+                futures.add(executor.submit(worker));
+            }
+
+            for (int r = 0; r < numRounds; r++) {
+                roundDone.await();
+                if (groupSize > 1) {
+                    assertEquals(numWorkers, accumulator.groupArrivals.get());
+                    if (residuals != null)
+                        residuals.add(accumulator.groups.get(0).residual.dup());
+                }
+
+                // every round starts with fresh group assignment
+                if (r < numRounds - 1) {
+                    accumulator.registerConsumers(numWorkers);
+                    assertEquals(0, accumulator.groupArrivals.get());
+                }
+            }
+
+            List<INDArray> result = new ArrayList<>();
+            for (Future<INDArray> future : futures)
+                result.add(future.get());
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected List<INDArray> runRound(int numWorkers, int groupSize, int numPrivate,
+                    final List<EncodedGradientsAccumulator.Timings> timings) throws Exception {
+        final int numParams = 100000;
+
+        EncodingHandler handler = new EncodingHandler(new FixedThresholdAlgorithm(1e-3), null, null, false);
+        final EncodedGradientsAccumulator accumulator = new EncodedGradientsAccumulator.Builder(numWorkers)
+                        .messageHandler(handler).memoryParameters(20 * 1024 * 1024L, numWorkers).groupSize(groupSize)
+                        .build();
+
+        accumulator.registerConsumers(numWorkers);
+
+        List<Callable<INDArray>> workers = new ArrayList<>();
+        for (int w = 0; w < numWorkers; w++) {
+            // first 100 elements are shared by all workers, and then each worker has few elements of its own
+            final INDArray gradients = getGradients(numParams, 100, 1.5e-3);
+            if (numPrivate > 0)
+                gradients.get(NDArrayIndex.interval(100 + w * numPrivate, 100 + (w + 1) * numPrivate)).assign(1.5e-3);
+
+            workers.add(new Callable<INDArray>() {
+                @Override
+                public INDArray call() throws Exception {
+                    INDArray params = Nd4j.create(numParams);
+                    INDArray updates = Nd4j.create(numParams);
+
+                    accumulator.touch();
+                    accumulator.storeUpdate(gradients, 0, 0);
+                    accumulator.applyUpdate(new NegativeGradientStepFunction(), params, updates, true);
+
+                    synchronized (timings) {
+                        timings.add(accumulator.getLastTimings());
+                    }
+                    return params;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<INDArray> result = new ArrayList<>();
+            for (Future<INDArray> future : executor.invokeAll(workers))
+                result.add(future.get());
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     protected INDArray getGradients(int length, int numPositives, double value) {
         INDArray grad = Nd4j.create(length);
 
@@ -97,4 +315,27 @@ public class EncodedGradientsAccumulatorTest {
 
         return grad;
     }
+
+    /**
+     * Threshold algorithm returning a value set by the worker thread itself
+     */
+    protected static class PerWorkerThresholdAlgorithm implements ThresholdAlgorithm {
+        protected static final ThreadLocal<Double> threshold = new ThreadLocal<>();
+
+        @Override
+        public double calculateThreshold(int iteration, int epoch, Double lastThreshold, Boolean lastWasDense,
+                        Double lastSparsityRatio, INDArray updatesPlusResidual) {
+            return threshold.get();
+        }
+
+        @Override
+        public ThresholdAlgorithmReducer newReducer() {
+            return null;
+        }
+
+        @Override
+        public ThresholdAlgorithm clone() {
+            return new PerWorkerThresholdAlgorithm();
+        }
+    }
 }
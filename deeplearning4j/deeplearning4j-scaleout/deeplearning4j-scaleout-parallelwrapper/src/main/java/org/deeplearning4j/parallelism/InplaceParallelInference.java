@@ -25,6 +25,7 @@ import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.util.RnnSessionStateStore;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
@@ -95,6 +96,14 @@ public class InplaceParallelInference extends ParallelInference {
         return selector.output(input, inputMasks);
     }
 
+    @Override
+    public INDArray[] rnnTimeStep(@NonNull String[] sessionIds, @NonNull INDArray... input) {
+        if (sessionStore == null)
+            throw new IllegalStateException("RnnSessionStateStore wasn't set: use ParallelInference.Builder.rnnSessionStore()");
+
+        return selector.getModelForThisThread().rnnTimeStep(sessionStore, sessionIds, input);
+    }
+
 
     protected static class ModelSelector {
         // this map stores collection of shared
@@ -270,6 +279,26 @@ public class InplaceParallelInference extends ParallelInference {
             }
         }
 
+        protected INDArray[] rnnTimeStep(RnnSessionStateStore sessionStore, String[] sessionIds, INDArray[] input) {
+            try {
+                modelLock.readLock().lock();
+
+                val model = acquireModel();
+                try {
+                    // RNN state lives in the model instance, so in ROUND_ROBIN mode replica must not be shared by concurrent steps
+                    synchronized (model) {
+                        return sessionStore.step(model, sessionIds, input);
+                    }
+                } finally {
+                    releaseModel(model);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                modelLock.readLock().unlock();
+            }
+        }
+
         protected void updateModel(@NonNull Model model) {
             try {
                 modelLock.writeLock().lock();
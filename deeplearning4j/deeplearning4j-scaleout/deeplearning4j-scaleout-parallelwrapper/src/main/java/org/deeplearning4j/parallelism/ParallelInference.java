@@ -27,9 +27,11 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.adaptive.AdaptiveBatchScheduler;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.util.RnnSessionStateStore;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
@@ -40,9 +42,11 @@ import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -60,6 +64,8 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long targetLatencyNanos = 0L;
+    protected RnnSessionStateStore sessionStore;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -68,6 +74,7 @@ public class ParallelInference {
 
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
+    private AdaptiveBatchScheduler batchScheduler;
 
 
 
@@ -119,6 +126,11 @@ public class ParallelInference {
     protected void init() {
         observables = new LinkedBlockingQueue<>(queueLimit);
 
+        if (inferenceMode == InferenceMode.BATCHED && targetLatencyNanos > 0) {
+            // batchLimit becomes upper bound for adaptive batch size
+            batchScheduler = new AdaptiveBatchScheduler(workers, targetLatencyNanos, TimeUnit.NANOSECONDS, 1, batchLimit);
+        }
+
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
         AtomicBoolean assignedRoot = new AtomicBoolean(false);
@@ -129,7 +141,7 @@ public class ParallelInference {
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i, model, observables, cRoot);
+            zoo[i] = new InferenceWorker(i, model, observables, cRoot, batchScheduler);
 
             Nd4j.getAffinityManager().attachThreadToDevice(zoo[i], cDevice);
             zoo[i].setDaemon(true);
@@ -139,10 +151,21 @@ public class ParallelInference {
 
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(nanos, batchLimit, observables, batchScheduler);
         }
     }
 
+    /**
+     * This method returns adaptive batch scheduler used by this instance, with batch size and queue wait histograms.
+     *
+     * PLEASE NOTE: scheduler is available only in BATCHED mode with latency target set, null is returned otherwise
+     *
+     * @return
+     */
+    public AdaptiveBatchScheduler getBatchScheduler() {
+        return batchScheduler;
+    }
+
     protected long getWorkerCounter(int workerIdx) {
         return zoo[workerIdx].getCounterValue();
     }
@@ -260,6 +283,65 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    /**
+     * Stateful RNN step for single session: see {@link #rnnTimeStep(String[], INDArray...)}
+     *
+     * @param sessionId Session id
+     * @param input     Input for the session, with shape [1, inputSize] or [1, inputSize, timeSeriesLength]
+     * @return Output for the session
+     */
+    public INDArray rnnTimeStep(@NonNull String sessionId, @NonNull INDArray input) {
+        INDArray[] out = rnnTimeStep(new String[]{sessionId}, input);
+        if (out.length != 1)
+            throw new IllegalArgumentException("Network has multiple (" + out.length + ") output arrays, but only a" +
+                    " single output can be returned using this method. Use for rnnTimeStep(String[], INDArray...)" +
+                    " for multi-output nets");
+        return out[0];
+    }
+
+    /**
+     * Stateful RNN step: RNN layer states for each session are kept in the {@link RnnSessionStateStore} set via
+     * {@link Builder#rnnSessionStore(RnnSessionStateStore)}.<br>
+     * In BATCHED mode, steps for different sessions (and requests) are batched together, as for
+     * {@link #output(INDArray[], INDArray[])}: each batch is executed as a single rnnTimeStep call
+     *
+     * @param sessionIds Session id for each example in the input
+     * @param input      Input to the network. Example i belongs to sessionIds[i]
+     * @return Output from the network
+     */
+    public INDArray[] rnnTimeStep(@NonNull String[] sessionIds, @NonNull INDArray... input) {
+        if (sessionStore == null)
+            throw new IllegalStateException("RnnSessionStateStore wasn't set: use ParallelInference.Builder.rnnSessionStore()");
+
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        InferenceObservable observable;
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            BatchedInferenceObservable single = new BatchedInferenceObservable(true);
+            single.addSessionInput(input, sessionIds);
+            single.addObserver(observer);
+            observable = single;
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else {
+            observable = provider.setSessionInput(observer, input, sessionIds);
+        }
+
+        try {
+            observer.waitTillDone();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return observable.getOutput();
+    }
+
 
     public static class Builder {
         private Model model;
@@ -268,6 +350,8 @@ public class ParallelInference {
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+        private long targetLatencyNanos = 0L;
+        private RnnSessionStateStore sessionStore;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -353,6 +437,40 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method enables adaptive batching: batch size will be picked at runtime, with respect to measured
+         * model latency and queue wait time, so p99 latency of individual requests stays within given target.
+         * Value set via batchLimit() will be used as upper bound for batch size.
+         *
+         * PLEASE NOTE: This value has effect only in BATCHED inference mode
+         *
+         * @param latency
+         * @param timeUnit
+         * @return
+         */
+        public Builder latencyTarget(long latency, @NonNull TimeUnit timeUnit) {
+            if (latency < 1)
+                throw new IllegalStateException("Latency target should be positive value");
+
+            this.targetLatencyNanos = timeUnit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * This method sets session state store, used for stateful RNN inference via
+         * {@link ParallelInference#rnnTimeStep(String[], INDArray...)}. The store is shared by all workers.
+         *
+         * PLEASE NOTE: stored states are only valid for models with the same architecture, so they should be
+         * cleared if updateModel() is used to switch to different architecture
+         *
+         * @param sessionStore
+         * @return
+         */
+        public Builder rnnSessionStore(@NonNull RnnSessionStateStore sessionStore) {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
@@ -365,6 +483,7 @@ public class ParallelInference {
                 inf.model = this.model;
                 inf.workers = this.workers;
                 inf.loadBalanceMode = this.loadBalanceMode;
+                inf.sessionStore = this.sessionStore;
 
                 inf.init();
 
@@ -377,6 +496,8 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.targetLatencyNanos = this.targetLatencyNanos;
+                inference.sessionStore = this.sessionStore;
 
                 inference.init();
 
@@ -398,13 +519,18 @@ public class ParallelInference {
         private Model replicatedModel;
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
+        private int workerId;
+        private AdaptiveBatchScheduler scheduler;
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
 
-        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice) {
+        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice,
+                        AdaptiveBatchScheduler scheduler) {
             this.inputQueue = inputQueue;
             this.protoModel = model;
             this.rootDevice = rootDevice;
+            this.workerId = id;
+            this.scheduler = scheduler;
 
             this.setDaemon(true);
             this.setName("InferenceThread-" + id);
@@ -477,8 +603,35 @@ public class ParallelInference {
                     if (request != null) {
                         counter.incrementAndGet();
 
+                        BatchedInferenceObservable batched = null;
+                        long serviceStart = 0L;
+                        if (scheduler != null && request instanceof BatchedInferenceObservable) {
+                            batched = (BatchedInferenceObservable) request;
+                            linger(batched);
+                            serviceStart = System.nanoTime();
+                        }
+
                         // FIXME: get rid of instanceof here, model won't change during runtime anyway
-                        if (isCG) {
+                        if (request instanceof BatchedInferenceObservable && ((BatchedInferenceObservable) request).isSessionBatch()) {
+                            List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
+                            List<String[]> sessions = ((BatchedInferenceObservable) request).getSessionBatches();
+                            List<INDArray[]> out = new ArrayList<>(batches.size());
+                            try {
+                                for (int i = 0; i < batches.size(); i++) {
+                                    try {
+                                        modelLock.readLock().lock();
+
+                                        out.add(sessionStore.step(replicatedModel, sessions.get(i), batches.get(i).getFirst()));
+                                    } finally {
+                                        Nd4j.getExecutioner().commit();
+                                        modelLock.readLock().unlock();
+                                    }
+                                }
+                                request.setOutputBatches(out);
+                            } catch (Exception e){
+                                request.setOutputException(e);
+                            }
+                        } else if (isCG) {
                             List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
                             List<INDArray[]> out = new ArrayList<>(batches.size());
                             try {
@@ -521,7 +674,10 @@ public class ParallelInference {
                             }
                         }
 
-
+                        if (batched != null) {
+                            long now = System.nanoTime();
+                            scheduler.recordBatch(workerId, batched.getCounter(), serviceStart - batched.getCreationTime(), now - serviceStart);
+                        }
                     } else {
                         // just do nothing, i guess and hope for next round?
                     }
@@ -536,6 +692,20 @@ public class ParallelInference {
             }
         }
 
+        /**
+         * This method holds partially filled batch for a while, if scheduler expects more requests to arrive
+         * within latency budget
+         */
+        protected void linger(BatchedInferenceObservable batch) {
+            long lingerNanos = scheduler.getLingerNanos(batch.getCounter(), System.nanoTime() - batch.getCreationTime(), inputQueue.size());
+            if (lingerNanos <= 0)
+                return;
+
+            long deadline = System.nanoTime() + lingerNanos;
+            while (System.nanoTime() < deadline && batch.getCounter() < scheduler.getBatchLimit() && inputQueue.isEmpty())
+                LockSupport.parkNanos(Math.min(50000L, lingerNanos));
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -549,14 +719,21 @@ public class ParallelInference {
         private BlockingQueue<InferenceObservable> targetQueue;
         private long nanos;
         private int batchLimit;
+        private AdaptiveBatchScheduler scheduler;
 
         private volatile BatchedInferenceObservable currentObservable;
         private final Object locker = new Object();
 
         protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue) {
+            this(nanos, batchLimit, queue, null);
+        }
+
+        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue,
+                        AdaptiveBatchScheduler scheduler) {
             this.targetQueue = queue;
             this.nanos = nanos;
             this.batchLimit = batchLimit;
+            this.scheduler = scheduler;
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray input){
@@ -568,16 +745,37 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            return setInput(observer, input, inputMask, null);
+        }
+
+        protected InferenceObservable setSessionInput(@NonNull Observer observer, INDArray[] input, @NonNull String[] sessionIds) {
+            return setInput(observer, input, null, sessionIds);
+        }
+
+        private InferenceObservable setInput(Observer observer, INDArray[] input, INDArray[] inputMask, String[] sessionIds) {
             synchronized (locker) {
+                int limit = batchLimit;
+                if (scheduler != null) {
+                    scheduler.recordArrival();
+                    limit = scheduler.getBatchLimit();
+                }
+
                 boolean isNew = false;
-                if (currentObservable == null || currentObservable.getCounter() >= batchLimit
+                // stateful RNN steps and regular inference requests are never mixed in one batch
+                boolean isSession = sessionIds != null;
+                if (currentObservable == null || currentObservable.getCounter() >= limit
+                                || currentObservable.isSessionBatch() != isSession
                                 || currentObservable.isLocked()) {
                     isNew = true;
-                    currentObservable = new BatchedInferenceObservable();
+                    currentObservable = new BatchedInferenceObservable(isSession);
                 }
 
-                currentObservable.addInput(input, inputMask);
+                // observer goes first: once input is added, batch can be processed by worker at any moment
                 currentObservable.addObserver(observer);
+                if (isSession)
+                    currentObservable.addSessionInput(input, sessionIds);
+                else
+                    currentObservable.addInput(input, inputMask);
 
                 try {
                     if (isNew)
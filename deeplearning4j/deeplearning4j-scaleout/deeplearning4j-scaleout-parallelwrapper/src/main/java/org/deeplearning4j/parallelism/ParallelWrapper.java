@@ -687,6 +687,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected Supplier<INDArray> updaterParamsSupplier;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected int sharingGroupSize = 1;
 
         protected GradientsAccumulator accumulator;
 
@@ -849,6 +850,22 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * This method enables hierarchical gradients sharing: workers are split into groups of given size,
+         * updates are reduced within each group first, and only group-level updates are decoded by every worker.
+         *
+         * PLEASE NOTE: This method is applicable only to SHARED_GRADIENTS training mode, and only if GradientsAccumulator wasn't provided explicitly.
+         *
+         * Default value: 1 (flat sharing)
+         * @param groupSize number of workers per group
+         * @return
+         */
+        public Builder sharingGroupSize(int groupSize) {
+            Preconditions.checkArgument(groupSize > 0, "Group size must be positive value: got %s", groupSize);
+            this.sharingGroupSize = groupSize;
+            return this;
+        }
+
 
         /**
          * This method enables/disables averaged model score reporting
@@ -910,7 +927,7 @@ public class ParallelWrapper implements AutoCloseable {
                     this.trainerContext = new SymmetricTrainerContext();
                     if (this.accumulator == null) {
                         log.info("Creating new GradientsAccumulator instance with threshold of [5e-4");
-                        this.accumulator = new EncodedGradientsAccumulator(workers, thresholdAlgorithm, residualPostProcessor,  false);
+                        this.accumulator = new EncodedGradientsAccumulator(workers, thresholdAlgorithm, residualPostProcessor,  false, sharingGroupSize);
                     }
                 }
                     break;
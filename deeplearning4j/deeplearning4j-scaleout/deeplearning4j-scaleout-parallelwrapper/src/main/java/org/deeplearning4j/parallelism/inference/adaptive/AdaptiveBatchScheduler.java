@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.adaptive;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sizes and flushes batches for BATCHED ParallelInference, with respect to configured latency target.
+ *
+ * For each worker it keeps exponentially weighted linear model of inference time: time(batch) = fixed + perExample * batch.
+ * Together with tail estimate of queue wait time, this model is used to pick the largest batch size that still fits
+ * into latency target. If incoming requests are frequent enough, workers are allowed to linger on partially
+ * filled batch for a short time, so the batch can grow without violating the target.
+ *
+ * Batch size, queue wait and service time histograms are exposed for monitoring purposes.
+ */
+public class AdaptiveBatchScheduler {
+    public static final double DEFAULT_SMOOTHING = 0.1;
+
+    @Getter protected final long targetLatencyNanos;
+    @Getter protected final int minBatchSize;
+    @Getter protected final int maxBatchSize;
+    protected final double alpha;
+
+    // per-worker latency model, stored as running moments of (batchSize, serviceTime)
+    protected final double[] meanX;
+    protected final double[] meanY;
+    protected final double[] meanXX;
+    protected final double[] meanXY;
+    protected final boolean[] initialized;
+
+    // tail estimate for queue wait: mean + 3 * mean absolute deviation
+    protected double waitMean;
+    protected double waitDeviation;
+
+    // smoothed interval between consecutive requests
+    protected volatile double interArrivalNanos = Double.MAX_VALUE;
+    protected volatile long lastArrival = 0L;
+
+    protected volatile int batchLimit;
+
+    @Getter protected final LatencyHistogram batchSizeHistogram = new LatencyHistogram();
+    @Getter protected final LatencyHistogram queueWaitHistogram = new LatencyHistogram();
+    @Getter protected final LatencyHistogram serviceTimeHistogram = new LatencyHistogram();
+
+    public AdaptiveBatchScheduler(int numWorkers, long targetLatency, TimeUnit timeUnit, int minBatchSize,
+                    int maxBatchSize) {
+        this(numWorkers, timeUnit.toNanos(targetLatency), minBatchSize, maxBatchSize, DEFAULT_SMOOTHING);
+    }
+
+    public AdaptiveBatchScheduler(int numWorkers, long targetLatencyNanos, int minBatchSize, int maxBatchSize,
+                    double smoothing) {
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("Number of workers should be positive value");
+
+        if (targetLatencyNanos < 1)
+            throw new IllegalArgumentException("Latency target should be positive value");
+
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+            throw new IllegalArgumentException("Batch size bounds should satisfy 1 <= minBatchSize <= maxBatchSize, got ["
+                            + minBatchSize + ", " + maxBatchSize + "]");
+
+        if (smoothing <= 0.0 || smoothing > 1.0)
+            throw new IllegalArgumentException("Smoothing factor should be in range (0.0, 1.0]");
+
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.alpha = smoothing;
+
+        this.meanX = new double[numWorkers];
+        this.meanY = new double[numWorkers];
+        this.meanXX = new double[numWorkers];
+        this.meanXY = new double[numWorkers];
+        this.initialized = new boolean[numWorkers];
+
+        // until we have any measurements - we start with smallest batches, to get latency model quickly
+        this.batchLimit = minBatchSize;
+    }
+
+    /**
+     * This method returns maximal number of requests that should be packed into single batch at this moment
+     *
+     * @return
+     */
+    public int getBatchLimit() {
+        return batchLimit;
+    }
+
+    /**
+     * This method should be called for each incoming request
+     */
+    public void recordArrival() {
+        long now = System.nanoTime();
+        long previous = lastArrival;
+        lastArrival = now;
+
+        if (previous == 0L)
+            return;
+
+        double delta = now - previous;
+        double current = interArrivalNanos;
+        interArrivalNanos = current == Double.MAX_VALUE ? delta : current + alpha * (delta - current);
+    }
+
+    /**
+     * This method returns estimated service time for given batch size, using the slowest worker model
+     *
+     * @param batchSize
+     * @return estimated time in nanoseconds, or 0 if no measurements were made yet
+     */
+    public synchronized double estimateServiceTime(int batchSize) {
+        double worst = 0.0;
+        for (int w = 0; w < initialized.length; w++) {
+            if (!initialized[w])
+                continue;
+
+            double[] coefficients = coefficients(w);
+            worst = Math.max(worst, coefficients[0] + coefficients[1] * batchSize);
+        }
+
+        return worst;
+    }
+
+    /**
+     * This method returns tail (~p99) estimate for queue wait time, in nanoseconds
+     *
+     * @return
+     */
+    public synchronized double estimateQueueWait() {
+        return waitMean + 3.0 * waitDeviation;
+    }
+
+    /**
+     * This method returns time worker is allowed to wait for more requests, before executing given batch
+     *
+     * @param batchSize current number of requests in batch
+     * @param ageNanos time passed since first request in this batch arrived
+     * @param queueDepth number of batches waiting for execution
+     * @return linger time in nanoseconds, 0 if batch should be executed immediately
+     */
+    public long getLingerNanos(int batchSize, long ageNanos, int queueDepth) {
+        // if there's backlog, or batch is full already - there's no reason to wait
+        if (queueDepth > 0 || batchSize >= batchLimit)
+            return 0L;
+
+        double interval = interArrivalNanos;
+        if (interval == Double.MAX_VALUE)
+            return 0L;
+
+        double slack = targetLatencyNanos - ageNanos - estimateServiceTime(batchSize + 1);
+        // light load: next request won't arrive in time, so waiting only adds latency
+        if (slack <= 0 || interval >= slack)
+            return 0L;
+
+        return (long) Math.min(slack, interval * (batchLimit - batchSize));
+    }
+
+    /**
+     * This method records single executed batch, and updates batch limit
+     *
+     * @param workerId id of the worker that executed this batch
+     * @param batchSize number of requests in batch
+     * @param queueWaitNanos time passed between arrival of first request and start of execution
+     * @param serviceNanos execution time
+     */
+    public void recordBatch(int workerId, int batchSize, long queueWaitNanos, long serviceNanos) {
+        batchSizeHistogram.record(batchSize);
+        queueWaitHistogram.record(queueWaitNanos);
+        serviceTimeHistogram.record(serviceNanos);
+
+        synchronized (this) {
+            int w = workerId % initialized.length;
+            double x = batchSize;
+            double y = serviceNanos;
+            if (!initialized[w]) {
+                meanX[w] = x;
+                meanY[w] = y;
+                meanXX[w] = x * x;
+                meanXY[w] = x * y;
+                initialized[w] = true;
+            } else {
+                meanX[w] += alpha * (x - meanX[w]);
+                meanY[w] += alpha * (y - meanY[w]);
+                meanXX[w] += alpha * (x * x - meanXX[w]);
+                meanXY[w] += alpha * (x * y - meanXY[w]);
+            }
+
+            double deviation = Math.abs(queueWaitNanos - waitMean);
+            waitMean += alpha * (queueWaitNanos - waitMean);
+            waitDeviation += alpha * (deviation - waitDeviation);
+
+            batchLimit = computeBatchLimit();
+        }
+    }
+
+    /**
+     * This method returns [fixed, perExample] latency coefficients for given worker
+     */
+    protected double[] coefficients(int w) {
+        double variance = meanXX[w] - meanX[w] * meanX[w];
+        double slope;
+        double intercept;
+        if (variance > 1e-6) {
+            slope = (meanXY[w] - meanX[w] * meanY[w]) / variance;
+            intercept = meanY[w] - slope * meanX[w];
+        } else {
+            // all batches had the same size so far, so we can't split fixed cost from per-example cost
+            slope = meanY[w] / Math.max(1.0, meanX[w]);
+            intercept = 0.0;
+        }
+
+        // noisy measurements may produce nonsense values, per-example cost can't be negative
+        if (slope <= 0.0) {
+            slope = meanY[w] / Math.max(1.0, meanX[w]);
+            intercept = 0.0;
+        }
+
+        return new double[] {Math.max(0.0, intercept), slope};
+    }
+
+    protected int computeBatchLimit() {
+        double fixed = 0.0;
+        double perExample = 0.0;
+        for (int w = 0; w < initialized.length; w++) {
+            if (!initialized[w])
+                continue;
+
+            double[] coefficients = coefficients(w);
+            fixed = Math.max(fixed, coefficients[0]);
+            perExample = Math.max(perExample, coefficients[1]);
+        }
+
+        if (perExample <= 0.0)
+            return maxBatchSize;
+
+        double budget = targetLatencyNanos - (waitMean + 3.0 * waitDeviation) - fixed;
+        if (budget <= 0.0)
+            return minBatchSize;
+
+        long limit = (long) Math.floor(budget / perExample);
+        return (int) Math.max(minBatchSize, Math.min(maxBatchSize, limit));
+    }
+
+    /**
+     * This method resets histograms, latency model is kept intact
+     */
+    public void resetHistograms() {
+        batchSizeHistogram.reset();
+        queueWaitHistogram.reset();
+        serviceTimeHistogram.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBatchScheduler(target=" + TimeUnit.NANOSECONDS.toMicros(targetLatencyNanos) + "us, batchLimit="
+                        + batchLimit + ", batchSize=[" + batchSizeHistogram + "], queueWaitNanos=["
+                        + queueWaitHistogram + "])";
+    }
+}
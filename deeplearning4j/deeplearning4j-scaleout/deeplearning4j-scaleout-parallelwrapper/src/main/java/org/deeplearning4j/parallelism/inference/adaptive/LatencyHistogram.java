@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.adaptive;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simple lock-free histogram with power-of-two buckets.
+ * Bucket 0 holds value 0, bucket i (i > 0) holds values in range [2^(i-1), 2^i).
+ *
+ * Percentiles are reported as upper bound of the bucket, so they are never underestimated,
+ * but can be overestimated by up to 2x.
+ */
+public class LatencyHistogram {
+    public static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * This method records single value
+     *
+     * @param value non-negative value, i.e. nanoseconds or batch size
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        buckets.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long cMax;
+        while (value > (cMax = max.get())) {
+            if (max.compareAndSet(cMax, value))
+                break;
+        }
+    }
+
+    protected static int bucketFor(long value) {
+        return value == 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    protected static long upperBound(int bucket) {
+        if (bucket == 0)
+            return 0;
+
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * This method returns approximate value for given percentile
+     *
+     * @param percentile value in range (0.0, 1.0], i.e. 0.99 for p99
+     * @return upper bound of bucket holding requested percentile, or 0 if nothing was recorded yet
+     */
+    public long percentile(double percentile) {
+        if (percentile <= 0.0 || percentile > 1.0)
+            throw new IllegalArgumentException("Percentile should be in range (0.0, 1.0]");
+
+        long total = count.get();
+        if (total == 0)
+            return 0;
+
+        long threshold = (long) Math.ceil(total * percentile);
+        long accumulated = 0;
+        for (int e = 0; e < NUM_BUCKETS; e++) {
+            accumulated += buckets.get(e);
+            if (accumulated >= threshold)
+                return Math.min(upperBound(e), max.get());
+        }
+
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0.0 : sum.get() / (double) total;
+    }
+
+    /**
+     * This method returns snapshot of bucket counters
+     *
+     * @return
+     */
+    public long[] getBuckets() {
+        long[] result = new long[NUM_BUCKETS];
+        for (int e = 0; e < NUM_BUCKETS; e++)
+            result[e] = buckets.get(e);
+
+        return result;
+    }
+
+    /**
+     * This method resets all counters
+     */
+    public void reset() {
+        for (int e = 0; e < NUM_BUCKETS; e++)
+            buckets.set(e, 0);
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + String.format("%.2f", getMean()) + ", p50=" + percentile(0.5)
+                        + ", p99=" + percentile(0.99) + ", max=" + getMax();
+    }
+}
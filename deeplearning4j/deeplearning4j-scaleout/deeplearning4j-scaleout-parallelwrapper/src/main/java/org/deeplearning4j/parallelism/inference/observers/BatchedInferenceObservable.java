@@ -48,6 +48,8 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private AtomicInteger counter = new AtomicInteger(0);
     private ThreadLocal<Integer> position = new ThreadLocal<>();
     private List<int[]> outputBatchInputArrays = new ArrayList<>();
+    // session ids for each input, used for stateful RNN steps only
+    private final List<String[]> sessionIds;
 
     private final Object locker = new Object();
 
@@ -55,15 +57,46 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private AtomicBoolean isLocked = new AtomicBoolean(false);
     private AtomicBoolean isReadLocked = new AtomicBoolean(false);
 
+    // time of creation, used to track queue wait time
+    private final long creationTime = System.nanoTime();
+
     public BatchedInferenceObservable() {
+        this(false);
+    }
 
+    /**
+     * @param sessionBatch If true, this observable holds stateful RNN steps: each input has associated session ids,
+     *                     see {@link #addSessionInput(INDArray[], String[])}
+     */
+    public BatchedInferenceObservable(boolean sessionBatch) {
+        this.sessionIds = sessionBatch ? new ArrayList<String[]>() : null;
     }
 
     @Override
     public void addInput(INDArray[] input, INDArray[] inputMasks) {
+        if (sessionIds != null)
+            throw new ND4JIllegalStateException("Session ids are required for stateful RNN steps");
+        addInputInternal(input, inputMasks, null);
+    }
+
+    /**
+     * This method adds input for stateful RNN step
+     *
+     * @param input      Input arrays
+     * @param sessionIds Session id for each example in the input
+     */
+    public void addSessionInput(INDArray[] input, String[] sessionIds) {
+        if (this.sessionIds == null)
+            throw new ND4JIllegalStateException("This observable doesn't hold stateful RNN steps");
+        addInputInternal(input, null, sessionIds);
+    }
+
+    private void addInputInternal(INDArray[] input, INDArray[] inputMasks, String[] ids) {
         synchronized (locker) {
             inputs.add(input);
             this.inputMasks.add(inputMasks);
+            if (this.sessionIds != null)
+                this.sessionIds.add(ids);
             position.set(counter.getAndIncrement());
 
             if (isReadLocked.get())
@@ -131,6 +164,32 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         }
     }
 
+    /**
+     * This method returns session ids for each of the batches returned by last {@link #getInputBatches()} call
+     *
+     * @return Session ids for each input batch, or null if this observable doesn't hold stateful RNN steps
+     */
+    public List<String[]> getSessionBatches() {
+        if (sessionIds == null)
+            return null;
+
+        List<String[]> out = new ArrayList<>(outputBatchInputArrays.size());
+        for (int[] range : outputBatchInputArrays) {
+            List<String> ids = new ArrayList<>();
+            for (int i = range[0]; i <= range[1]; i++)
+                ids.addAll(Arrays.asList(sessionIds.get(i)));
+            out.add(ids.toArray(new String[ids.size()]));
+        }
+        return out;
+    }
+
+    /**
+     * @return True if this observable holds stateful RNN steps
+     */
+    public boolean isSessionBatch() {
+        return sessionIds != null;
+    }
+
     private static boolean canBatch(INDArray[] first, INDArray[] candidate){
         //Check if we can batch these inputs into the one array. This isn't always possible - for example, some fully
         // convolutional nets can support different input image sizes
@@ -222,6 +281,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         return counter.get();
     }
 
+    /**
+     * This method returns System.nanoTime() value at the moment of this observable creation
+     *
+     * @return
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
 
 
     public boolean isLocked() {
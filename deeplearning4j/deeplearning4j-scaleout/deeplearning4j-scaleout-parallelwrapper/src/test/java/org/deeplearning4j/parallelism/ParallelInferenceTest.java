@@ -34,9 +34,11 @@ import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.adaptive.AdaptiveBatchScheduler;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
 import org.deeplearning4j.util.ModelSerializer;
+import org.deeplearning4j.util.RnnSessionStateStore;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -49,7 +51,9 @@ import org.nd4j.linalg.primitives.Pair;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -841,6 +845,158 @@ public class ParallelInferenceTest {
 
     }
 
+    @Test(timeout = 60000L)
+    public void testRnnTimeStepSessions() throws Exception {
+        int nIn = 5;
+        final int numSessions = 8;
+        final int numSteps = 10;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(6).build())
+                .layer(new RnnOutputLayer.Builder().nIn(6).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        // expected outputs: one network copy per session
+        final INDArray[][] in = new INDArray[numSessions][numSteps];
+        final INDArray[][] exp = new INDArray[numSessions][numSteps];
+        for (int s = 0; s < numSessions; s++) {
+            MultiLayerNetwork copy = net.clone();
+            for (int i = 0; i < numSteps; i++) {
+                in[s][i] = Nd4j.rand(1, nIn);
+                exp[s][i] = copy.rnnTimeStep(in[s][i]);
+            }
+        }
+
+        for (InferenceMode m : InferenceMode.values()) {
+            for (int w : new int[]{1, 2}) {
+                final RnnSessionStateStore store = new RnnSessionStateStore.Builder().build();
+                final ParallelInference inf =
+                        new ParallelInference.Builder(net)
+                                .inferenceMode(m)
+                                .batchLimit(4)
+                                .workers(w)
+                                .rnnSessionStore(store)
+                                .build();
+
+                final INDArray[][] act = new INDArray[numSessions][numSteps];
+                final AtomicInteger failedCount = new AtomicInteger(0);
+                val threads = new ArrayList<Thread>();
+                for (int s = 0; s < numSessions; s++) {
+                    final int session = s;
+                    val t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                for (int i = 0; i < numSteps; i++)
+                                    act[session][i] = inf.rnnTimeStep("session_" + session, in[session][i]);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                failedCount.incrementAndGet();
+                            }
+                        }
+                    });
+                    t.start();
+                    threads.add(t);
+                }
+
+                for (val t : threads)
+                    t.join();
+
+                assertEquals(0, failedCount.get());
+                assertEquals(numSessions, store.numSessions());
+                for (int s = 0; s < numSessions; s++) {
+                    for (int i = 0; i < numSteps; i++)
+                        assertTrue("Failed for mode " + m + " at session " + s + ", step " + i, exp[s][i].equalsWithEps(act[s][i], 1e-5));
+                }
+
+                inf.shutdown();
+            }
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testLatencyTargetBatching() throws Exception {
+        int nIn = 5;
+        final int numRequests = 64;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(10).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        final INDArray[] in = new INDArray[numRequests];
+        INDArray[] exp = new INDArray[numRequests];
+        for (int i = 0; i < numRequests; i++) {
+            in[i] = Nd4j.rand(1, nIn);
+            exp[i] = net.output(in[i]);
+        }
+
+        // unreachable target keeps batches at minimal size, loose target lets them grow up to batchLimit
+        long[] targetsNanos = new long[]{1, TimeUnit.SECONDS.toNanos(10)};
+        long[] batchSizes = new long[targetsNanos.length];
+        for (int t = 0; t < targetsNanos.length; t++) {
+            final ParallelInference inf =
+                    new ParallelInference.Builder(net)
+                            .inferenceMode(InferenceMode.BATCHED)
+                            .batchLimit(16)
+                            .queueLimit(64)
+                            .workers(2)
+                            .latencyTarget(targetsNanos[t], TimeUnit.NANOSECONDS)
+                            .build();
+
+            for (int round = 0; round < 3; round++) {
+                final INDArray[] act = new INDArray[numRequests];
+                final AtomicInteger failedCount = new AtomicInteger(0);
+                final CountDownLatch startGate = new CountDownLatch(1);
+                val threads = new ArrayList<Thread>();
+                for (int i = 0; i < numRequests; i++) {
+                    final int j = i;
+                    val thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                startGate.await();
+                                act[j] = inf.output(in[j]);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                failedCount.incrementAndGet();
+                            }
+                        }
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+
+                startGate.countDown();
+                for (val thread : threads)
+                    thread.join();
+
+                assertEquals(0, failedCount.get());
+                for (int i = 0; i < numRequests; i++)
+                    assertEquals("Failed for target " + targetsNanos[t] + " at request " + i, exp[i], act[i]);
+            }
+
+            AdaptiveBatchScheduler scheduler = inf.getBatchScheduler();
+            assertNotNull(scheduler);
+            batchSizes[t] = scheduler.getBatchSizeHistogram().getMax();
+
+            inf.shutdown();
+        }
+
+        assertEquals(1, batchSizes[0]);
+        assertTrue("Batch size should grow with loose latency target, got " + batchSizes[1], batchSizes[1] > 1);
+    }
 
     private static void testParallelInference(ParallelInference inf, List<INDArray> in, List<INDArray> exp) throws Exception {
         testParallelInference(inf, in, null, exp);
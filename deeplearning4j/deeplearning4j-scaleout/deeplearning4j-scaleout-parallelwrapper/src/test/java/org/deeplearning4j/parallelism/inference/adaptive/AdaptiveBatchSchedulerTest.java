@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.adaptive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class AdaptiveBatchSchedulerTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int e = 1; e <= 100; e++)
+            histogram.record(e);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-5);
+
+        // p50 is 50, which falls into [32, 64) bucket
+        assertEquals(63, histogram.percentile(0.5));
+        assertEquals(100, histogram.percentile(0.99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void testBatchLimitFollowsLatencyModel() {
+        // 10ms target, 1ms fixed cost, 100us per example, no queue wait: (10000 - 1000) / 100 = 90 examples
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(1, 10, TimeUnit.MILLISECONDS, 1, 256);
+        assertEquals(1, scheduler.getBatchLimit());
+
+        for (int e = 0; e < 200; e++) {
+            int batchSize = 1 + (e % 32);
+            scheduler.recordBatch(0, batchSize, 0, 1000000L + 100000L * batchSize);
+        }
+
+        log.info("Scheduler: {}", scheduler);
+        assertEquals(90, scheduler.getBatchLimit(), 2);
+        assertEquals(1000000L + 100000L * 10, scheduler.estimateServiceTime(10), 1000.0);
+    }
+
+    @Test
+    public void testBatchLimitBounds() {
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(2, 1, TimeUnit.MILLISECONDS, 2, 16);
+
+        // model is way too slow for the target, so we should stay at lower bound
+        for (int e = 0; e < 50; e++)
+            scheduler.recordBatch(e % 2, 4, 0, TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(2, scheduler.getBatchLimit());
+
+        // model is very fast, so we should be capped by upper bound
+        scheduler = new AdaptiveBatchScheduler(2, 1, TimeUnit.SECONDS, 2, 16);
+        for (int e = 0; e < 50; e++)
+            scheduler.recordBatch(e % 2, 4, 0, 1000L);
+
+        assertEquals(16, scheduler.getBatchLimit());
+        assertEquals(50, scheduler.getBatchSizeHistogram().getCount());
+        assertEquals(50, scheduler.getQueueWaitHistogram().getCount());
+    }
+
+    @Test
+    public void testNoLingerWithBacklog() throws Exception {
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(1, 1, TimeUnit.SECONDS, 1, 64);
+        for (int e = 0; e < 10; e++)
+            scheduler.recordBatch(0, 1, 0, 1000L);
+
+        scheduler.recordArrival();
+        Thread.sleep(1);
+        scheduler.recordArrival();
+
+        assertEquals(0, scheduler.getLingerNanos(1, 0, 3));
+        assertEquals(0, scheduler.getLingerNanos(64, 0, 0));
+        assertTrue(scheduler.getLingerNanos(1, 0, 0) > 0);
+    }
+}
@@ -27,7 +27,10 @@ import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.VoidFunction;
 import org.datavec.spark.util.SerializableHadoopConfig;
 import org.deeplearning4j.api.loader.impl.RecordReaderFileBatchLoader;
+import org.deeplearning4j.datasets.iterator.file.MappedDataSetContainer;
+import org.deeplearning4j.datasets.iterator.file.MappedDataSetWriter;
 import org.nd4j.api.loader.FileBatch;
+import org.nd4j.linalg.dataset.DataSet;
 
 import java.io.*;
 import java.util.*;
@@ -236,4 +239,49 @@ public class SparkDataUtils {
         });
     }
 
+    /**
+     * Export DataSets to memory-mappable containers - one {@link MappedDataSetContainer} file per partition.<br>
+     * Each partition is written to a local temporary file first, and then copied to the output directory.
+     * All DataSets must have the same arrays, and the same per-example shapes and data types.<br>
+     * The exported files can be used for local training with
+     * {@link org.deeplearning4j.datasets.iterator.file.MappedDataSetIterator MappedDataSetIterator},
+     * which assembles (and reshuffles on every epoch) minibatches from the examples stored in all the files.
+     *
+     * @param data          DataSets to export
+     * @param rootOutputDir Directory to write the containers to
+     */
+    public static void exportMappedDataSets(JavaRDD<DataSet> data, final String rootOutputDir, JavaSparkContext sc) {
+        exportMappedDataSets(data, rootOutputDir, sc.hadoopConfiguration());
+    }
+
+    /**
+     * See {@link #exportMappedDataSets(JavaRDD, String, JavaSparkContext)}
+     */
+    public static void exportMappedDataSets(JavaRDD<DataSet> data, final String rootOutputDir, @NonNull final org.apache.hadoop.conf.Configuration hadoopConfig) {
+        final SerializableHadoopConfig conf = new SerializableHadoopConfig(hadoopConfig);
+        data.foreachPartition(new VoidFunction<Iterator<DataSet>>() {
+            @Override
+            public void call(Iterator<DataSet> dataSetIterator) throws Exception {
+                if (!dataSetIterator.hasNext())
+                    return;
+
+                File local = File.createTempFile("dl4j_mds_", "." + MappedDataSetContainer.DEFAULT_EXTENSION);
+                try {
+                    try (MappedDataSetWriter writer = new MappedDataSetWriter(local)) {
+                        while (dataSetIterator.hasNext()) {
+                            writer.write(dataSetIterator.next());
+                        }
+                    }
+
+                    String name = UUID.randomUUID().toString().replaceAll("-", "") + "." + MappedDataSetContainer.DEFAULT_EXTENSION;
+                    String outPath = FilenameUtils.concat(rootOutputDir, name);
+                    FileSystem fileSystem = FileSystem.get(conf.getConfiguration());
+                    fileSystem.copyFromLocalFile(false, true, new Path(local.getAbsolutePath()), new Path(outPath));
+                } finally {
+                    local.delete();
+                }
+            }
+        });
+    }
+
 }
@@ -0,0 +1,897 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.ui.storage.log;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.api.storage.*;
+import org.deeplearning4j.ui.storage.BaseCollectionStatsStorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file-based {@link StatsStorage} implementation, based on append-only, memory-mapped segment files.<br>
+ * Compared to {@link org.deeplearning4j.ui.storage.FileStatsStorage} (MapDB) and
+ * {@link org.deeplearning4j.ui.storage.sqlite.J7FileStatsStorage} (SQLite), there is no per-record transaction:
+ * <ul>
+ *     <li>Records are encoded on the calling thread, indexed in memory, and queued for a single background flusher
+ *     thread, which appends them in batches to the active segment. Queued records can be read immediately.</li>
+ *     <li>An in-memory index (session/type/worker ID -> timestamp -> record location) is kept, so that
+ *     {@link #getLatestUpdate(String, String, String)} and {@link #getAllUpdatesAfter(String, String, String, long)}
+ *     are simple lookups/range reads. Update records are only decoded when requested.</li>
+ *     <li>Once a segment is full, a new one is started. Sealed segments where most records have been superseded
+ *     (for example, static info written again for the same worker) are compacted: the live records are copied to the
+ *     active segment and the old segment file is deleted.</li>
+ * </ul>
+ * Data is stored in a directory (one file per segment), and can be reopened later by passing the same directory.
+ * Note that the storage format is not compatible with the other file-based StatsStorage implementations.
+ */
+@Slf4j
+public class SegmentedLogStatsStorage extends BaseCollectionStatsStorage {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SEGMENT_MAGIC = 0x444C344A;   //"DL4J"
+    private static final int SEGMENT_HEADER_BYTES = 8;     //Magic + format version
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_META_DATA = 1;
+    private static final byte TYPE_STATIC_INFO = 2;
+    private static final byte TYPE_UPDATE = 3;
+
+    private static final long NOT_WRITTEN = -1L;
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final int maxBatchSize;
+    private final long syncIntervalMs;
+    private final double compactionThreshold;
+
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private Segment activeSegment;
+    private final Object writeLock = new Object();
+
+    //Record locations for meta data and static info. Updates are indexed in the "updates" map (as UpdateIndex instances)
+    private final ConcurrentMap<SessionTypeId, RecordRef> storageMetaDataRefs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SessionTypeWorkerId, RecordRef> staticInfoRefs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Class<?>> classCache = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<RecordRef> writeQueue;
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final Object flushMonitor = new Object();
+    private long writtenCount;
+    private final Thread flusherThread;
+    private volatile boolean isClosed = false;
+
+    /**
+     * @param directory Directory for the segment files. Will be created if it does not exist. If it exists, any
+     *                  existing segments will be loaded
+     */
+    public SegmentedLogStatsStorage(@NonNull File directory) {
+        this(new Builder(directory));
+    }
+
+    private SegmentedLogStatsStorage(Builder builder) {
+        super();
+        this.directory = builder.getDirectory();
+        this.segmentSizeBytes = builder.getSegmentSizeBytes();
+        this.maxBatchSize = builder.getMaxBatchSize();
+        this.syncIntervalMs = builder.getSyncIntervalMs();
+        this.compactionThreshold = builder.getCompactionThreshold();
+        this.writeQueue = new LinkedBlockingQueue<>(builder.getQueueCapacity());
+
+        sessionIDs = Collections.synchronizedSet(new HashSet<String>());
+        storageMetaData = new ConcurrentHashMap<>();
+        staticInfo = new ConcurrentHashMap<>();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create directory for stats storage: " + directory.getAbsolutePath());
+        }
+        if (!directory.isDirectory()) {
+            throw new IllegalStateException("Cannot create stats storage: path exists and is not a directory: "
+                            + directory.getAbsolutePath());
+        }
+
+        try {
+            loadSegments();
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading existing segments from " + directory.getAbsolutePath(), e);
+        }
+
+        flusherThread = new Thread(new Flusher(), "SegmentedLogStatsStorage-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    // ----- Loading -----
+
+    private void loadSegments() throws IOException {
+        File[] files = directory.listFiles();
+        List<Integer> ids = new ArrayList<>();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (Integer id : ids) {
+            Segment s = Segment.open(segmentFile(id), id);
+            segments.put(id, s);
+            ByteBuffer bb = s.buffer.duplicate();
+            int position = SEGMENT_HEADER_BYTES;
+            while (position + 4 <= s.capacity) {
+                int length = bb.getInt(position);
+                if (length <= 0 || position + 4 + length > s.capacity) {
+                    //End of written data (or partially written record, not yet visible due to crash)
+                    break;
+                }
+                byte[] record = new byte[4 + length];
+                bb.position(position);
+                bb.get(record);
+                RecordRef ref = new RecordRef(record.length, null);
+                ref.location = location(id, position);
+                s.liveBytes.addAndGet(record.length);
+                indexRecord(record, ref);
+                position += record.length;
+            }
+            s.writePosition = position;
+            activeSegment = s;
+        }
+
+        if (activeSegment == null) {
+            activeSegment = newSegment(0, segmentSizeBytes);
+        }
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Segment newSegment(int id, int capacity) throws IOException {
+        Segment s = Segment.create(segmentFile(id), id, capacity);
+        segments.put(id, s);
+        return s;
+    }
+
+    // ----- Record encoding/decoding -----
+
+    private static byte[] encodeRecord(byte type, Persistable p) {
+        byte[] payload = p.encode();
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(payload.length + 64);
+                        DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(0); //Placeholder for length
+            dos.writeByte(type);
+            dos.writeUTF(p.getClass().getName());
+            dos.writeUTF(nullToEmpty(p.getSessionID()));
+            dos.writeUTF(nullToEmpty(p.getTypeID()));
+            dos.writeUTF(nullToEmpty(p.getWorkerID()));
+            dos.writeLong(p.getTimeStamp());
+            dos.write(payload);
+            dos.flush();
+            byte[] out = baos.toByteArray();
+            ByteBuffer.wrap(out).putInt(0, out.length - 4);
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("Error encoding record for storage", e);
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private Persistable decodeRecord(byte[] record) {
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record))) {
+            dis.readInt();
+            dis.readByte();
+            String className = dis.readUTF();
+            dis.readUTF();
+            dis.readUTF();
+            dis.readUTF();
+            dis.readLong();
+            byte[] payload = new byte[dis.available()];
+            dis.readFully(payload);
+
+            Class<?> c = classCache.get(className);
+            if (c == null) {
+                c = Class.forName(className);
+                classCache.put(className, c);
+            }
+            Persistable p = (Persistable) c.newInstance();
+            p.decode(payload);
+            return p;
+        } catch (IOException | ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Error decoding stored record", e);
+        }
+    }
+
+    /**
+     * Add the given record to the in-memory index, replacing (superseding) any existing record with the same key
+     *
+     * @param record Encoded record
+     * @param ref    Reference to the record
+     */
+    private void indexRecord(byte[] record, RecordRef ref) {
+        byte type;
+        String sid;
+        String tid;
+        String wid;
+        long timestamp;
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record))) {
+            dis.readInt();
+            type = dis.readByte();
+            dis.readUTF();
+            sid = dis.readUTF();
+            tid = dis.readUTF();
+            wid = dis.readUTF();
+            timestamp = dis.readLong();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading record header", e);
+        }
+
+        RecordRef old;
+        switch (type) {
+            case TYPE_META_DATA:
+                SessionTypeId stid = new SessionTypeId(sid, tid);
+                old = storageMetaDataRefs.put(stid, ref);
+                storageMetaData.put(stid, (StorageMetaData) decodeRecord(record));
+                break;
+            case TYPE_STATIC_INFO:
+                SessionTypeWorkerId stwid = new SessionTypeWorkerId(sid, tid, wid);
+                old = staticInfoRefs.put(stwid, ref);
+                staticInfo.put(stwid, decodeRecord(record));
+                sessionIDs.add(sid);
+                break;
+            case TYPE_UPDATE:
+                UpdateIndex index = (UpdateIndex) getUpdateMap(sid, tid, wid, true);
+                old = index.put(timestamp, ref);
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type: " + type + " - storage may be corrupt");
+        }
+
+        if (old != null) {
+            supersede(old);
+        }
+    }
+
+    private void supersede(RecordRef ref) {
+        synchronized (ref) {
+            ref.superseded = true;
+            if (ref.location != NOT_WRITTEN) {
+                Segment s = segments.get(segmentId(ref.location));
+                if (s != null) {
+                    s.liveBytes.addAndGet(-ref.length);
+                }
+            }
+        }
+    }
+
+    private byte[] readRecord(RecordRef ref) {
+        while (true) {
+            byte[] pending = ref.pending;
+            if (pending != null) {
+                return pending;
+            }
+            long loc = ref.location;
+            Segment s = segments.get(segmentId(loc));
+            if (s == null) {
+                //Segment was compacted between reading the location and the segment lookup - location has changed
+                continue;
+            }
+            ByteBuffer bb = s.buffer.duplicate();
+            bb.position(offset(loc));
+            byte[] out = new byte[ref.length];
+            bb.get(out);
+            return out;
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    // ----- Writing -----
+
+    private void enqueue(byte type, Persistable p) {
+        if (isClosed) {
+            throw new IllegalStateException("Cannot store data: storage has been closed");
+        }
+        byte[] record = encodeRecord(type, p);
+        RecordRef ref = new RecordRef(record.length, record);
+        indexRecord(record, ref);
+        enqueuedCount.incrementAndGet();
+        try {
+            writeQueue.put(ref);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing record for storage", e);
+        }
+    }
+
+    /**
+     * Append the record to the active segment, rolling to a new segment if required. Must hold the write lock.
+     *
+     * @return Location of the record
+     */
+    private long append(byte[] record) throws IOException {
+        if (activeSegment.writePosition + record.length + 4 > activeSegment.capacity) {
+            //+4: always leave room for a zero length int, marking the end of the segment
+            rollSegment(record.length);
+        }
+        int position = activeSegment.writePosition;
+        ByteBuffer bb = activeSegment.buffer.duplicate();
+        //Write the record contents first, then the length: a partially written record is never seen as valid on reload
+        bb.position(position + 4);
+        bb.put(record, 4, record.length - 4);
+        activeSegment.buffer.putInt(position, record.length - 4);
+        activeSegment.writePosition = position + record.length;
+        activeSegment.liveBytes.addAndGet(record.length);
+        return location(activeSegment.id, position);
+    }
+
+    private void rollSegment(int minRecordLength) throws IOException {
+        activeSegment.buffer.force();
+        Segment sealed = activeSegment;
+        int capacity = Math.max(segmentSizeBytes, SEGMENT_HEADER_BYTES + minRecordLength + 4);
+        activeSegment = newSegment(sealed.id + 1, capacity);
+    }
+
+    private void writeBatch(List<RecordRef> batch) throws IOException {
+        synchronized (writeLock) {
+            int startSegment = activeSegment.id;
+            for (RecordRef ref : batch) {
+                synchronized (ref) {
+                    if (ref.superseded) {
+                        //Replaced before it was written: no need to write it at all
+                        continue;
+                    }
+                    ref.location = append(ref.pending);
+                    ref.pending = null;
+                }
+            }
+            if (activeSegment.id != startSegment) {
+                compactSegments();
+            }
+        }
+    }
+
+    /**
+     * Compact any sealed segments where the fraction of live (not superseded) data is below the compaction
+     * threshold: live records are copied to the active segment, and the old segment files are deleted.
+     * This is done automatically when a new segment is started, but may also be called manually.
+     */
+    public void compact() {
+        synchronized (writeLock) {
+            try {
+                compactSegments();
+            } catch (IOException e) {
+                throw new RuntimeException("Error compacting segments", e);
+            }
+        }
+    }
+
+    private void compactSegments() throws IOException {
+        List<Segment> toCompact = new ArrayList<>();
+        for (Segment s : segments.values()) {
+            if (s == activeSegment) {
+                continue;
+            }
+            double usedBytes = s.writePosition - SEGMENT_HEADER_BYTES;
+            if (usedBytes <= 0 || s.liveBytes.get() / usedBytes < compactionThreshold) {
+                toCompact.add(s);
+            }
+        }
+        if (toCompact.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> compactIds = new HashSet<>();
+        for (Segment s : toCompact) {
+            compactIds.add(s.id);
+        }
+
+        List<RecordRef> allRefs = new ArrayList<>();
+        allRefs.addAll(storageMetaDataRefs.values());
+        allRefs.addAll(staticInfoRefs.values());
+        for (Map<Long, Persistable> m : updates.values()) {
+            allRefs.addAll(((UpdateIndex) m).refs.values());
+        }
+        //Preserve the original record order, so that reloading gives the same result
+        Collections.sort(allRefs, new Comparator<RecordRef>() {
+            @Override
+            public int compare(RecordRef o1, RecordRef o2) {
+                return Long.compare(o1.location, o2.location);
+            }
+        });
+
+        int count = 0;
+        for (RecordRef ref : allRefs) {
+            synchronized (ref) {
+                if (ref.superseded || ref.location == NOT_WRITTEN || !compactIds.contains(segmentId(ref.location))) {
+                    continue;
+                }
+                byte[] record = readRecord(ref);
+                ref.location = append(record);
+                count++;
+            }
+        }
+        activeSegment.buffer.force();
+
+        for (Segment s : toCompact) {
+            segments.remove(s.id);
+            s.close();
+            if (!s.file.delete()) {
+                log.warn("Could not delete compacted segment file: {}", s.file.getAbsolutePath());
+            }
+        }
+        log.debug("Compacted {} segments: {} live records copied", toCompact.size(), count);
+    }
+
+    /**
+     * Block until all records stored before this call have been written to the segment files, and force the
+     * active segment to disk
+     */
+    public void flush() {
+        long target = enqueuedCount.get();
+        synchronized (flushMonitor) {
+            while (writtenCount < target && flusherThread.isAlive()) {
+                try {
+                    flushMonitor.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        synchronized (writeLock) {
+            activeSegment.buffer.force();
+        }
+    }
+
+    /**
+     * @return Number of segment files currently in use
+     */
+    public int numSegments() {
+        return segments.size();
+    }
+
+    private class Flusher implements Runnable {
+        @Override
+        public void run() {
+            List<RecordRef> batch = new ArrayList<>(maxBatchSize);
+            long lastSync = System.currentTimeMillis();
+            boolean dirty = false;
+            while (!isClosed || !writeQueue.isEmpty()) {
+                try {
+                    RecordRef first = writeQueue.poll(Math.max(1, syncIntervalMs), TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        writeQueue.drainTo(batch, maxBatchSize - 1);
+                        writeBatch(batch);
+                        dirty = true;
+                        synchronized (flushMonitor) {
+                            writtenCount += batch.size();
+                            flushMonitor.notifyAll();
+                        }
+                        batch.clear();
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (dirty && now - lastSync >= syncIntervalMs) {
+                        synchronized (writeLock) {
+                            activeSegment.buffer.force();
+                        }
+                        lastSync = now;
+                        dirty = false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable t) {
+                    log.error("Error writing stats storage records to {}", directory.getAbsolutePath(), t);
+                    synchronized (flushMonitor) {
+                        writtenCount += batch.size();
+                        flushMonitor.notifyAll();
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    // ----- StatsStorage -----
+
+    @Override
+    protected synchronized Map<Long, Persistable> getUpdateMap(String sessionID, String typeID, String workerID,
+                    boolean createIfRequired) {
+        SessionTypeWorkerId id = new SessionTypeWorkerId(sessionID, typeID, workerID);
+        if (updates.containsKey(id)) {
+            return updates.get(id);
+        }
+        if (!createIfRequired) {
+            return null;
+        }
+        UpdateIndex updateMap = new UpdateIndex();
+        updates.put(id, updateMap);
+        return updateMap;
+    }
+
+    @Override
+    public void putStaticInfo(Persistable staticInfo) {
+        List<StatsStorageEvent> sses = checkStorageEvents(staticInfo);
+        enqueue(TYPE_STATIC_INFO, staticInfo);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostStaticInfo, staticInfo.getSessionID(),
+                            staticInfo.getTypeID(), staticInfo.getWorkerID(), staticInfo.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putUpdate(Persistable update) {
+        List<StatsStorageEvent> sses = checkStorageEvents(update);
+        enqueue(TYPE_UPDATE, update);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostUpdate, update.getSessionID(),
+                            update.getTypeID(), update.getWorkerID(), update.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putStorageMetaData(StorageMetaData storageMetaData) {
+        List<StatsStorageEvent> sses = checkStorageEvents(storageMetaData);
+        enqueue(TYPE_META_DATA, storageMetaData);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostMetaData,
+                            storageMetaData.getSessionID(), storageMetaData.getTypeID(), storageMetaData.getWorkerID(),
+                            storageMetaData.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public int getNumUpdateRecordsFor(String sessionID, String typeID, String workerID) {
+        UpdateIndex index = (UpdateIndex) getUpdateMap(sessionID, typeID, workerID, false);
+        return index == null ? 0 : index.size();
+    }
+
+    @Override
+    public Persistable getLatestUpdate(String sessionID, String typeID, String workerID) {
+        UpdateIndex index = (UpdateIndex) getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null) {
+            return null;
+        }
+        Map.Entry<Long, RecordRef> e = index.refs.lastEntry();
+        return e == null ? null : decodeRecord(readRecord(e.getValue()));
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, String workerID, long timestamp) {
+        UpdateIndex index = (UpdateIndex) getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        //Skip list: already sorted by timestamp
+        Collection<RecordRef> refs = index.refs.tailMap(timestamp, false).values();
+        List<Persistable> list = new ArrayList<>(refs.size());
+        for (RecordRef ref : refs) {
+            list.add(decodeRecord(readRecord(ref)));
+        }
+        return list;
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, long timestamp) {
+        List<Persistable> list = new ArrayList<>();
+        for (Map.Entry<SessionTypeWorkerId, Map<Long, Persistable>> e : updates.entrySet()) {
+            SessionTypeWorkerId stw = e.getKey();
+            if (stw.getSessionID().equals(sessionID) && stw.getTypeID().equals(typeID)) {
+                for (RecordRef ref : ((UpdateIndex) e.getValue()).refs.tailMap(timestamp, false).values()) {
+                    list.add(decodeRecord(readRecord(ref)));
+                }
+            }
+        }
+
+        //Sort by time stamp
+        Collections.sort(list, new Comparator<Persistable>() {
+            @Override
+            public int compare(Persistable o1, Persistable o2) {
+                return Long.compare(o1.getTimeStamp(), o2.getTimeStamp());
+            }
+        });
+
+        return list;
+    }
+
+    @Override
+    public long[] getAllUpdateTimes(String sessionID, String typeID, String workerID) {
+        UpdateIndex index = (UpdateIndex) getUpdateMap(sessionID, typeID, workerID, false);
+        if (index == null) {
+            return new long[0];
+        }
+        List<Long> times = new ArrayList<>(index.refs.keySet());
+        long[] ret = new long[times.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = times.get(i);
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for queued records to be written", e);
+        }
+        synchronized (writeLock) {
+            for (Segment s : segments.values()) {
+                s.buffer.force();
+                s.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedLogStatsStorage(" + directory.getPath() + ")";
+    }
+
+    /**
+     * Update records for one session/type/worker ID, sorted by timestamp. Values are decoded from the segments
+     * when requested; modification is only possible via {@link #putUpdate(Persistable)}
+     */
+    private class UpdateIndex extends AbstractMap<Long, Persistable> {
+        private final ConcurrentSkipListMap<Long, RecordRef> refs = new ConcurrentSkipListMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private RecordRef put(long timestamp, RecordRef ref) {
+            RecordRef old = refs.put(timestamp, ref);
+            if (old == null) {
+                size.incrementAndGet();
+            }
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return size.get();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return refs.containsKey(key);
+        }
+
+        @Override
+        public Persistable get(Object key) {
+            RecordRef ref = refs.get(key);
+            return ref == null ? null : decodeRecord(readRecord(ref));
+        }
+
+        @Override
+        public Set<Long> keySet() {
+            return refs.keySet();
+        }
+
+        @Override
+        public Set<Entry<Long, Persistable>> entrySet() {
+            return new AbstractSet<Entry<Long, Persistable>>() {
+                @Override
+                public Iterator<Entry<Long, Persistable>> iterator() {
+                    final Iterator<Entry<Long, RecordRef>> iter = refs.entrySet().iterator();
+                    return new Iterator<Entry<Long, Persistable>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Long, Persistable> next() {
+                            Entry<Long, RecordRef> e = iter.next();
+                            return new SimpleImmutableEntry<>(e.getKey(), decodeRecord(readRecord(e.getValue())));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return UpdateIndex.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Location of a single record. Until written by the flusher thread, the encoded record is held in memory
+     */
+    private static class RecordRef {
+        private final int length;
+        private volatile byte[] pending;
+        private volatile long location = NOT_WRITTEN;
+        private boolean superseded;
+
+        private RecordRef(int length, byte[] pending) {
+            this.length = length;
+            this.pending = pending;
+        }
+    }
+
+    private static class Segment {
+        private final int id;
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int writePosition;
+        private final AtomicLong liveBytes = new AtomicLong();
+
+        private Segment(int id, File file, RandomAccessFile raf, MappedByteBuffer buffer, int capacity) {
+            this.id = id;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        private static Segment create(File file, int id, int capacity) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            Segment s = new Segment(id, file, raf, buffer, capacity);
+            s.writePosition = SEGMENT_HEADER_BYTES;
+            return s;
+        }
+
+        private static Segment open(File file, int id) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            int capacity = (int) raf.length();
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (capacity < SEGMENT_HEADER_BYTES || buffer.getInt(0) != SEGMENT_MAGIC) {
+                raf.close();
+                throw new IllegalStateException("Invalid segment file (bad header): " + file.getAbsolutePath());
+            }
+            int version = buffer.getInt(4);
+            if (version != FORMAT_VERSION) {
+                raf.close();
+                throw new IllegalStateException("Unsupported segment format version " + version + " for file "
+                                + file.getAbsolutePath());
+            }
+            return new Segment(id, file, raf, buffer, capacity);
+        }
+
+        private void close() throws IOException {
+            //Note: the mapping itself remains valid until garbage collected
+            raf.close();
+        }
+    }
+
+    @Data
+    public static class Builder {
+
+        private File directory;
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        private int queueCapacity = 16384;
+        private int maxBatchSize = 1024;
+        private long syncIntervalMs = 1000;
+        private double compactionThreshold = 0.5;
+
+        public Builder(@NonNull File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Size of each segment file. Default: 64MB
+         */
+        public Builder segmentSizeBytes(int segmentSizeBytes) {
+            this.segmentSizeBytes = segmentSizeBytes;
+            return this;
+        }
+
+        /**
+         * Maximum number of records queued for writing. If the queue is full, calls to store new data will block until
+         * there is space. Default: 16384
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Maximum number of records written by the flusher thread in one batch. Default: 1024
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Maximum interval between forcing written data to disk, in milliseconds. Default: 1000
+         */
+        public Builder syncIntervalMs(long syncIntervalMs) {
+            this.syncIntervalMs = syncIntervalMs;
+            return this;
+        }
+
+        /**
+         * Sealed segments with a fraction of live (not superseded) data below this value will be compacted.
+         * Default: 0.5
+         */
+        public Builder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        public SegmentedLogStatsStorage build() {
+            return new SegmentedLogStatsStorage(this);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.deeplearning4j.ui.stats.impl.SbeStatsInitializationReport;
 import org.deeplearning4j.ui.stats.impl.SbeStatsReport;
 import org.deeplearning4j.ui.stats.impl.java.JavaStatsInitializationReport;
 import org.deeplearning4j.ui.stats.impl.java.JavaStatsReport;
+import org.deeplearning4j.ui.storage.log.SegmentedLogStatsStorage;
 import org.deeplearning4j.ui.storage.mapdb.MapDBStatsStorage;
 import org.deeplearning4j.ui.storage.sqlite.J7FileStatsStorage;
 import org.junit.Rule;
@@ -54,7 +55,7 @@ public class TestStatsStorage {
     public void testStatsStorage() throws IOException {
 
         for (boolean useJ7Storage : new boolean[] {false, true}) {
-            for (int i = 0; i < 3; i++) {
+            for (int i = 0; i < 4; i++) {
 
                 StatsStorage ss;
                 switch (i) {
@@ -71,6 +72,11 @@ public class TestStatsStorage {
                     case 2:
                         ss = new InMemoryStatsStorage();
                         break;
+                    case 3:
+                        File dir = createTempFile("TestSegmentedLogStatsStore", "");
+                        dir.delete(); //Don't want file to exist...
+                        ss = new SegmentedLogStatsStorage(dir);
+                        break;
                     default:
                         throw new RuntimeException();
                 }
@@ -208,20 +214,24 @@ public class TestStatsStorage {
     public void testFileStatsStore() throws IOException {
 
         for (boolean useJ7Storage : new boolean[] {false, true}) {
-            for (int i = 0; i < 2; i++) {
+            for (int i = 0; i < 3; i++) {
                 File f;
                 if (i == 0) {
                     f = createTempFile("TestMapDbStatsStore", ".db");
-                } else {
+                } else if (i == 1) {
                     f = createTempFile("TestSqliteStatsStore", ".db");
+                } else {
+                    f = createTempFile("TestSegmentedLogStatsStore", "");
                 }
 
                 f.delete(); //Don't want file to exist...
                 StatsStorage ss;
                 if (i == 0) {
                     ss = new MapDBStatsStorage.Builder().file(f).build();
-                } else {
+                } else if (i == 1) {
                     ss = new J7FileStatsStorage(f);
+                } else {
+                    ss = new SegmentedLogStatsStorage(f);
                 }
 
 
@@ -327,8 +337,10 @@ public class TestStatsStorage {
 
                 if (i == 0) {
                     ss = new MapDBStatsStorage.Builder().file(f).build();
-                } else {
+                } else if (i == 1) {
                     ss = new J7FileStatsStorage(f);
+                } else {
+                    ss = new SegmentedLogStatsStorage(f);
                 }
 
 
@@ -353,6 +365,53 @@ public class TestStatsStorage {
         }
     }
 
+    @Test
+    public void testSegmentedLogStatsStorageCompaction() throws IOException {
+        File dir = createTempFile("TestSegmentedLogCompaction", "");
+        dir.delete();
+
+        //Small segments: force multiple segments, and compaction of superseded static info
+        SegmentedLogStatsStorage ss = new SegmentedLogStatsStorage.Builder(dir).segmentSizeBytes(8 * 1024)
+                        .maxBatchSize(16).build();
+
+        int nUpdates = 500;
+        for (int i = 0; i < nUpdates; i++) {
+            //Static info is re-written every iteration: only the last one is live
+            ss.putStaticInfo(getInitReport(0, 0, i % 4, false));
+            ss.putUpdate(getReport(0, 0, i % 4, 1000 + i, false));
+        }
+        ss.flush();
+        ss.compact();
+        assertTrue(String.valueOf(ss.numSegments()), ss.numSegments() > 1);
+
+        for (int w = 0; w < 4; w++) {
+            assertEquals(getInitReport(0, 0, w, false), ss.getStaticInfo("sid0", "tid0", "wid" + w));
+            assertEquals(nUpdates / 4, ss.getNumUpdateRecordsFor("sid0", "tid0", "wid" + w));
+            assertEquals(getReport(0, 0, w, 1000 + nUpdates - 4 + w, false), ss.getLatestUpdate("sid0", "tid0", "wid" + w));
+        }
+
+        List<Persistable> after = ss.getAllUpdatesAfter("sid0", "tid0", "wid1", 1000 + nUpdates - 20);
+        assertEquals(5, after.size());
+        for (int i = 1; i < after.size(); i++) {
+            assertTrue(after.get(i).getTimeStamp() > after.get(i - 1).getTimeStamp());
+        }
+        assertEquals(19, ss.getAllUpdatesAfter("sid0", "tid0", 1000 + nUpdates - 20).size());
+
+        //Reload: same contents expected
+        ss.close();
+        File[] segmentFiles = dir.listFiles();
+        SegmentedLogStatsStorage ss2 = new SegmentedLogStatsStorage(dir);
+        assertEquals(segmentFiles.length, ss2.numSegments());
+        assertEquals(Collections.singletonList("sid0"), ss2.listSessionIDs());
+        for (int w = 0; w < 4; w++) {
+            assertEquals(getInitReport(0, 0, w, false), ss2.getStaticInfo("sid0", "tid0", "wid" + w));
+            assertEquals(nUpdates / 4, ss2.getNumUpdateRecordsFor("sid0", "tid0", "wid" + w));
+            assertEquals(getReport(0, 0, w, 1000 + nUpdates - 4 + w, false), ss2.getLatestUpdate("sid0", "tid0", "wid" + w));
+        }
+        assertEquals(nUpdates, ss2.getNumUpdateRecordsFor("sid0"));
+        ss2.close();
+    }
+
     private static StatsInitializationReport getInitReport(int idNumber, int tid, int wid, boolean useJ7Storage) {
         StatsInitializationReport rep;
         if (useJ7Storage) {
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for DL4J benchmarks. Accepts all usual JMH command line options, i.e.:
+ * <pre>
+ *     java -jar dl4j-jmh-benchmarks.jar accumulation -p consumers=4,8 -rf csv -rff results.csv
+ * </pre>
+ *
+ * The only difference from default JMH runner: results are always published in machine-readable form.
+ * Unless specified otherwise via -rf/-rff options, results are written in JSON format to jmh-result.json,
+ * so they can be compared across builds.
+ */
+public class BenchmarkRunner {
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue())
+            builder.resultFormat(ResultFormatType.JSON);
+
+        if (!cmd.getResult().hasValue())
+            builder.result(DEFAULT_RESULT_FILE);
+
+        if (cmd.getIncludes().isEmpty())
+            builder.include("org.deeplearning4j.jmh.*");
+
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.accumulation;
+
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.AdaptiveThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.TargetSparsityThresholdAlgorithm;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Random;
+
+/**
+ * Utility methods shared by accumulation benchmarks
+ */
+class Gradients {
+    static final double THRESHOLD = 1e-3;
+
+    private Gradients() {
+        //
+    }
+
+    /**
+     * This method creates synthetic gradients, where given fraction of elements is above {@link #THRESHOLD}
+     * and everything else is below it, so encoding produces predictable number of elements
+     *
+     * @param length number of elements
+     * @param sparsity fraction of elements above threshold, 0..1
+     * @param seed random seed
+     * @return row vector
+     */
+    static INDArray create(int length, double sparsity, long seed) {
+        Random random = new Random(seed);
+        float[] values = new float[length];
+        for (int e = 0; e < length; e++) {
+            float sign = random.nextBoolean() ? 1.0f : -1.0f;
+            if (random.nextDouble() < sparsity)
+                values[e] = sign * (float) (THRESHOLD * (1.5 + random.nextDouble()));
+            else
+                values[e] = sign * (float) (THRESHOLD * 0.5 * random.nextDouble());
+        }
+
+        return Nd4j.create(values);
+    }
+
+    /**
+     * This method encodes given updates the same way EncodingHandler does for given sparsity:
+     * threshold encoding for sparse updates, bitmap encoding for dense ones
+     *
+     * PLEASE NOTE: updates are modified in place
+     */
+    static INDArray encode(INDArray updates, double sparsity) {
+        if (sparsity < 1.0 / 16) {
+            INDArray encoded = Nd4j.getExecutioner().thresholdEncode(updates, THRESHOLD);
+            if (encoded == null)
+                throw new IllegalStateException("Updates are too sparse, nothing was encoded");
+
+            return encoded;
+        }
+
+        DataBuffer buffer = Nd4j.getDataBufferFactory().createInt(updates.lengthLong() / 16 + 5);
+        INDArray encoded = Nd4j.createArrayFromShapeBuffer(buffer, updates.shapeInfoDataBuffer());
+        Nd4j.getExecutioner().bitmapEncode(updates, encoded, THRESHOLD);
+        return encoded;
+    }
+
+    /**
+     * This method decodes message into target, dispatching on encoding header just like accumulators do
+     */
+    static void decode(INDArray encoded, INDArray target) {
+        int encoding = encoded.data().getInt(3);
+        if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
+            Nd4j.getExecutioner().thresholdDecode(encoded, target);
+        else if (encoding == ThresholdCompression.BITMAP_ENCODING)
+            Nd4j.getExecutioner().bitmapDecode(encoded, target);
+        else
+            throw new IllegalStateException("Unknown encoding: " + encoding);
+    }
+
+    /**
+     * This method maps benchmark parameter to ThresholdAlgorithm instance
+     *
+     * @param name one of "fixed", "adaptive", "targetSparsity"
+     */
+    static ThresholdAlgorithm algorithm(String name, double sparsity) {
+        switch (name) {
+            case "fixed":
+                return new FixedThresholdAlgorithm(THRESHOLD);
+            case "adaptive":
+                return new AdaptiveThresholdAlgorithm(THRESHOLD);
+            case "targetSparsity":
+                return new TargetSparsityThresholdAlgorithm(THRESHOLD, Math.min(sparsity, 0.05),
+                                TargetSparsityThresholdAlgorithm.DEFAULT_DECAY_RATE);
+            default:
+                throw new IllegalArgumentException("Unknown threshold algorithm: [" + name + "]");
+        }
+    }
+}
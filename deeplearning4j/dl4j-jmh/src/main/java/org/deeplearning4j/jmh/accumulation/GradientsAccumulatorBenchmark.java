@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.accumulation;
+
+import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodedGradientsAccumulator;
+import org.deeplearning4j.optimize.stepfunctions.NegativeGradientStepFunction;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Cost of single training iteration synchronization within {@link EncodedGradientsAccumulator}: each of N consumers
+ * calls storeUpdate() followed by applyUpdate(), just like StochasticGradientDescent does within ParallelWrapper.
+ * So one benchmark invocation is one full round across all consumers, including encoding, broadcasting of messages
+ * to every consumer queue, barrier synchronization, and decoding of N messages by every consumer.
+ * With groupSize > 1 messages are reduced within groups first, so every consumer decodes group-level messages only.
+ *
+ * Consumers are backed by fixed thread pool, so measured contention is limited by number of available cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(1)
+public class GradientsAccumulatorBenchmark {
+
+    @Param({"2", "4", "8", "16", "32"})
+    public int consumers;
+
+    @Param({"1000000"})
+    public int length;
+
+    @Param({"0.001", "0.1"})
+    public double sparsity;
+
+    @Param({"fixed", "adaptive"})
+    public String algorithm;
+
+    @Param({"1", "4"})
+    public int groupSize;
+
+    private EncodedGradientsAccumulator accumulator;
+    private ExecutorService executor;
+    private List<Callable<Void>> workers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // every consumer gets message from every consumer within single round, so queues should be able to hold them all
+        int queueSize = consumers;
+        long messageBytes = (length / 16 + 64) * 4L;
+
+        accumulator = new EncodedGradientsAccumulator.Builder(consumers)
+                        .thresholdAlgorithm(Gradients.algorithm(algorithm, sparsity))
+                        .memoryParameters(messageBytes * queueSize * 2, queueSize)
+                        .groupSize(groupSize)
+                        .build();
+
+        executor = Executors.newFixedThreadPool(consumers);
+        workers = new ArrayList<>();
+        for (int i = 0; i < consumers; i++)
+            workers.add(new Worker(accumulator, Gradients.create(length, sparsity, 119 + i)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void storeAndApply() throws Exception {
+        accumulator.registerConsumers(consumers);
+
+        for (Future<Void> future : executor.invokeAll(workers))
+            future.get();
+    }
+
+    protected static class Worker implements Callable<Void> {
+        private final EncodedGradientsAccumulator accumulator;
+        private final StepFunction stepFunction = new NegativeGradientStepFunction();
+        private final INDArray gradients;
+        private final INDArray params;
+        private final INDArray updates;
+        private int iteration;
+
+        protected Worker(EncodedGradientsAccumulator accumulator, INDArray gradients) {
+            this.accumulator = accumulator;
+            this.gradients = gradients;
+            this.params = Nd4j.create(gradients.shape());
+            this.updates = Nd4j.create(gradients.shape());
+        }
+
+        @Override
+        public Void call() throws Exception {
+            accumulator.touch();
+            accumulator.storeUpdate(gradients, iteration++, 0);
+            accumulator.applyUpdate(stepFunction, params, updates, true);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.accumulation;
+
+import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link IndexedTail} operations: put() of encoded update, and drainTo() of pending updates by consumers.
+ *
+ * Consumers are emulated sequentially, using fake thread ids, so this benchmark measures cost of operations without
+ * contention. Contended case is covered by {@link GradientsAccumulatorBenchmark}. Unbounded producer against
+ * concurrent consumers isn't benchmarked on purpose: consumers fall behind, and every drain then decodes
+ * growing backlog, so numbers would only reflect backlog size.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IndexedTailBenchmark {
+
+    @State(Scope.Thread)
+    public static class SequentialState {
+        @Param({"1000000"})
+        public int length;
+
+        @Param({"0.001", "0.1"})
+        public double sparsity;
+
+        @Param({"1", "4", "16"})
+        public int consumers;
+
+        protected IndexedTail tail;
+        protected INDArray encoded;
+        protected INDArray target;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            INDArray gradients = Gradients.create(length, sparsity, 119);
+            encoded = Gradients.encode(gradients, sparsity);
+            target = Nd4j.create(gradients.shape());
+            tail = new IndexedTail(consumers, false, gradients.shape());
+
+            // registering all consumers upfront, so maintenance() is able to purge consumed updates
+            for (int c = 0; c < consumers; c++)
+                tail.hasAnything(c);
+        }
+    }
+
+    /**
+     * Single update goes in, and every consumer drains it
+     */
+    @Benchmark
+    public void putAndDrain(SequentialState state, Blackhole bh) {
+        state.tail.put(state.encoded);
+        for (int c = 0; c < state.consumers; c++)
+            bh.consume(state.tail.drainTo(c, state.target));
+    }
+}
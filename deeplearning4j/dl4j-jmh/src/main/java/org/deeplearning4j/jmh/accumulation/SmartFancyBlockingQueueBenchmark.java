@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.accumulation;
+
+import org.deeplearning4j.optimize.solvers.accumulation.SmartFancyBlockingQueue;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Cost of delivering batch of updates through {@link SmartFancyBlockingQueue}: producer puts given number of updates,
+ * and then all consumers poll them in lock-step. Once number of queued updates goes above decompression threshold,
+ * queue collapses them into single dense array, so both modes are covered depending on number of updates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(1)
+public class SmartFancyBlockingQueueBenchmark {
+
+    @Param({"1000000"})
+    public int length;
+
+    @Param({"0.001"})
+    public double sparsity;
+
+    @Param({"1", "2", "4"})
+    public int consumers;
+
+    @Param({"8", "64"})
+    public int updates;
+
+    private SmartFancyBlockingQueue queue;
+    private INDArray encoded;
+    private ExecutorService executor;
+    private List<Callable<Void>> workers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        INDArray gradients = Gradients.create(length, sparsity, 119);
+        encoded = Gradients.encode(gradients, sparsity);
+        queue = new SmartFancyBlockingQueue(32, Nd4j.create(gradients.shape()));
+
+        executor = Executors.newFixedThreadPool(consumers);
+        workers = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            workers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    while (!queue.isEmpty())
+                        queue.poll();
+                    return null;
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void putAndPoll() throws Exception {
+        for (int e = 0; e < updates; e++)
+            queue.put(encoded);
+
+        queue.registerConsumers(consumers);
+
+        for (Future<Void> future : executor.invokeAll(workers))
+            future.get();
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.accumulation;
+
+import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of threshold/bitmap encoding and decoding of gradients, as function of gradients sparsity.
+ *
+ * Sparsity is the fraction of elements above threshold. Values below 1/16 are encoded with threshold encoding,
+ * values above - with bitmap encoding, just like {@link EncodingHandler} does.
+ *
+ * Encoding modifies updates in place (encoded values are subtracted, leaving residual), so every encode invocation
+ * restores updates from pristine copy first. Cost of that copy is measured separately by {@link #restoreOnly()},
+ * and should be subtracted from encode results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ThresholdEncodingBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int length;
+
+    @Param({"0.0001", "0.001", "0.01", "0.1"})
+    public double sparsity;
+
+    private INDArray pristine;
+    private INDArray updates;
+    private INDArray encoded;
+    private INDArray decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pristine = Gradients.create(length, sparsity, 119);
+        updates = pristine.dup();
+        decoded = Nd4j.create(pristine.shape());
+        encoded = Gradients.encode(pristine.dup(), sparsity);
+    }
+
+    /**
+     * Threshold algorithm is relevant only for full encoding path, so it's kept in separate state
+     */
+    @State(Scope.Thread)
+    public static class HandlerState {
+        @Param({"fixed", "adaptive", "targetSparsity"})
+        public String algorithm;
+
+        protected EncodingHandler handler;
+        protected int iteration;
+
+        @Setup(Level.Trial)
+        public void setUp(ThresholdEncodingBenchmark benchmark) {
+            handler = new EncodingHandler(Gradients.algorithm(algorithm, benchmark.sparsity), null, null, false);
+        }
+    }
+
+    /**
+     * Full EncodingHandler path: threshold calculation, encoding format selection, and encoding itself
+     */
+    @Benchmark
+    public void encode(HandlerState state, Blackhole bh) {
+        updates.assign(pristine);
+        bh.consume(state.handler.encodeUpdates(state.iteration++, 0, updates));
+    }
+
+    /**
+     * Raw encoding op for given sparsity, without threshold algorithm involved
+     */
+    @Benchmark
+    public void encodeRaw(Blackhole bh) {
+        updates.assign(pristine);
+        bh.consume(Gradients.encode(updates, sparsity));
+    }
+
+    /**
+     * Baseline for encode benchmarks: restoring updates only
+     */
+    @Benchmark
+    public void restoreOnly(Blackhole bh) {
+        bh.consume(updates.assign(pristine));
+    }
+
+    /**
+     * Decoding of single message into dense updates array, as done by accumulators for every received message
+     */
+    @Benchmark
+    public void decode(Blackhole bh) {
+        Gradients.decode(encoded, decoded);
+        bh.consume(decoded);
+    }
+}
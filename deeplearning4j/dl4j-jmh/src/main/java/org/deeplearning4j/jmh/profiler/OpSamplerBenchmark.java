@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.jmh.profiler;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.ProfilerConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-op overhead of sampling profiler ({@link org.nd4j.linalg.profiler.sampling.OpSampler}).
+ *
+ * Small elementwise op is executed in a loop with profiling disabled, and with sampling enabled at given rate.
+ * Difference between "disabled" and "sampling" modes is the overhead paid by every op, which is expected to stay
+ * below 2% for default sampling rates. Small arrays are the worst case here, since op itself is cheap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OpSamplerBenchmark {
+
+    @Param({"disabled", "sampling", "samplingWithStack"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int samplingRate;
+
+    @Param({"16", "65536"})
+    public int length;
+
+    private INDArray array;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        array = Nd4j.create(DataType.FLOAT, length);
+
+        ProfilerConfig.ProfilerConfigBuilder builder = ProfilerConfig.builder();
+        if (!"disabled".equals(mode))
+            builder.samplingRate(samplingRate).samplingStackTrace("samplingWithStack".equals(mode));
+
+        Nd4j.getExecutioner().setProfilingConfig(builder.build());
+        OpProfiler.getInstance().reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().build());
+        OpProfiler.getInstance().reset();
+    }
+
+    @Benchmark
+    public void elementwiseOp(Blackhole bh) {
+        bh.consume(array.addi(1.0f));
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.jmh.transform;
+
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.spark.transform.CSVSparkTransform;
+import org.datavec.spark.transform.model.BatchCSVRecord;
+import org.datavec.spark.transform.model.SingleCSVRecord;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-side latency of a single CSV transform request: JSON {@link BatchCSVRecord} path vs. Arrow batch path.
+ *
+ * Both benchmarks start from the request body, as received by the server, and end with the response body, so
+ * the JSON path includes parsing and serialization of records, and the Arrow path includes reading and writing
+ * of the Arrow file. HTTP layer itself isn't included.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CSVSparkTransformBenchmark {
+
+    @State(Scope.Thread)
+    public static class TransformState {
+        @Param({"1", "64", "4096"})
+        public int rows;
+
+        protected ObjectMapper objectMapper = new ObjectMapper();
+        protected CSVSparkTransform transform;
+        protected String json;
+        protected byte[] arrow;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            Schema schema = new Schema.Builder()
+                    .addColumnInteger("id")
+                    .addColumnsDouble("x", "y", "z")
+                    .addColumnCategorical("category", "a", "b", "c")
+                    .addColumnString("comment")
+                    .build();
+
+            TransformProcess transformProcess = new TransformProcess.Builder(schema)
+                    .removeColumns("comment")
+                    .doubleMathOp("x", MathOp.Multiply, 2.0)
+                    .doubleMathOp("y", MathOp.Add, 1.0)
+                    .renameColumn("z", "z2")
+                    .build();
+            transform = new CSVSparkTransform(transformProcess);
+
+            BatchCSVRecord batch = new BatchCSVRecord();
+            List<List<Writable>> writables = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                String category = String.valueOf((char) ('a' + i % 3));
+                batch.add(new SingleCSVRecord(String.valueOf(i), String.valueOf(i * 0.5), String.valueOf(i * 0.25),
+                        String.valueOf(i * 0.125), category, "comment " + i));
+                writables.add(Arrays.<Writable>asList(new IntWritable(i), new DoubleWritable(i * 0.5),
+                        new DoubleWritable(i * 0.25), new DoubleWritable(i * 0.125), new Text(category),
+                        new Text("comment " + i)));
+            }
+
+            json = objectMapper.writeValueAsString(batch);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ArrowConverter.writeRecordBatchTo(writables, schema, baos);
+            arrow = baos.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public String json(TransformState state) throws Exception {
+        BatchCSVRecord input = state.objectMapper.readValue(state.json, BatchCSVRecord.class);
+        return state.objectMapper.writeValueAsString(state.transform.transform(input));
+    }
+
+    @Benchmark
+    public byte[] arrow(TransformState state) throws Exception {
+        return state.transform.transformArrow(state.arrow);
+    }
+}
@@ -1576,6 +1576,12 @@ public:
 
     Nd4jLong* mmapFile(Nd4jPointer *extraPointers, const char *fileName, Nd4jLong length);
 
+    /**
+     * Maps file read-only: file is opened for reading only, and any write into mapped memory is an access violation
+     * Mapping is released with munmapFile()
+     */
+    Nd4jLong* mmapFileReadOnly(Nd4jPointer *extraPointers, const char *fileName, Nd4jLong length);
+
     void munmapFile(Nd4jPointer *extraPointers, Nd4jLong* ptrMap, Nd4jLong length);
 
 
@@ -1844,6 +1844,32 @@ Nd4jLong* NativeOps::mmapFile(Nd4jPointer *extraPointers, const char *fileName,
 
 }
 
+Nd4jLong* NativeOps::mmapFileReadOnly(Nd4jPointer *extraPointers, const char *fileName, Nd4jLong length) {
+    auto hZ = new Nd4jLong[2];errno = 0;
+
+#if defined(_WIN32) || defined(_WIN64)
+    _mmapWithProtection(hZ, static_cast<size_t>(length), fileName, PROT_READ);
+#else
+    int fd = open(fileName, O_RDONLY, 0);
+    if (fd < 0) {
+        nd4j_printf("Errno: %i\n", errno);
+        throw std::runtime_error("Failed to open file for MMAP");
+    }
+    void * ptr = mmap(NULL, length, PROT_READ, MAP_SHARED, fd, 0);
+
+    if (ptr == MAP_FAILED) {
+        close(fd);
+        delete[] hZ;
+        return nullptr;
+    }
+
+    hZ[0] = (Nd4jLong) ptr;
+    hZ[1] = fd;
+#endif
+
+    return hZ;
+}
+
 void NativeOps::munmapFile(Nd4jPointer *extraPointers, Nd4jLong *ptrMap, Nd4jLong length) {
     munmap((Nd4jPointer) ptrMap[0], length);
 #if defined(_WIN32) || defined(_WIN64)
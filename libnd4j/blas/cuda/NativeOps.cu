@@ -3140,6 +3140,10 @@ Nd4jLong* NativeOps::mmapFile(Nd4jPointer *extraPointers, const char *fileName,
 	return nullptr;
 }
 
+Nd4jLong* NativeOps::mmapFileReadOnly(Nd4jPointer *extraPointers, const char *fileName, Nd4jLong length) {
+	return nullptr;
+}
+
 void NativeOps::munmapFile(Nd4jPointer *extraPointers, Nd4jLong* ptrMap, Nd4jLong length) {
 
 }
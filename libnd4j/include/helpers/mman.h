@@ -74,6 +74,7 @@ extern "C" {
 #define MS_INVALIDATE   4
 
 void _mmap(Nd4jLong* result, size_t length, const char *fileName);
+void _mmapWithProtection(Nd4jLong* result, size_t length, const char *fileName, int prot);
 void*   mmap(void *addr, size_t len, int prot, int flags, int fildes, OffsetType off);
 int     munmap(void *addr, size_t len);
 int     _mprotect(void *addr, size_t len, int prot);
@@ -132,11 +133,14 @@ static DWORD __map_mmap_prot_file(const int prot)
 }
 
 void _mmap(Nd4jLong* result, size_t length, const char *fileName) {
+    _mmapWithProtection(result, length, fileName, PROT_READ | PROT_WRITE);
+}
+
+void _mmapWithProtection(Nd4jLong* result, size_t length, const char *fileName, int prot) {
     HANDLE fm, h;
 
     void * map = MAP_FAILED;
     OffsetType off  = 0;
-    int prot = PROT_READ | PROT_WRITE;
 
     // we need to convert long path (probably) to short pat (actually)
     // it's Windows API, in the middle of 2018!
@@ -170,7 +174,8 @@ void _mmap(Nd4jLong* result, size_t length, const char *fileName) {
     #pragma warning(pop)
 #endif
 
-    h = CreateFile(shortName, GENERIC_READ | GENERIC_WRITE, FILE_SHARE_WRITE | FILE_SHARE_READ, nullptr, OPEN_EXISTING, FILE_ATTRIBUTE_NORMAL, nullptr);
+    const DWORD fileAccess = (prot & PROT_WRITE) != 0 ? GENERIC_READ | GENERIC_WRITE : GENERIC_READ;
+    h = CreateFile(shortName, fileAccess, FILE_SHARE_WRITE | FILE_SHARE_READ, nullptr, OPEN_EXISTING, FILE_ATTRIBUTE_NORMAL, nullptr);
 
     if (h == INVALID_HANDLE_VALUE) {
         errno = __map_mman_error(GetLastError(), EPERM);
@@ -137,6 +137,10 @@ public class SameDiff extends SDBaseOps {
     private final Map<String,DeviceLocalNDArray> constantArrays = new ConcurrentHashMap<>();
     private final Map<String,DeviceLocalNDArray> variablesArrays = new ConcurrentHashMap<>();     //TODO issues with DeviceLocal +  mutable / changed during training?
     private final Map<Long,Map<String,INDArray>> placeholdersPerThread = new ConcurrentHashMap<>(); //Placeholders for each thread - if the user sets them
+    @Getter
+    private ExecutionPlanCache executionPlanCache;                  //Compiled forward passes, shared between sessions. Null if disabled
+    @Getter
+    private volatile long graphVersion;                             //Incremented on every change of the graph structure. Part of execution plan keys
 
     ///////////////////////////////////////
     //Fields related to training
@@ -326,6 +330,7 @@ public class SameDiff extends SDBaseOps {
         oldVarNameRef.setVarName(withName);
         v.setName(withName);
         variables.put(withName, v);
+        graphModified();
 
         for(SameDiffOp op : ops.values()){
             List<String> outputsOfOp = op.getOutputsOfOp();
@@ -490,6 +495,7 @@ public class SameDiff extends SDBaseOps {
 
             sameDiff.ops.put(function.getOwnName(), op);
         }
+        sameDiff.graphModified();
 
         return sameDiff.variables().get(sameDiff.variables().size() - 1);
 
@@ -546,6 +552,7 @@ public class SameDiff extends SDBaseOps {
 
         } else {
             ops.put(id, SameDiffOp.builder().name(id).op(function).build());
+            graphModified();
         }
     }
 
@@ -1198,6 +1205,7 @@ public class SameDiff extends SDBaseOps {
         for (String resultName : varNames) {
             variables.get(resultName).setOutputOfOp(function.getOwnName());
         }
+        graphModified();
     }
 
     /**
@@ -1235,6 +1243,7 @@ public class SameDiff extends SDBaseOps {
             if(!funcs.contains(function.getOwnName()))  //Avoid duplicates for function names.
                 funcs.add(function.getOwnName());
         }
+        graphModified();
     }
 
 
@@ -1350,6 +1359,9 @@ public class SameDiff extends SDBaseOps {
         SameDiff clone = cloner.deepClone(this);
         //TODO don't clone sessions in the first place!
         clone.sessions.clear();
+        if(executionPlanCache != null){
+            clone.executionPlanCache = new ExecutionPlanCache(executionPlanCache.getMaxPlans());
+        }
         return clone;
     }
 
@@ -1907,6 +1919,7 @@ public class SameDiff extends SDBaseOps {
         SDVariable v = new SDVariable(name, VariableType.CONSTANT, this, constant.shape(), constant.dataType(), null);
         variables.put(name, Variable.builder().name(name).variable(v).build());
         constantArrays.put(name, new DeviceLocalNDArray(constant));
+        graphModified();
         return v;
     }
 
@@ -1945,6 +1958,7 @@ public class SameDiff extends SDBaseOps {
     public SDVariable placeHolder(String name, org.nd4j.linalg.api.buffer.DataType dataType, long...shape) {
         SDVariable ret = new SDVariable(name, VariableType.PLACEHOLDER, this, shape, dataType, null);
         variables.put(name, Variable.builder().name(name).variable(ret).build());
+        graphModified();
         return ret;
     }
 
@@ -2190,6 +2204,7 @@ public class SameDiff extends SDBaseOps {
 
         //Remove all sessions in case they have any cached arrays/state
         sessions.clear();
+        graphModified();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove("grad");
@@ -2294,6 +2309,7 @@ public class SameDiff extends SDBaseOps {
 
         //Remove all sessions in case they have any cached arrays/state
         sessions.clear();
+        graphModified();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove("grad");
@@ -2383,11 +2399,43 @@ public class SameDiff extends SDBaseOps {
                 }
 
                 ops.get(function.getOwnName()).setInputsToOp(newArgs);
+                graphModified();
                 break;
             }
         }
     }
 
+    /**
+     * Remove a variable from the graph, along with any array (constant, variable or placeholder value) held for it.<br>
+     * The variable must no longer be used: it must not be an input to any op, and the op that produced it (if any)
+     * must already have been removed from the graph. This is mainly used when rewriting graphs.
+     *
+     * @param varName Name of the variable to remove
+     */
+    public void removeVariable(@NonNull String varName){
+        Variable v = variables.get(varName);
+        Preconditions.checkState(v != null, "No variable with name \"%s\" exists", varName);
+        if(v.getInputsForOp() != null){
+            for(String s : v.getInputsForOp()){
+                Preconditions.checkState(!ops.containsKey(s), "Cannot remove variable \"%s\": variable is an input to op \"%s\"", varName, s);
+            }
+        }
+        Preconditions.checkState(v.getOutputOfOp() == null || !ops.containsKey(v.getOutputOfOp()),
+                "Cannot remove variable \"%s\": variable is an output of op \"%s\"", varName, v.getOutputOfOp());
+
+        variables.remove(varName);
+        constantArrays.remove(varName);
+        variablesArrays.remove(varName);
+        variableNameToShape.remove(varName);
+        for(Map<String,INDArray> m : placeholdersPerThread.values()){
+            m.remove(varName);
+        }
+
+        //Remove all sessions in case they have any cached arrays/state
+        sessions.clear();
+        graphModified();
+    }
+
     /**
      * Get the variable based on the opName
      *
@@ -2494,6 +2542,7 @@ public class SameDiff extends SDBaseOps {
 
         Preconditions.checkState(variable.getSameDiff() == this, "Same diff instance for variable must be the same!");
         variables.put(variable.getVarName(), Variable.builder().name(variable.getVarName()).variable(variable).build());
+        graphModified();
         return variable;
     }
 
@@ -3290,6 +3339,47 @@ public class SameDiff extends SDBaseOps {
         }
     }
 
+    /**
+     * Enable caching of execution plans for forward passes (inference), with at most
+     * {@link ExecutionPlanCache#DEFAULT_MAX_PLANS} plans cached.
+     *
+     * @see #enableExecutionPlanCache(int)
+     */
+    public void enableExecutionPlanCache(){
+        enableExecutionPlanCache(ExecutionPlanCache.DEFAULT_MAX_PLANS);
+    }
+
+    /**
+     * Enable caching of execution plans for forward passes (inference).<br>
+     * The first time a set of outputs is requested for placeholders of given shapes and types, the forward pass is
+     * scheduled dynamically as usual, and recorded as a straight-line list of ops with resolved inputs and precomputed
+     * array lifetimes. Subsequent calls with the same outputs and placeholder shapes replay the plan, skipping all
+     * graph traversal and dependency tracking. Graphs with control flow (loops, switch/merge, tensor arrays)
+     * are always scheduled dynamically.<br>
+     * Plans are keyed on the graph version (see {@link #graphModified()}), so they are never reused after the graph is modified.
+     *
+     * @param maxPlans Maximum number of plans to keep. Least recently used plans are evicted first
+     */
+    public void enableExecutionPlanCache(int maxPlans){
+        this.executionPlanCache = new ExecutionPlanCache(maxPlans);
+    }
+
+    /**
+     * Mark the structure of the graph as modified, so that execution plans created for the previous structure are not
+     * reused. This is done automatically by all SameDiff methods that add, remove, rename or reconnect ops and variables;
+     * code that edits {@link #getOps()} or {@link #getVariables()} directly must call this method after doing so.
+     */
+    public void graphModified(){
+        graphVersion++;
+    }
+
+    /**
+     * Disable caching of execution plans, and remove all cached plans
+     */
+    public void disableExecutionPlanCache(){
+        this.executionPlanCache = null;
+    }
+
     public Map<String,INDArray> execAll(Map<String,INDArray> placeholders){
         List<String> allVars = new ArrayList<>();
         for(Variable v : variables.values()){
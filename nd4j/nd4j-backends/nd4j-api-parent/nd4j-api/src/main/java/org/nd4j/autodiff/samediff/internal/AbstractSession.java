@@ -10,7 +10,10 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ops.impl.controlflow.If;
+import org.nd4j.linalg.api.ops.impl.controlflow.While;
 import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
 
 import java.util.*;
 
@@ -74,6 +77,13 @@ public abstract class AbstractSession<T, O> {
     @Getter
     protected final Map<String, FrameIter> frameParents = new HashMap<>();
 
+    /**
+     * Execution plan being recorded during the current (dynamically scheduled) forward pass, if plan caching is enabled.
+     * Null if not recording, or if the graph can't be compiled into a plan (i.e., it has control flow ops)
+     */
+    protected List<ExecutionPlan.Step> recordedSteps;
+    protected List<String> recordedLeaves;
+
 
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
@@ -138,6 +148,20 @@ public abstract class AbstractSession<T, O> {
 
         placeholderValues = preprocessPlaceholders(placeholderValues);
 
+        //If we have executed this exact forward pass before: just replay the compiled plan
+        Object planKey = planKey(variables, placeholderValues);
+        if (planKey != null) {
+            ExecutionPlan plan = getCachedPlan(planKey);
+            if (plan != null) {
+                return executePlan(plan, variables, placeholderValues);
+            }
+            recordedSteps = new ArrayList<>();
+            recordedLeaves = new ArrayList<>();
+        } else {
+            recordedSteps = null;
+            recordedLeaves = null;
+        }
+
         //Clear state from past
         availableForExec.clear();
         availableForExecSet.clear();
@@ -220,8 +244,16 @@ public abstract class AbstractSession<T, O> {
 
             log.trace("Beginning execution step {}: variable {}", step, varToExec);
 
+            if (recordedSteps != null && (!OUTER_FRAME.equals(varToExec.getFrame()) || varToExec.getIteration() != 0
+                    || (inputsToVarAllIter != null && !inputsToVarAllIter.isEmpty()))) {
+                //Loops/frames can't be represented as a straight-line plan
+                recordedSteps = null;
+            }
+
             if (sameDiff.getVariable(varToExec.getVariable()).isPlaceHolder()) {
                 //Variable is placeholder: do lookup
+                if (recordedSteps != null)
+                    recordedLeaves.add(varToExec.getVariable());
                 nodeOutputs.put(varToExec, placeholderValues.get(varToExec.getVariable()));
                 updateDescendentsForExec(step, varToExec); //Check + mark descendants as available for exec
                 if (variables.contains(varToExec.getVariable())) {  //Check if required output
@@ -231,6 +263,8 @@ public abstract class AbstractSession<T, O> {
                     sameDiff.getVariable(varToExec.getVariable()).getVariableType() == VariableType.VARIABLE) {
                 //Variable is constant: do lookup
                 //OR variable is VARIABLE type - i.e., a trainable parameter...
+                if (recordedSteps != null)
+                    recordedLeaves.add(varToExec.getVariable());
                 T phArr = getConstantOrVariable(varToExec.getVariable());
                 Preconditions.checkNotNull(phArr, "Encountered null placeholder array for constant: %s", varToExec);
                 nodeOutputs.put(varToExec, phArr);
@@ -253,6 +287,14 @@ public abstract class AbstractSession<T, O> {
                 //Post execution: work out what is now available for exec
                 String[] opOutputVarNames = sameDiff.getFunctionById(opName).outputVariablesNames();
 
+                if (recordedSteps != null) {
+                    if (isControlFlowOp(parameterizedOp)) {
+                        recordedSteps = null;
+                    } else {
+                        recordedSteps.add(new ExecutionPlan.Step(opName, inputsToVar, constPhForVar, opOutputVarNames));
+                    }
+                }
+
                 Preconditions.checkState(opOutputValues.length == opOutputVarNames.length, "Unexpected number of outputs from executed op %s:" +
                                 " got %s outputs when %s outputs were expected (%s)", parameterizedOp.getClass().getSimpleName(), opOutputValues.length,
                         opOutputVarNames.length, opOutputVarNames);
@@ -328,9 +370,93 @@ public abstract class AbstractSession<T, O> {
         //TODO under what circumstances should we clear the nodeOutputs map?
         //TODO when should we close the workspace? (Might want to leave it open if we expect to re-use)
 
+        if (recordedSteps != null) {
+            cachePlan(planKey, new ExecutionPlan(variables, recordedLeaves, recordedSteps));
+        }
+        recordedSteps = null;
+        recordedLeaves = null;
+
+        return out;
+    }
+
+    /**
+     * Replay a previously recorded execution plan: ops are executed in the recorded order with their recorded inputs,
+     * and intermediate results are released as soon as they are no longer required
+     */
+    protected Map<String, T> executePlan(ExecutionPlan plan, List<String> variables, Map<String, T> placeholderValues) {
+        availableForExec.clear();
+        availableForExecSet.clear();
+        subgraph.clear();
+        execInputs.clear();
+        execInputsAllIter.clear();
+        execConstInputs.clear();
+        nodeOutputs.clear();
+        tensorArrays.clear();
+
+        Set<String> requested = new HashSet<>(variables);
+        Map<String, T> out = new HashMap<>();
+        for (String leaf : plan.getLeafVariables()) {
+            T value = sameDiff.getVariable(leaf).isPlaceHolder() ? placeholderValues.get(leaf) : getConstantOrVariable(leaf);
+            Preconditions.checkNotNull(value, "Encountered null array for variable %s when executing cached plan", leaf);
+            nodeOutputs.put(newVarId(leaf, OUTER_FRAME, 0, null), value);
+            if (requested.contains(leaf)) {
+                out.put(leaf, value);
+            }
+        }
+
+        FrameIter frameIter = new FrameIter(OUTER_FRAME, 0, null);
+        for (ExecutionPlan.Step step : plan.getSteps()) {
+            O parameterizedOp = getAndParameterizeOp(step.getOpName(), frameIter, step.getInputs(), null, step.getConstAndPhInputs(), placeholderValues);
+            T[] opOutputValues = getOutputs(parameterizedOp, frameIter, step.getInputs(), null, step.getConstAndPhInputs());
+
+            String[] opOutputVarNames = step.getOutputVariables();
+            Preconditions.checkState(opOutputValues.length == opOutputVarNames.length, "Unexpected number of outputs from executed op %s:" +
+                    " got %s outputs when %s outputs were expected (%s)", step.getOpName(), opOutputValues.length,
+                    opOutputVarNames.length, opOutputVarNames);
+
+            for (int i = 0; i < opOutputVarNames.length; i++) {
+                nodeOutputs.put(newVarId(opOutputVarNames[i], OUTER_FRAME, 0, null), opOutputValues[i]);
+                if (requested.contains(opOutputVarNames[i])) {
+                    out.put(opOutputVarNames[i], opOutputValues[i]);
+                }
+            }
+
+            for (String s : step.getReleaseAfter()) {
+                nodeOutputs.remove(newVarId(s, OUTER_FRAME, 0, null));
+            }
+        }
+
         return out;
     }
 
+    protected boolean isControlFlowOp(O op) {
+        return op instanceof Switch || op instanceof Merge || op instanceof Enter || op instanceof Exit ||
+                op instanceof NextIteration || op instanceof LoopCond || op instanceof If || op instanceof While ||
+                op instanceof BaseTensorOp;
+    }
+
+    /**
+     * Key used to look up a cached execution plan for the given forward pass.
+     * Returns null (the default) if execution plans should not be used by this session.
+     */
+    protected Object planKey(List<String> variables, Map<String, T> placeholderValues) {
+        return null;
+    }
+
+    /**
+     * Get a cached execution plan for the given key, or null if none exists
+     */
+    protected ExecutionPlan getCachedPlan(Object planKey) {
+        return null;
+    }
+
+    /**
+     * Store a newly recorded execution plan
+     */
+    protected void cachePlan(Object planKey, ExecutionPlan plan) {
+        //No op by default
+    }
+
     protected void initSubgraph(List<String> variables) {
         //Step 1: determine subgraph structure we actually need to execute
         Queue<String> processingQueue = new LinkedList<>(variables);
@@ -0,0 +1,97 @@
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.nd4j.autodiff.samediff.internal.AbstractSession.VarId;
+
+import java.util.*;
+
+/**
+ * ExecutionPlan: a compiled, straight-line version of one forward pass.<br>
+ * It is recorded by {@link AbstractSession} during a normal (dynamically scheduled) execution, and holds:<br>
+ * - The constants, placeholders and variables the pass depends on<br>
+ * - The ops to execute, in execution order, with their input VarIds already resolved<br>
+ * - For each op, the intermediate results that are not needed after it (precomputed array lifetimes)<br>
+ * <br>
+ * Replaying a plan skips all subgraph, dependency and availability tracking. Only graphs without control flow
+ * (i.e., no frames, loops, switch/merge or tensor array ops) are compiled into plans.
+ */
+@Getter
+public class ExecutionPlan {
+
+    private final List<String> outputs;
+    private final List<String> leafVariables;
+    private final List<Step> steps;
+
+    public ExecutionPlan(List<String> outputs, List<String> leafVariables, List<Step> steps) {
+        this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+        this.leafVariables = Collections.unmodifiableList(new ArrayList<>(leafVariables));
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        computeLifetimes();
+    }
+
+    public int numOps() {
+        return steps.size();
+    }
+
+    /**
+     * Work out, for each op output, the last step that uses it. Anything not requested by the user can be released
+     * by the session right after that step.
+     */
+    private void computeLifetimes() {
+        Set<String> requested = new HashSet<>(outputs);
+        Map<String, Integer> lastUse = new HashMap<>();
+        Map<String, Integer> producedAt = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            Step s = steps.get(i);
+            if (s.getInputs() != null) {
+                for (VarId in : s.getInputs()) {
+                    lastUse.put(in.getVariable(), i);
+                }
+            }
+            for (String out : s.getOutputVariables()) {
+                producedAt.put(out, i);
+            }
+        }
+
+        List<List<String>> release = new ArrayList<>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            release.add(new ArrayList<String>());
+        }
+        for (Map.Entry<String, Integer> e : producedAt.entrySet()) {
+            String var = e.getKey();
+            if (requested.contains(var))
+                continue;
+            Integer last = lastUse.get(var);
+            int releaseAt = (last == null ? e.getValue() : Math.max(last, e.getValue()));
+            release.get(releaseAt).add(var);
+        }
+
+        for (int i = 0; i < steps.size(); i++) {
+            List<String> l = release.get(i);
+            steps.get(i).releaseAfter = l.toArray(new String[l.size()]);
+        }
+    }
+
+    /**
+     * A single op execution within a plan
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Step {
+        private final String opName;
+        /** Non-constant, non-placeholder inputs of the op, all in the outer frame */
+        private final Set<VarId> inputs;
+        /** Constant and placeholder inputs of the op */
+        private final Set<String> constAndPhInputs;
+        private final String[] outputVariables;
+        /** Variables that are not used by any later step, and are not requested outputs */
+        private String[] releaseAfter;
+
+        public Step(String opName, Set<VarId> inputs, Set<String> constAndPhInputs, String[] outputVariables) {
+            this(opName, inputs == null ? null : Collections.unmodifiableSet(new HashSet<>(inputs)),
+                    constAndPhInputs == null ? null : Collections.unmodifiableSet(new HashSet<>(constAndPhInputs)),
+                    outputVariables, new String[0]);
+        }
+    }
+}
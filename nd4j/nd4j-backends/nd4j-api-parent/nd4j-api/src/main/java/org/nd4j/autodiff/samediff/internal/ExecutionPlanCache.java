@@ -0,0 +1,110 @@
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.*;
+
+/**
+ * Bounded, least recently used cache of {@link ExecutionPlan}s for a single SameDiff instance.<br>
+ * Plans are keyed by the requested outputs, the shapes and types of the placeholder arrays, and the graph version
+ * (so plans are not reused after any modification of the graph, see {@link org.nd4j.autodiff.samediff.SameDiff#graphModified()}).<br>
+ * Plans are immutable, and the cache is shared between all threads/sessions of the SameDiff instance.
+ */
+public class ExecutionPlanCache {
+    public static final int DEFAULT_MAX_PLANS = 32;
+
+    private final int maxPlans;
+    private final LinkedHashMap<PlanKey, ExecutionPlan> plans;
+    private long hits;
+    private long misses;
+
+    public ExecutionPlanCache() {
+        this(DEFAULT_MAX_PLANS);
+    }
+
+    public ExecutionPlanCache(final int maxPlans) {
+        if (maxPlans < 1)
+            throw new IllegalArgumentException("Maximum number of cached plans must be positive, got " + maxPlans);
+        this.maxPlans = maxPlans;
+        this.plans = new LinkedHashMap<PlanKey, ExecutionPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanKey, ExecutionPlan> eldest) {
+                return size() > ExecutionPlanCache.this.maxPlans;
+            }
+        };
+    }
+
+    /**
+     * Create the cache key for a forward pass
+     *
+     * @param outputs      Requested outputs
+     * @param placeholders Placeholder arrays (may be null)
+     * @param graphVersion Version of the graph, see {@link org.nd4j.autodiff.samediff.SameDiff#getGraphVersion()}
+     */
+    public static PlanKey key(List<String> outputs, Map<String, INDArray> placeholders, long graphVersion) {
+        Map<String, PlaceholderKey> ph = new HashMap<>();
+        if (placeholders != null) {
+            for (Map.Entry<String, INDArray> e : placeholders.entrySet()) {
+                INDArray arr = e.getValue();
+                ph.put(e.getKey(), arr == null ? null : new PlaceholderKey(arr.shape(), arr.dataType()));
+            }
+        }
+        return new PlanKey(new HashSet<>(outputs), ph, graphVersion);
+    }
+
+    public synchronized ExecutionPlan get(PlanKey key) {
+        ExecutionPlan p = plans.get(key);
+        if (p == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return p;
+    }
+
+    public synchronized void put(PlanKey key, ExecutionPlan plan) {
+        plans.put(key, plan);
+    }
+
+    public synchronized void clear() {
+        plans.clear();
+    }
+
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    public int getMaxPlans() {
+        return maxPlans;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class PlanKey {
+        private final Set<String> outputs;
+        private final Map<String, PlaceholderKey> placeholders;
+        private final long graphVersion;
+    }
+
+    @EqualsAndHashCode
+    public static class PlaceholderKey {
+        private final long[] shape;
+        private final DataType dataType;
+
+        public PlaceholderKey(long[] shape, DataType dataType) {
+            this.shape = shape;
+            this.dataType = dataType;
+        }
+    }
+}
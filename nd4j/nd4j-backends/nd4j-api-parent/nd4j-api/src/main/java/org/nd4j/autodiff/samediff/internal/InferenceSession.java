@@ -457,6 +457,29 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
         }
     }
 
+    @Override
+    protected Object planKey(List<String> variables, Map<String,INDArray> placeholderValues) {
+        ExecutionPlanCache cache = sameDiff.getExecutionPlanCache();
+        if(cache == null)
+            return null;
+        return ExecutionPlanCache.key(variables, placeholderValues, sameDiff.getGraphVersion());
+    }
+
+    @Override
+    protected ExecutionPlan getCachedPlan(Object planKey) {
+        ExecutionPlanCache cache = sameDiff.getExecutionPlanCache();
+        return cache == null ? null : cache.get((ExecutionPlanCache.PlanKey) planKey);
+    }
+
+    @Override
+    protected void cachePlan(Object planKey, ExecutionPlan plan) {
+        ExecutionPlanCache cache = sameDiff.getExecutionPlanCache();
+        if(cache != null) {
+            log.trace("Caching execution plan with {} ops for outputs {}", plan.numOps(), plan.getOutputs());
+            cache.put((ExecutionPlanCache.PlanKey) planKey, plan);
+        }
+    }
+
     @Override
     public INDArray getConstantOrVariable(String variableName) {
         SDVariable v = sameDiff.getVariable(variableName);
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.RandomOp;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * Constant folding: any op whose inputs are all constants (directly, or via other foldable ops) is executed once,
+ * and its output is replaced by a constant with the same name.<br>
+ * Random ops are never folded, nor are control flow ops and ops involved in control dependencies.<br>
+ * Constants that are no longer used after folding are left for {@link DeadCodeElimination} to remove.
+ */
+@Slf4j
+public class ConstantFolding implements OptimizationPass {
+
+    @Override
+    public String name() {
+        return "ConstantFolding";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        //Find foldable ops in (any) order: keep going until no new foldable ops are found
+        Set<String> foldable = new LinkedHashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : sd.getOps().values()) {
+                String opName = op.getName();
+                if (!foldable.contains(opName) && canFold(sd, op, foldable)) {
+                    foldable.add(opName);
+                    changed = true;
+                }
+            }
+        }
+        if (foldable.isEmpty())
+            return 0;
+
+        //Only the outputs of the folded subgraph that are used elsewhere need to be calculated
+        List<String> toCalculate = new ArrayList<>();
+        Map<String, List<String>> consumers = new HashMap<>();
+        for (String opName : foldable) {
+            for (String out : sd.getOps().get(opName).getOutputsOfOp()) {
+                List<String> external = new ArrayList<>();
+                for (String c : RewriteUtil.consumers(sd, out)) {
+                    if (!foldable.contains(c))
+                        external.add(c);
+                }
+                if (!external.isEmpty() || protectedVars.contains(out)) {
+                    toCalculate.add(out);
+                    consumers.put(out, external);
+                }
+            }
+        }
+
+        Map<String, INDArray> values = Collections.emptyMap();
+        if (!toCalculate.isEmpty()) {
+            //Inference requires a value for every placeholder, even though none are used here: the folded subgraph
+            // only depends on constants. Dummy values are provided to satisfy this check
+            Map<String, INDArray> placeholders = new HashMap<>();
+            for (String ph : sd.inputs()) {
+                placeholders.put(ph, Nd4j.scalar(sd.getVariable(ph).dataType(), 0));
+            }
+            values = new InferenceSession(sd).output(toCalculate, placeholders);
+        }
+
+        for (String opName : foldable) {
+            for (String out : sd.getOps().get(opName).getOutputsOfOp()) {
+                sd.getVariables().get(out).setInputsForOp(new ArrayList<String>());
+            }
+        }
+        for (String opName : foldable) {
+            RewriteUtil.removeOp(sd, opName);
+        }
+        for (String s : toCalculate) {
+            SDVariable c = sd.constant(s, values.get(s).dup());
+            sd.getVariables().get(c.getVarName()).setInputsForOp(consumers.get(s));
+        }
+
+        log.debug("Folded {} ops into {} constants", foldable.size(), toCalculate.size());
+        return foldable.size();
+    }
+
+    protected boolean canFold(SameDiff sd, SameDiffOp op, Set<String> foldable) {
+        DifferentialFunction df = op.getOp();
+        List<String> inputs = op.getInputsToOp();
+        if (inputs == null || inputs.isEmpty() || op.getOutputsOfOp() == null || op.getOutputsOfOp().isEmpty())
+            return false;
+        if (df instanceof RandomOp || df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.random") ||
+                RewriteUtil.isStructural(df) || RewriteUtil.hasControlDependencies(sd, op.getName()))
+            return false;
+
+        for (String in : inputs) {
+            if (RewriteUtil.isConstant(sd, in))
+                continue;
+            SameDiffOp p = RewriteUtil.producer(sd, in);
+            if (p == null || !foldable.contains(p.getName()))
+                return false;
+        }
+        return true;
+    }
+}
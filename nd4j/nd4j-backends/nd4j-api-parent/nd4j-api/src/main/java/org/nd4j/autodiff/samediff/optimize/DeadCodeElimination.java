@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes ops whose outputs are not used, and constants that are no longer used by any op.<br>
+ * Placeholders and trainable variables are never removed, nor are protected variables and anything involved in
+ * control dependencies.
+ */
+@Slf4j
+public class DeadCodeElimination implements OptimizationPass {
+
+    @Override
+    public String name() {
+        return "DeadCodeElimination";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        int count = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : new ArrayList<>(sd.getOps().values())) {
+                if (isDead(sd, op, protectedVars)) {
+                    RewriteUtil.removeOp(sd, op.getName());
+                    count++;
+                    changed = true;
+                }
+            }
+        }
+
+        int removedConstants = 0;
+        for (Variable v : new ArrayList<>(sd.getVariables().values())) {
+            if (v.getVariable().getVariableType() == VariableType.CONSTANT && !protectedVars.contains(v.getName())
+                    && isUnused(v)) {
+                sd.removeVariable(v.getName());
+                removedConstants++;
+            }
+        }
+
+        log.debug("Removed {} unused ops and {} unused constants", count, removedConstants);
+        return count + removedConstants;
+    }
+
+    protected boolean isDead(SameDiff sd, SameDiffOp op, Set<String> protectedVars) {
+        List<String> outputs = op.getOutputsOfOp();
+        if (outputs == null || outputs.isEmpty() || RewriteUtil.isStructural(op.getOp())
+                || RewriteUtil.hasControlDependencies(sd, op.getName()))
+            return false;
+        for (String s : outputs) {
+            if (protectedVars.contains(s) || !isUnused(sd.getVariables().get(s)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isUnused(Variable v) {
+        return (v.getInputsForOp() == null || v.getInputsForOp().isEmpty())
+                && (v.getControlDepsForOp() == null || v.getControlDepsForOp().isEmpty())
+                && (v.getControlDepsForVar() == null || v.getControlDepsForVar().isEmpty());
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collapses chains of elementwise additions and multiplications by constants into a single op:<br>
+ * - scalar ops: (x + a) + b becomes x + (a+b), and (x * a) * b becomes x * (a*b)<br>
+ * - pairwise ops with constant arrays: add(add(x, c1), c2) becomes add(x, add(c1, c2)), and similarly for mul.
+ * The new add(c1, c2) op only depends on constants, and is reduced to a single constant by a subsequent
+ * {@link ConstantFolding} pass.<br>
+ * The chain is collapsed by reassociating the operations, so results may differ from the original graph in the last
+ * bits due to floating point rounding.
+ */
+@Slf4j
+public class ElementwiseChainFusion implements OptimizationPass {
+
+    @Override
+    public String name() {
+        return "ElementwiseChainFusion";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        //Outputs of the constant-only ops added by this pass: treated as constants, so chains of any length are collapsed
+        Set<String> constants = new HashSet<>();
+        int count = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : new ArrayList<>(sd.getOps().values())) {
+                if (!sd.getOps().containsKey(op.getName()))
+                    continue;
+                Class<?> c = op.getOp().getClass();
+                boolean fused = false;
+                if (c == ScalarAdd.class || c == ScalarMultiplication.class) {
+                    fused = fuseScalar(sd, op, protectedVars);
+                } else if (c == AddOp.class || c == MulOp.class) {
+                    fused = fusePairwise(sd, op, protectedVars, constants);
+                }
+                if (fused) {
+                    count++;
+                    changed = true;
+                }
+            }
+        }
+
+        log.debug("Collapsed {} elementwise ops", count);
+        return count;
+    }
+
+    protected boolean fuseScalar(SameDiff sd, SameDiffOp outer, Set<String> protectedVars) {
+        if (outer.getInputsToOp() == null || outer.getInputsToOp().size() != 1)
+            return false;
+        String mid = outer.getInputsToOp().get(0);
+        SameDiffOp inner = RewriteUtil.producer(sd, mid);
+        if (inner == null || inner.getOp().getClass() != outer.getOp().getClass() || inner.getInputsToOp().size() != 1
+                || !RewriteUtil.isOnlyUsedBy(sd, mid, outer.getName(), protectedVars)
+                || RewriteUtil.hasControlDependencies(sd, outer.getName()) || RewriteUtil.hasControlDependencies(sd, inner.getName()))
+            return false;
+
+        String src = inner.getInputsToOp().get(0);
+        if (sd.getVariable(src).dataType() != sd.getVariable(mid).dataType())
+            return false;
+
+        BaseScalarOp o = (BaseScalarOp) outer.getOp();
+        BaseScalarOp i = (BaseScalarOp) inner.getOp();
+        INDArray a = i.scalar();
+        INDArray b = o.scalar();
+        if (a == null || b == null)
+            return false;
+
+        double combined = o instanceof ScalarAdd ? a.getDouble(0) + b.getDouble(0) : a.getDouble(0) * b.getDouble(0);
+        o.setScalar(Nd4j.scalar(b.dataType(), combined));
+        RewriteUtil.replaceInput(sd, outer.getName(), mid, src);
+        RewriteUtil.removeOp(sd, inner.getName());
+        return true;
+    }
+
+    protected boolean fusePairwise(SameDiff sd, SameDiffOp outer, Set<String> protectedVars, Set<String> constants) {
+        List<String> outerIn = outer.getInputsToOp();
+        if (outerIn == null || outerIn.size() != 2 || RewriteUtil.hasControlDependencies(sd, outer.getName()))
+            return false;
+
+        for (int j = 0; j < 2; j++) {
+            String mid = outerIn.get(j);
+            String c2 = outerIn.get(1 - j);
+            if (!isConstant(sd, c2, constants))
+                continue;
+            SameDiffOp inner = RewriteUtil.producer(sd, mid);
+            if (inner == null || inner.getOp().getClass() != outer.getOp().getClass() || inner.getInputsToOp().size() != 2
+                    || !RewriteUtil.isOnlyUsedBy(sd, mid, outer.getName(), protectedVars)
+                    || RewriteUtil.hasControlDependencies(sd, inner.getName()))
+                continue;
+
+            List<String> innerIn = inner.getInputsToOp();
+            for (int k = 0; k < 2; k++) {
+                String x = innerIn.get(k);
+                String c1 = innerIn.get(1 - k);
+                if (isConstant(sd, x, constants) || !isConstant(sd, c1, constants))
+                    continue;
+                if (sd.getVariable(x).dataType() != sd.getVariable(c1).dataType() || sd.getVariable(c1).dataType() != sd.getVariable(c2).dataType())
+                    continue;
+
+                SDVariable[] args = new SDVariable[]{sd.getVariable(c1), sd.getVariable(c2)};
+                DifferentialFunction df = outer.getOp() instanceof AddOp ? new AddOp(sd, args, false) : new MulOp(sd, args, false);
+                String combined = df.outputVariables()[0].getVarName();
+                constants.add(combined);
+
+                RewriteUtil.replaceInput(sd, outer.getName(), mid, x);
+                RewriteUtil.replaceInput(sd, outer.getName(), c2, combined);
+                RewriteUtil.removeOp(sd, inner.getName());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConstant(SameDiff sd, String varName, Set<String> constants) {
+        return RewriteUtil.isConstant(sd, varName) || constants.contains(varName);
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * GraphOptimizer rewrites a SameDiff graph for faster inference, by applying a pipeline of {@link OptimizationPass}es.<br>
+ * It is intended to be used after a graph has been imported (for example, via TFGraphMapper) and before it is executed.
+ * The default pipeline is:<br>
+ * - {@link ConstantFolding}: precompute everything that depends only on constants<br>
+ * - {@link IdentityElimination}: remove identity ops, x+0, x*1 etc<br>
+ * - {@link ShapeOpCancellation}: merge reshape chains, remove transposes that cancel out<br>
+ * - {@link ElementwiseChainFusion}: collapse chains of additions/multiplications by constants<br>
+ * - {@link ConstantFolding}: fold the constants combined by the previous pass<br>
+ * - {@link LinearActivationFusion}: mmul + bias add (+ relu) into xw_plus_b or relu_layer<br>
+ * - {@link DeadCodeElimination}: remove ops and constants that are no longer used<br>
+ * <br>
+ * The original SameDiff instance is not modified: a copy is made, optimized and returned. All requested outputs
+ * keep their names, so the optimized graph can be executed exactly like the original one.<br>
+ * Usage:
+ * <pre>
+ * {@code
+ * OptimizationResult r = new GraphOptimizer().optimize(sd, "output");
+ * log.info(r.summary());
+ * INDArray out = r.getSameDiff().execSingle(placeholders, "output");
+ * }
+ * </pre>
+ */
+@Slf4j
+public class GraphOptimizer {
+
+    @Getter
+    private final List<OptimizationPass> passes;
+
+    /**
+     * Create an optimizer with the default pipeline of passes
+     */
+    public GraphOptimizer() {
+        this(defaultPasses());
+    }
+
+    /**
+     * Create an optimizer with the specified passes, applied in order
+     */
+    public GraphOptimizer(@NonNull OptimizationPass... passes) {
+        this(Arrays.asList(passes));
+    }
+
+    /**
+     * Create an optimizer with the specified passes, applied in order
+     */
+    public GraphOptimizer(@NonNull List<OptimizationPass> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    /**
+     * @return The default pipeline of optimization passes
+     */
+    public static List<OptimizationPass> defaultPasses() {
+        return Arrays.<OptimizationPass>asList(
+                new ConstantFolding(),
+                new IdentityElimination(),
+                new ShapeOpCancellation(),
+                new ElementwiseChainFusion(),
+                new ConstantFolding(),
+                new LinearActivationFusion(),
+                new DeadCodeElimination());
+    }
+
+    /**
+     * Optimize the graph. See {@link #optimize(SameDiff, List)}
+     */
+    public OptimizationResult optimize(@NonNull SameDiff sd, String... outputs) {
+        return optimize(sd, outputs == null ? null : Arrays.asList(outputs));
+    }
+
+    /**
+     * Optimize a copy of the graph, for calculating the specified outputs.<br>
+     * Parts of the graph that are not required to calculate these outputs may be removed. If no outputs are specified,
+     * all variables that are not used by any op (i.e., the final outputs of the graph) are preserved.
+     *
+     * @param sd      SameDiff instance to optimize. Not modified
+     * @param outputs Names of the variables that will be requested from the optimized graph. May be null
+     * @return The optimized graph, and statistics for each pass
+     */
+    public OptimizationResult optimize(@NonNull SameDiff sd, List<String> outputs) {
+        SameDiff out = sd.dup();
+
+        Set<String> protectedVars = new HashSet<>();
+        if (outputs != null && !outputs.isEmpty()) {
+            for (String s : outputs) {
+                Preconditions.checkState(out.hasVariable(s), "Requested output variable \"%s\" does not exist in graph", s);
+                protectedVars.add(s);
+            }
+        } else {
+            for (Variable v : out.getVariables().values()) {
+                if (v.getVariable().getVariableType() == VariableType.ARRAY &&
+                        (v.getInputsForOp() == null || v.getInputsForOp().isEmpty())) {
+                    protectedVars.add(v.getName());
+                }
+            }
+        }
+
+        int opsBefore = out.getOps().size();
+        List<OptimizationResult.PassResult> results = new ArrayList<>();
+        for (OptimizationPass p : passes) {
+            int before = out.getOps().size();
+            long start = System.currentTimeMillis();
+            int rewrites = p.apply(out, protectedVars);
+            long time = System.currentTimeMillis() - start;
+            results.add(new OptimizationResult.PassResult(p.name(), rewrites, before, out.getOps().size(), time));
+        }
+
+        OptimizationResult r = new OptimizationResult(out, opsBefore, out.getOps().size(), results);
+        log.debug("Graph optimization: {}", r.summary());
+        return r;
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarSubtraction;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes ops that return their input unchanged: identity ops (common in imported TensorFlow graphs), and scalar
+ * ops that add or subtract 0, or multiply or divide by 1.<br>
+ * Users of the op's output are connected directly to the op's input. If the op's output is a requested graph output,
+ * the op's input is renamed instead, when that is possible without affecting other parts of the graph.
+ */
+@Slf4j
+public class IdentityElimination implements OptimizationPass {
+
+    @Override
+    public String name() {
+        return "IdentityElimination";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        int count = 0;
+        for (SameDiffOp op : new ArrayList<>(sd.getOps().values())) {
+            if (!isIdentity(op.getOp()))
+                continue;
+            List<String> inputs = op.getInputsToOp();
+            List<String> outputs = op.getOutputsOfOp();
+            if (inputs == null || inputs.size() != 1 || outputs == null || outputs.size() != 1 ||
+                    RewriteUtil.hasControlDependencies(sd, op.getName()))
+                continue;
+
+            String in = inputs.get(0);
+            String out = outputs.get(0);
+            SDVariable inVar = sd.getVariable(in);
+            if (inVar.dataType() != sd.getVariable(out).dataType())
+                continue;
+
+            if (!protectedVars.contains(out)) {
+                RewriteUtil.replaceAllUses(sd, out, in);
+                RewriteUtil.removeOp(sd, op.getName());
+                count++;
+            } else if (inVar.getVariableType() == VariableType.ARRAY && RewriteUtil.isOnlyUsedBy(sd, in, op.getName(), protectedVars)
+                    && !RewriteUtil.hasControlDependencies(sd, RewriteUtil.producer(sd, in).getName())) {
+                //Output must keep its name: remove the identity op, and give its name to the input instead
+                List<String> consumers = new ArrayList<>(RewriteUtil.consumers(sd, out));
+                sd.getVariables().get(out).setInputsForOp(new ArrayList<String>());
+                RewriteUtil.removeOp(sd, op.getName());
+                RewriteUtil.renameInto(sd, inVar, out, consumers);
+                count++;
+            }
+        }
+
+        log.debug("Removed {} identity ops", count);
+        return count;
+    }
+
+    protected boolean isIdentity(DifferentialFunction df) {
+        Class<?> c = df.getClass();
+        if (c == Identity.class)
+            return true;
+
+        if (c != ScalarAdd.class && c != ScalarSubtraction.class && c != ScalarMultiplication.class && c != ScalarDivision.class)
+            return false;
+        INDArray scalar = ((BaseScalarOp) df).scalar();
+        if (scalar == null || scalar.length() != 1)
+            return false;
+        double d = scalar.getDouble(0);
+        if (c == ScalarAdd.class || c == ScalarSubtraction.class)
+            return d == 0.0;
+        return d == 1.0;
+    }
+}
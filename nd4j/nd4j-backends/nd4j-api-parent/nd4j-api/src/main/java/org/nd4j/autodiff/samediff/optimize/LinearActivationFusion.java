@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.transform.GraphTransformUtil;
+import org.nd4j.autodiff.samediff.transform.OpPredicate;
+import org.nd4j.autodiff.samediff.transform.SubGraph;
+import org.nd4j.autodiff.samediff.transform.SubGraphPredicate;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fuses fully connected layers into a single op:<br>
+ * - relu(biasadd(mmul(x, W), b)) becomes relu_layer(x, W, b)<br>
+ * - biasadd(mmul(x, W), b) becomes xw_plus_b(x, W, b)<br>
+ * Only rank 2 matrix multiplications without transposes are fused. The intermediate results must not be used anywhere
+ * else in the graph. The fused op takes the name of the last op's output variable.
+ */
+@Slf4j
+public class LinearActivationFusion implements OptimizationPass {
+
+    @Override
+    public String name() {
+        return "LinearActivationFusion";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        SubGraphPredicate linear = SubGraphPredicate.withRoot(OpPredicate.classEquals(BiasAdd.class)).withInputCount(2)
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(OpPredicate.classEquals(Mmul.class)).withInputCount(2));
+        SubGraphPredicate reluLinear = SubGraphPredicate.withRoot(OpPredicate.classEquals(RectifiedLinear.class)).withInputCount(1)
+                .withInputSubgraph(0, linear);
+
+        int count = 0;
+        //Relu layers first: otherwise the bias add would already have been fused into xw_plus_b
+        for (SubGraph sg : GraphTransformUtil.getSubgraphsMatching(sd, reluLinear)) {
+            SameDiffOp relu = sd.getOps().get(sg.getRootNode().getOwnName());
+            if (relu == null || !isZero(((RectifiedLinear) relu.getOp()).scalar()))
+                continue;
+            SameDiffOp bias = RewriteUtil.producer(sd, relu.getInputsToOp().get(0));
+            if (bias != null && fuse(sd, relu, bias, protectedVars))
+                count++;
+        }
+
+        for (SubGraph sg : GraphTransformUtil.getSubgraphsMatching(sd, linear)) {
+            SameDiffOp bias = sd.getOps().get(sg.getRootNode().getOwnName());
+            if (bias != null && fuse(sd, null, bias, protectedVars))
+                count++;
+        }
+
+        log.debug("Fused {} linear layers", count);
+        return count;
+    }
+
+    protected boolean fuse(SameDiff sd, SameDiffOp relu, SameDiffOp bias, Set<String> protectedVars) {
+        String z = bias.getInputsToOp().get(0);
+        String b = bias.getInputsToOp().get(1);
+        SameDiffOp mmul = RewriteUtil.producer(sd, z);
+        if (mmul == null || !(mmul.getOp() instanceof Mmul) || !RewriteUtil.isOnlyUsedBy(sd, z, bias.getName(), protectedVars))
+            return false;
+        String biasOut = bias.getOutputsOfOp().get(0);
+        if (relu != null && !RewriteUtil.isOnlyUsedBy(sd, biasOut, relu.getName(), protectedVars))
+            return false;
+        if (RewriteUtil.hasControlDependencies(sd, mmul.getName()) || RewriteUtil.hasControlDependencies(sd, bias.getName())
+                || (relu != null && RewriteUtil.hasControlDependencies(sd, relu.getName())))
+            return false;
+
+        for (long l : ((DynamicCustomOp) mmul.getOp()).iArgs()) {
+            if (l != 0)
+                return false;       //Transposed inputs or output
+        }
+
+        SDVariable x = sd.getVariable(mmul.getInputsToOp().get(0));
+        SDVariable w = sd.getVariable(mmul.getInputsToOp().get(1));
+        SDVariable bVar = sd.getVariable(b);
+        long[] wShape = w.getShape();
+        long[] bShape = bVar.getShape();
+        if (wShape == null || wShape.length != 2 || bShape == null || bShape.length != 1)
+            return false;
+        if (!x.dataType().isFPType() || x.dataType() != w.dataType() || x.dataType() != bVar.dataType())
+            return false;
+
+        SameDiffOp last = relu != null ? relu : bias;
+        String outName = last.getOutputsOfOp().get(0);
+        List<String> consumers = new ArrayList<>(RewriteUtil.consumers(sd, outName));
+
+        DifferentialFunction fused = relu != null ? new ReluLayer(sd, x, w, bVar) : new XwPlusB(sd, x, w, bVar);
+        SDVariable out = fused.outputVariables()[0];
+
+        sd.getVariables().get(outName).setInputsForOp(new ArrayList<String>());
+        RewriteUtil.removeOp(sd, last.getName());
+        if (relu != null)
+            RewriteUtil.removeOp(sd, bias.getName());
+        RewriteUtil.removeOp(sd, mmul.getName());
+        RewriteUtil.renameInto(sd, out, outName, consumers);
+        return true;
+    }
+
+    private static boolean isZero(INDArray scalar) {
+        return scalar == null || (scalar.length() == 1 && scalar.getDouble(0) == 0.0);
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import org.nd4j.autodiff.samediff.SameDiff;
+
+import java.util.Set;
+
+/**
+ * An OptimizationPass is a single graph rewrite step, applied by {@link GraphOptimizer}.<br>
+ * Passes modify the SameDiff instance in place. They must not change the values computed for any of the protected
+ * variables (the requested outputs of the graph), and must not remove or rename them.
+ */
+public interface OptimizationPass {
+
+    /**
+     * @return Name of the pass, for reporting
+     */
+    String name();
+
+    /**
+     * Apply the optimization to the graph
+     *
+     * @param sd            SameDiff instance to modify
+     * @param protectedVars Names of the variables that must be preserved - usually the graph outputs
+     * @return Number of rewrites that were applied. 0 if the graph was not modified
+     */
+    int apply(SameDiff sd, Set<String> protectedVars);
+
+}
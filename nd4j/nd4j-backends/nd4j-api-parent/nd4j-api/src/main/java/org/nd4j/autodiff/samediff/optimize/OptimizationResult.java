@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nd4j.autodiff.samediff.SameDiff;
+
+import java.util.List;
+
+/**
+ * The result of {@link GraphOptimizer#optimize(SameDiff, List)}: the optimized graph, plus the number of rewrites
+ * and op count reduction for each pass
+ */
+@Data
+@AllArgsConstructor
+public class OptimizationResult {
+
+    private SameDiff sameDiff;
+    private int opsBefore;
+    private int opsAfter;
+    private List<PassResult> passResults;
+
+    /**
+     * @return A human readable summary of the optimization passes
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ops: ").append(opsBefore).append(" -> ").append(opsAfter);
+        for (PassResult p : passResults) {
+            sb.append("\n").append(p);
+        }
+        return sb.toString();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class PassResult {
+        private String passName;
+        private int rewrites;
+        private int opsBefore;
+        private int opsAfter;
+        private long timeMs;
+
+        /**
+         * @return Number of ops removed from the graph by this pass. May be negative if the pass added ops
+         */
+        public int opsRemoved() {
+            return opsBefore - opsAfter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s rewrites=%d, ops %d -> %d (%d ms)", passName, rewrites, opsBefore, opsAfter, timeMs);
+        }
+    }
+}
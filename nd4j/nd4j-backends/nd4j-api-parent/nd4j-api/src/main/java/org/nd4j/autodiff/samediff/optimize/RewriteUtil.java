@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ops.BaseOp;
+import org.nd4j.linalg.api.ops.NoOp;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Low level graph editing methods used by the {@link OptimizationPass} implementations.<br>
+ * Unlike {@link org.nd4j.autodiff.samediff.transform.GraphTransformUtil}, these methods modify the SameDiff instance
+ * in place, and preserve the names of any variables that remain in the graph: a rewritten subgraph keeps the name of
+ * the variable it produces, so that callers can still request the same outputs after optimization.<br>
+ * None of these methods handle control dependencies: ops and variables that are part of a control dependency should
+ * be left unmodified (see {@link #hasControlDependencies(SameDiff, String)}).
+ */
+public class RewriteUtil {
+
+    private RewriteUtil() {
+    }
+
+    /**
+     * @return Names of the ops that use the specified variable as an input. Never null
+     */
+    public static List<String> consumers(@NonNull SameDiff sd, @NonNull String varName) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || v.getInputsForOp() == null)
+            return Collections.emptyList();
+        return v.getInputsForOp();
+    }
+
+    /**
+     * @return The op that produces the specified variable, or null if the variable is not the output of an op
+     */
+    public static SameDiffOp producer(@NonNull SameDiff sd, @NonNull String varName) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || v.getOutputOfOp() == null)
+            return null;
+        return sd.getOps().get(v.getOutputOfOp());
+    }
+
+    /**
+     * @return True if the variable is a constant
+     */
+    public static boolean isConstant(@NonNull SameDiff sd, @NonNull String varName) {
+        SDVariable v = sd.getVariable(varName);
+        return v != null && v.getVariableType() == VariableType.CONSTANT;
+    }
+
+    /**
+     * @return True if the op, or any of its output variables, is involved in a control dependency
+     */
+    public static boolean hasControlDependencies(@NonNull SameDiff sd, @NonNull String opName) {
+        SameDiffOp op = sd.getOps().get(opName);
+        if (!isEmpty(op.getControlDeps()))
+            return true;
+        if (op.getOutputsOfOp() != null) {
+            for (String s : op.getOutputsOfOp()) {
+                Variable v = sd.getVariables().get(s);
+                if (!isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp()) || !isEmpty(v.getControlDepsForVar()))
+                    return true;
+            }
+        }
+        if (op.getInputsToOp() != null) {
+            for (String s : op.getInputsToOp()) {
+                Variable v = sd.getVariables().get(s);
+                if (v.getControlDepsForOp() != null && v.getControlDepsForOp().contains(opName))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Control flow ops (loops, conditions, switch/merge etc), tensor array ops and no-ops are never rewritten:
+     * their semantics depend on the execution frames and control dependencies of the graph rather than only their inputs.
+     *
+     * @return True if the op is a control flow, tensor array or no-op
+     */
+    public static boolean isStructural(DifferentialFunction df) {
+        return df instanceof BaseTensorOp || df instanceof NoOp ||
+                df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.impl.controlflow");
+    }
+
+    /**
+     * Determine if the specified op output can be removed or merged into another op: that is, it is only used by the
+     * specified op, and it is not protected (not a requested output of the graph)
+     *
+     * @param sd            SameDiff instance
+     * @param varName       Output variable to check
+     * @param consumerOp    The op that is expected to be the only user of the variable
+     * @param protectedVars Variables that must be preserved in the graph
+     */
+    public static boolean isOnlyUsedBy(SameDiff sd, String varName, String consumerOp, Set<String> protectedVars) {
+        if (protectedVars.contains(varName))
+            return false;
+        List<String> c = consumers(sd, varName);
+        return c.size() == 1 && c.get(0).equals(consumerOp);
+    }
+
+    /**
+     * Replace all occurrences of the variable "oldVar" in the inputs of the specified op with "newVar"
+     *
+     * @param sd     SameDiff instance
+     * @param opName Name of the op to modify
+     * @param oldVar Current input variable
+     * @param newVar Replacement input variable
+     */
+    public static void replaceInput(SameDiff sd, String opName, String oldVar, String newVar) {
+        SameDiffOp op = sd.getOps().get(opName);
+        List<String> inputs = op.getInputsToOp();
+        Preconditions.checkState(inputs != null && inputs.contains(oldVar), "Variable \"%s\" is not an input to op \"%s\"", oldVar, opName);
+        for (int i = 0; i < inputs.size(); i++) {
+            if (inputs.get(i).equals(oldVar)) {
+                inputs.set(i, newVar);
+            }
+        }
+
+        DifferentialFunction df = op.getOp();
+        if (df instanceof BaseOp) {
+            //Legacy ops also keep track of the names of their inputs
+            BaseOp bo = (BaseOp) df;
+            if (oldVar.equals(bo.getXVertexId()))
+                bo.setXVertexId(newVar);
+            if (oldVar.equals(bo.getYVertexId()))
+                bo.setYVertexId(newVar);
+        }
+
+        Variable o = sd.getVariables().get(oldVar);
+        if (o.getInputsForOp() != null)
+            o.getInputsForOp().remove(opName);
+        Variable n = sd.getVariables().get(newVar);
+        if (n.getInputsForOp() == null)
+            n.setInputsForOp(new ArrayList<String>());
+        if (!n.getInputsForOp().contains(opName))
+            n.getInputsForOp().add(opName);
+        sd.graphModified();
+    }
+
+    /**
+     * Replace all uses of variable "oldVar" as an op input with variable "newVar"
+     */
+    public static void replaceAllUses(SameDiff sd, String oldVar, String newVar) {
+        for (String opName : new ArrayList<>(consumers(sd, oldVar))) {
+            replaceInput(sd, opName, oldVar, newVar);
+        }
+    }
+
+    /**
+     * Remove the specified op, and all of its output variables, from the graph.<br>
+     * The outputs of the op must no longer be used by any other op.
+     *
+     * @param sd     SameDiff instance
+     * @param opName Name of the op to remove
+     */
+    public static void removeOp(SameDiff sd, String opName) {
+        SameDiffOp op = sd.getOps().remove(opName);
+        Preconditions.checkState(op != null, "No op with name \"%s\" exists", opName);
+        if (op.getInputsToOp() != null) {
+            for (String s : op.getInputsToOp()) {
+                Variable v = sd.getVariables().get(s);
+                if (v != null && v.getInputsForOp() != null)
+                    v.getInputsForOp().remove(opName);
+            }
+        }
+        if (op.getOutputsOfOp() != null) {
+            for (String s : op.getOutputsOfOp()) {
+                sd.removeVariable(s);
+            }
+        }
+        sd.graphModified();
+    }
+
+    /**
+     * Give variable "newVar" (usually the output of an op that has just been added to the graph) the name "name",
+     * which must be the name of a variable that has been removed from the graph. The specified consumers become
+     * the ops that use the renamed variable as an input; these ops are expected to still refer to the variable by "name".
+     *
+     * @param sd        SameDiff instance
+     * @param newVar    Variable to rename
+     * @param name      Name to use for the variable
+     * @param consumers The ops that use the variable
+     */
+    public static void renameInto(SameDiff sd, SDVariable newVar, String name, List<String> consumers) {
+        Preconditions.checkState(!sd.hasVariable(name), "Variable \"%s\" must be removed before it can be replaced", name);
+        sd.updateVariableNameAndReference(newVar, name);
+        sd.getVariables().get(name).setInputsForOp(new ArrayList<>(consumers));
+        sd.graphModified();
+    }
+
+    private static boolean isEmpty(List<String> l) {
+        return l == null || l.isEmpty();
+    }
+}
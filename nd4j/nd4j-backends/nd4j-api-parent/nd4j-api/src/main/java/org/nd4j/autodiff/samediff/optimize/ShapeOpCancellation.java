@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.optimize;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.transform.GraphTransformUtil;
+import org.nd4j.autodiff.samediff.transform.OpPredicate;
+import org.nd4j.autodiff.samediff.transform.SubGraph;
+import org.nd4j.autodiff.samediff.transform.SubGraphPredicate;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.shape.Reshape;
+import org.nd4j.linalg.api.ops.impl.shape.Transpose;
+import org.nd4j.linalg.util.ArrayUtil;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cancels out redundant shape ops:<br>
+ * - reshape(reshape(x)) is replaced by a single reshape of x<br>
+ * - transpose(transpose(x)) (or permute) is removed entirely, when the two permutations cancel each other out<br>
+ * The intermediate ops are left in the graph if they are still used elsewhere, otherwise they are removed by
+ * {@link DeadCodeElimination}.
+ */
+@Slf4j
+public class ShapeOpCancellation implements OptimizationPass {
+
+    private static final OpPredicate IS_TRANSPOSE = new OpPredicate() {
+        @Override
+        public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+            return function instanceof Transpose;
+        }
+    };
+
+    @Override
+    public String name() {
+        return "ShapeOpCancellation";
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> protectedVars) {
+        int count = 0;
+
+        SubGraphPredicate reshapes = SubGraphPredicate.withRoot(OpPredicate.classEquals(Reshape.class))
+                .withInputMatching(0, OpPredicate.classEquals(Reshape.class));
+        for (SubGraph sg : GraphTransformUtil.getSubgraphsMatching(sd, reshapes)) {
+            String outer = sg.getRootNode().getOwnName();
+            String inner = sd.getVariableOutputFunction(sd.getOps().get(outer).getInputsToOp().get(0)).getOwnName();
+            if (RewriteUtil.hasControlDependencies(sd, outer) || RewriteUtil.hasControlDependencies(sd, inner)
+                    || isFortranOrder(sd, inner) || isFortranOrder(sd, outer))
+                continue;
+            //Only the last reshape matters: take the input directly from the input of the first reshape
+            String mid = sd.getOps().get(outer).getInputsToOp().get(0);
+            String src = sd.getOps().get(inner).getInputsToOp().get(0);
+            RewriteUtil.replaceInput(sd, outer, mid, src);
+            count++;
+        }
+
+        SubGraphPredicate transposes = SubGraphPredicate.withRoot(IS_TRANSPOSE).withInputMatching(0, IS_TRANSPOSE);
+        for (SubGraph sg : GraphTransformUtil.getSubgraphsMatching(sd, transposes)) {
+            String outer = sg.getRootNode().getOwnName();
+            if (!sd.getOps().containsKey(outer))
+                continue;   //Removed by an earlier cancellation
+            SameDiffOp outerOp = sd.getOps().get(outer);
+            String mid = outerOp.getInputsToOp().get(0);
+            SameDiffOp innerOp = RewriteUtil.producer(sd, mid);
+            String out = outerOp.getOutputsOfOp().get(0);
+            if (innerOp == null || protectedVars.contains(out) || RewriteUtil.hasControlDependencies(sd, outer)
+                    || RewriteUtil.hasControlDependencies(sd, innerOp.getName()))
+                continue;
+
+            int[] p1 = permutation(sd, innerOp);
+            int[] p2 = permutation(sd, outerOp);
+            if (!cancels(p1, p2))
+                continue;
+
+            String src = innerOp.getInputsToOp().get(0);
+            RewriteUtil.replaceAllUses(sd, out, src);
+            RewriteUtil.removeOp(sd, outer);
+            count++;
+        }
+
+        log.debug("Cancelled {} shape ops", count);
+        return count;
+    }
+
+    /**
+     * Reshape ops may specify 'f' order as the first element of the shape: 'c' then 'f' reshapes don't compose
+     */
+    protected static boolean isFortranOrder(SameDiff sd, String reshapeOp) {
+        long[] shape = ((DynamicCustomOp) sd.getOps().get(reshapeOp).getOp()).iArgs();
+        return shape != null && shape.length > 0 && (shape[0] == 'f' || shape[0] == -'f');
+    }
+
+    /**
+     * @return The permutation for the transpose op, an empty array for a transpose that reverses the dimensions, or
+     * null if the permutation can't be determined
+     */
+    protected static int[] permutation(SameDiff sd, SameDiffOp op) {
+        DynamicCustomOp t = (DynamicCustomOp) op.getOp();
+        long[] iArgs = t.iArgs();
+        if (iArgs != null && iArgs.length > 0)
+            return ArrayUtil.toInts(iArgs);
+
+        List<String> inputs = op.getInputsToOp();
+        if (inputs.size() == 1)
+            return new int[0];
+        if (inputs.size() == 2 && RewriteUtil.isConstant(sd, inputs.get(1))) {
+            INDArray perm = sd.getVariable(inputs.get(1)).getArr();
+            return perm == null ? null : perm.toIntVector();
+        }
+        return null;
+    }
+
+    /**
+     * @return True if applying permutation p1 and then p2 gives the original order of dimensions
+     */
+    protected static boolean cancels(int[] p1, int[] p2) {
+        if (p1 == null || p2 == null)
+            return false;
+        if (p1.length == 0 && p2.length == 0)
+            return true;        //Reversing twice
+        if (p1.length == 0)
+            p1 = ArrayUtil.reverseCopy(ArrayUtil.range(0, p2.length));
+        if (p2.length == 0)
+            p2 = ArrayUtil.reverseCopy(ArrayUtil.range(0, p1.length));
+        if (p1.length != p2.length)
+            return false;
+        for (int i = 0; i < p2.length; i++) {
+            if (p1[p2[i]] != i)
+                return false;
+        }
+        return true;
+    }
+}
@@ -164,6 +164,7 @@ public class GraphTransformUtil {
                     }
                 }
             }
+            sd.graphModified();
         }
 
         return sd;
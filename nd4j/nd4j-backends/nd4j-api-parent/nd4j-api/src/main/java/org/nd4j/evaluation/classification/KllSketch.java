@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.evaluation.classification;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.primitives.Pair;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * KLL (Karnin, Lang, Liberty) quantile sketch over double values.<br>
+ * The sketch retains O(k log(n/k)) values out of the n values presented to it, organised as a stack of "compactors":
+ * values at level i each stand in for 2^i of the original values. When a level fills up it is sorted and every
+ * second value is promoted to the level above (with alternating offsets, so that the rank error of successive
+ * compactions cancels rather than accumulates). The rank of any value can then be estimated to within roughly
+ * {@link #getRankError()} * n.
+ * <p>
+ * Sketches with the same k are mergeable: the result of {@link #merge(KllSketch)} has the same error guarantee as a single
+ * sketch presented with both input streams, which makes it suitable for distributed evaluation.
+ * <p>
+ * Used by {@link ROC} (and hence {@link ROCBinary} and {@link ROCMultiClass}) to provide a bounded memory alternative
+ * to the exact mode of evaluation; see {@link ROC#sketched(double)}
+ */
+@Data
+@NoArgsConstructor
+public class KllSketch implements Serializable {
+    /**
+     * Empirical constant relating k to the normalized rank error: error ~= RANK_ERROR_CONSTANT / k
+     */
+    public static final double RANK_ERROR_CONSTANT = 3.3;
+    public static final int MIN_K = 8;
+
+    private int k;
+    private long n;
+    //Level 0: unsorted values with weight 1; capacity k
+    private double[] buffer;
+    private int bufferSize;
+    //levels[j] holds sorted values with weight 2^(j+1)
+    private double[][] levels = new double[0][];
+    //One bit per level: offset (0 or 1) to use on the next compaction of that level
+    private long compactionParity;
+
+    /**
+     * @param k Size parameter of the sketch. Larger values give lower error at the cost of memory - see {@link #kForRankError(double)}
+     */
+    public KllSketch(int k) {
+        Preconditions.checkArgument(k >= MIN_K, "Sketch size k must be >= %s, got %s", MIN_K, k);
+        this.k = k;
+        this.buffer = new double[k];
+    }
+
+    /**
+     * Create a sketch sized for the given normalized rank error
+     *
+     * @param rankError Maximum rank error, as a fraction of the number of values. For example, 0.01 for 1%
+     */
+    public static KllSketch forRankError(double rankError) {
+        return new KllSketch(kForRankError(rankError));
+    }
+
+    /**
+     * @param rankError Normalized rank error, in range (0,1)
+     * @return Sketch size parameter k providing (approximately) the given rank error
+     */
+    public static int kForRankError(double rankError) {
+        Preconditions.checkArgument(rankError > 0.0 && rankError < 1.0, "Rank error must be in range (0,1), got %s", rankError);
+        return Math.max(MIN_K, (int) Math.ceil(RANK_ERROR_CONSTANT / rankError));
+    }
+
+    /**
+     * @return The (approximate) normalized rank error for this sketch
+     */
+    @JsonIgnore
+    public double getRankError() {
+        return RANK_ERROR_CONSTANT / k;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * Present a single value to the sketch
+     */
+    public void update(double value) {
+        add(value);
+        n++;
+    }
+
+    /**
+     * Present all of the given values to the sketch
+     */
+    public void update(double[] values) {
+        for (double d : values) {
+            update(d);
+        }
+    }
+
+    /**
+     * Merge the other sketch into this one. The other sketch is not modified.
+     *
+     * @param other Sketch to merge into this one. Must have the same k value
+     */
+    public void merge(KllSketch other) {
+        if (other == null || other.n == 0) {
+            return;
+        }
+        if (k != other.k) {
+            throw new IllegalArgumentException("Cannot merge sketches with different k values: " + k + " vs. " + other.k);
+        }
+
+        for (int i = 0; i < other.bufferSize; i++) {
+            add(other.buffer[i]);
+        }
+
+        if (other.levels.length > levels.length) {
+            levels = Arrays.copyOf(levels, other.levels.length);
+            for (int j = 0; j < levels.length; j++) {
+                if (levels[j] == null) {
+                    levels[j] = new double[0];
+                }
+            }
+        }
+        for (int j = 0; j < other.levels.length; j++) {
+            levels[j] = mergeSorted(levels[j], other.levels[j]);
+        }
+        n += other.n;
+        compress();
+    }
+
+    /**
+     * @return Estimated number of presented values that are strictly less than the given value
+     */
+    public long countLessThan(double value) {
+        long count = 0;
+        for (int i = 0; i < bufferSize; i++) {
+            if (buffer[i] < value) {
+                count++;
+            }
+        }
+        for (int j = 0; j < levels.length; j++) {
+            double[] l = levels[j];
+            int idx = Arrays.binarySearch(l, value);
+            if (idx < 0) {
+                idx = -(idx + 1);
+            } else {
+                while (idx > 0 && l[idx - 1] == value) {
+                    idx--;
+                }
+            }
+            count += (long) idx << (j + 1);
+        }
+        return count;
+    }
+
+    /**
+     * @return Estimated normalized rank of the given value: fraction of presented values strictly less than it
+     */
+    public double rank(double value) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return countLessThan(value) / (double) n;
+    }
+
+    /**
+     * @param fraction Normalized rank, in range [0,1]
+     * @return Estimated value with the given normalized rank
+     */
+    public double quantile(double fraction) {
+        Preconditions.checkArgument(fraction >= 0.0 && fraction <= 1.0, "Fraction must be in range [0,1], got %s", fraction);
+        if (n == 0) {
+            return Double.NaN;
+        }
+        Pair<double[], long[]> p = getSortedRetained();
+        double[] values = p.getFirst();
+        long[] weights = p.getSecond();
+        double target = fraction * n;
+        long cumSum = 0;
+        for (int i = 0; i < values.length; i++) {
+            cumSum += weights[i];
+            if (cumSum >= target) {
+                return values[i];
+            }
+        }
+        return values[values.length - 1];
+    }
+
+    /**
+     * @return Number of values currently retained by the sketch
+     */
+    public int numRetained() {
+        int count = bufferSize;
+        for (double[] l : levels) {
+            count += l.length;
+        }
+        return count;
+    }
+
+    /**
+     * Get the retained values (sorted ascending) along with their weights. The weights sum to {@link #getN()}
+     *
+     * @return Pair of (values, weights)
+     */
+    public Pair<double[], long[]> getSortedRetained() {
+        int count = numRetained();
+        double[] values = new double[count];
+        long[] weights = new long[count];
+
+        double[] sortedBuffer = Arrays.copyOf(buffer, bufferSize);
+        Arrays.sort(sortedBuffer);
+        System.arraycopy(sortedBuffer, 0, values, 0, bufferSize);
+        Arrays.fill(weights, 0, bufferSize, 1L);
+        int size = bufferSize;
+
+        //Merge in each level: each is already sorted
+        double[] tempValues = new double[count];
+        long[] tempWeights = new long[count];
+        for (int j = 0; j < levels.length; j++) {
+            double[] l = levels[j];
+            long w = 1L << (j + 1);
+            int a = 0;
+            int b = 0;
+            int out = 0;
+            while (a < size || b < l.length) {
+                if (b >= l.length || (a < size && values[a] <= l[b])) {
+                    tempValues[out] = values[a];
+                    tempWeights[out++] = weights[a++];
+                } else {
+                    tempValues[out] = l[b++];
+                    tempWeights[out++] = w;
+                }
+            }
+            size = out;
+            double[] swapV = values;
+            values = tempValues;
+            tempValues = swapV;
+            long[] swapW = weights;
+            weights = tempWeights;
+            tempWeights = swapW;
+        }
+
+        return new Pair<>(values, weights);
+    }
+
+    public void reset() {
+        n = 0;
+        bufferSize = 0;
+        Arrays.fill(buffer, 0.0);
+        levels = new double[0][];
+        compactionParity = 0;
+    }
+
+    private void add(double value) {
+        buffer[bufferSize++] = value;
+        if (bufferSize >= capacity(0)) {
+            compress();
+        }
+    }
+
+    private int numLevels() {
+        return levels.length + 1;
+    }
+
+    private int levelSize(int level) {
+        return level == 0 ? bufferSize : levels[level - 1].length;
+    }
+
+    /**
+     * Capacity of the given level: levels further below the top of the stack get geometrically (factor 2/3)
+     * smaller capacities, which is what keeps the total size at O(k) while bounding the error
+     */
+    private int capacity(int level) {
+        int depth = numLevels() - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void compress() {
+        //Note that compacting a level may add a new level on top, hence the re-evaluation of numLevels()
+        for (int i = 0; i < numLevels(); i++) {
+            if (levelSize(i) >= capacity(i)) {
+                compact(i);
+            }
+        }
+    }
+
+    private void compact(int level) {
+        double[] values;
+        if (level == 0) {
+            values = Arrays.copyOf(buffer, bufferSize);
+            Arrays.sort(values);
+        } else {
+            values = levels[level - 1];
+        }
+
+        //With an odd number of values: the smallest stays at this level, so the total weight is preserved exactly
+        int start = values.length % 2;
+        int offset = (int) ((compactionParity >>> level) & 1L);
+        compactionParity ^= (1L << level);
+
+        int numPromoted = (values.length - start) / 2;
+        double[] promoted = new double[numPromoted];
+        for (int i = 0; i < numPromoted; i++) {
+            promoted[i] = values[start + 2 * i + offset];
+        }
+
+        if (level == 0) {
+            Arrays.fill(buffer, 0.0);
+            if (start == 1) {
+                buffer[0] = values[0];
+            }
+            bufferSize = start;
+        } else {
+            levels[level - 1] = (start == 1 ? new double[] {values[0]} : new double[0]);
+        }
+
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[level] = promoted;
+        } else {
+            levels[level] = mergeSorted(levels[level], promoted);
+        }
+    }
+
+    private static double[] mergeSorted(double[] a, double[] b) {
+        double[] out = new double[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int o = 0;
+        while (i < a.length && j < b.length) {
+            out[o++] = (a[i] <= b[j] ? a[i++] : b[j++]);
+        }
+        while (i < a.length) {
+            out[o++] = a[i++];
+        }
+        while (j < b.length) {
+            out[o++] = b[j++];
+        }
+        return out;
+    }
+}
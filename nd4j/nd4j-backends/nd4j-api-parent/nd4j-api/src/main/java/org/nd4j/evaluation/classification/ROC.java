@@ -49,9 +49,10 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
 
 /**
  * ROC (Receiver Operating Characteristic) for binary classifiers.<br>
- * ROC has 2 modes of operation:
+ * ROC has 3 modes of operation:
  * (a) Thresholded (less memory)<br>
- * (b) Exact (default; use numSteps == 0 to set. May not scale to very large datasets)
+ * (b) Exact (default; use numSteps == 0 to set. May not scale to very large datasets)<br>
+ * (c) Sketched (bounded memory; use {@link #sketched(double)} to create)
  * <p>
  * <p>
  * Thresholded Is an approximate method, that (for large datasets) may use significantly less memory than exact..
@@ -62,6 +63,11 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
  * Note that in some cases (very skewed probability predictions, for example) the threshold approach can be inaccurate,
  * often underestimating the true area.
  * <p>
+ * Sketched mode keeps a mergeable quantile sketch ({@link KllSketch}) of the predicted probabilities for the
+ * positive and negative examples. Memory use is independent of the number of examples, and the curve points are
+ * derived from the data (as per exact mode) - each point on the ROC curve has a false/true positive rate within the
+ * configured rank error of the exact value.
+ * <p>
  * The data is assumed to be binary classification - nColumns == 1 (single binary output variable) or nColumns == 2
  * (probability distribution over 2 classes, with column 1 being values for 'positive' examples)
  *
@@ -70,7 +76,7 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
 @EqualsAndHashCode(callSuper = true,
         exclude = {"auc", "auprc", "probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve", "axis"})
 @Data
-@ToString(exclude = {"probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve"})
+@ToString(exclude = {"probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve", "positiveSketch", "negativeSketch"})
 @JsonIgnoreProperties({"probAndLabel", "exactAllocBlockSize"})
 @JsonSerialize(using = ROCSerializer.class)
 @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY)
@@ -90,6 +96,9 @@ public class ROC extends BaseEvaluation<ROC> {
     private int exampleCount = 0;
     private boolean rocRemoveRedundantPts;
     private int exactAllocBlockSize;
+    private double sketchRankError;
+    private KllSketch positiveSketch;
+    private KllSketch negativeSketch;
     protected int axis = 1;
 
     public ROC() {
@@ -140,6 +149,40 @@ public class ROC extends BaseEvaluation<ROC> {
         this.exactAllocBlockSize = exactAllocBlockSize;
     }
 
+    private ROC(double sketchRankError, boolean rocRemoveRedundantPts) {
+        this.sketchRankError = sketchRankError;
+        this.positiveSketch = KllSketch.forRankError(sketchRankError);
+        this.negativeSketch = KllSketch.forRankError(sketchRankError);
+        this.rocRemoveRedundantPts = rocRemoveRedundantPts;
+        this.exactAllocBlockSize = DEFAULT_EXACT_ALLOC_BLOCK_SIZE;
+    }
+
+    /**
+     * Create a ROC instance that uses bounded memory quantile sketches instead of storing all predictions
+     *
+     * @param sketchRankError Maximum (normalized) rank error for the sketches, in range (0,1) - for example, 0.01.
+     *                        The false positive and true positive rates of each curve point are accurate to approximately
+     *                        this value. Memory use is proportional to 1/sketchRankError
+     */
+    public static ROC sketched(double sketchRankError) {
+        return sketched(sketchRankError, true);
+    }
+
+    /**
+     * @param sketchRankError       Maximum (normalized) rank error for the sketches - see {@link #sketched(double)}
+     * @param rocRemoveRedundantPts Usually set to true. If true,  remove any redundant points from ROC and P-R curves
+     */
+    public static ROC sketched(double sketchRankError, boolean rocRemoveRedundantPts) {
+        return new ROC(sketchRankError, rocRemoveRedundantPts);
+    }
+
+    /**
+     * @return True if this ROC instance uses quantile sketches - see {@link #sketched(double)}
+     */
+    public boolean isSketch() {
+        return sketchRankError > 0.0;
+    }
+
     public static ROC fromJson(String json) {
         return fromJson(json, ROC.class);
     }
@@ -206,7 +249,10 @@ public class ROC extends BaseEvaluation<ROC> {
             return rocCurve;
         }
 
-        if (isExact) {
+        if (isSketch()) {
+            calculateSketchCurves();
+            return rocCurve;
+        } else if (isExact) {
             //Sort ascending. As we decrease threshold, more are predicted positive.
             //if(prob <= threshold> predict 0, otherwise predict 1
             //So, as we iterate from i=0..length, first 0 to i (inclusive) are predicted class 1, all others are predicted class 0
@@ -375,6 +421,11 @@ public class ROC extends BaseEvaluation<ROC> {
             return prCurve;
         }
 
+        if (isSketch()) {
+            calculateSketchCurves();
+            return prCurve;
+        }
+
         double[] thresholdOut;
         double[] precisionOut;
         double[] recallOut;
@@ -515,6 +566,108 @@ public class ROC extends BaseEvaluation<ROC> {
         return prCurve;
     }
 
+    /**
+     * Calculate both the ROC and precision/recall curves from the positive and negative sketches.
+     * Each distinct retained value is used as a threshold (as per exact mode), with the true/false positive
+     * counts at that threshold being the (estimated) number of positive/negative predictions >= threshold
+     */
+    private void calculateSketchCurves() {
+        Pair<double[], long[]> pos = positiveSketch.getSortedRetained();
+        Pair<double[], long[]> neg = negativeSketch.getSortedRetained();
+        double[] posValues = pos.getFirst();
+        long[] posWeights = pos.getSecond();
+        double[] negValues = neg.getFirst();
+        long[] negWeights = neg.getSecond();
+
+        //Points in order of decreasing threshold; +2 for the edge cases
+        int maxPoints = posValues.length + negValues.length + 2;
+        double[] threshold = new double[maxPoints];
+        long[] tp = new long[maxPoints];
+        long[] fp = new long[maxPoints];
+
+        //Edge case: threshold of 1.0, all predictions negative
+        threshold[0] = 1.0;
+        int numPoints = 1;
+        int ip = posValues.length - 1;
+        int in = negValues.length - 1;
+        long cumTp = 0;
+        long cumFp = 0;
+        while (ip >= 0 || in >= 0) {
+            double t;
+            if (ip < 0) {
+                t = negValues[in];
+            } else if (in < 0) {
+                t = posValues[ip];
+            } else {
+                t = Math.max(posValues[ip], negValues[in]);
+            }
+            while (ip >= 0 && posValues[ip] == t) {
+                cumTp += posWeights[ip--];
+            }
+            while (in >= 0 && negValues[in] == t) {
+                cumFp += negWeights[in--];
+            }
+            threshold[numPoints] = t;
+            tp[numPoints] = cumTp;
+            fp[numPoints] = cumFp;
+            numPoints++;
+        }
+        //Edge case: threshold of 0.0, all predictions positive
+        threshold[numPoints] = 0.0;
+        tp[numPoints] = countActualPositive;
+        fp[numPoints] = countActualNegative;
+        numPoints++;
+
+        double[] tOut = new double[numPoints];
+        double[] fprOut = new double[numPoints];
+        double[] tprOut = new double[numPoints];
+        double[] precisionOut = new double[numPoints];
+        int[] tpCountOut = new int[numPoints];
+        int[] fpCountOut = new int[numPoints];
+        int[] fnCountOut = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            tOut[i] = threshold[i];
+            fprOut[i] = fp[i] / (double) countActualNegative;
+            tprOut[i] = tp[i] / (double) countActualPositive;
+            precisionOut[i] = (tp[i] == 0 && fp[i] == 0) ? 1.0 : tp[i] / (double) (tp[i] + fp[i]);
+            tpCountOut[i] = (int) tp[i];
+            fpCountOut[i] = (int) fp[i];
+            fnCountOut[i] = (int) (countActualPositive - tp[i]);
+        }
+
+        //Precision recall curve: lowest to highest threshold, as per exact mode
+        double[] prThreshold = tOut.clone();
+        double[] recallOut = tprOut.clone();
+        ArrayUtils.reverse(prThreshold);
+        ArrayUtils.reverse(precisionOut);
+        ArrayUtils.reverse(recallOut);
+        ArrayUtils.reverse(tpCountOut);
+        ArrayUtils.reverse(fpCountOut);
+        ArrayUtils.reverse(fnCountOut);
+
+        if (rocRemoveRedundantPts) {
+            double[][] temp = removeRedundant(tOut, fprOut, tprOut, null, null, null).getFirst();
+            tOut = temp[0];
+            fprOut = temp[1];
+            tprOut = temp[2];
+
+            Pair<double[][], int[][]> pair = removeRedundant(prThreshold, precisionOut, recallOut, tpCountOut,
+                    fpCountOut, fnCountOut);
+            temp = pair.getFirst();
+            int[][] temp2 = pair.getSecond();
+            prThreshold = temp[0];
+            precisionOut = temp[1];
+            recallOut = temp[2];
+            tpCountOut = temp2[0];
+            fpCountOut = temp2[1];
+            fnCountOut = temp2[2];
+        }
+
+        rocCurve = new RocCurve(tOut, fprOut, tprOut);
+        prCurve = new PrecisionRecallCurve(prThreshold, precisionOut, recallOut, tpCountOut, fpCountOut, fnCountOut,
+                exampleCount);
+    }
+
     @AllArgsConstructor
     @Data
     @NoArgsConstructor
@@ -581,7 +734,27 @@ public class ROC extends BaseEvaluation<ROC> {
         double step = 1.0 / thresholdSteps;
         boolean singleOutput = labels2d.size(1) == 1;
 
-        if (isExact) {
+        if (isSketch()) {
+            //Sketched approach: add each probability to the sketch for its actual class
+            double[] prob;
+            double[] label;
+            if (singleOutput) {
+                prob = predictions2d.toDoubleVector();
+                label = labels2d.toDoubleVector();
+            } else {
+                prob = predictions2d.getColumn(1).toDoubleVector();
+                label = labels2d.getColumn(1).toDoubleVector();
+            }
+            for (int i = 0; i < prob.length; i++) {
+                if (label[i] != 0.0) {
+                    positiveSketch.update(prob[i]);
+                } else {
+                    negativeSketch.update(prob[i]);
+                }
+            }
+            countActualPositive = positiveSketch.getN();
+            countActualNegative = negativeSketch.getN();
+        } else if (isExact) {
             //Exact approach: simply add them to the storage for later computation/use
 
             if (probAndLabel == null) {
@@ -712,6 +885,9 @@ public class ROC extends BaseEvaluation<ROC> {
                     "Cannot merge ROC instances with different numbers of threshold steps ("
                             + this.thresholdSteps + " vs. " + other.thresholdSteps + ")");
         }
+        if (this.isSketch() != other.isSketch()) {
+            throw new UnsupportedOperationException("Cannot merge sketched and non-sketched ROC instances");
+        }
         this.countActualPositive += other.countActualPositive;
         this.countActualNegative += other.countActualNegative;
         this.auc = null;
@@ -720,7 +896,10 @@ public class ROC extends BaseEvaluation<ROC> {
         this.prCurve = null;
 
 
-        if (isExact) {
+        if (isSketch()) {
+            positiveSketch.merge(other.positiveSketch);
+            negativeSketch.merge(other.negativeSketch);
+        } else if (isExact) {
             if (other.exampleCount == 0) {
                 return;
             }
@@ -761,7 +940,10 @@ public class ROC extends BaseEvaluation<ROC> {
         countActualNegative = 0L;
         counts.clear();
 
-        if (isExact) {
+        if (isSketch()) {
+            positiveSketch.reset();
+            negativeSketch.reset();
+        } else if (isExact) {
             probAndLabel = null;
         } else {
             double step = 1.0 / thresholdSteps;
@@ -781,7 +963,11 @@ public class ROC extends BaseEvaluation<ROC> {
         StringBuilder sb = new StringBuilder();
         sb.append("AUC (Area under ROC Curve):                ").append(calculateAUC()).append("\n");
         sb.append("AUPRC (Area under Precision/Recall Curve): ").append(calculateAUCPR());
-        if (!isExact) {
+        if (isSketch()) {
+            sb.append("\n");
+            sb.append("[Note: Sketched AUC/AUPRC calculation used with rank error ").append(sketchRankError)
+                    .append("; accuracy may be reduced compared to exact mode]");
+        } else if (!isExact) {
             sb.append("\n");
             sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                     .append(" steps); accuracy may reduced compared to exact mode]");
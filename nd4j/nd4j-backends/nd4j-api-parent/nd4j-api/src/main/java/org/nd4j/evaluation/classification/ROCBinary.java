@@ -54,6 +54,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private double sketchRankError;
     private List<String> labels;
 
     @EqualsAndHashCode.Exclude      //Exclude axis: otherwise 2 Evaluation instances could contain identical stats and fail equality
@@ -79,6 +80,28 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create a ROCBinary instance that uses bounded memory quantile sketches for each output, instead of storing all predictions.
+     * See {@link ROC#sketched(double)} for details
+     *
+     * @param sketchRankError Maximum (normalized) rank error for the sketches, in range (0,1) - for example, 0.01
+     */
+    public static ROCBinary sketched(double sketchRankError) {
+        return sketched(sketchRankError, true);
+    }
+
+    /**
+     * @param sketchRankError       Maximum (normalized) rank error for the sketches - see {@link ROC#sketched(double)}
+     * @param rocRemoveRedundantPts Usually set to true. If true,  remove any redundant points from ROC and P-R curves
+     */
+    public static ROCBinary sketched(double sketchRankError, boolean rocRemoveRedundantPts) {
+        Preconditions.checkArgument(sketchRankError > 0.0 && sketchRankError < 1.0,
+                "Rank error must be in range (0,1), got %s", sketchRankError);
+        ROCBinary r = new ROCBinary(0, rocRemoveRedundantPts);
+        r.sketchRankError = sketchRankError;
+        return r;
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label independent binary classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -132,7 +155,8 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = (sketchRankError > 0.0 ? ROC.sketched(sketchRankError, rocRemoveRedundantPts)
+                                : new ROC(thresholdSteps, rocRemoveRedundantPts));
             }
         }
 
@@ -375,7 +399,11 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
                                 getCountActualNegative(i)));
             }
 
-            if(thresholdSteps > 0){
+            if(sketchRankError > 0.0){
+                sb.append("\n");
+                sb.append("[Note: Sketched AUC/AUPRC calculation used with rank error ").append(sketchRankError)
+                        .append("; accuracy may be reduced compared to exact mode]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -47,6 +47,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private double sketchRankError;
     @JsonSerialize(using = ROCArraySerializer.class)
     private ROC[] underlying;
     private List<String> labels;
@@ -75,6 +76,28 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create a ROCMultiClass instance that uses bounded memory quantile sketches for each class, instead of storing all predictions.
+     * See {@link ROC#sketched(double)} for details
+     *
+     * @param sketchRankError Maximum (normalized) rank error for the sketches, in range (0,1) - for example, 0.01
+     */
+    public static ROCMultiClass sketched(double sketchRankError) {
+        return sketched(sketchRankError, true);
+    }
+
+    /**
+     * @param sketchRankError       Maximum (normalized) rank error for the sketches - see {@link ROC#sketched(double)}
+     * @param rocRemoveRedundantPts Usually set to true. If true,  remove any redundant points from ROC and P-R curves
+     */
+    public static ROCMultiClass sketched(double sketchRankError, boolean rocRemoveRedundantPts) {
+        Preconditions.checkArgument(sketchRankError > 0.0 && sketchRankError < 1.0,
+                "Rank error must be in range (0,1), got %s", sketchRankError);
+        ROCMultiClass r = new ROCMultiClass(0, rocRemoveRedundantPts);
+        r.sketchRankError = sketchRankError;
+        return r;
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -141,7 +164,11 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
             sb.append("Average AUC: ").append(String.format("%-12." + printPrecision + "f", calculateAverageAUC()));
 
-            if(thresholdSteps > 0){
+            if(sketchRankError > 0.0){
+                sb.append("\n");
+                sb.append("[Note: Sketched AUC/AUPRC calculation used with rank error ").append(sketchRankError)
+                        .append("; accuracy may be reduced compared to exact mode]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -186,7 +213,8 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = (sketchRankError > 0.0 ? ROC.sketched(sketchRankError, rocRemoveRedundantPts)
+                                : new ROC(thresholdSteps, rocRemoveRedundantPts));
             }
         }
 
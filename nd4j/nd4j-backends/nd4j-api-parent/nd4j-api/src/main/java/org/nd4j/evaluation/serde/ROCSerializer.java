@@ -57,6 +57,12 @@ public class ROCSerializer extends JsonSerializer<ROC> {
         jsonGenerator.writeBooleanField("isExact", roc.isExact());
         jsonGenerator.writeNumberField("exampleCount", roc.getExampleCount());
         jsonGenerator.writeBooleanField("rocRemoveRedundantPts", roc.isRocRemoveRedundantPts());
+        if (roc.isSketch()) {
+            //Sketches are bounded in size: store them so that the curves can be recalculated, and merging is possible after deserialization
+            jsonGenerator.writeNumberField("sketchRankError", roc.getSketchRankError());
+            jsonGenerator.writeObjectField("positiveSketch", roc.getPositiveSketch());
+            jsonGenerator.writeObjectField("negativeSketch", roc.getNegativeSketch());
+        }
     }
 
     @Override
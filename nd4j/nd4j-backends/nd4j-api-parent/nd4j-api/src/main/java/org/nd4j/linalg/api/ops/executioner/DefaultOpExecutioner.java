@@ -492,6 +492,10 @@ public class DefaultOpExecutioner implements OpExecutioner {
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
+        if (OpProfiler.getInstance().getConfig().getSamplingRate() > 0) {
+            OpProfiler.getInstance().processSampledCall(op, timeStart);
+        }
+
         if (OpProfiler.getInstance().getConfig().isStackTrace()) {
             OpProfiler.getInstance().processStackCall(op, timeStart);
         }
@@ -525,6 +529,10 @@ public class DefaultOpExecutioner implements OpExecutioner {
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
+        if (OpProfiler.getInstance().getConfig().getSamplingRate() > 0) {
+            OpProfiler.getInstance().processSampledCall(op, timeStart);
+        }
+
         if (OpProfiler.getInstance().getConfig().isStackTrace()) {
             OpProfiler.getInstance().processStackCall(op, timeStart);
         }
@@ -16,15 +16,28 @@
 
 package org.nd4j.linalg.dataset.api.iterator;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.cache.CompressedLruDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.DataSetCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * If the cache is bounded (e.g. {@link org.nd4j.linalg.dataset.api.iterator.cache.CompressedLruDataSetCache}),
+ * DataSets evicted from it are fetched from the source iterator again, by their position within the epoch.
+ * That requires a source iterator that supports reset, and returns the same DataSets in the same order after each reset:
+ * shuffling or randomly sampling iterators can't be used with a bounded cache.
+ * Re-fetched DataSets are checked against a fingerprint (number of examples, sums of features and labels) recorded
+ * during the first epoch, and IllegalStateException is thrown if the source iterator turns out to be non-deterministic.
+ * Fingerprints are recorded only for bounded caches, since other caches never drop entries.<br>
+ * Re-fetched DataSets aren't put back into the cache: with an epoch larger than the cache budget, re-admitting them would
+ * evict entries just before they are needed again, so every access within the cyclic epoch would miss.
+ *
  * Created by anton on 7/16/16.
  */
 public class CachingDataSetIterator implements DataSetIterator {
@@ -34,8 +47,12 @@ public class CachingDataSetIterator implements DataSetIterator {
     private DataSetCache cache;
     private String namespace;
     private int currentIndex = 0;
+    private int sourceIndex = 0;
+    private int numBatches = -1;
     private boolean usingCache = false;
     private boolean allowPrefetching;
+    private boolean boundedCache;
+    private List<double[]> fingerprints = new ArrayList<>();
 
     public CachingDataSetIterator(DataSetIterator sourceIterator, DataSetCache cache, String namespace) {
         this(sourceIterator, cache, namespace, false);
@@ -49,6 +66,7 @@ public class CachingDataSetIterator implements DataSetIterator {
         this.currentIndex = 0;
 
         this.usingCache = cache.isComplete(namespace);
+        this.boundedCache = cache instanceof CompressedLruDataSetCache;
         this.allowPrefetching = allowPrefetching;
     }
 
@@ -89,6 +107,7 @@ public class CachingDataSetIterator implements DataSetIterator {
     public void reset() {
         sourceIterator.reset();
         currentIndex = 0;
+        sourceIndex = 0;
     }
 
     @Override
@@ -114,12 +133,17 @@ public class CachingDataSetIterator implements DataSetIterator {
     @Override
     public boolean hasNext() {
         if (usingCache) {
+            // once we've seen the whole data set, evicted entries won't cut the epoch short
+            if (numBatches >= 0)
+                return currentIndex < numBatches;
+
             return cache.contains(makeKey(currentIndex));
         } else {
             if (sourceIterator.hasNext()) {
                 return true;
             } else {
                 usingCache = true;
+                numBatches = currentIndex;
                 cache.setComplete(namespace, true);
                 return false;
             }
@@ -134,8 +158,17 @@ public class CachingDataSetIterator implements DataSetIterator {
 
         if (usingCache) {
             ds = cache.get(key);
+
+            if (ds == null) {
+                // entry was evicted from bounded cache, so we fetch it from source again, without re-admitting it
+                ds = fetchFromSource(currentIndex);
+            }
         } else {
             ds = sourceIterator.next();
+            sourceIndex++;
+            // fingerprint costs a couple of reductions, so we only pay for it if entry can be fetched again
+            if (boundedCache)
+                fingerprints.add(fingerprint(ds));
             cache.put(key, ds);
         }
 
@@ -144,6 +177,59 @@ public class CachingDataSetIterator implements DataSetIterator {
         return ds;
     }
 
+    /**
+     * This method moves source iterator to the given position, and returns DataSet from there.
+     * Since cached epoch goes forward, source iterator gets reset at most once per epoch.
+     */
+    private DataSet fetchFromSource(int index) {
+        if (sourceIndex > index) {
+            if (!sourceIterator.resetSupported())
+                throw new IllegalStateException("DataSet " + index + " was evicted from cache, but source iterator "
+                                + "doesn't support reset, so it can't be fetched again");
+
+            sourceIterator.reset();
+            sourceIndex = 0;
+        }
+
+        log.debug("cache miss for index {}, fetching from source iterator", index);
+        while (sourceIndex < index) {
+            if (!sourceIterator.hasNext())
+                throw new IllegalStateException("Source iterator has only " + sourceIndex + " DataSets, but "
+                                + (index + 1) + " were cached before");
+
+            sourceIterator.next();
+            sourceIndex++;
+        }
+
+        sourceIndex++;
+        DataSet ds = sourceIterator.next();
+
+        if (index < fingerprints.size() && !matches(fingerprints.get(index), fingerprint(ds)))
+            throw new IllegalStateException("DataSet " + index + " fetched from source iterator differs from the one "
+                            + "cached before: source iterator must return the same DataSets in the same order after "
+                            + "reset (no shuffling) to be used with bounded cache");
+
+        return ds;
+    }
+
+    private static double[] fingerprint(DataSet ds) {
+        return new double[] {ds.numExamples(), sum(ds.getFeatures()), sum(ds.getLabels())};
+    }
+
+    private static double sum(INDArray array) {
+        return array == null ? 0.0 : array.sumNumber().doubleValue();
+    }
+
+    private static boolean matches(double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            // sums may differ in last bits, depending on reduction order
+            double eps = 1e-5 * Math.max(1.0, Math.abs(expected[i]));
+            if (Math.abs(expected[i] - actual[i]) > eps)
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.dataset.api.iterator.cache;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * DataSetCache with a fixed byte budget.<br>
+ * DataSets are stored deflate-compressed, in two tiers:
+ * <ul>
+ *     <li>memory tier: up to {@code maxMemoryBytes} of compressed data, least recently used entries are spilled to disk</li>
+ *     <li>disk tier (optional): up to {@code maxDiskBytes} of compressed data, least recently used entries are dropped</li>
+ * </ul>
+ * An entry read from disk is promoted back into the memory tier.<br>
+ * Since entries may be dropped, {@link #get(String)} can return null for a key that was put earlier.
+ * Dropping an entry also clears every complete namespace, and no namespace can be marked complete until {@link #clear()},
+ * so that a fresh {@link org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator} won't take a partially cached
+ * namespace for a complete one.<br>
+ * Hit/miss counters and the number of bytes saved by compression are available via getters, see {@link #toString()}.
+ * Note that plain LRU isn't scan-resistant: cyclic access over more entries than the budget holds evicts every entry
+ * just before it's accessed again. {@link org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator} avoids that by not
+ * putting re-fetched DataSets back, so the entries retained after the first epoch keep being hits.<br>
+ */
+public class CompressedLruDataSetCache implements DataSetCache {
+    private static final Logger log = LoggerFactory.getLogger(DataSetCache.class);
+
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final File cacheDirectory;
+    private final int compressionLevel;
+
+    // both maps are kept in access order, so iteration starts from least recently used entry
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> completeNamespaces = new HashSet<>();
+    private boolean dropped;
+
+    private long memoryBytes;
+    private long diskBytes;
+    private long rawBytes;
+
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long spills;
+    private long evictions;
+
+    /**
+     * Memory-only cache, compressed with {@link Deflater#BEST_SPEED}
+     *
+     * @param maxMemoryBytes budget for compressed DataSets held in memory
+     */
+    public CompressedLruDataSetCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null, 0L);
+    }
+
+    /**
+     * Two-tier cache, compressed with {@link Deflater#BEST_SPEED}
+     *
+     * @param maxMemoryBytes budget for compressed DataSets held in memory
+     * @param cacheDirectory directory for DataSets spilled out of memory tier
+     * @param maxDiskBytes   budget for compressed DataSets held in cacheDirectory
+     */
+    public CompressedLruDataSetCache(long maxMemoryBytes, File cacheDirectory, long maxDiskBytes) {
+        this(maxMemoryBytes, cacheDirectory, maxDiskBytes, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param maxMemoryBytes   budget for compressed DataSets held in memory
+     * @param cacheDirectory   directory for DataSets spilled out of memory tier, or null for memory-only cache
+     * @param maxDiskBytes     budget for compressed DataSets held in cacheDirectory
+     * @param compressionLevel deflate level, 0 ({@link Deflater#NO_COMPRESSION}) to 9 ({@link Deflater#BEST_COMPRESSION})
+     */
+    public CompressedLruDataSetCache(long maxMemoryBytes, File cacheDirectory, long maxDiskBytes,
+                    int compressionLevel) {
+        if (maxMemoryBytes < 0 || maxDiskBytes < 0)
+            throw new IllegalArgumentException("Cache budgets can't be negative");
+
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level should be in range [0..9], got " + compressionLevel);
+
+        if (cacheDirectory != null && cacheDirectory.exists() && !cacheDirectory.isDirectory()) {
+            throw new IllegalArgumentException("can't use path " + cacheDirectory + " as file cache directory "
+                            + "because it already exists, but is not a directory");
+        }
+
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = cacheDirectory == null ? 0L : maxDiskBytes;
+        this.cacheDirectory = cacheDirectory;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public synchronized boolean isComplete(String namespace) {
+        return completeNamespaces.contains(namespace);
+    }
+
+    @Override
+    public synchronized void setComplete(String namespace, boolean value) {
+        if (value) {
+            // entries dropped during the first pass are missing, so namespace isn't complete
+            if (!dropped)
+                completeNamespaces.add(namespace);
+        } else {
+            completeNamespaces.remove(namespace);
+        }
+    }
+
+    @Override
+    public synchronized DataSet get(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            memoryHits++;
+            return decode(entry.data);
+        }
+
+        entry = disk.get(key);
+        if (entry != null) {
+            diskHits++;
+
+            File file = resolveKey(key);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            // entries larger than memory budget just stay on disk
+            if (entry.storedBytes <= maxMemoryBytes) {
+                disk.remove(key);
+                diskBytes -= entry.storedBytes;
+                file.delete();
+
+                entry.data = data;
+                storeInMemory(key, entry);
+            }
+
+            return decode(data);
+        }
+
+        misses++;
+        return null;
+    }
+
+    @Override
+    public synchronized void put(String key, DataSet dataSet) {
+        remove(key);
+
+        Entry entry = encode(dataSet);
+        rawBytes += entry.rawBytes;
+
+        if (entry.storedBytes <= maxMemoryBytes) {
+            storeInMemory(key, entry);
+        } else {
+            storeOnDisk(key, entry);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return memory.containsKey(key) || disk.containsKey(key);
+    }
+
+    /**
+     * @return number of get() calls served from memory tier
+     */
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    /**
+     * @return number of get() calls served from disk tier
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * @return number of get() calls that found nothing
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return fraction of get() calls served from either tier
+     */
+    public synchronized double getHitRate() {
+        long hits = memoryHits + diskHits;
+        return hits + misses == 0 ? 0.0 : hits / (double) (hits + misses);
+    }
+
+    /**
+     * @return number of entries moved from memory tier to disk tier
+     */
+    public synchronized long getSpills() {
+        return spills;
+    }
+
+    /**
+     * @return number of entries dropped from cache due to budget limits
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of entries currently cached, in both tiers
+     */
+    public synchronized int size() {
+        return memory.size() + disk.size();
+    }
+
+    /**
+     * @return compressed bytes currently held in memory tier
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return compressed bytes currently held in disk tier
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * @return serialized size of currently cached DataSets, before compression
+     */
+    public synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return number of bytes saved by compression, for currently cached DataSets
+     */
+    public synchronized long getBytesSaved() {
+        return rawBytes - memoryBytes - diskBytes;
+    }
+
+    /**
+     * This method drops all cached entries and complete namespaces. Counters are left intact.
+     */
+    public synchronized void clear() {
+        for (String key : disk.keySet())
+            resolveKey(key).delete();
+
+        memory.clear();
+        disk.clear();
+        completeNamespaces.clear();
+        dropped = false;
+        memoryBytes = 0;
+        diskBytes = 0;
+        rawBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CompressedLruDataSetCache(entries=%d, memoryBytes=%d, diskBytes=%d, bytesSaved=%d, "
+                        + "memoryHits=%d, diskHits=%d, misses=%d, spills=%d, evictions=%d)", size(), memoryBytes,
+                        diskBytes, getBytesSaved(), memoryHits, diskHits, misses, spills, evictions);
+    }
+
+    private void remove(String key) {
+        Entry entry = memory.remove(key);
+        if (entry != null) {
+            memoryBytes -= entry.storedBytes;
+            rawBytes -= entry.rawBytes;
+        }
+
+        entry = disk.remove(key);
+        if (entry != null) {
+            diskBytes -= entry.storedBytes;
+            rawBytes -= entry.rawBytes;
+            resolveKey(key).delete();
+        }
+    }
+
+    private void storeInMemory(String key, Entry entry) {
+        memory.put(key, entry);
+        memoryBytes += entry.storedBytes;
+
+        Iterator<Map.Entry<String, Entry>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            memoryBytes -= eldest.getValue().storedBytes;
+
+            spills++;
+            storeOnDisk(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void storeOnDisk(String key, Entry entry) {
+        if (entry.storedBytes > maxDiskBytes) {
+            drop(key, entry);
+            return;
+        }
+
+        File file = resolveKey(key);
+        try {
+            File parentDir = file.getParentFile();
+            if (!parentDir.exists() && !parentDir.mkdirs())
+                throw new IllegalStateException("ERROR: cannot create parent directory: " + parentDir);
+
+            Files.write(file.toPath(), entry.data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // from here on data lives in the file only
+        entry.data = null;
+        disk.put(key, entry);
+        diskBytes += entry.storedBytes;
+
+        Iterator<Map.Entry<String, Entry>> iterator = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            diskBytes -= eldest.getValue().storedBytes;
+            resolveKey(eldest.getKey()).delete();
+
+            drop(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void drop(String key, Entry entry) {
+        log.debug("evicting key {} from data set cache", key);
+
+        evictions++;
+        rawBytes -= entry.rawBytes;
+        completeNamespaces.clear();
+        dropped = true;
+    }
+
+    private File resolveKey(String key) {
+        String filename = key.replaceAll("[^a-zA-Z0-9.-]", "_");
+        return new File(cacheDirectory, filename);
+    }
+
+    private Entry encode(DataSet dataSet) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            CountingOutputStream cos = new CountingOutputStream(new DeflaterOutputStream(bos, deflater, 64 * 1024));
+
+            // DataSet.save() closes the stream, which finishes deflater output
+            dataSet.save(cos);
+
+            Entry entry = new Entry();
+            entry.data = bos.toByteArray();
+            entry.storedBytes = entry.data.length;
+            entry.rawBytes = cos.count;
+            return entry;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static DataSet decode(byte[] data) {
+        DataSet ds = new DataSet();
+        Inflater inflater = new Inflater();
+        try {
+            ds.load(new InflaterInputStream(new ByteArrayInputStream(data), inflater, 64 * 1024));
+        } finally {
+            inflater.end();
+        }
+        return ds;
+    }
+
+    private static class Entry {
+        private byte[] data;
+        private long storedBytes;
+        private long rawBytes;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
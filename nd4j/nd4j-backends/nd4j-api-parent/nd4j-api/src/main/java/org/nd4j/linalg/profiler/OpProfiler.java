@@ -25,6 +25,7 @@ import org.nd4j.linalg.api.ops.*;
 import org.nd4j.linalg.profiler.data.StackAggregator;
 import org.nd4j.linalg.profiler.data.StringAggregator;
 import org.nd4j.linalg.profiler.data.StringCounter;
+import org.nd4j.linalg.profiler.sampling.OpSampler;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -104,6 +105,10 @@ public class OpProfiler {
     @Getter
     private StringCounter blasOrderCounter = new StringCounter();
 
+    // low-overhead sampling, enabled via ProfilerConfig.samplingRate
+    @Getter
+    private OpSampler sampler = new OpSampler();
+
 
     private final long THRESHOLD = 100000;
 
@@ -160,6 +165,7 @@ public class OpProfiler {
         blasOrderCounter.reset();
 
         orderCounter.reset();
+        sampler.reset();
         listeners.clear();
         statistics = INDArrayStatistics.builder().build();
     }
@@ -363,6 +369,30 @@ public class OpProfiler {
         prevOpClass = opClass;
     }
 
+    /**
+     * This method passes op call to the sampler, if sampling is enabled
+     *
+     * @param op
+     * @param timeStart
+     */
+    public void processSampledCall(Op op, long timeStart) {
+        ProfilerConfig c = config;
+        if (c != null && c.getSamplingRate() > 0)
+            sampler.processOpCall(op, timeStart, c.getSamplingRate(), c.getSamplingBufferSize(), c.isSamplingStackTrace());
+    }
+
+    /**
+     * This method passes custom op call to the sampler, if sampling is enabled
+     *
+     * @param op
+     * @param timeStart
+     */
+    public void processSampledCall(CustomOp op, long timeStart) {
+        ProfilerConfig c = config;
+        if (c != null && c.getSamplingRate() > 0)
+            sampler.processOpCall(op, timeStart, c.getSamplingRate(), c.getSamplingBufferSize(), c.isSamplingStackTrace());
+    }
+
     public void timeOpCall(Op op, long startTime) {
         long currentTime = System.nanoTime() - startTime;
         classAggergator.putTime(getOpClass(op), op, currentTime);
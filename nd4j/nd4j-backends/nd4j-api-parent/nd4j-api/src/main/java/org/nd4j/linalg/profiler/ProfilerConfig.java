@@ -15,4 +15,19 @@ public class ProfilerConfig {
     private boolean stackTrace;
     private boolean checkElapsedTime;
     private boolean checkWorkspaces;
+
+    /**
+     * If positive, one of each samplingRate ops will be recorded by {@link org.nd4j.linalg.profiler.sampling.OpSampler}
+     */
+    private int samplingRate;
+
+    /**
+     * Number of most recent samples kept per thread
+     */
+    @Builder.Default private int samplingBufferSize = 65536;
+
+    /**
+     * If true, Java stack will be captured for sampled ops, for flame graph export
+     */
+    private boolean samplingStackTrace;
 }
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.profiler.sampling;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.nd4j.linalg.api.buffer.DataType;
+
+/**
+ * Single sampled op invocation. Instances are immutable, so they can be safely read by exporting thread
+ * while owner thread keeps recording.
+ */
+@Getter
+@AllArgsConstructor
+public class OpSample {
+    private final String opName;
+    private final String opClass;
+    private final long[][] shapes;
+    private final DataType dataType;
+
+    /**
+     * Start time, nanoseconds since profiler origin
+     */
+    private final long startNanos;
+    private final long durationNanos;
+
+    /**
+     * Java stack frames, outermost first. Null unless stack capture is enabled in ProfilerConfig
+     */
+    private final String[] stack;
+}
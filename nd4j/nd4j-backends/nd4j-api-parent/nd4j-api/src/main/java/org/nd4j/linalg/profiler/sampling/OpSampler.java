@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.profiler.sampling;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.Op;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low-overhead sampling profiler for op invocations.
+ *
+ * Only one of each samplingRate ops is recorded, so for non-sampled ops the cost is a thread-local counter increment.
+ * Sampled ops are stored as {@link OpSample} into per-thread ring buffers, without any locks or shared counters
+ * on hot path. Collected samples can be exported as Chrome trace-event JSON (chrome://tracing, Perfetto, speedscope),
+ * or as collapsed stacks suitable for flame graph tools.
+ *
+ * Buffers of threads that have terminated are released once their samples were collected via {@link #getSamples()}
+ * (or any of export methods), so thread churn doesn't make sampler grow indefinitely.
+ */
+@Slf4j
+public class OpSampler {
+    private final List<SampleBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<SampleBuffer> localBuffer = new ThreadLocal<>();
+    private final AtomicLong generation = new AtomicLong(0);
+    // samples recorded by released buffers of dead threads, since last reset
+    private final AtomicLong releasedSamples = new AtomicLong(0);
+    private volatile long originNanos = System.nanoTime();
+
+    /**
+     * This method samples single op invocation, if sampling counter for current thread says so
+     *
+     * @param op           op executed
+     * @param timeStart    System.nanoTime() captured before op execution
+     * @param samplingRate record one op out of this number
+     * @param bufferSize   per-thread ring buffer size
+     * @param captureStack capture Java stack for sampled ops
+     */
+    public void processOpCall(Op op, long timeStart, int samplingRate, int bufferSize, boolean captureStack) {
+        SampleBuffer buffer = buffer(bufferSize);
+        if (!buffer.tick(samplingRate))
+            return;
+
+        long duration = System.nanoTime() - timeStart;
+        buffer.add(new OpSample(op.opName(), opClass(op), shapes(op.x(), op.y(), op.z()), dataType(op.x(), op.z()),
+                        timeStart - originNanos, duration, captureStack ? stack() : null));
+    }
+
+    /**
+     * This method samples single custom op invocation, if sampling counter for current thread says so
+     *
+     * @see #processOpCall(Op, long, int, int, boolean)
+     */
+    public void processOpCall(CustomOp op, long timeStart, int samplingRate, int bufferSize, boolean captureStack) {
+        SampleBuffer buffer = buffer(bufferSize);
+        if (!buffer.tick(samplingRate))
+            return;
+
+        long duration = System.nanoTime() - timeStart;
+        INDArray[] inputs = op.inputArguments();
+        INDArray[] outputs = op.outputArguments();
+        INDArray[] all = new INDArray[inputs.length + outputs.length];
+        System.arraycopy(inputs, 0, all, 0, inputs.length);
+        System.arraycopy(outputs, 0, all, inputs.length, outputs.length);
+
+        buffer.add(new OpSample(op.opName(), "CustomOp", shapes(all), dataType(all), timeStart - originNanos, duration,
+                        captureStack ? stack() : null));
+    }
+
+    protected SampleBuffer buffer(int bufferSize) {
+        SampleBuffer buffer = localBuffer.get();
+        if (buffer == null || buffer.getGeneration() != generation.get()) {
+            buffer = new SampleBuffer(Thread.currentThread(), bufferSize, generation.get());
+            localBuffer.set(buffer);
+            buffers.add(buffer);
+
+            // new thread is registered rarely, so it's a good moment to drop buffers of dead threads that have nothing to collect
+            for (SampleBuffer b : buffers)
+                if (b.totalSamples() == 0 && !b.isOwnerAlive())
+                    buffers.remove(b);
+        }
+        return buffer;
+    }
+
+    /**
+     * This method drops all samples collected so far
+     */
+    public void reset() {
+        generation.incrementAndGet();
+        buffers.clear();
+        releasedSamples.set(0);
+        originNanos = System.nanoTime();
+    }
+
+    /**
+     * @return total number of samples recorded since last reset, including ones overwritten in ring buffers
+     */
+    public long getTotalSamples() {
+        long total = releasedSamples.get();
+        for (SampleBuffer b : buffers)
+            total += b.totalSamples();
+        return total;
+    }
+
+    /**
+     * This method returns samples currently held in ring buffers, per thread.
+     * Buffers of threads that have terminated are released after this call, so their samples are returned only once.
+     */
+    public Map<SampleBuffer, List<OpSample>> getSamples() {
+        Map<SampleBuffer, List<OpSample>> result = new LinkedHashMap<>();
+        for (SampleBuffer b : buffers) {
+            // owner is checked before snapshot, so dead thread can't add anything after it
+            boolean dead = !b.isOwnerAlive();
+            List<OpSample> samples = b.snapshot();
+            if (dead && buffers.remove(b))
+                releasedSamples.addAndGet(b.totalSamples());
+
+            Collections.sort(samples, new Comparator<OpSample>() {
+                @Override
+                public int compare(OpSample o1, OpSample o2) {
+                    return Long.compare(o1.getStartNanos(), o2.getStartNanos());
+                }
+            });
+            result.put(b, samples);
+        }
+        return result;
+    }
+
+    /**
+     * This method writes samples in Chrome trace-event JSON format, as complete ("X") events
+     */
+    public void exportChromeTrace(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            exportChromeTrace(os);
+        }
+    }
+
+    /**
+     * This method writes samples in Chrome trace-event JSON format, as complete ("X") events.
+     * Stream isn't closed.
+     */
+    public void exportChromeTrace(@NonNull OutputStream stream) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+
+        boolean first = true;
+        for (Map.Entry<SampleBuffer, List<OpSample>> e : getSamples().entrySet()) {
+            SampleBuffer thread = e.getKey();
+
+            // thread name metadata event
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getThreadId()
+                            + ",\"args\":{\"name\":" + quote(thread.getThreadName()) + "}}");
+
+            for (OpSample s : e.getValue()) {
+                StringBuilder sb = new StringBuilder(",\n{\"name\":").append(quote(s.getOpName()))
+                                .append(",\"cat\":").append(quote(s.getOpClass()))
+                                .append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(thread.getThreadId())
+                                .append(",\"ts\":").append(micros(s.getStartNanos()))
+                                .append(",\"dur\":").append(micros(s.getDurationNanos()))
+                                .append(",\"args\":{\"dtype\":").append(quote(String.valueOf(s.getDataType())))
+                                .append(",\"shapes\":").append(quote(shapesToString(s.getShapes())))
+                                .append("}}");
+                writer.write(sb.toString());
+            }
+        }
+
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /**
+     * This method writes samples as collapsed stacks: one line per unique stack, with frames separated by semicolons,
+     * followed by total sampled time in microseconds. This format is accepted by flamegraph.pl, speedscope and others.
+     *
+     * Stack consists of thread name, captured Java frames (if stack capture was enabled), op class and op name.
+     */
+    public void exportCollapsedStacks(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            exportCollapsedStacks(os);
+        }
+    }
+
+    /**
+     * @see #exportCollapsedStacks(File)
+     */
+    public void exportCollapsedStacks(@NonNull OutputStream stream) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        for (Map.Entry<String, Long> e : getCollapsedStacks().entrySet())
+            writer.write(e.getKey() + " " + e.getValue() + "\n");
+
+        writer.flush();
+    }
+
+    /**
+     * This method aggregates samples into collapsed stacks
+     *
+     * @return map of collapsed stack to total sampled time in microseconds, ordered by stack
+     */
+    public Map<String, Long> getCollapsedStacks() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<SampleBuffer, List<OpSample>> e : getSamples().entrySet()) {
+            String threadFrame = frame(e.getKey().getThreadName());
+            for (OpSample s : e.getValue()) {
+                StringBuilder sb = new StringBuilder(threadFrame);
+                if (s.getStack() != null)
+                    for (String f : s.getStack())
+                        sb.append(';').append(frame(f));
+
+                sb.append(';').append(frame(s.getOpClass())).append(';').append(frame(s.getOpName()));
+
+                String key = sb.toString();
+                Long time = result.get(key);
+                result.put(key, (time == null ? 0 : time) + Math.max(1, s.getDurationNanos() / 1000));
+            }
+        }
+        return result;
+    }
+
+    protected static String opClass(Op op) {
+        // only class name here, detailed classification is done by OpProfiler on non-sampled path
+        return op.getClass().getSimpleName();
+    }
+
+    protected static long[][] shapes(INDArray... arrays) {
+        int cnt = 0;
+        for (INDArray a : arrays)
+            if (a != null)
+                cnt++;
+
+        long[][] result = new long[cnt][];
+        int i = 0;
+        for (INDArray a : arrays)
+            if (a != null)
+                result[i++] = a.shape();
+
+        return result;
+    }
+
+    protected static DataType dataType(INDArray... arrays) {
+        for (INDArray a : arrays)
+            if (a != null)
+                return a.dataType();
+
+        return null;
+    }
+
+    protected static String[] stack() {
+        StackTraceElement[] elements = Thread.currentThread().getStackTrace();
+        List<String> frames = new ArrayList<>(elements.length);
+        // reverse order, outermost first, skipping profiler and executioner frames
+        for (int i = elements.length - 1; i >= 0; i--) {
+            String className = elements[i].getClassName();
+            if (className.startsWith("org.nd4j.linalg.profiler.") || className.startsWith("java.lang.Thread")
+                            || className.contains(".ops.executioner."))
+                continue;
+
+            frames.add(className + "." + elements[i].getMethodName());
+        }
+        return frames.toArray(new String[frames.size()]);
+    }
+
+    protected static String shapesToString(long[][] shapes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < shapes.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(Arrays.toString(shapes[i]));
+        }
+        return sb.toString();
+    }
+
+    protected static String micros(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+
+    protected static String frame(String name) {
+        return name.replace(';', ':').replace(' ', '_').replace('\n', '_');
+    }
+
+    protected static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.profiler.sampling;
+
+import lombok.Getter;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of samples, owned by single thread.
+ *
+ * Only owner thread writes into buffer, so no locks or CAS are involved: sample is stored into slot, and position
+ * is published with lazySet. Readers may run concurrently with owner thread, and get most recent samples,
+ * older samples are overwritten once buffer is full.
+ */
+public class SampleBuffer {
+    @Getter
+    private final long threadId;
+    @Getter
+    private final String threadName;
+    @Getter
+    private final long generation;
+
+    // weak reference, so buffer doesn't keep dead thread reachable
+    private final WeakReference<Thread> owner;
+
+    private final AtomicReferenceArray<OpSample> samples;
+    private final AtomicLong position = new AtomicLong(0);
+
+    // sampling counter, accessed by owner thread only
+    private long counter;
+
+    public SampleBuffer(Thread owner, int capacity, long generation) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Buffer capacity should be positive, got " + capacity);
+
+        this.owner = new WeakReference<>(owner);
+        this.threadId = owner.getId();
+        this.threadName = owner.getName();
+        this.generation = generation;
+        this.samples = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * This method returns true once per each samplingRate invocations. Owner thread only.
+     */
+    public boolean tick(int samplingRate) {
+        return ++counter % samplingRate == 0;
+    }
+
+    /**
+     * This method stores sample into the buffer. Owner thread only.
+     */
+    public void add(OpSample sample) {
+        long pos = position.get();
+        samples.lazySet((int) (pos % samples.length()), sample);
+        position.lazySet(pos + 1);
+    }
+
+    /**
+     * @return true if owner thread is still alive, so more samples may be added to this buffer
+     */
+    public boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * @return total number of samples recorded, including overwritten ones
+     */
+    public long totalSamples() {
+        return position.get();
+    }
+
+    /**
+     * This method returns samples currently held in buffer, oldest first
+     */
+    public List<OpSample> snapshot() {
+        long end = position.get();
+        long start = Math.max(0, end - samples.length());
+        List<OpSample> result = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            OpSample sample = samples.get((int) (i % samples.length()));
+            if (sample != null)
+                result.add(sample);
+        }
+
+        return result;
+    }
+}
@@ -1080,6 +1080,8 @@ public abstract class NativeOps extends Pointer {
 
     public abstract LongPointer mmapFile(PointerPointer extraPointers, String fileName, long length);
 
+    public abstract LongPointer mmapFileReadOnly(PointerPointer extraPointers, String fileName, long length);
+
     public abstract void munmapFile(PointerPointer extraPointers, LongPointer ptrMap, long length);
 
     public abstract ResultWrapperAbstraction executeFlatGraph(PointerPointer extraPointers, Pointer flatBufferPointer);
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.optimize.*;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class GraphOptimizerTests {
+
+    @Test
+    public void testConstantFolding(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable c1 = sd.constant("c1", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable c2 = sd.constant("c2", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable c = sd.math().exp(c1.mul(c2).add(1.0));
+        SDVariable out = in.add("out", c);
+
+        OptimizationResult r = new GraphOptimizer(new ConstantFolding(), new DeadCodeElimination()).optimize(sd, "out");
+        log.info(r.summary());
+        SameDiff opt = r.getSameDiff();
+
+        assertEquals(1, opt.getOps().size());
+        assertEquals(3, r.getPassResults().get(0).getRewrites());
+        assertTrue(opt.getVariable(c.getVarName()).isConstant());
+        assertFalse(opt.hasVariable("c1"));
+        assertFalse(opt.hasVariable("c2"));
+        assertEquals(4, sd.getOps().size());        //Original should not be modified
+
+        checkOutputs(sd, opt, "out", Nd4j.rand(DataType.FLOAT, 3, 4));
+    }
+
+    @Test
+    public void testIdentityElimination(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable x = sd.identity(sd.math().tanh(in)).add(0.0);
+        SDVariable y = sd.math().sin(x).mul(1.0);
+        SDVariable out = sd.identity("out", y);
+
+        OptimizationResult r = new GraphOptimizer(new IdentityElimination()).optimize(sd, "out");
+        log.info(r.summary());
+        SameDiff opt = r.getSameDiff();
+
+        assertEquals(6, sd.getOps().size());
+        assertEquals(2, opt.getOps().size());
+        assertNotNull(opt.getVariableOutputFunction("out"));
+
+        checkOutputs(sd, opt, "out", Nd4j.rand(DataType.FLOAT, 3, 4));
+    }
+
+    @Test
+    public void testShapeOpCancellation(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 2, 3, 4);
+        SDVariable r = sd.reshape(sd.reshape(sd.reshape(in, 6, 4), 4, 6), 24);
+        SDVariable p = sd.permute(sd.permute(sd.math().tanh(in), 2, 0, 1), 1, 2, 0);
+        SDVariable t = sd.transpose(sd.transpose(sd.math().sin(in)));
+        SDVariable out = sd.sum(r).add(sd.sum(p)).add(sd.sum(t));
+        String outName = out.getVarName();
+
+        OptimizationResult res = new GraphOptimizer(new ShapeOpCancellation(), new DeadCodeElimination()).optimize(sd, outName);
+        log.info(res.summary());
+        SameDiff opt = res.getSameDiff();
+
+        //2 of 3 reshapes, and both permute and transpose pairs
+        assertEquals(sd.getOps().size() - 6, opt.getOps().size());
+
+        checkOutputs(sd, opt, outName, Nd4j.rand(DataType.FLOAT, 2, 3, 4));
+    }
+
+    @Test
+    public void testNonCancellingPermute(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 2, 3, 4);
+        SDVariable out = sd.permute("out", sd.permute(in, 2, 0, 1), 2, 0, 1);
+
+        SameDiff opt = new GraphOptimizer().optimize(sd, "out").getSameDiff();
+        assertEquals(2, opt.getOps().size());
+        checkOutputs(sd, opt, "out", Nd4j.rand(DataType.FLOAT, 2, 3, 4));
+    }
+
+    @Test
+    public void testElementwiseChainFusion(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable b1 = sd.constant("b1", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable b2 = sd.constant("b2", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable b3 = sd.constant("b3", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable x = sd.math().tanh(in).add(b1).add(b2).add(b3);
+        SDVariable y = x.mul(2.0).mul(3.0).add(1.0).add(-0.5);
+        SDVariable out = sd.identity("out", y);
+
+        OptimizationResult r = new GraphOptimizer().optimize(sd, "out");
+        log.info(r.summary());
+        SameDiff opt = r.getSameDiff();
+
+        //tanh, add(x, b), mul(2*3), add(1-0.5)
+        assertEquals(4, opt.getOps().size());
+
+        checkOutputs(sd, opt, "out", Nd4j.rand(DataType.FLOAT, 3, 4));
+    }
+
+    @Test
+    public void testLinearActivationFusion(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b0 = sd.var("b0", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 5, 3));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 3));
+
+        SDVariable l0 = sd.nn().relu("l0", sd.nn().biasAdd(sd.mmul(in, w0), b0), 0.0);
+        SDVariable out = sd.nn().biasAdd("out", sd.mmul(l0, w1), b1);
+
+        OptimizationResult r = new GraphOptimizer(new LinearActivationFusion()).optimize(sd, "out");
+        log.info(r.summary());
+        SameDiff opt = r.getSameDiff();
+
+        assertEquals(2, opt.getOps().size());
+        assertEquals(2, r.getPassResults().get(0).getRewrites());
+        assertTrue(opt.getVariableOutputFunction("l0") instanceof ReluLayer);
+        DifferentialFunction df = opt.getVariableOutputFunction("out");
+        assertTrue(df instanceof XwPlusB && !(df instanceof ReluLayer));
+
+        checkOutputs(sd, opt, "out", Nd4j.rand(DataType.FLOAT, 3, 4));
+    }
+
+    @Test
+    public void testProtectedIntermediate(){
+        //Intermediate results that are requested must not be fused or removed
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable z = sd.nn().biasAdd("z", sd.mmul(in, w), b);
+        SDVariable out = sd.nn().relu("out", z, 0.0);
+
+        SameDiff opt = new GraphOptimizer().optimize(sd, "z", "out").getSameDiff();
+        assertEquals(2, opt.getOps().size());
+        assertTrue(opt.getVariableOutputFunction("z") instanceof XwPlusB);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String,INDArray> exp = sd.exec(Collections.singletonMap("in", arr), "z", "out");
+        Map<String,INDArray> act = opt.exec(Collections.singletonMap("in", arr), "z", "out");
+        assertEquals(exp.get("z"), act.get("z"));
+        assertEquals(exp.get("out"), act.get("out"));
+    }
+
+    private static void checkOutputs(SameDiff orig, SameDiff opt, String output, INDArray input){
+        INDArray exp = orig.execSingle(Collections.singletonMap("in", input), output);
+        INDArray act = opt.execSingle(Collections.singletonMap("in", input), output);
+        assertArrayEquals(exp.shape(), act.shape());
+        assertTrue(exp.equalsWithEps(act, 1e-5));
+    }
+}
@@ -25,6 +25,8 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.nd4j.OpValidationSuite;
 import org.nd4j.autodiff.samediff.impl.DefaultSameDiffConditional;
+import org.nd4j.autodiff.samediff.internal.ExecutionPlanCache;
+import org.nd4j.autodiff.samediff.optimize.RewriteUtil;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.blas.params.MMulTranspose;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -2757,4 +2759,46 @@ public class SameDiffTests {
         //Sanity check on training:
         sd.fit(new SingletonMultiDataSetIterator(new DataSet(inArr,null).toMultiDataSet()), 1);
     }
+
+    @Test
+    public void testExecutionPlanCache(){
+        SameDiff sd = SameDiff.create();
+        sd.enableExecutionPlanCache();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 3, 4));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable b2 = sd.var("b2", Nd4j.rand(DataType.FLOAT, 1, 4));
+        SDVariable out = sd.math().tanh("out", in.mmul(w).add(b));
+
+        List<String> outputs = Collections.singletonList("out");
+        for( int i=0; i<3; i++ ) {
+            INDArray inArr = Nd4j.rand(DataType.FLOAT, 2, 3);
+            INDArray exp = Transforms.tanh(inArr.mmul(w.getArr()).addRowVector(b.getArr()), true);
+            Map<String,INDArray> result = sd.exec(Collections.singletonMap("in", inArr), outputs);
+            assertEquals(exp, result.get("out"));
+        }
+
+        ExecutionPlanCache cache = sd.getExecutionPlanCache();
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getHits());
+
+        //Different placeholder shape: new plan
+        sd.exec(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 3)), outputs);
+        assertEquals(2, cache.size());
+
+        //Rewrite that keeps the number of ops and variables: cached plan must not be reused
+        long version = sd.getGraphVersion();
+        String z = sd.getVariableOutputFunction(out.getVarName()).args()[0].getVarName();
+        RewriteUtil.replaceInput(sd, sd.getVariableOutputFunction(z).getOwnName(), "b", "b2");
+        assertNotEquals(version, sd.getGraphVersion());
+        INDArray in2 = Nd4j.rand(DataType.FLOAT, 2, 3);
+        INDArray exp2 = Transforms.tanh(in2.mmul(w.getArr()).addRowVector(b2.getArr()), true);
+        assertEquals(exp2, sd.exec(Collections.singletonMap("in", in2), outputs).get("out"));
+
+        sd.disableExecutionPlanCache();
+        assertNull(sd.getExecutionPlanCache());
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 2, 3);
+        INDArray exp = Transforms.tanh(inArr.mmul(w.getArr()).addRowVector(b2.getArr()), true);
+        assertEquals(exp, sd.exec(Collections.singletonMap("in", inArr), outputs).get("out"));
+    }
 }
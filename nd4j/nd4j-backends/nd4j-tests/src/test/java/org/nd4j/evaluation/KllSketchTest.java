@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.evaluation;
+
+import org.junit.Test;
+import org.nd4j.evaluation.classification.KllSketch;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KllSketchTest extends BaseNd4jTest {
+
+    public KllSketchTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testRankError() {
+        int n = 100000;
+        double rankError = 0.01;
+        KllSketch sketch = KllSketch.forRankError(rankError);
+
+        Random r = new Random(12345);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = r.nextGaussian();
+            sketch.update(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(n, sketch.getN());
+        assertTrue(String.valueOf(sketch.numRetained()), sketch.numRetained() < 10 * sketch.getK());
+
+        for (double q = 0.0; q <= 1.0; q += 0.05) {
+            int idx = Math.min(n - 1, (int) (q * n));
+            double v = values[idx];
+            double exactRank = lowerBound(values, v) / (double) n;
+            assertEquals(exactRank, sketch.rank(v), rankError);
+
+            double approxQuantile = sketch.quantile(q);
+            assertEquals(q, lowerBound(values, approxQuantile) / (double) n, rankError);
+        }
+
+        //Weights must sum exactly to the number of values
+        long[] weights = sketch.getSortedRetained().getSecond();
+        long sum = 0;
+        for (long w : weights) {
+            sum += w;
+        }
+        assertEquals(n, sum);
+    }
+
+    @Test
+    public void testMerge() {
+        int n = 50000;
+        int numSketches = 8;
+        KllSketch merged = KllSketch.forRankError(0.01);
+        double[] values = new double[n * numSketches];
+
+        Random r = new Random(12345);
+        for (int s = 0; s < numSketches; s++) {
+            KllSketch sketch = KllSketch.forRankError(0.01);
+            for (int i = 0; i < n; i++) {
+                //Each sketch sees a different part of the distribution
+                double v = s + r.nextDouble();
+                values[s * n + i] = v;
+                sketch.update(v);
+            }
+            merged.merge(sketch);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, merged.getN());
+        for (double v = 0.0; v <= numSketches; v += 0.25) {
+            double exactRank = lowerBound(values, v) / (double) values.length;
+            assertEquals(exactRank, merged.rank(v), 0.01);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentK() {
+        KllSketch s1 = new KllSketch(100);
+        KllSketch s2 = new KllSketch(200);
+        s2.update(1.0);
+        s1.merge(s2);
+    }
+
+    private static int lowerBound(double[] sorted, double v) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < v) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
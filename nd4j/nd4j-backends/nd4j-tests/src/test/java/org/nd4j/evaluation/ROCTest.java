@@ -1181,4 +1181,112 @@ public class ROCTest extends BaseNd4jTest {
             }
         }
     }
+
+    @Test
+    public void testRocSketched(){
+        Nd4j.getRandom().setSeed(12345);
+
+        ROC exact = new ROC();
+        ROC sketch = ROC.sketched(0.01);
+        ROC sketch1 = ROC.sketched(0.01);
+        ROC sketch2 = ROC.sketched(0.01);
+
+        for( int i=0; i<20; i++ ){
+            INDArray labels = Nd4j.getExecutioner().exec(new BernoulliDistribution(Nd4j.createUninitialized(DataType.DOUBLE, 1000, 1), 0.3));
+            //Noisy predictions, correlated with the labels
+            INDArray out = Nd4j.rand(DataType.DOUBLE, 1000, 1).muli(0.7).addi(labels.mul(0.3));
+
+            exact.eval(labels, out);
+            sketch.eval(labels, out);
+            if(i % 2 == 0){
+                sketch1.eval(labels, out);
+            } else {
+                sketch2.eval(labels, out);
+            }
+        }
+
+        sketch1.merge(sketch2);
+
+        assertEquals(exact.getCountActualPositive(), sketch.getCountActualPositive());
+        assertEquals(exact.getCountActualNegative(), sketch.getCountActualNegative());
+        assertEquals(exact.getCountActualPositive(), sketch1.getCountActualPositive());
+        assertEquals(exact.getCountActualNegative(), sketch1.getCountActualNegative());
+
+        double aucExp = exact.calculateAUC();
+        double auprcExp = exact.calculateAUCPR();
+        for(ROC r : new ROC[]{sketch, sketch1}) {
+            assertEquals(aucExp, r.calculateAUC(), 0.02);
+            assertEquals(auprcExp, r.calculateAUCPR(), 0.02);
+
+            //Memory: sketches retain only a small fraction of the 20,000 predictions
+            assertTrue(r.getPositiveSketch().numRetained() + r.getNegativeSketch().numRetained() < 5000);
+
+            RocCurve rc = r.getRocCurve();
+            assertEquals(0.0, rc.getFalsePositiveRate(0), 0.0);
+            assertEquals(1.0, rc.getFalsePositiveRate(rc.numPoints() - 1), 0.0);
+            assertEquals(1.0, rc.getTruePositiveRate(rc.numPoints() - 1), 0.0);
+        }
+
+        //JSON round trip: sketches should be retained, hence merging after deserialization is possible
+        String json = sketch1.toJson();
+        ROC fromJson = ROC.fromJson(json);
+        assertEquals(sketch1, fromJson);
+        assertEquals(sketch1.calculateAUC(), fromJson.calculateAUC(), 1e-6);
+        fromJson.merge(sketch2);
+        assertEquals(sketch1.getCountActualPositive() + sketch2.getCountActualPositive(), fromJson.getCountActualPositive());
+
+        sketch.reset();
+        assertEquals(0, sketch.getPositiveSketch().getN());
+        assertTrue(Double.isNaN(sketch.calculateAUC()));
+    }
+
+    @Test
+    public void testRocMultiAndBinarySketched(){
+        Nd4j.getRandom().setSeed(12345);
+
+        int nOut = 4;
+        ROCMultiClass exactMulti = new ROCMultiClass();
+        ROCMultiClass sketchMulti1 = ROCMultiClass.sketched(0.01);
+        ROCMultiClass sketchMulti2 = ROCMultiClass.sketched(0.01);
+        ROCBinary exactBinary = new ROCBinary();
+        ROCBinary sketchBinary1 = ROCBinary.sketched(0.01);
+        ROCBinary sketchBinary2 = ROCBinary.sketched(0.01);
+
+        Random r = new Random(12345);
+        for( int i=0; i<10; i++ ){
+            INDArray labels = Nd4j.zeros(DataType.DOUBLE, 500, nOut);
+            for( int j=0; j<500; j++ ){
+                labels.putScalar(j, r.nextInt(nOut), 1.0 );
+            }
+            INDArray out = Nd4j.rand(DataType.DOUBLE, 500, nOut).addi(labels);
+            out.diviColumnVector(out.sum(1));
+
+            exactMulti.eval(labels, out);
+            exactBinary.eval(labels, out);
+            if(i % 2 == 0){
+                sketchMulti1.eval(labels, out);
+                sketchBinary1.eval(labels, out);
+            } else {
+                sketchMulti2.eval(labels, out);
+                sketchBinary2.eval(labels, out);
+            }
+        }
+
+        sketchMulti1.merge(sketchMulti2);
+        sketchBinary1.merge(sketchBinary2);
+
+        for( int i=0; i<nOut; i++ ) {
+            assertEquals(exactMulti.calculateAUC(i), sketchMulti1.calculateAUC(i), 0.02);
+            assertEquals(exactMulti.calculateAUCPR(i), sketchMulti1.calculateAUCPR(i), 0.02);
+            assertEquals(exactBinary.calculateAUC(i), sketchBinary1.calculateAUC(i), 0.02);
+            assertEquals(exactBinary.calculateAUCPR(i), sketchBinary1.calculateAUCPR(i), 0.02);
+        }
+
+        ROCMultiClass multiFromJson = ROCMultiClass.fromJson(sketchMulti1.toJson());
+        ROCBinary binaryFromJson = ROCBinary.fromJson(sketchBinary1.toJson());
+        for( int i=0; i<nOut; i++ ) {
+            assertEquals(sketchMulti1.calculateAUC(i), multiFromJson.calculateAUC(i), 1e-6);
+            assertEquals(sketchBinary1.calculateAUC(i), binaryFromJson.calculateAUC(i), 1e-6);
+        }
+    }
 }
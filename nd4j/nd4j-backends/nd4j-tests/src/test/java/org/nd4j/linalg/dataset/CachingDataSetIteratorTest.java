@@ -26,12 +26,15 @@ import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.SamplingDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.cache.CompressedLruDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.DataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InFileDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InMemoryDataSetCache;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -70,6 +73,104 @@ public class CachingDataSetIteratorTest extends BaseNd4jTest {
         FileUtils.deleteDirectory(cacheDir.toFile());
     }
 
+    @Test
+    public void testCompressedLru() {
+        CompressedLruDataSetCache cache = new CompressedLruDataSetCache(100L * 1024 * 1024);
+
+        runDataSetTest(cache);
+
+        assertEquals(0, cache.getEvictions());
+        assertEquals(0, cache.getMisses());
+        assertTrue(cache.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testCompressedLruWithEvictions() throws IOException {
+        int numBatches = 10;
+        int batchSize = 8;
+        int columns = 50;
+
+        INDArray features = Nd4j.create(numBatches * batchSize, columns);
+        for (int i = 0; i < features.rows(); i++)
+            features.getRow(i).assign(i / batchSize);
+        DataSet dataSet = new DataSet(features, features.dup());
+
+        // figure out compressed size of single batch, to set budgets in batches
+        CompressedLruDataSetCache probe = new CompressedLruDataSetCache(Long.MAX_VALUE);
+        probe.put("probe", (DataSet) dataSet.getRange(0, batchSize));
+        long entryBytes = probe.getMemoryBytes();
+        assertTrue(probe.getBytesSaved() > 0);
+
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        File dir = cacheDir.toFile();
+
+        // roughly 3 batches in memory, 3 batches on disk, the rest gets dropped
+        CompressedLruDataSetCache cache = new CompressedLruDataSetCache(entryBytes * 3 + entryBytes / 2, dir,
+                        entryBytes * 3 + entryBytes / 2);
+
+        String namespace = "test-namespace";
+        CachingDataSetIterator cachedIt = new CachingDataSetIterator(new ViewIterator(dataSet, batchSize), cache,
+                        namespace);
+
+        for (int epoch = 0; epoch < 3; epoch++) {
+            cachedIt.reset();
+
+            int cnt = 0;
+            while (cachedIt.hasNext()) {
+                DataSet ds = cachedIt.next();
+                assertEquals(batchSize, ds.numExamples());
+                assertEquals(cnt * batchSize * columns, ds.getFeatures().sumNumber().doubleValue(), 1e-5);
+                assertEquals(ds.getFeatures(), ds.getLabels());
+                cnt++;
+            }
+
+            assertEquals(numBatches, cnt);
+        }
+
+        // re-fetched batches aren't put back, so batches retained after first epoch keep being hits
+        assertEquals(2 * numBatches, cache.getMemoryHits() + cache.getDiskHits() + cache.getMisses());
+        assertTrue(cache.getHitRate() > 0.5);
+
+        assertTrue(cache.getSpills() > 0);
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getMisses() > 0);
+        assertTrue(cache.getMemoryBytes() <= entryBytes * 3 + entryBytes / 2);
+        assertTrue(cache.getDiskBytes() <= entryBytes * 3 + entryBytes / 2);
+        assertTrue(cache.size() < numBatches);
+
+        // dropped entries mean namespace isn't complete anymore
+        assertFalse(cache.isComplete(namespace));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, dir.list().length);
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompressedLruNonDeterministicSource() {
+        int batchSize = 8;
+        INDArray features = Nd4j.rand(10 * batchSize, 50);
+        DataSet dataSet = new DataSet(features, features.dup());
+
+        CompressedLruDataSetCache probe = new CompressedLruDataSetCache(Long.MAX_VALUE);
+        probe.put("probe", (DataSet) dataSet.getRange(0, batchSize));
+        long entryBytes = probe.getMemoryBytes();
+
+        CompressedLruDataSetCache cache = new CompressedLruDataSetCache(entryBytes * 3);
+        CachingDataSetIterator cachedIt = new CachingDataSetIterator(new ViewIterator(dataSet, batchSize), cache);
+        while (cachedIt.hasNext())
+            cachedIt.next();
+        assertTrue(cache.getEvictions() > 0);
+
+        // source now returns different data, so evicted batches can't be fetched again
+        features.addi(1.0);
+        cachedIt.reset();
+        while (cachedIt.hasNext())
+            cachedIt.next();
+    }
+
     private void runDataSetTest(DataSetCache cache) {
         int rows = 500;
         int inputColumns = 100;
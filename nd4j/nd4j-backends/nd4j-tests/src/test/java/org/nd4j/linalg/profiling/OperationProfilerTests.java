@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
@@ -32,8 +33,14 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.profiler.OpProfiler;
 import org.nd4j.linalg.profiler.ProfilerConfig;
+import org.nd4j.linalg.profiler.sampling.OpSample;
+import org.nd4j.linalg.profiler.sampling.SampleBuffer;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -415,4 +422,70 @@ public class OperationProfilerTests {
         assertEquals(1.0f, stats.getMeanValue(), 1e-5);
     }
 
+    @Test
+    public void testSampling() throws Exception {
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().samplingRate(5).samplingBufferSize(8)
+                .samplingStackTrace(true).build());
+        OpProfiler.getInstance().reset();
+
+        INDArray array = Nd4j.createUninitialized(DataType.FLOAT, 10, 10);
+        for (int i = 0; i < 50; i++)
+            array.addi(1.0f);
+
+        val sampler = OpProfiler.getInstance().getSampler();
+        assertEquals(10, sampler.getTotalSamples());
+
+        val samples = sampler.getSamples().values().iterator().next();
+        assertEquals(8, samples.size());
+        for (val s : samples) {
+            assertEquals(DataType.FLOAT, s.getDataType());
+            assertArrayEquals(new long[]{10, 10}, s.getShapes()[0]);
+            assertNotNull(s.getStack());
+        }
+
+        val bos = new ByteArrayOutputStream();
+        sampler.exportChromeTrace(bos);
+        String json = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"displayTimeUnit\""));
+        assertTrue(json.contains("\"ph\":\"X\""));
+
+        val stacks = sampler.getCollapsedStacks();
+        assertFalse(stacks.isEmpty());
+        for (String stack : stacks.keySet())
+            assertTrue(stack, stack.contains(getClass().getName() + ".testSampling"));
+    }
+
+    @Test
+    public void testSamplingReleasesDeadThreads() throws Exception {
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().samplingRate(1).samplingBufferSize(8).build());
+        OpProfiler.getInstance().reset();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                INDArray array = Nd4j.createUninitialized(DataType.FLOAT, 10);
+                for (int i = 0; i < 5; i++)
+                    array.addi(1.0f);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        val sampler = OpProfiler.getInstance().getSampler();
+        assertEquals(5, sampler.getTotalSamples());
+        assertEquals(5, samplesOf(sampler.getSamples(), thread.getId()));
+
+        // buffer of dead thread is released once collected, total counter stays the same
+        assertEquals(0, samplesOf(sampler.getSamples(), thread.getId()));
+        assertEquals(5, sampler.getTotalSamples());
+    }
+
+    private static int samplesOf(Map<SampleBuffer, List<OpSample>> samples, long threadId) {
+        int cnt = 0;
+        for (Map.Entry<SampleBuffer, List<OpSample>> e : samples.entrySet())
+            if (e.getKey().getThreadId() == threadId)
+                cnt += e.getValue().size();
+        return cnt;
+    }
+
 }
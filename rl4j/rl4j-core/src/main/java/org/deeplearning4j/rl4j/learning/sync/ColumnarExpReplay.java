@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Exp Replay implementation for discrete actions that keeps all transitions in preallocated columnar storage:
+ * observations and next frames live in two off-heap [maxSize, length] INDArrays,
+ * actions, rewards and terminal flags in primitive arrays.
+ *
+ * Nothing is allocated per stored transition, and {@link #sample(ReplayBatch)} gathers the sampled rows
+ * straight into a reusable {@link ReplayBatch}, so large memories don't produce any GC churn.
+ *
+ * Observations are expected in the same layout QLearningDiscrete uses: an history of historyLength frames,
+ * where next observation is the new frame followed by all but the oldest frame of the current one.
+ */
+@Slf4j
+public class ColumnarExpReplay implements IExpReplay<Integer> {
+
+    @Getter
+    final private int maxSize;
+    @Getter
+    final private int batchSize;
+    @Getter
+    final private int historyLength;
+    final private int[] observationShape;
+    final private int frameLength;
+    final protected Random random;
+
+    final private INDArray observations;
+    final private INDArray nextFrames;
+    final private int[] actions;
+    final private double[] rewards;
+    final private boolean[] terminals;
+
+    private int position = 0;
+    @Getter
+    private int size = 0;
+
+    /**
+     * @param maxSize maximal number of transitions kept in memory
+     * @param batchSize default size of sampled batches
+     * @param seed random seed
+     * @param observationShape shape of a single observation, i.e. mdp observation shape, or history processor shape
+     * @param historyLength number of frames in a single observation, 1 if there is no history processor
+     */
+    public ColumnarExpReplay(int maxSize, int batchSize, int seed, int[] observationShape, int historyLength) {
+        if (maxSize < 1 || batchSize < 1)
+            throw new IllegalArgumentException("Memory size and batch size should be positive values");
+
+        long observationLength = length(observationShape);
+        if (historyLength < 1 || observationLength % historyLength != 0)
+            throw new IllegalArgumentException("Observation shape " + Arrays.toString(observationShape)
+                            + " can't be split into " + historyLength + " frames");
+
+        this.maxSize = maxSize;
+        this.batchSize = batchSize;
+        this.historyLength = historyLength;
+        this.observationShape = observationShape.clone();
+        this.frameLength = (int) (observationLength / historyLength);
+        this.random = new Random(seed);
+
+        this.observations = Nd4j.create(maxSize, observationLength);
+        this.nextFrames = Nd4j.create(maxSize, frameLength);
+        this.actions = new int[maxSize];
+        this.rewards = new double[maxSize];
+        this.terminals = new boolean[maxSize];
+    }
+
+    static long length(int[] shape) {
+        long length = 1;
+        for (int d : shape)
+            length *= d;
+        return length;
+    }
+
+    /**
+     * @return new batch matching layout of this memory, to be reused for subsequent {@link #sample(ReplayBatch)} calls
+     */
+    public ReplayBatch createBatch() {
+        return new ReplayBatch(batchSize, observationShape, historyLength);
+    }
+
+    public int[] getObservationShape() {
+        return observationShape.clone();
+    }
+
+    public void store(Transition<Integer> transition) {
+        int index = position;
+
+        INDArray[] history = transition.getObservation();
+        if (history.length != historyLength)
+            throw new IllegalArgumentException("Expected history of " + historyLength + " frames, got " + history.length);
+
+        for (int i = 0; i < historyLength; i++)
+            copyFrame(history[i], observations.get(NDArrayIndex.point(index),
+                            NDArrayIndex.interval(i * frameLength, (i + 1) * frameLength)));
+
+        copyFrame(transition.getNextObservation(), nextFrames.getRow(index));
+
+        actions[index] = transition.getAction();
+        rewards[index] = transition.getReward();
+        terminals[index] = transition.isTerminal();
+
+        position = (position + 1) % maxSize;
+        size = Math.min(size + 1, maxSize);
+
+        stored(index);
+    }
+
+    private void copyFrame(INDArray frame, INDArray target) {
+        if (frame.length() != frameLength)
+            throw new IllegalArgumentException("Expected frame of length " + frameLength + ", got " + frame.length());
+
+        target.assign(frame.reshape(target.shape()));
+    }
+
+    /**
+     * Called after a transition was written at given position
+     */
+    protected void stored(int index) {
+        //
+    }
+
+    /**
+     * Pick positions of transitions for the next batch, and fill batch weights
+     */
+    protected void selectIndexes(ReplayBatch batch) {
+        int[] indexes = batch.getIndexes();
+        boolean distinct = size >= indexes.length;
+        for (int i = 0; i < indexes.length; i++) {
+            int idx;
+            boolean duplicate;
+            do {
+                idx = random.nextInt(size);
+                duplicate = false;
+                for (int j = 0; distinct && j < i; j++) {
+                    if (indexes[j] == idx) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+            } while (duplicate);
+            indexes[i] = idx;
+        }
+    }
+
+    /**
+     * Sample a batch of transitions, written straight into given batch arrays
+     *
+     * @param batch batch created by {@link #createBatch()}
+     * @return the same batch
+     */
+    public ReplayBatch sample(ReplayBatch batch) {
+        if (size == 0)
+            throw new IllegalStateException("Can't sample from empty memory");
+        if (batch.getFrameLength() != frameLength || batch.flatObservations.size(1) != observations.size(1))
+            throw new IllegalArgumentException("Batch layout doesn't match memory layout");
+
+        selectIndexes(batch);
+
+        int[] indexes = batch.getIndexes();
+        Nd4j.pullRows(observations, batch.flatObservations, 1, indexes);
+        Nd4j.pullRows(nextFrames, batch.nextFrames, 1, indexes);
+        batch.assembleNextObservations();
+
+        for (int i = 0; i < indexes.length; i++) {
+            int idx = indexes[i];
+            batch.getActions()[i] = actions[idx];
+            batch.getRewards()[i] = rewards[idx];
+            batch.getTerminals()[i] = terminals[idx];
+        }
+
+        return batch;
+    }
+
+    /**
+     * Update priorities of sampled transitions after their TD errors were computed.
+     * Uniform memory ignores priorities.
+     *
+     * @param indexes positions of transitions, as returned in {@link ReplayBatch#getIndexes()}
+     * @param tdErrors TD errors of these transitions
+     */
+    public void updatePriorities(int[] indexes, double[] tdErrors) {
+        //
+    }
+
+    /**
+     * Transitions are materialized from columnar storage. Prefer {@link #sample(ReplayBatch)}, which doesn't allocate.
+     */
+    public ArrayList<Transition<Integer>> getBatch() {
+        ReplayBatch batch = sample(createBatch());
+        int[] frameShape;
+        if (historyLength > 1)
+            frameShape = Arrays.copyOfRange(observationShape, 1, observationShape.length);
+        else if (observationShape.length == 1)
+            frameShape = new int[] {1, frameLength};
+        else
+            frameShape = observationShape;
+
+        ArrayList<Transition<Integer>> transitions = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            INDArray[] history = new INDArray[historyLength];
+            for (int j = 0; j < historyLength; j++)
+                history[j] = batch.flatObservations.get(NDArrayIndex.point(i),
+                                NDArrayIndex.interval(j * frameLength, (j + 1) * frameLength)).dup().reshape(frameShape);
+
+            INDArray next = batch.nextFrames.getRow(i).dup().reshape(frameShape);
+            transitions.add(new Transition<>(history, batch.getActions()[i], batch.getRewards()[i],
+                            batch.getTerminals()[i], next));
+        }
+
+        return transitions;
+    }
+}
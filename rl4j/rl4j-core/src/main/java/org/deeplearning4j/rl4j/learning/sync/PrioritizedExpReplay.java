@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Prioritized Exp Replay (proportional variant) on top of columnar storage
+ *
+ * https://arxiv.org/abs/1511.05952
+ *
+ * Transitions are sampled with probability p_i^alpha / sum(p_k^alpha), where p_i = |TD error| + epsilon.
+ * p_i^alpha is kept strictly positive (even if it underflows for large alpha), so every stored transition
+ * has non-zero probability and finite importance sampling weight.
+ * New transitions get the maximal priority seen so far, so each of them is replayed at least once with high probability.
+ * Sampling bias is corrected with importance sampling weights (N * P(i))^-beta, normalized by their maximum,
+ * returned in {@link ReplayBatch#getWeights()}.
+ */
+public class PrioritizedExpReplay extends ColumnarExpReplay {
+
+    public static final double DEFAULT_EPSILON = 1e-6;
+    // smallest priority stored in the tree, p^alpha may underflow to 0 otherwise
+    public static final double MIN_PRIORITY = Double.MIN_NORMAL;
+
+    @Getter
+    final private double alpha;
+    @Getter
+    @Setter
+    private double beta;
+    @Getter
+    @Setter
+    private double betaIncrement;
+    final private double epsilon;
+
+    final private SumTree tree;
+    private double maxPriority = 1.0;
+
+    /**
+     * @param alpha how much prioritization is used, 0 corresponds to uniform sampling
+     * @param beta initial importance sampling correction, 1 fully compensates non-uniform sampling
+     * @param betaIncrement increment of beta after each sampled batch, beta is capped at 1.0
+     */
+    public PrioritizedExpReplay(int maxSize, int batchSize, int seed, int[] observationShape, int historyLength,
+                    double alpha, double beta, double betaIncrement) {
+        super(maxSize, batchSize, seed, observationShape, historyLength);
+
+        if (alpha < 0)
+            throw new IllegalArgumentException("Alpha should be non-negative value");
+        if (beta < 0 || beta > 1)
+            throw new IllegalArgumentException("Beta should be in range [0, 1]");
+
+        this.alpha = alpha;
+        this.beta = beta;
+        this.betaIncrement = betaIncrement;
+        this.epsilon = DEFAULT_EPSILON;
+        this.tree = new SumTree(maxSize);
+    }
+
+    @Override
+    protected void stored(int index) {
+        tree.set(index, scaled(maxPriority));
+    }
+
+    @Override
+    protected void selectIndexes(ReplayBatch batch) {
+        int[] indexes = batch.getIndexes();
+        double[] weights = batch.getWeights();
+        int n = indexes.length;
+
+        double total = tree.total();
+        double segment = total / n;
+        double maxWeight = 0.0;
+        for (int i = 0; i < n; i++) {
+            // stratified sampling: one transition from each of n equal segments of the priority mass
+            double value = Math.min((i + random.nextDouble()) * segment, Math.nextAfter(total, 0.0));
+            int idx = tree.find(value);
+            indexes[i] = idx;
+
+            double probability = tree.get(idx) / total;
+            weights[i] = Math.pow(getSize() * probability, -beta);
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+
+        for (int i = 0; i < n; i++)
+            weights[i] /= maxWeight;
+
+        beta = Math.min(1.0, beta + betaIncrement);
+    }
+
+    @Override
+    public void updatePriorities(int[] indexes, double[] tdErrors) {
+        if (indexes.length != tdErrors.length)
+            throw new IllegalArgumentException("Number of indexes and TD errors should match");
+
+        for (int i = 0; i < indexes.length; i++) {
+            double priority = Math.abs(tdErrors[i]) + epsilon;
+            maxPriority = Math.max(maxPriority, priority);
+            tree.set(indexes[i], scaled(priority));
+        }
+    }
+
+    protected double scaled(double priority) {
+        return Math.max(Math.pow(priority, alpha), MIN_PRIORITY);
+    }
+}
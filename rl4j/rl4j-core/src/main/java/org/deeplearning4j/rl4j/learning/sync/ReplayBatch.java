@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import lombok.Getter;
+import org.deeplearning4j.rl4j.learning.Learning;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+
+/**
+ * Reusable minibatch of transitions sampled from a {@link ColumnarExpReplay}
+ *
+ * All arrays are allocated once, and overwritten by each call to {@link ColumnarExpReplay#sample(ReplayBatch)}.
+ * Observations are laid out as [batchSize, observationShape...], ready to be fed to the network.
+ */
+@Getter
+public class ReplayBatch {
+
+    final private int batchSize;
+    final private int frameLength;
+
+    /** [batchSize, observationShape...], view of flatObservations */
+    final private INDArray observations;
+    /** [batchSize, observationShape...], observations shifted by one frame, view of flatNextObservations */
+    final private INDArray nextObservations;
+
+    final private int[] actions;
+    final private double[] rewards;
+    final private boolean[] terminals;
+
+    /** positions of sampled transitions in the replay memory */
+    final private int[] indexes;
+    /** importance sampling weights, all equal to 1.0 for uniform sampling */
+    final private double[] weights;
+
+    // flat [batchSize, observationLength] buffers and their precomputed sub-views
+    final INDArray flatObservations;
+    final INDArray flatNextObservations;
+    final INDArray nextFrames;
+    final INDArray nextHead;
+    final INDArray nextTail;
+    final INDArray observationHead;
+
+    public ReplayBatch(int batchSize, int[] observationShape, int historyLength) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size should be positive value");
+
+        long observationLength = ColumnarExpReplay.length(observationShape);
+        if (observationLength % historyLength != 0)
+            throw new IllegalArgumentException("Observation shape " + Arrays.toString(observationShape)
+                            + " can't be split into " + historyLength + " frames");
+
+        this.batchSize = batchSize;
+        this.frameLength = (int) (observationLength / historyLength);
+
+        this.flatObservations = Nd4j.create(batchSize, observationLength);
+        this.flatNextObservations = Nd4j.create(batchSize, observationLength);
+        this.nextFrames = Nd4j.create(batchSize, frameLength);
+
+        int[] batchShape = Learning.makeShape(batchSize, observationShape);
+        this.observations = flatObservations.reshape(batchShape);
+        this.nextObservations = flatNextObservations.reshape(batchShape);
+
+        // next observation is the new frame, followed by all but the oldest frame of the current observation
+        this.nextHead = flatNextObservations.get(NDArrayIndex.all(), NDArrayIndex.interval(0, frameLength));
+        if (historyLength > 1) {
+            this.nextTail = flatNextObservations.get(NDArrayIndex.all(),
+                            NDArrayIndex.interval(frameLength, observationLength));
+            this.observationHead = flatObservations.get(NDArrayIndex.all(),
+                            NDArrayIndex.interval(0, observationLength - frameLength));
+        } else {
+            this.nextTail = null;
+            this.observationHead = null;
+        }
+
+        this.actions = new int[batchSize];
+        this.rewards = new double[batchSize];
+        this.terminals = new boolean[batchSize];
+        this.indexes = new int[batchSize];
+        this.weights = new double[batchSize];
+        Arrays.fill(weights, 1.0);
+    }
+
+    /**
+     * Assemble next observations from already gathered observations and next frames
+     */
+    void assembleNextObservations() {
+        nextHead.assign(nextFrames);
+        if (nextTail != null)
+            nextTail.assign(observationHead);
+    }
+}
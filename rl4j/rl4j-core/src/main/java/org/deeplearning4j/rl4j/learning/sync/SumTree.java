@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+/**
+ * Sum tree over a fixed number of non-negative priorities, stored in a single primitive array.
+ *
+ * Updates and prefix-sum lookups are O(log n), which makes proportional sampling
+ * from large replay memories cheap.
+ *
+ * Leaf i is stored at position capacity - 1 + i, the root (total sum) at position 0.
+ */
+public class SumTree {
+
+    final private int capacity;
+    final private double[] tree;
+
+    public SumTree(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity should be positive value");
+
+        this.capacity = capacity;
+        this.tree = new double[2 * capacity - 1];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return sum of all priorities
+     */
+    public double total() {
+        return tree[0];
+    }
+
+    /**
+     * @param index leaf index
+     * @return priority of given leaf
+     */
+    public double get(int index) {
+        return tree[capacity - 1 + index];
+    }
+
+    /**
+     * Set priority of a leaf, and propagate the change up to the root
+     *
+     * @param index leaf index
+     * @param priority new priority, should be non-negative
+     */
+    public void set(int index, double priority) {
+        if (index < 0 || index >= capacity)
+            throw new IllegalArgumentException("Index " + index + " is out of bounds [0, " + capacity + ")");
+        if (priority < 0 || Double.isNaN(priority))
+            throw new IllegalArgumentException("Priority should be non-negative, got " + priority);
+
+        int node = capacity - 1 + index;
+        tree[node] = priority;
+        // parents are recomputed rather than updated by delta, so rounding errors don't accumulate over time
+        while (node > 0) {
+            node = (node - 1) / 2;
+            tree[node] = tree[2 * node + 1] + tree[2 * node + 2];
+        }
+    }
+
+    /**
+     * Walk down the tree to the leaf holding given prefix sum.
+     * Each leaf is hit with probability proportional to its priority when value is uniform in [0, total())
+     *
+     * @param value prefix sum, in range [0, total())
+     * @return leaf index
+     */
+    public int find(double value) {
+        int node = 0;
+        while (node < capacity - 1) {
+            int left = 2 * node + 1;
+            int right = left + 1;
+            if (value < tree[left]) {
+                node = left;
+            } else {
+                value -= tree[left];
+                node = right;
+            }
+        }
+
+        int index = node - (capacity - 1);
+        // floating point drift may lead us into an empty leaf, so step back to the closest non-empty one
+        while (index > 0 && get(index) <= 0.0)
+            index--;
+
+        return index;
+    }
+}
@@ -45,8 +45,13 @@ import java.util.List;
 public abstract class QLearning<O extends Encodable, A, AS extends ActionSpace<A>>
                 extends SyncLearning<O, A, AS, IDQN> {
 
+    /**
+     * Exp Replay used for training, {@link ExpReplay} by default.
+     * Can be replaced before training starts, i.e. with {@link org.deeplearning4j.rl4j.learning.sync.ColumnarExpReplay}
+     */
     @Getter
-    final private IExpReplay<A> expReplay;
+    @Setter
+    private IExpReplay<A> expReplay;
 
     public QLearning(QLConfiguration conf) {
         super(conf);
@@ -21,6 +21,9 @@ import lombok.Setter;
 import org.nd4j.linalg.primitives.Pair;
 import org.deeplearning4j.gym.StepReply;
 import org.deeplearning4j.rl4j.learning.Learning;
+import org.deeplearning4j.rl4j.learning.sync.ColumnarExpReplay;
+import org.deeplearning4j.rl4j.learning.sync.IExpReplay;
+import org.deeplearning4j.rl4j.learning.sync.ReplayBatch;
 import org.deeplearning4j.rl4j.learning.sync.Transition;
 import org.deeplearning4j.rl4j.learning.sync.qlearning.QLearning;
 import org.deeplearning4j.rl4j.mdp.MDP;
@@ -69,6 +72,8 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
     private INDArray history[] = null;
     private double accuReward = 0;
     private int lastMonitor = -Constants.MONITOR_FREQ;
+    private ReplayBatch replayBatch;
+    private double[] tdErrors;
 
 
     public QLearningDiscrete(MDP<O, Integer, DiscreteSpace> mdp, IDQN dqn, QLConfiguration conf,
@@ -176,7 +181,15 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
             getExpReplay().store(trans);
 
             if (getStepCounter() > updateStart) {
-                Pair<INDArray, INDArray> targets = setTarget(getExpReplay().getBatch());
+                IExpReplay<Integer> expReplay = getExpReplay();
+                Pair<INDArray, INDArray> targets;
+                if (expReplay instanceof ColumnarExpReplay) {
+                    ColumnarExpReplay columnar = (ColumnarExpReplay) expReplay;
+                    if (replayBatch == null)
+                        replayBatch = columnar.createBatch();
+                    targets = setTarget(columnar, columnar.sample(replayBatch));
+                } else
+                    targets = setTarget(expReplay.getBatch());
                 getCurrentDQN().fit(targets.getFirst(), targets.getSecond());
             }
 
@@ -273,4 +286,65 @@ public abstract class QLearningDiscrete<O extends Encodable> extends QLearning<O
         return new Pair(obs, dqnOutputAr);
     }
 
+    /**
+     * Same as {@link #setTarget(ArrayList)}, for a batch gathered from columnar memory.
+     * TD errors are reported back to the memory, and importance sampling weights scale the
+     * (clamped) TD step, which is equivalent to weighting per-example squared error.
+     */
+    protected Pair<INDArray, INDArray> setTarget(ColumnarExpReplay expReplay, ReplayBatch batch) {
+        int size = batch.getBatchSize();
+        INDArray obs = batch.getObservations();
+        INDArray nextObs = batch.getNextObservations();
+        int[] actions = batch.getActions();
+        double[] rewards = batch.getRewards();
+        boolean[] areTerminal = batch.getTerminals();
+        double[] weights = batch.getWeights();
+
+        if (getHistoryProcessor() != null) {
+            obs.muli(1.0 / getHistoryProcessor().getScale());
+            nextObs.muli(1.0 / getHistoryProcessor().getScale());
+        }
+
+        INDArray dqnOutputAr = dqnOutput(obs);
+
+        INDArray dqnOutputNext = dqnOutput(nextObs);
+        INDArray targetDqnOutputNext = null;
+
+        INDArray tempQ = null;
+        INDArray getMaxAction = null;
+        if (getConfiguration().isDoubleDQN()) {
+            targetDqnOutputNext = targetDqnOutput(nextObs);
+            getMaxAction = Nd4j.argMax(dqnOutputNext, 1);
+        } else {
+            tempQ = Nd4j.max(dqnOutputNext, 1);
+        }
+
+        if (tdErrors == null || tdErrors.length != size)
+            tdErrors = new double[size];
+        for (int i = 0; i < size; i++) {
+            double yTar = rewards[i];
+            if (!areTerminal[i]) {
+                double q;
+                if (getConfiguration().isDoubleDQN()) {
+                    q = targetDqnOutputNext.getDouble(i, getMaxAction.getInt(i));
+                } else
+                    q = tempQ.getDouble(i);
+
+                yTar += getConfiguration().getGamma() * q;
+            }
+
+            double previousV = dqnOutputAr.getDouble(i, actions[i]);
+            double lowB = previousV - getConfiguration().getErrorClamp();
+            double highB = previousV + getConfiguration().getErrorClamp();
+            double clamped = Math.min(highB, Math.max(yTar, lowB));
+
+            tdErrors[i] = yTar - previousV;
+            dqnOutputAr.putScalar(i, actions[i], previousV + weights[i] * (clamped - previousV));
+        }
+
+        expReplay.updatePriorities(batch.getIndexes(), tdErrors);
+
+        return new Pair<>(obs, dqnOutputAr);
+    }
+
 }
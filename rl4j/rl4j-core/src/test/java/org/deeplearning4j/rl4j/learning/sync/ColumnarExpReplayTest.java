@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.rl4j.learning.sync;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class ColumnarExpReplayTest {
+
+    private static Transition<Integer> transition(int id, int historyLength, int frameLength) {
+        INDArray[] history = new INDArray[historyLength];
+        for (int i = 0; i < historyLength; i++)
+            history[i] = Nd4j.valueArrayOf(new long[] {1, frameLength}, id * 10 + i);
+
+        INDArray next = Nd4j.valueArrayOf(new long[] {1, frameLength}, id * 10 + 9);
+        return new Transition<>(history, id % 3, id, id % 2 == 0, next);
+    }
+
+    @Test
+    public void testSumTree() {
+        SumTree tree = new SumTree(5);
+        tree.set(0, 1.0);
+        tree.set(1, 2.0);
+        tree.set(4, 3.0);
+        assertEquals(6.0, tree.total(), 1e-9);
+
+        // each leaf covers a part of [0, total) proportional to its priority
+        int[] hits = new int[5];
+        for (int i = 0; i < 6; i++)
+            hits[tree.find(i + 0.5)]++;
+        assertArrayEquals(new int[] {1, 2, 0, 0, 3}, hits);
+
+        tree.set(1, 0.0);
+        assertEquals(4.0, tree.total(), 1e-9);
+        assertEquals(0.0, tree.get(1), 1e-9);
+    }
+
+    @Test
+    public void testSampleGathersTransitions() {
+        int historyLength = 4;
+        int frameLength = 3;
+        ColumnarExpReplay replay =
+                        new ColumnarExpReplay(10, 4, 123, new int[] {historyLength, 1, frameLength}, historyLength);
+
+        // overflow the memory, so only transitions 5..14 are kept
+        for (int i = 0; i < 15; i++)
+            replay.store(transition(i, historyLength, frameLength));
+        assertEquals(10, replay.getSize());
+
+        ReplayBatch batch = replay.createBatch();
+        assertArrayEquals(new long[] {4, historyLength, 1, frameLength}, batch.getObservations().shape());
+
+        for (int iter = 0; iter < 5; iter++) {
+            replay.sample(batch);
+            for (int i = 0; i < 4; i++) {
+                int id = (int) batch.getRewards()[i];
+                assertTrue(id >= 5 && id < 15);
+                assertEquals(id % 3, batch.getActions()[i]);
+                assertEquals(id % 2 == 0, batch.getTerminals()[i]);
+
+                for (int f = 0; f < historyLength; f++) {
+                    assertEquals(id * 10 + f, batch.getObservations().getDouble(i, f, 0, 0), 1e-5);
+                }
+
+                // next observation is the new frame, followed by the first frames of current observation
+                assertEquals(id * 10 + 9, batch.getNextObservations().getDouble(i, 0, 0, 0), 1e-5);
+                for (int f = 1; f < historyLength; f++) {
+                    assertEquals(id * 10 + f - 1, batch.getNextObservations().getDouble(i, f, 0, 2), 1e-5);
+                }
+            }
+        }
+
+        ArrayList<Transition<Integer>> transitions = replay.getBatch();
+        assertEquals(4, transitions.size());
+        for (Transition<Integer> t : transitions) {
+            int id = (int) t.getReward();
+            assertEquals(historyLength, t.getObservation().length);
+            assertEquals(id * 10 + 2, t.getObservation()[2].getDouble(0), 1e-5);
+            assertEquals(id * 10 + 9, t.getNextObservation().getDouble(0), 1e-5);
+        }
+    }
+
+    @Test
+    public void testPrioritizedSampling() {
+        PrioritizedExpReplay replay = new PrioritizedExpReplay(8, 4, 123, new int[] {2}, 1, 1.0, 0.4, 0.0);
+        for (int i = 0; i < 8; i++)
+            replay.store(transition(i, 1, 2));
+
+        // make transition 3 dominate the priority mass
+        int[] indexes = new int[8];
+        double[] errors = new double[8];
+        for (int i = 0; i < 8; i++) {
+            indexes[i] = i;
+            errors[i] = i == 3 ? 1000.0 : 0.001;
+        }
+        replay.updatePriorities(indexes, errors);
+
+        ReplayBatch batch = replay.sample(replay.createBatch());
+        int hits = 0;
+        for (int i = 0; i < 4; i++) {
+            if (batch.getIndexes()[i] == 3) {
+                hits++;
+                assertEquals(3.0, batch.getRewards()[i], 1e-9);
+            }
+            assertEquals(1.0, batch.getWeights()[i], 1e-9);
+        }
+        assertEquals(4, hits);
+    }
+
+    @Test
+    public void testZeroPriorities() {
+        // (0 + epsilon)^alpha underflows to 0 here
+        PrioritizedExpReplay replay = new PrioritizedExpReplay(8, 4, 123, new int[] {2}, 1, 100.0, 0.4, 0.0);
+        for (int i = 0; i < 8; i++)
+            replay.store(transition(i, 1, 2));
+
+        int[] indexes = new int[8];
+        for (int i = 0; i < 8; i++)
+            indexes[i] = i;
+        replay.updatePriorities(indexes, new double[8]);
+
+        // all transitions are still sampled uniformly, with finite weights
+        ReplayBatch batch = replay.sample(replay.createBatch());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, batch.getIndexes()[i] / 2);
+            assertEquals(1.0, batch.getWeights()[i], 1e-9);
+        }
+    }
+}